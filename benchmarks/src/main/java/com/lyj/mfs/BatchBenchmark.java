@@ -0,0 +1,80 @@
+package com.lyj.mfs;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * @program: inmemoryFileSystem
+ * @description: a bulk load of files under deep dirs, one touch per file against one batch
+ * @author: LYJ
+ * @create: 2026-10-19 20:10
+ **/
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BatchBenchmark {
+
+	private static final int FILES = 10000;
+
+	@Param({"4", "24"})
+	public int depth;
+
+	@Param({"100"})
+	public int filesPerDir;
+
+	private InMemoryFileSystemSession session;
+
+	private List<BatchOperation> operations;
+
+	@Setup(Level.Trial)
+	public void prepare() {
+		StringBuilder prefix = new StringBuilder("/ingest");
+		for (int i = 0; i < depth; ++i) {
+			prefix.append("/level").append(i);
+		}
+		operations = new ArrayList<>(FILES);
+		for (int i = 0; i < FILES; ++i) {
+			operations.add(BatchOperation.touch(prefix + "/dir" + i / filesPerDir + "/file" + i));
+		}
+		session = InMemoryFileSystem.newSession();
+	}
+
+	@Setup(Level.Invocation)
+	public void clean() {
+		session.rm("/ingest", true);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(FILES)
+	public Object touchEach() {
+		String last = null;
+		for (BatchOperation operation : operations) {
+			last = session.touch(operation.getPath());
+		}
+		return last;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(FILES)
+	public boolean[] batch() {
+		return session.batch(operations);
+	}
+}
@@ -0,0 +1,40 @@
+package com.lyj.mfs;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * @program: inmemoryFileSystem
+ * @description: run the benchmarks once for every thread count with the gc profiler attached,
+ * so the report carries the allocation rate (gc.alloc.rate.norm) of every operation
+ *
+ * -Dbench.include=regex   benchmarks to run, default all
+ * -Dbench.threads=1,4,16  thread counts to sweep, default 1,4
+ * -Dbench.result=file     where to write the json report, default jmh-result-t{threads}.json
+ * @author: LYJ
+ * @create: 2026-10-18 10:48
+ **/
+
+public class BenchmarkRunner {
+
+	public static void main(String[] args) throws RunnerException {
+		String include = System.getProperty("bench.include", "com.lyj.mfs.*");
+		String threads = System.getProperty("bench.threads", "1,4");
+		String result = System.getProperty("bench.result", "jmh-result");
+
+		for (String t : threads.split(",")) {
+			int threadCount = Integer.parseInt(t.trim());
+			ChainedOptionsBuilder options = new OptionsBuilder()
+				.include(include)
+				.threads(threadCount)
+				.addProfiler(GCProfiler.class)
+				.resultFormat(ResultFormatType.JSON)
+				.result(result + "-t" + threadCount + ".json");
+			new Runner(options.build()).run();
+		}
+	}
+}
@@ -0,0 +1,64 @@
+package com.lyj.mfs;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * @program: inmemoryFileSystem
+ * @description: heap footprint of a tree, not a JMH benchmark since it measures retained
+ * memory instead of time. every directory holds {@code dirsPerDir} dirs and
+ * {@code filesPerDir} files until the tree has {@code nodes} nodes, so most directories
+ * are small and the leaves are empty dirs
+ *
+ * java -Xmx4g -Dmfs.children.inlineThreshold=8 -cp benchmarks/target/benchmarks.jar \
+ *     com.lyj.mfs.FootprintBenchmark [nodes] [dirsPerDir] [filesPerDir]
+ * @author: LYJ
+ * @create: 2026-10-18 16:20
+ **/
+
+public class FootprintBenchmark {
+
+	public static void main(String[] args) throws InterruptedException {
+		long nodes = args.length > 0 ? Long.parseLong(args[0]) : 10_000_000L;
+		int dirsPerDir = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+		int filesPerDir = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+
+		MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+		InMemoryFileSystemSession session = InMemoryFileSystem.newSession();
+		long before = usedHeap(memory);
+		long start = System.nanoTime();
+
+		long created = 0;
+		Deque<String> dirs = new ArrayDeque<>();
+		dirs.add("");
+		while (created < nodes && !dirs.isEmpty()) {
+			String dir = dirs.poll();
+			for (int i = 0; i < dirsPerDir && created < nodes; ++i, ++created) {
+				String sub = dir + "/d" + i;
+				session.mkdir(sub);
+				dirs.add(sub);
+			}
+			for (int i = 0; i < filesPerDir && created < nodes; ++i, ++created) {
+				session.touch(dir + "/f" + i);
+			}
+		}
+		long buildMillis = (System.nanoTime() - start) / 1_000_000;
+		dirs = null;
+
+		long after = usedHeap(memory);
+		System.out.println(InMemoryFileSystem.getInstance().getStats());
+		System.out.printf("inlineThreshold=%s nodes=%d build=%dms heap=%dMB bytes/node=%.1f%n",
+			System.getProperty("mfs.children.inlineThreshold", "default"), created, buildMillis,
+			(after - before) >> 20, (double) (after - before) / created);
+	}
+
+	private static long usedHeap(MemoryMXBean memory) throws InterruptedException {
+		for (int i = 0; i < 3; ++i) {
+			System.gc();
+			Thread.sleep(200);
+		}
+		return memory.getHeapMemoryUsage().getUsed();
+	}
+}
@@ -0,0 +1,90 @@
+package com.lyj.mfs;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * @program: inmemoryFileSystem
+ * @description: throughput of every {@link FileSystem} operation of a session, a miss of a
+ * mutating operation creates and removes its own path again so the tree keeps its shape
+ * @author: LYJ
+ * @create: 2026-10-18 10:05
+ **/
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SessionBenchmark {
+
+	/**
+	 * hit: mkdir -p on an existing dir, miss: create a new dir and remove it
+	 */
+	@Benchmark
+	public boolean mkdir(TreeState tree, SessionState state) {
+		int i = state.next();
+		if (tree.hitPattern[i]) {
+			return state.session.mkdir(tree.hitDirs[i]);
+		}
+		boolean ret = state.session.mkdir(state.ownPaths[i]);
+		state.session.rm(state.ownPaths[i], true);
+		return ret;
+	}
+
+	/**
+	 * hit: touch an existing file, miss: create a new file and remove it
+	 */
+	@Benchmark
+	public String touch(TreeState tree, SessionState state) {
+		int i = state.next();
+		if (tree.hitPattern[i]) {
+			return state.session.touch(tree.hitFiles[i]);
+		}
+		String ret = state.session.touch(state.ownPaths[i]);
+		state.session.rm(state.ownPaths[i], false);
+		return ret;
+	}
+
+	/**
+	 * hit: cd into an existing dir, miss: cd into a path that does not exist
+	 */
+	@Benchmark
+	public String cd(TreeState tree, SessionState state) {
+		int i = state.next();
+		return state.session.cd(tree.hitPattern[i] ? tree.hitDirs[i] : tree.missPaths[i]);
+	}
+
+	/**
+	 * hit: list a live working dir, miss: list a working dir that has been removed
+	 */
+	@Benchmark
+	public Iterable<String> ls(TreeState tree, SessionState state) {
+		int i = state.next();
+		return tree.hitPattern[i] ? state.session.ls() : state.orphanSession.ls();
+	}
+
+	@Benchmark
+	public String pwd(SessionState state) {
+		return state.session.pwd();
+	}
+
+	/**
+	 * hit: touch a new file and remove it, miss: remove a path that does not exist
+	 */
+	@Benchmark
+	public boolean rm(TreeState tree, SessionState state) {
+		int i = state.next();
+		if (tree.hitPattern[i]) {
+			state.session.touch(state.ownPaths[i]);
+			return state.session.rm(state.ownPaths[i], false);
+		}
+		return state.session.rm(tree.missPaths[i], false);
+	}
+}
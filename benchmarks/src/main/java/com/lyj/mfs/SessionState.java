@@ -0,0 +1,56 @@
+package com.lyj.mfs;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * @program: inmemoryFileSystem
+ * @description: per benchmark thread state, every thread owns a session and a cursor into
+ * the pre generated path tables of {@link TreeState}
+ * @author: LYJ
+ * @create: 2026-10-18 09:40
+ **/
+
+@State(Scope.Thread)
+public class SessionState {
+
+	private static final AtomicInteger THREAD_IDS = new AtomicInteger();
+
+	InMemoryFileSystemSession session;
+
+	/* a session whose working directory has been removed by somebody else */
+	InMemoryFileSystemSession orphanSession;
+
+	/* paths only created and removed by this thread, so threads never step on each other */
+	String[] ownPaths;
+
+	private int cursor;
+
+	@Setup(Level.Trial)
+	public void setUp(TreeState tree) {
+		int threadId = THREAD_IDS.incrementAndGet();
+		this.session = InMemoryFileSystem.newSession();
+		this.session.cd(tree.deepestDir);
+
+		this.ownPaths = new String[TreeState.TABLE_SIZE];
+		for (int i = 0; i < TreeState.TABLE_SIZE; ++i) {
+			ownPaths[i] = tree.deepestDir + "/t" + threadId + "_" + i;
+		}
+
+		String orphanDir = tree.deepestDir + "/orphan" + threadId;
+		this.orphanSession = InMemoryFileSystem.newSession();
+		this.orphanSession.mkdir(orphanDir);
+		this.orphanSession.cd(orphanDir);
+		this.session.rm(orphanDir, true);
+	}
+
+	/**
+	 * @return the index of the next operation of this thread in the path tables
+	 */
+	int next() {
+		return (cursor++) & (TreeState.TABLE_SIZE - 1);
+	}
+}
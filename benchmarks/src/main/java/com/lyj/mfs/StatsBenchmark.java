@@ -0,0 +1,31 @@
+package com.lyj.mfs;
+
+import com.lyj.mfs.InMemoryFileSystem.Stats;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * @program: inmemoryFileSystem
+ * @description: cost of {@link InMemoryFileSystem#getStats()} on the benchmark tree
+ * @author: LYJ
+ * @create: 2026-10-18 10:31
+ **/
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StatsBenchmark {
+
+	@Benchmark
+	public Stats getStats(TreeState tree) {
+		return InMemoryFileSystem.getInstance().getStats();
+	}
+}
@@ -0,0 +1,97 @@
+package com.lyj.mfs;
+
+import java.util.Random;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * @program: inmemoryFileSystem
+ * @description: shared tree fixture for the benchmarks, a spine of {@code depth} directories
+ * where every level also holds {@code fanOut} empty dirs and {@code fanOut} files, so lookups
+ * pay for both the depth of the path and the width of each directory
+ * @author: LYJ
+ * @create: 2026-10-18 09:12
+ **/
+
+@State(Scope.Benchmark)
+public class TreeState {
+
+	/* the size of the pre generated path tables, must be a power of 2 */
+	static final int TABLE_SIZE = 1024;
+
+	static final String BASE_DIR = "/bench";
+
+	@Param({"4", "24"})
+	public int depth;
+
+	@Param({"4", "256"})
+	public int fanOut;
+
+	/* the percentage of operations that target an existing path */
+	@Param({"100", "50"})
+	public int hitRatio;
+
+	/* resolve canonical absolute paths through the path index */
+	@Param({"false", "true"})
+	public boolean pathIndex;
+
+	/* the deepest directory of the spine, every operation works below it */
+	String deepestDir;
+
+	String[] hitDirs;
+	String[] hitFiles;
+	String[] missPaths;
+
+	/* true means the i-th operation of a thread should hit */
+	boolean[] hitPattern;
+
+	@Setup(Level.Trial)
+	public void buildTree() {
+		InMemoryFileSystemSession session = InMemoryFileSystem.newSession();
+		session.rm(BASE_DIR, true);
+		if (pathIndex) {
+			InMemoryFileSystem.getInstance().enablePathIndex();
+		} else {
+			InMemoryFileSystem.getInstance().disablePathIndex();
+		}
+
+		StringBuilder path = new StringBuilder(BASE_DIR);
+		session.mkdir(BASE_DIR);
+		for (int level = 0; level < depth; ++level) {
+			String dir = path.toString();
+			for (int j = 0; j < fanOut; ++j) {
+				session.mkdir(dir + "/w" + j);
+				session.touch(dir + "/f" + j);
+			}
+			path.append("/d").append(level);
+			session.mkdir(path.toString());
+		}
+		this.deepestDir = path.toString();
+		for (int j = 0; j < fanOut; ++j) {
+			session.mkdir(deepestDir + "/w" + j);
+			session.touch(deepestDir + "/f" + j);
+		}
+
+		Random random = new Random(42);
+		this.hitDirs = new String[TABLE_SIZE];
+		this.hitFiles = new String[TABLE_SIZE];
+		this.missPaths = new String[TABLE_SIZE];
+		this.hitPattern = new boolean[TABLE_SIZE];
+		for (int i = 0; i < TABLE_SIZE; ++i) {
+			int j = random.nextInt(fanOut);
+			hitDirs[i] = deepestDir + "/w" + j;
+			hitFiles[i] = deepestDir + "/f" + j;
+			missPaths[i] = deepestDir + "/missing" + j;
+			hitPattern[i] = random.nextInt(100) < hitRatio;
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void removeTree() {
+		InMemoryFileSystem.newSession().rm(BASE_DIR, true);
+	}
+}
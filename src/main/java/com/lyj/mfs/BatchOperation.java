@@ -0,0 +1,63 @@
+package com.lyj.mfs;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Preconditions;
+
+/**
+ * @program: inmemoryFileSystem
+ * @description: one mkdir, touch or rm of a batch, see InMemoryFileSystemSession.batch
+ * @author: LYJ
+ * @create: 2026-10-19 19:30
+ **/
+
+public final class BatchOperation {
+
+	public enum Type {
+		MKDIR, TOUCH, RM
+	}
+
+	private final Type type;
+
+	private final String path;
+
+	private final boolean recursive;
+
+	private BatchOperation(Type type, String path, boolean recursive) {
+		this.type = type;
+		this.path = Preconditions.checkNotNull(path, "path can not be null");
+		this.recursive = recursive;
+	}
+
+	public static BatchOperation mkdir(String path) {
+		return new BatchOperation(Type.MKDIR, path, false);
+	}
+
+	public static BatchOperation touch(String path) {
+		return new BatchOperation(Type.TOUCH, path, false);
+	}
+
+	public static BatchOperation rm(String path, boolean recursive) {
+		return new BatchOperation(Type.RM, path, recursive);
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	public boolean isRecursive() {
+		return recursive;
+	}
+
+	@Override
+	public String toString() {
+		return MoreObjects.toStringHelper(this)
+			.add("type", type)
+			.add("path", path)
+			.add("recursive", recursive)
+			.toString();
+	}
+}
@@ -0,0 +1,87 @@
+package com.lyj.mfs;
+
+import com.google.common.base.Preconditions;
+import com.lyj.mfs.WatchEvent.Kind;
+import com.lyj.mfs.domain.InfoNode.FileType;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * @program: inmemoryFileSystem
+ * @description: the events of the tree in a bounded ring shared by every Watcher.
+ * a writer claims a sequence with one getAndIncrement and stores its event into the slot of
+ * the sequence, it never waits for a reader: an event that has not been read when the ring
+ * comes round again is overwritten, and a reader finding a newer sequence in a slot knows it
+ * has lost events. a slot only ever goes to a newer sequence, a writer that was held up until
+ * a writer a lap ahead has stored into its slot drops its event as if it had been overwritten.
+ * a reader stops at a slot that has been claimed but not stored yet
+ * @author: LYJ
+ * @create: 2026-10-20 22:45
+ **/
+
+final class ChangeRing {
+
+	static final int DEFAULT_CAPACITY = Integer.getInteger("mfs.watch.capacity", 1 << 16);
+
+	private final AtomicReferenceArray<WatchEvent> slots;
+
+	private final int mask;
+
+	/**
+	 * the sequence of the next event
+	 */
+	private final AtomicLong next = new AtomicLong();
+
+	/**
+	 * @param capacity a power of two, the most events a reader can fall behind
+	 */
+	ChangeRing(int capacity) {
+		Preconditions.checkArgument(capacity > 0 && (capacity & (capacity - 1)) == 0,
+			"capacity must be a power of two");
+		this.slots = new AtomicReferenceArray<>(capacity);
+		this.mask = capacity - 1;
+	}
+
+	int capacity() {
+		return mask + 1;
+	}
+
+	void publish(Kind kind, String path, FileType fileType) {
+		store(claim(), kind, path, fileType);
+	}
+
+	long claim() {
+		return next.getAndIncrement();
+	}
+
+	/**
+	 * store the event of a claimed sequence unless the slot already holds a newer one
+	 */
+	void store(long sequence, Kind kind, String path, FileType fileType) {
+		int index = (int) sequence & mask;
+		WatchEvent event = new WatchEvent(sequence, kind, path, fileType);
+		for (;;) {
+			WatchEvent current = slots.get(index);
+			if (current != null && current.getSequence() > sequence) {
+				return;
+			}
+			if (slots.compareAndSet(index, current, event)) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * @return the sequence the next event will get
+	 */
+	long head() {
+		return next.get();
+	}
+
+	/**
+	 * @return the event in the slot of sequence, it can be an older or a newer one, or null
+	 */
+	WatchEvent get(long sequence) {
+		return slots.get((int) sequence & mask);
+	}
+}
@@ -1,9 +1,70 @@
 package com.lyj.mfs;
 
-public interface FileSystem {
+import com.lyj.mfs.domain.FileStat;
+import com.lyj.mfs.domain.InfoNode.FileType;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+public interface FileSystem extends AutoCloseable {
 
 	Iterable<String> ls();
 
+	/**
+	 * Return at most limit names of a directory in name order, starting after the cursor
+	 * of the previous page or at the first name for a null cursor, null if the path is not a directory
+	 */
+
+	ListPage ls(String path, String cursor, int limit);
+
+	/**
+	 * Iterate the names of a directory in name order without copying them, starting after
+	 * the given name or at the first name for null, null if the path is not a directory
+	 */
+
+	Iterator<String> lsIterator(String path, String after);
+
+	/**
+	 * Same as ls(path, cursor, limit) but only the names starting with prefix, null for every name
+	 */
+
+	ListPage ls(String path, String prefix, String cursor, int limit);
+
+	/**
+	 * Iterate the names of a directory that start with prefix, eg. "log-2024-06",
+	 * in name order, null if the path is not a directory
+	 */
+
+	Iterator<String> lsPrefix(String path, String prefix);
+
+	/**
+	 * Iterate the names of a directory from from inclusive to to exclusive in name order,
+	 * a null bound is open, null if the path is not a directory
+	 */
+
+	Iterator<String> lsRange(String path, String from, String to);
+
+	/**
+	 * Return the absolute paths matching a glob pattern like /data/**&#47;part-*.parquet,
+	 * type null for files and dirs, maxDepth is the most names below the start of the pattern
+	 */
+
+	List<String> find(String pattern, FileType type, int maxDepth);
+
+	/**
+	 * Same as find(String, FileType, int) with a pattern that has been compiled already
+	 */
+
+	List<String> find(PathPattern pattern, FileType type, int maxDepth);
+
+	/**
+	 * Walk path and everything under it at most maxDepth names below, null if the path does
+	 * not exist. the stream is sequential, parallel() splits it by subtrees
+	 */
+
+	Stream<WalkEntry> walk(String path, int maxDepth);
+
 	/**
 	 * Support nested paths, eg., /a/b/c
 	 */
@@ -28,5 +89,85 @@ public interface FileSystem {
 
 	boolean rm(String path, boolean recursive);
 
+	/**
+	 * Move a file or a directory with everything under it to dst atomically, the parent of dst
+	 * must exist and dst must not, false if src does not exist or dst is src or under it
+	 */
+
+	boolean rename(String src, String dst);
+
+	/**
+	 * Copy a file, or a directory with everything under it when recursive, to dst, the parent
+	 * of dst must exist and dst must not. the copy shares the file content with src until
+	 * either is written, false if src does not exist or dst is src or under it
+	 */
+
+	boolean copy(String src, String dst, boolean recursive);
+
+	/**
+	 * Watch a file or directory for created, deleted and modified nodes, only its children
+	 * unless recursive, null if the path does not exist. the watcher must be closed
+	 */
+
+	Watcher watch(String path, boolean recursive);
+
+	/**
+	 * Replace the content of a file, the file is created like touch if it does not exist
+	 */
+
+	boolean write(String path, byte[] data);
+
+	/**
+	 * Add data to the end of a file, the file is created like touch if it does not exist
+	 */
+
+	boolean append(String path, byte[] data);
+
+	/**
+	 * Return at most length bytes from offset, fewer at the end of the file,
+	 * null if the path is not a file
+	 */
+
+	byte[] read(String path, long offset, int length);
+
+	/**
+	 * Same as read but without copying, return read only views of the file content
+	 * that are valid until the file is changed, null if the path is not a file
+	 */
+
+	ByteBuffer[] readBuffers(String path, long offset, int length);
+
+	/**
+	 * Cut a file to size, or extend it with zeros
+	 */
+
+	boolean truncate(String path, long size);
+
+	/**
+	 * Return the content size of a file, -1 if the path is not a file
+	 */
+
+	long size(String path);
+
+	/**
+	 * Return the metadata of a file or directory, null if the path does not exist
+	 */
+
+	FileStat stat(String path);
+
+	/**
+	 * Same as stat but fill in the given stat instead of creating one,
+	 * return false if the path does not exist
+	 */
+
+	boolean stat(String path, FileStat stat);
+
+	/**
+	 * End the session, it can not be used afterwards
+	 */
+
+	@Override
+	void close();
+
 
 }
\ No newline at end of file
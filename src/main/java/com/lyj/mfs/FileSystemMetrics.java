@@ -0,0 +1,77 @@
+package com.lyj.mfs;
+
+import com.lyj.mfs.metrics.Distribution;
+import com.lyj.mfs.metrics.Metrics;
+import com.lyj.mfs.metrics.OperationStats;
+import java.util.List;
+
+/**
+ * @program: inmemoryFileSystem
+ * @description: the MXBean of the file system, every attribute is read when it is asked for
+ * @author: LYJ
+ * @create: 2026-10-20 23:55
+ **/
+
+final class FileSystemMetrics implements InMemoryFileSystemMXBean {
+
+	private final InMemoryFileSystem mfsInstance;
+
+	FileSystemMetrics(InMemoryFileSystem mfsInstance) {
+		this.mfsInstance = mfsInstance;
+	}
+
+	@Override
+	public long getTotalFiles() {
+		return mfsInstance.getStats().totalFile;
+	}
+
+	@Override
+	public long getTotalDirs() {
+		return mfsInstance.getStats().totalDir;
+	}
+
+	@Override
+	public int getLiveSessions() {
+		return mfsInstance.getLiveSessionCount();
+	}
+
+	@Override
+	public long getCreatedSessions() {
+		return mfsInstance.getCreatedSessionCount();
+	}
+
+	@Override
+	public long getEvictedSessions() {
+		return mfsInstance.getEvictedSessionCount();
+	}
+
+	@Override
+	public long getResidentContentBytes() {
+		return mfsInstance.getContentStore().getResidentBytes();
+	}
+
+	@Override
+	public long getSpilledContentBytes() {
+		return mfsInstance.getContentStore().getSpilledBytes();
+	}
+
+	@Override
+	public boolean isMetricsEnabled() {
+		return Metrics.ENABLED;
+	}
+
+	@Override
+	public List<OperationStats> getOperations() {
+		return Metrics.getOperations();
+	}
+
+	@Override
+	public Distribution getResolutionSteps() {
+		return Metrics.getResolutionSteps();
+	}
+
+	@Override
+	public Distribution getChildCounts() {
+		return Metrics.getChildCounts();
+	}
+}
@@ -0,0 +1,172 @@
+package com.lyj.mfs;
+
+import static com.lyj.mfs.domain.InfoNode.FileType.DIRECTORY;
+import static com.lyj.mfs.utils.Const.DELIMITER;
+import static com.lyj.mfs.utils.Const.ROOT_PATH;
+
+import com.google.common.collect.Iterators;
+import com.lyj.mfs.domain.InfoNode;
+import com.lyj.mfs.domain.InfoNode.FileType;
+import com.lyj.mfs.utils.Glob;
+import com.lyj.mfs.utils.StringUtils;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * @program: inmemoryFileSystem
+ * @description: searches a subtree for the nodes matching a PathPattern. a directory whose
+ * child must match a literal segment is looked up instead of scanned, a single glob segment
+ * only scans the names starting with its literal prefix, and a directory none of whose
+ * children can match is not entered at all.
+ * a subdirectory with more than FORK_THRESHOLD nodes under it, known from its subtree
+ * aggregates, is searched by a task of its own in the common ForkJoinPool.
+ * the matches come in depth first name order, the tree is not locked so changes made
+ * meanwhile may or may not be seen
+ * @author: LYJ
+ * @create: 2026-10-20 19:05
+ **/
+
+final class Finder extends RecursiveTask<List<String>> {
+
+	private static final long serialVersionUID = 1L;
+
+	static final long FORK_THRESHOLD = Long.getLong("mfs.find.forkThreshold", 4096);
+
+	private final PathPattern pattern;
+
+	private final FileType type;
+
+	private final int maxDepth;
+
+	private final InfoNode dir;
+
+	private final String path;
+
+	private final long positions;
+
+	private final int depth;
+
+	private Finder(PathPattern pattern, FileType type, int maxDepth, InfoNode dir, String path, long positions, int depth) {
+		this.pattern = pattern;
+		this.type = type;
+		this.maxDepth = maxDepth;
+		this.dir = dir;
+		this.path = path;
+		this.positions = positions;
+		this.depth = depth;
+	}
+
+	/**
+	 * @param base the directory the pattern starts at, it is a match itself if the pattern is empty
+	 * @param basePath the absolute path of base
+	 * @param type only nodes of this type match, null for both
+	 * @param maxDepth the most names below base a match can have
+	 * @return the absolute paths of the matches
+	 */
+	static List<String> find(InfoNode base, String basePath, PathPattern pattern, FileType type, int maxDepth) {
+		long start = pattern.start();
+		List<String> ret = new ArrayList<>();
+		if (pattern.matches(start) && accepts(base, type)) {
+			ret.add(basePath);
+		}
+		if (pattern.canDescend(start) && maxDepth > 0) {
+			ret.addAll(ForkJoinPool.commonPool().invoke(new Finder(pattern, type, maxDepth, base, basePath, start, 0)));
+		}
+		return ret;
+	}
+
+	/**
+	 * the subtree is walked with an explicit stack, a tree can be deeper than the thread stack.
+	 * a forked task is kept in place of its matches, so they are joined in order
+	 */
+	@Override
+	protected List<String> compute() {
+		List<Object> parts = new ArrayList<>();
+		Deque<Frame> stack = new ArrayDeque<>();
+		stack.push(new Frame(dir, path, positions, depth));
+		while (!stack.isEmpty()) {
+			Frame frame = stack.peek();
+			if (!frame.children.hasNext()) {
+				stack.pop();
+				continue;
+			}
+			InfoNode child = frame.children.next();
+			long next = pattern.step(frame.positions, child.getPath());
+			if (next == 0) {
+				continue;
+			}
+			String childPath = join(frame.path, child.getPath());
+			int childDepth = frame.depth + 1;
+			if (pattern.matches(next) && accepts(child, type)) {
+				parts.add(childPath);
+			}
+			if (child.getFileType() != DIRECTORY || !pattern.canDescend(next) || childDepth >= maxDepth) {
+				continue;
+			}
+			if (child.getSubtreeFiles() + child.getSubtreeDirs() > FORK_THRESHOLD) {
+				Finder task = new Finder(pattern, type, maxDepth, child, childPath, next, childDepth);
+				task.fork();
+				parts.add(task);
+			} else {
+				stack.push(new Frame(child, childPath, next, childDepth));
+			}
+		}
+
+		List<String> ret = new ArrayList<>(parts.size());
+		for (Object part : parts) {
+			if (part instanceof Finder) {
+				ret.addAll(((Finder) part).join());
+			} else {
+				ret.add((String) part);
+			}
+		}
+		return ret;
+	}
+
+	private final class Frame {
+		private final Iterator<InfoNode> children;
+		private final String path;
+		private final long positions;
+		private final int depth;
+
+		private Frame(InfoNode dir, String path, long positions, int depth) {
+			this.children = candidates(dir, positions);
+			this.path = path;
+			this.positions = positions;
+			this.depth = depth;
+		}
+	}
+
+	/**
+	 * @return the children of dir that can match, a superset that step filters
+	 */
+	private Iterator<InfoNode> candidates(InfoNode dir, long positions) {
+		Glob segment = pattern.onlySegment(positions);
+		if (segment == null) {
+			return dir.getChildren().iterator();
+		}
+		String prefix = segment.getLiteralPrefix();
+		if (segment.isLiteral()) {
+			InfoNode child = dir.getChild(prefix);
+			return child == null ? Collections.emptyIterator() : Iterators.singletonIterator(child);
+		}
+		if (prefix.isEmpty()) {
+			return dir.getChildren().iterator();
+		}
+		return dir.getChildren(prefix, true, StringUtils.prefixEnd(prefix));
+	}
+
+	private static boolean accepts(InfoNode node, FileType type) {
+		return type == null || node.getFileType() == type;
+	}
+
+	private static String join(String parent, String name) {
+		return ROOT_PATH.equals(parent) ? parent + name : parent + DELIMITER + name;
+	}
+}
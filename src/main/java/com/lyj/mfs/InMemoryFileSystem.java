@@ -2,13 +2,43 @@ package com.lyj.mfs;
 
 import static com.lyj.mfs.domain.InfoNode.FileType.DIRECTORY;
 import static com.lyj.mfs.domain.InfoNode.FileType.FILE;
+import static com.lyj.mfs.utils.Const.DELIMITER;
 import static com.lyj.mfs.utils.Const.ROOT_PATH;
 
 import com.google.common.base.MoreObjects;
+import com.google.common.base.Preconditions;
+import com.lyj.mfs.content.ChunkAllocator;
+import com.lyj.mfs.content.ContentStore;
+import com.lyj.mfs.content.FileContent;
+import com.lyj.mfs.domain.AbsolutePath;
 import com.lyj.mfs.domain.InfoNode;
 import com.lyj.mfs.domain.InfoNode.FileType;
+import com.lyj.mfs.domain.Versions;
+import com.lyj.mfs.persist.Journal;
+import com.lyj.mfs.persist.Journal.FsyncPolicy;
+import com.lyj.mfs.persist.JournalRecord;
+import com.lyj.mfs.persist.SnapshotReader;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import javax.management.JMException;
+import javax.management.ObjectName;
 
 
 class InMemoryFileSystem {
@@ -27,6 +57,90 @@ class InMemoryFileSystem {
 	 */
 	private Map<String, InMemoryFileSystemSession> sessionsMap = new ConcurrentHashMap<>();
 
+	/**
+	 * session ids are taken from a counter, they only have to be unique in this process
+	 */
+	private final AtomicLong nextSessionId = new AtomicLong();
+
+	private final LongAdder createdSessions = new LongAdder();
+	private final LongAdder evictedSessions = new LongAdder();
+
+	/**
+	 * evicts the sessions that have not been used for the idle timeout
+	 */
+	private final SessionWheel sessionWheel = new SessionWheel(SessionWheel.DEFAULT_IDLE_TIMEOUT_MILLIS, this::sessionIdle);
+
+	/**
+	 * increased after every removal, a session that has seen its working dir alive
+	 * at a generation knows it is still alive as long as the generation stays the same
+	 */
+	private final AtomicLong removalGeneration = new AtomicLong();
+
+	/**
+	 * increased when a rename starts and when it ends, a different value after every rename
+	 */
+	private final AtomicLong renameSequence = new AtomicLong();
+
+	/**
+	 * the renames moving a node and fixing the path index right now
+	 */
+	private final AtomicInteger runningRenames = new AtomicInteger();
+
+	/**
+	 * held by the renames that move a node to another directory, so one of them can not move
+	 * a directory under a directory another one is moving, like the rename mutex of a file
+	 * system. a rename within a directory only locks the directory
+	 */
+	private final Object crossDirRename = new Object();
+
+	/**
+	 * how many files and dirs the whole tree has, the root included,
+	 * striped so that sessions creating nodes at the same time do not contend
+	 */
+	private final LongAdder totalFile = new LongAdder();
+	private final LongAdder totalDir = new LongAdder();
+
+	/**
+	 * where file content lives, off heap chunks and spilled segments
+	 */
+	private final ContentStore contentStore = new ContentStore(new ChunkAllocator());
+
+	/**
+	 * walks removed subtrees in the background
+	 */
+	private final Reclaimer reclaimer = new Reclaimer();
+
+	/**
+	 * absolute path to node index, null when disabled
+	 */
+	private volatile PathIndex pathIndex;
+
+	/**
+	 * the write ahead journal of mutations and its file, null when disabled.
+	 * every change is logged by the file system method that makes it, see logChange
+	 */
+	private volatile Journal journal;
+	private Path journalFile;
+
+	/**
+	 * how often a logged change yields before it parks while a node on its path is busy,
+	 * and how long it parks then, see awaitQuiet
+	 */
+	private static final int QUIET_SPINS = 64;
+	private static final long QUIET_PARK_NANOS = 50_000;
+
+	/**
+	 * the sequence number of the last journal record, the next journal goes on after it
+	 */
+	private long journalSeq;
+
+	/**
+	 * the events for the watchers, null while nobody watches so a change only reads this field,
+	 * the number of open watchers is guarded by the monitor of the file system
+	 */
+	private volatile ChangeRing changes;
+	private int watchers;
+
 
 	/*
 	  simply use eager initialization to implement singleton pattern
@@ -50,42 +164,1169 @@ class InMemoryFileSystem {
 	public static InMemoryFileSystemSession newSession(){
 		InMemoryFileSystemSession session = new InMemoryFileSystemSession(instance);
 		instance.sessionsMap.put(session.getSessionId(),session);
+		instance.createdSessions.increment();
+		instance.sessionWheel.add(session);
 		return session;
 	}
 
+	String nextSessionId() {
+		return Long.toString(this.nextSessionId.incrementAndGet());
+	}
+
+	/**
+	 * @return the coarse clock sessions record their last use with, in ticks of the session wheel
+	 */
+	long sessionClock() {
+		return this.sessionWheel.now();
+	}
+
+	/**
+	 * forget a session, called once it is closed or evicted
+	 * @return false if the session has been forgotten already
+	 */
+	boolean sessionClosed(InMemoryFileSystemSession session) {
+		this.sessionWheel.remove(session);
+		return this.sessionsMap.remove(session.getSessionId(), session);
+	}
+
+	private void sessionIdle(InMemoryFileSystemSession session) {
+		if (session.expire()) {
+			this.evictedSessions.increment();
+		}
+	}
+
+	/**
+	 * close the sessions that have not been used for millis, Long.MAX_VALUE turns it off
+	 */
+	public void setSessionIdleTimeout(long millis) {
+		this.sessionWheel.setIdleTimeout(millis);
+	}
+
+	public long getSessionIdleTimeout() {
+		return this.sessionWheel.getIdleTimeoutMillis();
+	}
+
+	/**
+	 * @return the number of open sessions
+	 */
+	public int getLiveSessionCount() {
+		return this.sessionsMap.size();
+	}
+
+	/**
+	 * @return the number of sessions created by newSession so far
+	 */
+	public long getCreatedSessionCount() {
+		return this.createdSessions.sum();
+	}
+
+	/**
+	 * @return the number of sessions closed because they were idle for too long
+	 */
+	public long getEvictedSessionCount() {
+		return this.evictedSessions.sum();
+	}
+
 	private InMemoryFileSystem() {
+		this.totalDir.increment();
+		this.registerMXBean();
+	}
+
+	/**
+	 * make the counters and the metrics visible over JMX, see InMemoryFileSystemMXBean,
+	 * a failure only costs the visibility
+	 */
+	private void registerMXBean() {
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(new FileSystemMetrics(this),
+				new ObjectName(InMemoryFileSystemMXBean.OBJECT_NAME));
+		} catch (JMException e) {
+			e.printStackTrace();
+		}
 	}
 
 	public InfoNode getRoot() {
 		return this.root;
 	}
 
-	public Stats getStats(){
+	/**
+	 * turn on the absolute path index, the current tree is indexed right away,
+	 * better do it before the file system is shared by many sessions
+	 */
+	public synchronized void enablePathIndex(){
+		if(this.pathIndex != null){
+			return;
+		}
+		PathIndex index = new PathIndex();
+		index.addTree(this.root);
+		this.pathIndex = index;
+	}
 
-		return getStats(this.root);
+	public synchronized void disablePathIndex(){
+		this.pathIndex = null;
 	}
 
-	private Stats getStats(InfoNode node) {
-		Stats status = new Stats();
-		if(node == null){
-			return status;
+	/**
+	 * start a watcher of an absolute canonical path, it sees the changes from now on
+	 */
+	synchronized Watcher watch(String path, boolean recursive) {
+		if (this.changes == null) {
+			this.changes = new ChangeRing(ChangeRing.DEFAULT_CAPACITY);
+		}
+		++this.watchers;
+		return new Watcher(this, this.changes, path, recursive);
+	}
+
+	/**
+	 * a watcher has been closed
+	 */
+	synchronized void unwatch() {
+		if (--this.watchers == 0) {
+			this.changes = null;
+		}
+	}
+
+	/**
+	 * tell the watchers about a change of node, its path is only built when somebody watches
+	 */
+	void changed(WatchEvent.Kind kind, InfoNode node) {
+		ChangeRing ring = this.changes;
+		if (ring != null) {
+			ring.publish(kind, AbsolutePath.ofNode(node).toPathStr(), node.getFileType());
+		}
+	}
+
+	void changed(WatchEvent.Kind kind, String path, FileType fileType) {
+		ChangeRing ring = this.changes;
+		if (ring != null) {
+			ring.publish(kind, path, fileType);
+		}
+	}
+
+	/**
+	 * @return the path index or null if it is disabled
+	 */
+	PathIndex getPathIndex() {
+		return this.pathIndex;
+	}
+
+	public ContentStore getContentStore() {
+		return this.contentStore;
+	}
+
+	/**
+	 * keep at most budget bytes of file content in memory, content that has not been used
+	 * recently is spilled to segment files in spillDirectory. the tree itself always stays
+	 * in memory, so operations on paths are not affected
+	 * @param budget bytes, Long.MAX_VALUE keeps everything in memory
+	 * @param spillDirectory where the segment files go
+	 * @throws IOException if the spill directory can not be created
+	 */
+	public void setContentMemoryBudget(long budget, Path spillDirectory) throws IOException {
+		this.contentStore.setMemoryBudget(budget, spillDirectory);
+	}
+
+	/**
+	 * write the whole tree with file content into a snapshot file, see SnapshotFormat,
+	 * the tree is the one of a namespace snapshot, so it is consistent even while sessions
+	 * change it. the file is replaced only when the snapshot is complete
+	 * @return the number of nodes written, the root not included
+	 * @throws IOException if the file can not be written
+	 */
+	public long saveSnapshot(Path file) throws IOException {
+		try (NamespaceSnapshot snapshot = this.openNamespaceSnapshot()) {
+			return snapshot.writeTo(file);
+		}
+	}
+
+	/**
+	 * freeze the current namespace in O(1), readers of the snapshot see a consistent tree
+	 * while writers go on, see NamespaceSnapshot
+	 * @return the snapshot, it must be closed
+	 */
+	public NamespaceSnapshot openNamespaceSnapshot() {
+		return new NamespaceSnapshot(this);
+	}
+
+	/**
+	 * replace the whole tree with the tree of a snapshot file. the snapshot is read completely
+	 * before the current tree is touched, so a broken file leaves the tree as it is.
+	 * the current nodes are removed like by rm, sessions working under them see their
+	 * working directory removed, the watchers get an OVERFLOW
+	 * @throws IOException if the file can not be read or is not a valid snapshot
+	 */
+	public synchronized void restoreSnapshot(Path file) throws IOException {
+		InfoNode restored = SnapshotReader.read(file, this.contentStore);
+		this.removeAll(null);
+		synchronized (this.root) {
+			for (InfoNode node : restored.getChildren()) {
+				this.link(this.root, node, InfoNode.OWN_EPOCH);
+			}
+		}
+		PathIndex index = this.pathIndex;
+		if (index != null) {
+			index.addTree(this.root);
+		}
+		// every watcher has to list its path again
+		this.changed(WatchEvent.Kind.OVERFLOW, ROOT_PATH, null);
+	}
+
+	/**
+	 * log every mutation into file from now on, the records go behind those already in the
+	 * file. call recover first when the file system is started from persisted state.
+	 * a mutation running while the journal is being enabled may not be logged
+	 * @throws IOException if the journal can not be opened or is damaged, see Journal#replay
+	 */
+	public synchronized void enableJournal(Path file, FsyncPolicy policy) throws IOException {
+		Preconditions.checkState(this.journal == null, "journal is enabled already");
+		Journal opened = Journal.open(file, policy, this.journalSeq);
+		// the epochs of the new records come after those of the records in the file
+		Versions.advanceTo(opened.getLastEpoch() + 1);
+		this.journalFile = file;
+		this.journal = opened;
+	}
+
+	/**
+	 * stop logging, the records appended so far are written and forced before it returns.
+	 * the journal is closed before it is taken away, so a change that has got a sequence
+	 * number is made before a change that is not logged starts, see addNode
+	 */
+	public synchronized void disableJournal() throws IOException {
+		Journal current = this.journal;
+		if (current == null) {
+			return;
+		}
+		try {
+			current.close();
+		} finally {
+			this.journal = null;
+			this.journalFile = null;
+			this.journalSeq = current.getLastSeq();
+		}
+	}
+
+	/**
+	 * save a snapshot and go on with an empty journal, so a recovery does not replay what the
+	 * snapshot already holds. writers go on meanwhile: the snapshot is a namespace snapshot,
+	 * see NamespaceSnapshot, and the journal moves the records of its epoch and the ones
+	 * before into a .prev file, the later ones go into the new journal, see Journal#holdBack.
+	 * the .prev file is kept until the snapshot is complete, a recovery skips its records
+	 * the snapshot holds, see recover
+	 * @throws IOException if the snapshot or the journal can not be written
+	 */
+	public synchronized void checkpoint(Path snapshot) throws IOException {
+		Journal current = this.journal;
+		Preconditions.checkState(current != null, "journal is not enabled");
+		Path previous = previousJournal(this.journalFile);
+		Journal.Pending rotation = current.holdBack(previous);
+		try (NamespaceSnapshot frozen = this.openNamespaceSnapshot()) {
+			current.rotate(rotation, frozen.getEpoch());
+			frozen.writeTo(snapshot, current.getLastSeq());
+		}
+		Files.delete(previous);
+	}
+
+	/**
+	 * rebuild the tree after a restart: restore the snapshot if there is one, then replay
+	 * the journal left by an unfinished checkpoint and the journal itself.
+	 * a record that fails to apply is reported and skipped, like a failed operation
+	 * @return the number of replayed records
+	 * @throws IOException if the snapshot or a journal can not be read, or a journal is
+	 * damaged, see Journal#replay
+	 */
+	public synchronized long recover(Path snapshot, Path journalFile) throws IOException {
+		Preconditions.checkState(this.journal == null, "recover before the journal is enabled");
+		boolean restore = Files.exists(snapshot);
+		long snapshotSeq = restore ? SnapshotReader.readJournalSeq(snapshot) : 0;
+		long snapshotEpoch = restore ? SnapshotReader.readJournalEpoch(snapshot) : 0;
+		if (restore) {
+			this.restoreSnapshot(snapshot);
+		} else {
+			this.removeAll();
+		}
+		InMemoryFileSystemSession session = new InMemoryFileSystemSession(this);
+		long[] replayed = {0};
+		long[] lastEpoch = {snapshotEpoch};
+		this.journalSeq = snapshotSeq;
+		Consumer<JournalRecord> apply = record -> {
+			this.journalSeq = Math.max(this.journalSeq, record.getSeq());
+			lastEpoch[0] = Math.max(lastEpoch[0], record.getEpoch());
+			// a checkpoint stopped before it deleted the old journal, the snapshot holds them
+			if (record.getEpoch() != 0 ? record.getEpoch() <= snapshotEpoch : record.getSeq() <= snapshotSeq) {
+				return;
+			}
+			++replayed[0];
+			Object result = record.applyTo(session);
+			if (result == null || Boolean.FALSE.equals(result)) {
+				System.out.println("journal record can not be applied: " + record);
+			}
+		};
+		Journal.replay(previousJournal(journalFile), apply);
+		Journal.replay(journalFile, apply);
+		Versions.advanceTo(lastEpoch[0] + 1);
+		return replayed[0];
+	}
+
+	private static Path previousJournal(Path journalFile) {
+		return journalFile.resolveSibling(journalFile.getFileName() + ".prev");
+	}
+
+	public long getRemovalGeneration() {
+		return this.removalGeneration.get();
+	}
+
+	/**
+	 * @return a different value after every rename
+	 */
+	long getRenameSequence() {
+		return this.renameSequence.get();
+	}
+
+	/**
+	 * @return the renames running right now, the path index may be behind them
+	 */
+	int getRunningRenames() {
+		return this.runningRenames.get();
+	}
+
+	/**
+	 * move node under dst with a new name, in O(1) unless the path index is enabled, then
+	 * the entries of the subtree are moved as well. only the old and the new parent are
+	 * locked, in a fixed order, and a move to another directory holds the rename mutex,
+	 * so renames in different directories and every other operation run on meanwhile.
+	 * every step of the move enters the write epoch on its own after the locks are taken and
+	 * nothing waits for an epoch while they are held, so a snapshot opened meanwhile never
+	 * waits for a thread that waits for the locks, see Versions. a logged move waits outside
+	 * of the locks while a path it depends on is busy, see logChange
+	 * @param dst the new parent dir, it can not be node or under it
+	 * @return false if dst is node or under it, dst has a child of the name, or node has
+	 * been removed meanwhile, or a logged move finds src or dst removed
+	 */
+	boolean move(InfoNode node, InfoNode dst, String name) {
+		Journal current = this.journal;
+		boolean[] moved = {false};
+		PathStamp[] stamps = new PathStamp[0];
+		for (;;) {
+			InfoNode src = node.getParent();
+			if (current != null && (stamps.length == 0 || stamps[0].node != src)) {
+				stamps = new PathStamp[] {new PathStamp(this.root, src, true), new PathStamp(this.root, dst, true)};
+			}
+			Logged logged = null;
+			if (src == dst) {
+				synchronized (src) {
+					if (node.getParent() == src) {
+						logged = this.moveLocked(current, node, src, dst, name, moved, stamps);
+					}
+				}
+			} else {
+				synchronized (this.crossDirRename) {
+					for (InfoNode n = dst; n != null; n = n.getParent()) {
+						if (n == node) {
+							return false;
+						}
+					}
+					// two cross directory renames never lock at the same time, a tie can not deadlock
+					boolean srcFirst = System.identityHashCode(src) <= System.identityHashCode(dst);
+					synchronized (srcFirst ? src : dst) {
+						synchronized (srcFirst ? dst : src) {
+							if (node.getParent() == src) {
+								logged = this.moveLocked(current, node, src, dst, name, moved, stamps);
+							}
+						}
+					}
+				}
+			}
+			if (logged == null) {
+				// renamed within its directory meanwhile, its parent is the same
+				continue;
+			}
+			if (logged == Logged.BUSY) {
+				awaitQuiet(node, stamps);
+				continue;
+			}
+			logged.await();
+			return moved[0];
+		}
+	}
+
+	/**
+	 * the part of move under the locks of the parents, the counts of node are handed over
+	 * to dst and the chains of ancestors of both parents are fixed
+	 * @param journal null if the move is not logged
+	 * @param stamps the paths of src and dst when it is logged
+	 */
+	private Logged moveLocked(Journal journal, InfoNode node, InfoNode src, InfoNode dst, String name,
+		boolean[] moved, PathStamp[] stamps) {
+		PathIndex index = this.pathIndex;
+		String oldPath = index != null ? AbsolutePath.ofNode(node).toPathStr() : null;
+		this.runningRenames.incrementAndGet();
+		this.renameSequence.incrementAndGet();
+		try {
+			Logged logged = Logged.UNLOGGED;
+			if (journal == null) {
+				moved[0] = src.moveChild(node, dst, name);
+			} else {
+				String oldName = node.getPath();
+				logged = this.logChange(journal, node, (epoch, paths) -> {
+					if (epoch != InfoNode.OWN_EPOCH && !(paths[0].isLive() && paths[1].isLive())) {
+						// a node moved out of or into a removed dir could not be replayed
+						return null;
+					}
+					moved[0] = src.moveChild(node, dst, name, epoch);
+					return moved[0] ? JournalRecord.rename(paths[0].childPath(oldName), paths[1].childPath(name)) : null;
+				}, stamps);
+			}
+			if (!moved[0]) {
+				return logged;
+			}
+			if (src != dst) {
+				long[] counts = handOver(node, dst);
+				this.climb(src, -counts[0], -counts[1]);
+				this.climb(dst, counts[0], counts[1]);
+				this.reclaimIfDead(node);
+			}
+			if (index != null) {
+				index.move(oldPath, AbsolutePath.ofNode(node).toPathStr(), node);
+			}
+			return logged;
+		} finally {
+			this.renameSequence.incrementAndGet();
+			this.runningRenames.decrementAndGet();
+		}
+	}
+
+	/**
+	 * copy node with everything under it into dst as name. the copy is built aside in one
+	 * walk of the subtree, every directory gets its children in bulk, and it is linked with
+	 * one put-if-absent, so a reader of dst sees nothing or the whole copy. no byte of file
+	 * content is copied, the chunks are shared until either side writes them.
+	 * the walk reads the subtree as a snapshot sees it, see Versions, so it holds no lock,
+	 * renames and every other change go on meanwhile, and the copy holds every node once.
+	 * the walk and the copy cost O(n) in the size of the subtree.
+	 * a logged copy is replayed from the source, so the logged changes under node wait from
+	 * the walk until the copy is linked, see InfoNode#beginCopy
+	 * @param dst the new parent dir, it can not be node or under it
+	 * @return the copy, null if dst is node or under it, dst has a child of the name, or
+	 * a logged copy finds node removed before it is linked
+	 */
+	InfoNode copy(InfoNode node, InfoNode dst, String name) {
+		for (InfoNode n = dst; n != null; n = n.getParent()) {
+			if (n == node) {
+				return null;
+			}
+		}
+		if (dst.getChild(name) != null) {
+			return null;
+		}
+		Journal current = this.journal;
+		PathStamp to = new PathStamp(this.root, dst, true);
+		PathStamp from = new PathStamp(this.root, node, false);
+		boolean recursive = node.getFileType() == DIRECTORY;
+		for (;;) {
+			if (current != null) {
+				node.beginCopy();
+				if ((node.getRelinks() & 1) != 0) {
+					node.endCopy();
+					awaitQuiet(null, from);
+					continue;
+				}
+			}
+			InfoNode copy;
+			InfoNode[] existing = {null};
+			boolean[] gone = {false};
+			Logged logged = Logged.UNLOGGED;
+			try {
+				long epoch = Versions.openSnapshot();
+				try {
+					copy = copyTree(node, name, epoch);
+				} finally {
+					Versions.releaseSnapshot(epoch);
+				}
+				InfoNode built = copy;
+				synchronized (dst) {
+					if (current == null) {
+						existing[0] = this.link(dst, built, InfoNode.OWN_EPOCH);
+					} else {
+						logged = this.logChange(current, null, (e, paths) -> {
+							if (e != InfoNode.OWN_EPOCH && !paths[1].isLive()) {
+								// the record could not be replayed
+								gone[0] = true;
+								return null;
+							}
+							existing[0] = this.link(dst, built, e);
+							return existing[0] == null ? JournalRecord.copy(paths[1].getPath(), paths[0].childPath(name), recursive) : null;
+						}, to, from);
+					}
+				}
+			} finally {
+				if (current != null) {
+					node.endCopy();
+				}
+			}
+			if (logged == Logged.BUSY || existing[0] != null || gone[0]) {
+				// not linked, give the shared chunks back
+				if (filesOf(copy) > 0) {
+					this.reclaimer.submit(copy, null, null);
+				}
+				if (logged != Logged.BUSY) {
+					return null;
+				}
+				awaitQuiet(null, to, from);
+				continue;
+			}
+			PathIndex index = this.pathIndex;
+			if (index != null) {
+				index.putSubtree(AbsolutePath.ofNode(copy).toPathStr(), copy);
+			}
+			logged.await();
+			return copy;
+		}
+	}
+
+	/**
+	 * the walk of copy with an explicit stack, a tree can be deeper than the thread stack
+	 * @param epoch the snapshot the subtree is read in
+	 * @return the copy of node named name with its subtree counts set, it is not linked anywhere
+	 */
+	private static InfoNode copyTree(InfoNode node, String name, long epoch) {
+		InfoNode top = node.copy(name, epoch);
+		if (node.getFileType() != DIRECTORY) {
+			return top;
+		}
+		Deque<CopyFrame> stack = new ArrayDeque<>();
+		stack.push(new CopyFrame(node, top, epoch));
+		while (!stack.isEmpty()) {
+			CopyFrame frame = stack.peek();
+			if (!frame.children.hasNext()) {
+				stack.pop().finish();
+				continue;
+			}
+			InfoNode child = frame.children.next();
+			InfoNode copy = child.copy(child.getPath(epoch), epoch);
+			frame.copies.add(copy);
+			if (child.getFileType() == DIRECTORY) {
+				stack.push(new CopyFrame(child, copy, epoch));
+			}
+		}
+		return top;
+	}
+
+	/**
+	 * a directory whose children are being copied, they come in name order and are
+	 * installed in bulk once the copies of their subtrees are finished
+	 */
+	private static final class CopyFrame {
+		private final Iterator<InfoNode> children;
+		private final InfoNode copy;
+		private final List<InfoNode> copies = new ArrayList<>();
+
+		private CopyFrame(InfoNode dir, InfoNode copy, long epoch) {
+			this.children = dir.getChildren(epoch).iterator();
+			this.copy = copy;
+		}
+
+		private void finish() {
+			this.copy.setChildren(this.copies.toArray(new InfoNode[0]));
+			long files = 0;
+			long dirs = 0;
+			for (InfoNode child : this.copies) {
+				files += filesOf(child);
+				dirs += dirsOf(child);
+			}
+			this.copy.addToSubtree(FILE, files);
+			this.copy.addToSubtree(DIRECTORY, dirs);
+		}
+	}
+
+	/**
+	 * add node to parent unless parent has a child of the name already, a logged one holds the
+	 * monitor of parent, so the creations of one directory are logged one after the other.
+	 * one that is not logged checks the journal inside its epoch, so a logged change never
+	 * finds it in a later epoch, see logChange
+	 * @param node a node that is not linked anywhere yet and has no children
+	 * @return null if node has been added, otherwise the child that has the name
+	 */
+	InfoNode addNode(InfoNode parent, InfoNode node) {
+		for (;;) {
+			Journal current = this.journal;
+			if (current != null) {
+				return this.addLogged(current, parent, node);
+			}
+			long epoch = Versions.enter();
+			try {
+				if (this.journal == null) {
+					return this.link(parent, node, epoch);
+				}
+			} catch (ConcurrentModificationException e) {
+				// added to in a later epoch meanwhile, add it in the current one
+			} finally {
+				Versions.exit(epoch);
+			}
+		}
+	}
+
+	private InfoNode addLogged(Journal journal, InfoNode parent, InfoNode node) {
+		PathStamp dir = new PathStamp(this.root, parent, true);
+		InfoNode[] existing = {null};
+		EpochChange add = (epoch, paths) -> {
+			existing[0] = this.link(parent, node, epoch);
+			if (existing[0] != null) {
+				return null;
+			}
+			String path = paths[0].childPath(node.getPath());
+			return node.getFileType() == DIRECTORY ? JournalRecord.mkdir(path) : JournalRecord.touch(path);
+		};
+		for (;;) {
+			Logged logged;
+			synchronized (parent) {
+				logged = this.logChange(journal, null, add, dir);
+			}
+			if (logged != Logged.BUSY) {
+				logged.await();
+				return existing[0];
+			}
+			awaitQuiet(null, dir);
+		}
+	}
+
+	/**
+	 * link node into parent as a change in epoch, see InfoNode#addChildIfAbsent. the node is
+	 * accounted together with everything already under it before it is linked, from then on
+	 * the counts of a session adding under it go up to parent
+	 * @return null if node has been added, otherwise the child that has the name
+	 */
+	private InfoNode link(InfoNode parent, InfoNode node, long epoch) {
+		long[] counts = handOver(node, parent);
+		this.climb(parent, counts[0], counts[1]);
+		InfoNode existing;
+		try {
+			existing = parent.addChildIfAbsent(node, epoch);
+		} catch (ConcurrentModificationException e) {
+			this.climb(parent, -counts[0], -counts[1]);
+			throw e;
+		}
+		if (existing != null) {
+			this.climb(parent, -counts[0], -counts[1]);
+		} else {
+			this.reclaimIfDead(node);
+		}
+		return existing;
+	}
+
+	/**
+	 * remove node from parent and take its subtree out of the counters, see nodeRemoved.
+	 * the removal holds the monitor of parent like a move does, so it never takes the new
+	 * entry of a node a move is taking out of parent at the same time, only one of both
+	 * hands the counts of the node over
+	 * @return false if node is not a child of parent anymore
+	 */
+	boolean remove(InfoNode parent, InfoNode node) {
+		Journal current = this.journal;
+		if (current == null) {
+			synchronized (parent) {
+				if (!parent.removeChild(node)) {
+					return false;
+				}
+			}
+			this.nodeRemoved(node);
+			return true;
+		}
+		PathStamp dir = new PathStamp(this.root, parent, true);
+		boolean[] removed = {false};
+		EpochChange rm = (epoch, paths) -> {
+			removed[0] = parent.removeChild(node, epoch);
+			return removed[0] ? JournalRecord.rm(paths[0].childPath(node.getPath()), node.getFileType() == DIRECTORY) : null;
+		};
+		for (;;) {
+			Logged logged;
+			synchronized (parent) {
+				if (node.getParent() != parent || node.isDetached()) {
+					return false;
+				}
+				logged = this.logChange(current, node, rm, dir);
+			}
+			if (logged == Logged.BUSY) {
+				awaitQuiet(node, dir);
+				continue;
+			}
+			if (removed[0]) {
+				this.nodeRemoved(node);
+			}
+			logged.await();
+			return removed[0];
+		}
+	}
+
+	/**
+	 * must be called after a node has been detached from the tree, the whole subtree
+	 * is taken out of the counters in O(depth) by using its subtree aggregates,
+	 * its index entries and file content are reclaimed in the background, see Reclaimer.
+	 * nothing is left to reclaim when there is neither an index nor a file under the node
+	 */
+	private void nodeRemoved(InfoNode node) {
+		this.removalGeneration.incrementAndGet();
+		long[] counts = handOver(node, null);
+		this.climb(node.getParent(), -counts[0], -counts[1]);
+		this.reclaimLater(node);
+	}
+
+	/**
+	 * detach everything under the root with one swap of its children, the counters are set
+	 * from the aggregates of the removed nodes, nothing under them is visited.
+	 * a logged one waits until no logged change runs and makes the others wait, they all
+	 * depend on it
+	 * @return the removed nodes
+	 */
+	List<InfoNode> removeAll() {
+		return this.removeAll(this.journal);
+	}
+
+	/**
+	 * @param journal null if the removal is not logged
+	 */
+	private List<InfoNode> removeAll(Journal journal) {
+		List<InfoNode> removed = new ArrayList<>();
+		Logged logged = Logged.UNLOGGED;
+		if (journal == null) {
+			// like a logged change of the root, see addNode
+			synchronized (this.root) {
+				removed = this.root.removeAllChildren();
+			}
+		} else {
+			List<InfoNode> swapped = removed;
+			EpochChange rm = (epoch, paths) -> {
+				swapped.addAll(this.root.removeAllChildren(epoch));
+				return swapped.isEmpty() ? null : JournalRecord.rm(ROOT_PATH, true);
+			};
+			for (;;) {
+				synchronized (this.root) {
+					logged = this.logChange(journal, this.root, rm);
+				}
+				if (logged != Logged.BUSY) {
+					break;
+				}
+				awaitQuiet(this.root);
+			}
+		}
+		this.removalGeneration.incrementAndGet();
+		long files = 0;
+		long dirs = 0;
+		for (InfoNode node : removed) {
+			long[] counts = handOver(node, null);
+			files += counts[0];
+			dirs += counts[1];
 		}
-		if(node.getFileType() == FILE){
-			status.totalFile = 1;
-			status.totalPath = 1;
-			return status;
+		this.climb(this.root, -files, -dirs);
+		for (InfoNode node : removed) {
+			this.reclaimLater(node);
 		}
+		logged.await();
+		return removed;
+	}
 
-		if(node.getFileType() == DIRECTORY){
-			status.totalDir = 1;
-			status.totalPath = 1;
-			for(Map.Entry<String, InfoNode> entry : node.getChildren().entrySet()){
-				InfoNode subNode = entry.getValue();
-				status = status.plus(this.getStats(subNode));
+	/**
+	 * change the content of file, see InfoNode#changeContent, a logged change holds the
+	 * monitor of the file, so the changes of one file are logged one after the other
+	 * @param record the record of the change for the path of the file
+	 */
+	void changeContent(InfoNode file, Consumer<FileContent> change, Function<String, JournalRecord> record) {
+		Journal current = this.journal;
+		if (current == null) {
+			file.changeContent(this.contentStore, change);
+			return;
+		}
+		PathStamp stamp = new PathStamp(this.root, file, true);
+		EpochChange write = (epoch, paths) -> {
+			file.changeContent(this.contentStore, epoch, change);
+			return record.apply(paths[0].getPath());
+		};
+		for (;;) {
+			Logged logged;
+			synchronized (file) {
+				logged = this.logChange(current, null, write, stamp);
+			}
+			if (logged != Logged.BUSY) {
+				logged.await();
+				return;
 			}
+			awaitQuiet(null, stamp);
 		}
+	}
+
+	/**
+	 * make a change and log it. the caller holds the monitors of the directories the change
+	 * writes, or of the file, so the changes of one of them get their numbers in their order.
+	 * the changes above them are ordered by the stamps of the paths: a removal or a move marks
+	 * its node while it runs, see InfoNode#beginRelink, and a change whose path has been
+	 * relinked between its stamp and its number takes the stamp again. a change that depends
+	 * on another one has got a later epoch or the same epoch and a larger number, and the
+	 * journal writes the records in that order, see Journal. nothing waits inside the epoch,
+	 * a change that finds a node busy returns and the caller waits outside of its monitors
+	 * @param relinked the node the change removes or moves, null if none
+	 * @param stamps the paths the record is built from
+	 * @return BUSY if a node on a path or relinked is being relinked, or copied when the
+	 * change writes under it, nothing has changed then
+	 */
+	private Logged logChange(Journal journal, InfoNode relinked, EpochChange change, PathStamp... stamps) {
+		for (;;) {
+			for (PathStamp stamp : stamps) {
+				if (!stamp.take()) {
+					return Logged.BUSY;
+				}
+			}
+			if (relinked != null) {
+				if (relinked.getCopying() > 0) {
+					return Logged.BUSY;
+				}
+				relinked.beginRelink();
+			}
+			try {
+				long epoch = Versions.enter();
+				long seq = journal.nextSeq();
+				if (seq == 0) {
+					// closed or failed, the change is made like one that is not logged
+					Versions.exit(epoch);
+					change.apply(InfoNode.OWN_EPOCH, stamps);
+					return Logged.UNLOGGED;
+				}
+				try {
+					if (!PathStamp.valid(stamps) || relinked != null && relinked.getCopying() > 0) {
+						continue;
+					}
+					JournalRecord record = change.apply(epoch, stamps);
+					if (record == null || !PathStamp.live(stamps)) {
+						return Logged.UNLOGGED;
+					}
+					Logged logged = new Logged(journal.enqueue(record, seq, epoch));
+					seq = 0;
+					return logged;
+				} catch (ConcurrentModificationException e) {
+					// a change that is not logged got there in a later epoch, see addNode
+					continue;
+				} finally {
+					if (seq != 0) {
+						journal.skip(seq);
+					}
+					Versions.exit(epoch);
+				}
+			} finally {
+				if (relinked != null) {
+					relinked.endRelink();
+				}
+			}
+		}
+	}
+
+	/**
+	 * wait outside of every monitor until no node on the paths is busy, and relinked is
+	 * neither relinked nor copied. it yields first, a copy can take a while
+	 */
+	private static void awaitQuiet(InfoNode relinked, PathStamp... stamps) {
+		for (int tries = 0; ; ++tries) {
+			boolean quiet = relinked == null || relinked.getCopying() == 0 && (relinked.getRelinks() & 1) == 0;
+			for (int i = 0; quiet && i < stamps.length; ++i) {
+				quiet = stamps[i].take();
+			}
+			if (quiet) {
+				return;
+			}
+			if (tries < QUIET_SPINS) {
+				Thread.yield();
+			} else {
+				LockSupport.parkNanos(QUIET_PARK_NANOS);
+			}
+		}
+	}
+
+	/**
+	 * a change made inside the epoch logChange has entered
+	 */
+	@FunctionalInterface
+	private interface EpochChange {
+		/**
+		 * @param epoch the epoch to make the change in, OWN_EPOCH if it is not logged
+		 * @param paths the stamps given to logChange
+		 * @return the record of the change, null if nothing has changed
+		 */
+		JournalRecord apply(long epoch, PathStamp[] paths);
+	}
+
+	/**
+	 * what logChange has done: nothing since a node was busy, the change without a record,
+	 * or the change with its record on the way to the disk
+	 */
+	private static final class Logged {
+		private static final Logged BUSY = new Logged(null);
+		private static final Logged UNLOGGED = new Logged(null);
+
+		private final Journal.Pending pending;
+
+		private Logged(Journal.Pending pending) {
+			this.pending = pending;
+		}
+
+		/**
+		 * wait for the record outside of the monitors, see Journal.Pending#await, the records
+		 * of concurrent changes still share one write and one fsync
+		 */
+		private void await() {
+			if (this.pending != null && !this.pending.await()) {
+				System.out.println("journal has failed, the change may be lost after a restart");
+			}
+		}
+	}
+
+	/**
+	 * the path of a node read by following its parent links, with the relink counts of the
+	 * nodes on the way, see InfoNode#getRelinks. the path is valid as long as the counts are
+	 * the same, a removal or a move of one of the nodes changes its count
+	 */
+	private static final class PathStamp {
+		private final InfoNode root;
+		private final InfoNode node;
+
+		/**
+		 * the change writes under node, a copy reading one of the nodes makes it busy
+		 */
+		private final boolean writes;
+
+		private final List<InfoNode> nodes = new ArrayList<>();
+		private int[] relinks = new int[16];
+		private final List<String> names = new ArrayList<>();
+		private boolean live;
+
+		private PathStamp(InfoNode root, InfoNode node, boolean writes) {
+			this.root = root;
+			this.node = node;
+			this.writes = writes;
+		}
+
+		/**
+		 * follow the parent links, the count of a node is read before its name and parent
+		 * @return false if a node on the way is busy
+		 */
+		private boolean take() {
+			this.nodes.clear();
+			this.names.clear();
+			boolean detached = false;
+			InfoNode top = null;
+			for (InfoNode n = this.node; n != null; n = n.getParent()) {
+				int count = n.getRelinks();
+				if ((count & 1) != 0 || this.writes && n.getCopying() > 0) {
+					return false;
+				}
+				if (this.nodes.size() == this.relinks.length) {
+					this.relinks = Arrays.copyOf(this.relinks, this.relinks.length * 2);
+				}
+				this.relinks[this.nodes.size()] = count;
+				this.nodes.add(n);
+				this.names.add(n.getPath());
+				detached |= n.isDetached();
+				top = n;
+			}
+			this.live = !detached && top == this.root;
+			return true;
+		}
+
+		/**
+		 * @return true if no node has been relinked since take, or copied if the change writes
+		 */
+		private boolean valid() {
+			for (int i = 0; i < this.nodes.size(); ++i) {
+				InfoNode n = this.nodes.get(i);
+				if (n.getRelinks() != this.relinks[i] || this.writes && n.getCopying() > 0) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private static boolean valid(PathStamp[] stamps) {
+			for (PathStamp stamp : stamps) {
+				if (!stamp.valid()) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private static boolean live(PathStamp[] stamps) {
+			for (PathStamp stamp : stamps) {
+				if (!stamp.live) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * @return false if the node has been removed when the stamp was taken
+		 */
+		private boolean isLive() {
+			return this.live;
+		}
+
+		/**
+		 * @return the absolute path of the node
+		 */
+		private String getPath() {
+			if (this.names.size() <= 1) {
+				return ROOT_PATH;
+			}
+			StringBuilder path = new StringBuilder();
+			for (int i = this.names.size() - 2; i >= 0; --i) {
+				path.append(DELIMITER).append(this.names.get(i));
+			}
+			return path.toString();
+		}
+
+		/**
+		 * @return the absolute path of a child of the node
+		 */
+		private String childPath(String name) {
+			String path = this.getPath();
+			return ROOT_PATH.equals(path) ? path + name : path + DELIMITER + name;
+		}
+	}
+
+	private void reclaimLater(InfoNode node) {
+		PathIndex index = this.pathIndex;
+		if (index != null) {
+			this.reclaimer.submit(node, AbsolutePath.ofNode(node).toPathStr(), index);
+		} else if (filesOf(node) > 0) {
+			this.reclaimer.submit(node, null, null);
+		}
+	}
+
+	/**
+	 * a node linked or moved under a directory that is being removed may come after the
+	 * reclaimer has walked there, or after the removal found nothing to reclaim, so it is
+	 * reclaimed on its own. either the node sees the detached ancestor here or the walk of
+	 * the removal sees the node, it may be both
+	 */
+	private void reclaimIfDead(InfoNode node) {
+		for (InfoNode n = node.getParent(); n != null; n = n.getParent()) {
+			if (n.isDetached()) {
+				this.reclaimLater(node);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * wait until the subtrees removed so far have been reclaimed
+	 */
+	void awaitReclaimed() {
+		this.reclaimer.awaitIdle();
+	}
+
+	/**
+	 * add to the subtree aggregates of every ancestor and to the total counters,
+	 * the root's aggregates are the total counters, so the hottest node is never touched.
+	 * every step goes where the counts of the directory go, a rename or a removal of an
+	 * ancestor meanwhile takes what has been added with it, see InfoNode#moveCounts.
+	 * a removed subtree does not pass its counts on, the climb stops there
+	 */
+	private void climb(InfoNode from, long files, long dirs) {
+		if (files != 0 && this.climb(from, FILE, files)) {
+			this.totalFile.add(files);
+		}
+		if (dirs != 0 && this.climb(from, DIRECTORY, dirs)) {
+			this.totalDir.add(dirs);
+		}
+	}
+
+	/**
+	 * files and dirs climb one by one, each goes where its own count is passed on
+	 * @return true if the count has reached the root
+	 */
+	private boolean climb(InfoNode from, FileType type, long count) {
+		InfoNode node = from;
+		while (node != null && node != this.root) {
+			node = node.addToSubtree(type, count);
+		}
+		return node != null;
+	}
+
+	/**
+	 * pass the counts of node on to up, null if node has been removed
+	 * @return the files and dirs of node itself and everything under it
+	 */
+	private static long[] handOver(InfoNode node, InfoNode up) {
+		if (node.getFileType() == FILE) {
+			return new long[] {1, 0};
+		}
+		long[] counts = node.moveCounts(up);
+		counts[1] += 1;
+		return counts;
+	}
+
+	private static long filesOf(InfoNode node) {
+		return node.getFileType() == FILE ? 1 : node.getSubtreeFiles();
+	}
+
+	private static long dirsOf(InfoNode node) {
+		return node.getFileType() == DIRECTORY ? 1 + node.getSubtreeDirs() : 0;
+	}
+
+	/**
+	 * @return the counts of the whole tree, it does not traverse the tree
+	 */
+	public Stats getStats(){
+		Stats status = new Stats();
+		status.totalFile = this.totalFile.sum();
+		status.totalDir = this.totalDir.sum();
+		status.totalPath = status.totalFile + status.totalDir;
+		return status;
+	}
+
+	/**
+	 * the "du" of a node, it does not traverse the subtree
+	 * @param node a file or a directory
+	 * @return the counts of node and everything under it
+	 */
+	public Stats getStats(InfoNode node){
+		if(node == this.root){
+			return getStats();
+		}
+		Stats status = new Stats();
+		status.totalFile = filesOf(node);
+		status.totalDir = dirsOf(node);
+		status.totalPath = status.totalFile + status.totalDir;
 		return status;
+	}
 
+	/**
+	 * count by walking the whole tree, only used to verify the counters
+	 */
+	Stats walkStats() {
+		return walkStats(this.root, Long.MAX_VALUE);
+	}
+
+	/**
+	 * count by walking the tree a snapshot of the epoch sees
+	 */
+	Stats walkStats(long snapshotEpoch) {
+		return walkStats(this.root, snapshotEpoch);
+	}
+
+	/**
+	 * the tree is walked in parallel, a deep tree does not overflow the stack
+	 */
+	private Stats walkStats(InfoNode node, long snapshotEpoch) {
+		long[] counts = TreeSpliterator.stream(node, ROOT_PATH, snapshotEpoch, Integer.MAX_VALUE)
+			.parallel()
+			.collect(() -> new long[2],
+				(total, entry) -> ++total[entry.isDirectory() ? 1 : 0],
+				(total, other) -> {
+					total[0] += other[0];
+					total[1] += other[1];
+				});
+		Stats status = new Stats();
+		status.totalFile = counts[0];
+		status.totalDir = counts[1];
+		status.totalPath = counts[0] + counts[1];
+		return status;
 	}
 
 	public class Stats {
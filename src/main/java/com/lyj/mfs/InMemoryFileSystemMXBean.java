@@ -0,0 +1,50 @@
+package com.lyj.mfs;
+
+import com.lyj.mfs.metrics.Distribution;
+import com.lyj.mfs.metrics.OperationStats;
+import java.util.List;
+
+/**
+ * @program: inmemoryFileSystem
+ * @description: the management interface of the file system, registered with the platform
+ * MBeanServer as OBJECT_NAME. the counts of the tree come from InMemoryFileSystem.getStats,
+ * the operations from Metrics, they are empty when the metrics are turned off
+ * @author: LYJ
+ * @create: 2026-10-20 23:50
+ **/
+
+public interface InMemoryFileSystemMXBean {
+
+	String OBJECT_NAME = "com.lyj.mfs:type=InMemoryFileSystem";
+
+	long getTotalFiles();
+
+	long getTotalDirs();
+
+	int getLiveSessions();
+
+	long getCreatedSessions();
+
+	long getEvictedSessions();
+
+	long getResidentContentBytes();
+
+	long getSpilledContentBytes();
+
+	boolean isMetricsEnabled();
+
+	/**
+	 * @return count, errors and latency in nanoseconds of every kind of operation done so far
+	 */
+	List<OperationStats> getOperations();
+
+	/**
+	 * @return how many directories the resolution of a path walks, 0 for a path index hit
+	 */
+	Distribution getResolutionSteps();
+
+	/**
+	 * @return the number of children of the directories a path is resolved through
+	 */
+	Distribution getChildCounts();
+}
@@ -2,22 +2,36 @@ package com.lyj.mfs;
 
 import static com.lyj.mfs.domain.InfoNode.FileType.DIRECTORY;
 import static com.lyj.mfs.domain.InfoNode.FileType.FILE;
+import static com.lyj.mfs.utils.Const.DELIMITER;
 import static com.lyj.mfs.utils.Const.ROOT_PATH;
 
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Iterators;
+import com.lyj.mfs.InMemoryFileSystem.Stats;
+import com.lyj.mfs.WatchEvent.Kind;
+import com.lyj.mfs.content.FileContent;
 import com.lyj.mfs.domain.AbsolutePath;
+import com.lyj.mfs.domain.FileStat;
 import com.lyj.mfs.domain.InfoNode;
+import com.lyj.mfs.domain.InfoNode.FileType;
 import com.lyj.mfs.exceptions.PathNotFoundException;
+import com.lyj.mfs.metrics.Metrics;
+import com.lyj.mfs.metrics.Metrics.Op;
+import com.lyj.mfs.persist.JournalRecord;
+import com.lyj.mfs.utils.PathCursor;
 import com.lyj.mfs.utils.StringUtils;
-import java.time.LocalDateTime;
-import java.time.ZoneId;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
-import java.util.UUID;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.stream.Stream;
 
 /**
  * @program: inmemoryFileSystem
- * @description: the domain object represent each client session
+ * @description: the domain object represent each client session.
+ * an operation is timed around its do method and recorded in Metrics
  * @author: LYJ
  * @create: 2020-01-30 12:01
  **/
@@ -25,7 +39,7 @@ import java.util.stream.Collectors;
 public class InMemoryFileSystemSession implements FileSystem {
 
 	/**
-		* a uuid to distinguish sessions
+	 * a number to distinguish sessions, unique in this process
 	 */
 	private final String sessionId;
 
@@ -35,9 +49,31 @@ public class InMemoryFileSystemSession implements FileSystem {
 	private AbsolutePath workingDir;
 
 	/**
-	 * the time that this session was created, can be used to do session timeout, not implement yet
+	 * the removal generation at which workingDir was last seen alive
 	 */
-	private final LocalDateTime createTime;
+	private long liveGeneration = -1;
+
+	/**
+	 * the rename sequence workingDir was last built at, a rename may have moved one of its dirs
+	 */
+	private long renameSequence;
+
+	/**
+	 * the time that this session was created, in epoch millis
+	 */
+	private final long createTime;
+
+	/**
+	 * the tick of the session clock this session was last used at, see SessionWheel
+	 */
+	private volatile long lastAccessTick;
+
+	/**
+	 * what the session wheel holds for this session, null while eviction is turned off
+	 */
+	volatile SessionWheel.Handle wheelHandle;
+
+	private volatile boolean closed;
 
 	/**
 	 * the singleton in-memory file system, shared by every session
@@ -47,8 +83,9 @@ public class InMemoryFileSystemSession implements FileSystem {
 
 	public InMemoryFileSystemSession(InMemoryFileSystem instance) {
 		this.mfsInstance = instance;
-		this.sessionId = UUID.randomUUID().toString();
-		this.createTime = LocalDateTime.now(ZoneId.of("Asia/Shanghai"));
+		this.sessionId = instance.nextSessionId();
+		this.createTime = System.currentTimeMillis();
+		this.lastAccessTick = instance.sessionClock();
 		this.workingDir = new AbsolutePath(mfsInstance.getRoot());
 	}
 
@@ -56,9 +93,67 @@ public class InMemoryFileSystemSession implements FileSystem {
 		return sessionId;
 	}
 
+	public long getCreateTime() {
+		return createTime;
+	}
+
+	long getLastAccessTick() {
+		return lastAccessTick;
+	}
+
+	public boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * every operation of a closed session throws an IllegalStateException
+	 */
+	@Override
+	public void close() {
+		this.closed = true;
+		this.mfsInstance.sessionClosed(this);
+	}
+
+	/**
+	 * close this session because it has been idle for too long
+	 * @return false if it was closed already
+	 */
+	boolean expire() {
+		this.closed = true;
+		return this.mfsInstance.sessionClosed(this);
+	}
+
+	/**
+	 * check the session is still open and record the use for the idle timeout,
+	 * the clock is coarse so the field is written at most once per tick
+	 */
+	private void used() {
+		Preconditions.checkState(!this.closed, "session %s is closed", this.sessionId);
+		long now = this.mfsInstance.sessionClock();
+		if (this.lastAccessTick != now) {
+			this.lastAccessTick = now;
+		}
+		long renames = this.mfsInstance.getRenameSequence();
+		if (renames != this.renameSequence) {
+			// the working dir stays the same node wherever it has been moved to
+			this.workingDir = AbsolutePath.ofNode(this.workingDir.getLowestNode());
+			this.renameSequence = renames;
+		}
+	}
+
 
 	@Override
 	public Iterable<String> ls() {
+		long start = Metrics.start();
+		try {
+			return Metrics.done(Op.LS, start, this.doLs());
+		} catch (RuntimeException e) {
+			throw Metrics.thrown(Op.LS, start, e);
+		}
+	}
+
+	private Iterable<String> doLs() {
+		this.used();
 		List<String> ret = new ArrayList<>();
 
 		if (workingDirhasBeenRemoved()) {
@@ -70,71 +165,381 @@ public class InMemoryFileSystemSession implements FileSystem {
 		}
 
 		InfoNode lowestNode = workingDir.getLowestNode();
-		ret = lowestNode.getChildren().entrySet()
-			.stream().map(entry -> entry.getValue().getPath())
-			.collect(Collectors.toList());
+		ret = new ArrayList<>(lowestNode.getChildCount());
+		for (InfoNode child : lowestNode.getChildren()) {
+			ret.add(child.getPath());
+		}
 
 		return ret;
 	}
 
+	/**
+	 * only the names of the page are copied, a huge directory can be listed page by page
+	 * in bounded memory. the pages are not a snapshot, an entry added or removed between
+	 * two pages is seen if its name is after the cursor
+	 */
+	@Override
+	public ListPage ls(String path, String cursor, int limit) {
+		return this.ls(path, null, cursor, limit);
+	}
+
+	@Override
+	public ListPage ls(String path, String prefix, String cursor, int limit) {
+		long start = Metrics.start();
+		try {
+			return Metrics.done(Op.LS, start, this.doLs(path, prefix, cursor, limit));
+		} catch (RuntimeException e) {
+			throw Metrics.thrown(Op.LS, start, e);
+		}
+	}
+
+	private ListPage doLs(String path, String prefix, String cursor, int limit) {
+		Preconditions.checkArgument(limit > 0, "limit must be positive");
+		Iterator<String> names;
+		if (cursor != null && (prefix == null || StringUtils.compareNames(cursor, prefix) >= 0)) {
+			names = this.names(path, cursor, false, prefix == null ? null : StringUtils.prefixEnd(prefix));
+		} else {
+			names = this.names(path, prefix, true, prefix == null ? null : StringUtils.prefixEnd(prefix));
+		}
+		if (names == null) {
+			return null;
+		}
+		List<String> page = new ArrayList<>(Math.min(limit, 1024));
+		while (page.size() < limit && names.hasNext()) {
+			page.add(names.next());
+		}
+		return new ListPage(page, names.hasNext() ? page.get(page.size() - 1) : null);
+	}
+
+	/**
+	 * the iterators are measured until they are returned, not while they are consumed
+	 */
+	@Override
+	public Iterator<String> lsIterator(String path, String after) {
+		long start = Metrics.start();
+		try {
+			return Metrics.done(Op.LS, start, this.names(path, after, false, null));
+		} catch (RuntimeException e) {
+			throw Metrics.thrown(Op.LS, start, e);
+		}
+	}
+
+	@Override
+	public Iterator<String> lsPrefix(String path, String prefix) {
+		long start = Metrics.start();
+		try {
+			Preconditions.checkNotNull(prefix, "prefix can not be null");
+			return Metrics.done(Op.LS, start, this.names(path, prefix, true, StringUtils.prefixEnd(prefix)));
+		} catch (RuntimeException e) {
+			throw Metrics.thrown(Op.LS, start, e);
+		}
+	}
+
+	@Override
+	public Iterator<String> lsRange(String path, String from, String to) {
+		long start = Metrics.start();
+		try {
+			return Metrics.done(Op.LS, start, this.names(path, from, true, to));
+		} catch (RuntimeException e) {
+			throw Metrics.thrown(Op.LS, start, e);
+		}
+	}
+
+	@Override
+	public List<String> find(String pattern, FileType type, int maxDepth) {
+		return this.find(PathPattern.compile(pattern), type, maxDepth);
+	}
+
+	/**
+	 * a relative pattern starts at the working dir, the matches are absolute paths
+	 * in depth first name order, see Finder
+	 */
+	@Override
+	public List<String> find(PathPattern pattern, FileType type, int maxDepth) {
+		long start = Metrics.start();
+		try {
+			return Metrics.done(Op.FIND, start, this.doFind(pattern, type, maxDepth));
+		} catch (RuntimeException e) {
+			throw Metrics.thrown(Op.FIND, start, e);
+		}
+	}
+
+	private List<String> doFind(PathPattern pattern, FileType type, int maxDepth) {
+		this.used();
+		Preconditions.checkNotNull(pattern, "pattern can not be null");
+		Preconditions.checkArgument(maxDepth >= 0, "maxDepth can not be negative");
+		if (pattern.isAbsolute()) {
+			return Finder.find(this.mfsInstance.getRoot(), ROOT_PATH, pattern, type, maxDepth);
+		}
+		if (workingDirhasBeenRemoved()) {
+			return new ArrayList<>();
+		}
+		return Finder.find(workingDir.getLowestNode(), workingDir.toPathStr(), pattern, type, maxDepth);
+	}
+
+	/**
+	 * the entries come in depth first name order unless the stream is parallel, see TreeSpliterator
+	 */
+	@Override
+	public Stream<WalkEntry> walk(String path, int maxDepth) {
+		long start = Metrics.start();
+		try {
+			return Metrics.done(Op.WALK, start, this.doWalk(path, maxDepth));
+		} catch (RuntimeException e) {
+			throw Metrics.thrown(Op.WALK, start, e);
+		}
+	}
+
+	private Stream<WalkEntry> doWalk(String path, int maxDepth) {
+		this.used();
+		StringUtils.checkIsPath(path);
+		Preconditions.checkArgument(maxDepth >= 0, "maxDepth can not be negative");
+		InfoNode node = this.findNode(path);
+		if (node == null) {
+			return null;
+		}
+		return TreeSpliterator.stream(node, AbsolutePath.ofNode(node).toPathStr(), Long.MAX_VALUE, maxDepth);
+	}
+
+	/**
+	 * @return the names of a directory between from and to, null if the path is not a directory
+	 */
+	private Iterator<String> names(String path, String from, boolean fromInclusive, String to) {
+		this.used();
+		StringUtils.checkIsPath(path);
+		InfoNode dir = this.findNode(path);
+		if (dir == null || dir.getFileType() != DIRECTORY) {
+			return null;
+		}
+		return Iterators.transform(dir.getChildren(from, fromInclusive, to), InfoNode::getPath);
+	}
+
 
 	@Override
 	public boolean mkdir(String path) {
+		long start = Metrics.start();
+		try {
+			return Metrics.done(Op.MKDIR, start, this.doMkdir(path));
+		} catch (RuntimeException e) {
+			throw Metrics.thrown(Op.MKDIR, start, e);
+		}
+	}
+
+	private boolean doMkdir(String path) {
+		this.used();
 		StringUtils.checkIsPath(path);
 
 		try {
-			//find and create dir recursively
-			AbsolutePath absDir = this.findAbsDir(path, true);
+			//find and create dir recursively, every dir created is logged by the file system
+			this.findAbsDir(path, true);
 			return true;
 		} catch (PathNotFoundException e) {
 			e.printStackTrace();
+			return false;
 		}
-		return false;
 	}
 
 	@Override
 	public String touch(String path) {
+		long start = Metrics.start();
+		try {
+			return Metrics.done(Op.TOUCH, start, this.doTouch(path));
+		} catch (RuntimeException e) {
+			throw Metrics.thrown(Op.TOUCH, start, e);
+		}
+	}
+
+	private String doTouch(String path) {
+		this.used();
 		StringUtils.checkIsFilePath(path);
-		String parentDir = StringUtils.extractParentDir(path);
-		String fileName = StringUtils.extractFileName(path);
-		AbsolutePath absParentDir = null;
 
-		/*
-		* 1. find the parent dir path
-		* */
+		AbsolutePath absFile = this.touchFile(path);
+		return absFile == null ? null : absFile.toPathStr();
+	}
+
+	@Override
+	public boolean write(String path, byte[] data) {
+		long start = Metrics.start();
 		try {
-			absParentDir = this.findAbsDir(parentDir, true);
-		} catch (PathNotFoundException e) {
-			e.printStackTrace();
+			return Metrics.done(Op.WRITE, start, this.doWrite(path, data));
+		} catch (RuntimeException e) {
+			throw Metrics.thrown(Op.WRITE, start, e);
+		}
+	}
+
+	private boolean doWrite(String path, byte[] data) {
+		this.used();
+		StringUtils.checkIsFilePath(path);
+		Preconditions.checkNotNull(data, "data can not be null");
+
+		AbsolutePath absFile = this.touchFile(path);
+		if (absFile == null) {
+			return false;
+		}
+		InfoNode file = absFile.getLowestNode();
+		this.mfsInstance.changeContent(file, content -> content.write(data), p -> JournalRecord.write(p, data));
+		file.modified();
+		this.mfsInstance.changed(Kind.MODIFY, file);
+		return true;
+	}
+
+	@Override
+	public boolean append(String path, byte[] data) {
+		long start = Metrics.start();
+		try {
+			return Metrics.done(Op.APPEND, start, this.doAppend(path, data));
+		} catch (RuntimeException e) {
+			throw Metrics.thrown(Op.APPEND, start, e);
+		}
+	}
+
+	private boolean doAppend(String path, byte[] data) {
+		this.used();
+		StringUtils.checkIsFilePath(path);
+		Preconditions.checkNotNull(data, "data can not be null");
+
+		AbsolutePath absFile = this.touchFile(path);
+		if (absFile == null) {
+			return false;
+		}
+		InfoNode file = absFile.getLowestNode();
+		this.mfsInstance.changeContent(file, content -> content.append(data), p -> JournalRecord.append(p, data));
+		file.modified();
+		this.mfsInstance.changed(Kind.MODIFY, file);
+		return true;
+	}
+
+	@Override
+	public byte[] read(String path, long offset, int length) {
+		long start = Metrics.start();
+		try {
+			return Metrics.done(Op.READ, start, this.doRead(path, offset, length));
+		} catch (RuntimeException e) {
+			throw Metrics.thrown(Op.READ, start, e);
+		}
+	}
+
+	private byte[] doRead(String path, long offset, int length) {
+		this.used();
+		StringUtils.checkIsPath(path);
+		InfoNode file = this.findFile(path);
+		if (file == null) {
 			return null;
 		}
+		file.accessed();
+		FileContent content = file.getContent();
+		return content == null ? new byte[0] : content.read(offset, length);
+	}
 
-		InfoNode lowestNode = absParentDir.getLowestNode();
-		InfoNode fileNode = lowestNode.getChildren().get(fileName);
-		/*
-		* check the filename is a file or a directory or is not exist
-		* */
-		if (fileNode != null && fileNode.getFileType() == FILE) {
-			// file exist, only need to update the createtime
-			fileNode.updateCreateTime();
-		} else if (fileNode != null && fileNode.getFileType() == DIRECTORY) {
-			//same name directory exist, can not touch new file return null
-			System.out.println("found a directory with same name");
+	@Override
+	public ByteBuffer[] readBuffers(String path, long offset, int length) {
+		long start = Metrics.start();
+		try {
+			return Metrics.done(Op.READ, start, this.doReadBuffers(path, offset, length));
+		} catch (RuntimeException e) {
+			throw Metrics.thrown(Op.READ, start, e);
+		}
+	}
+
+	private ByteBuffer[] doReadBuffers(String path, long offset, int length) {
+		this.used();
+		StringUtils.checkIsPath(path);
+		InfoNode file = this.findFile(path);
+		if (file == null) {
 			return null;
-		} else {
-			// file or directory is not exist, so we can create a new file
-			fileNode = new InfoNode(fileName, FILE);
-			lowestNode.addChild(fileNode);
 		}
+		file.accessed();
+		FileContent content = file.getContent();
+		return content == null ? new ByteBuffer[0] : content.readBuffers(offset, length);
+	}
 
-		//absosult path drill down to the file node
-		absParentDir.appendRelativePath(fileNode);
-		return absParentDir.toPathStr();
+	@Override
+	public boolean truncate(String path, long size) {
+		long start = Metrics.start();
+		try {
+			return Metrics.done(Op.TRUNCATE, start, this.doTruncate(path, size));
+		} catch (RuntimeException e) {
+			throw Metrics.thrown(Op.TRUNCATE, start, e);
+		}
+	}
+
+	private boolean doTruncate(String path, long size) {
+		this.used();
+		StringUtils.checkIsPath(path);
+
+		InfoNode file = this.findFile(path);
+		if (file == null) {
+			return false;
+		}
+		this.mfsInstance.changeContent(file, content -> content.truncate(size), p -> JournalRecord.truncate(p, size));
+		file.modified();
+		this.mfsInstance.changed(Kind.MODIFY, file);
+		return true;
+	}
+
+	@Override
+	public long size(String path) {
+		long start = Metrics.start();
+		try {
+			long size = this.doSize(path);
+			Metrics.done(Op.SIZE, start, size >= 0);
+			return size;
+		} catch (RuntimeException e) {
+			throw Metrics.thrown(Op.SIZE, start, e);
+		}
+	}
 
+	private long doSize(String path) {
+		this.used();
+		StringUtils.checkIsPath(path);
+		InfoNode file = this.findFile(path);
+		if (file == null) {
+			return -1;
+		}
+		FileContent content = file.getContent();
+		return content == null ? 0 : content.size();
+	}
+
+	@Override
+	public FileStat stat(String path) {
+		FileStat stat = new FileStat();
+		return this.stat(path, stat) ? stat : null;
+	}
+
+	@Override
+	public boolean stat(String path, FileStat stat) {
+		long start = Metrics.start();
+		try {
+			return Metrics.done(Op.STAT, start, this.doStat(path, stat));
+		} catch (RuntimeException e) {
+			throw Metrics.thrown(Op.STAT, start, e);
+		}
+	}
+
+	private boolean doStat(String path, FileStat stat) {
+		this.used();
+		StringUtils.checkIsPath(path);
+		Preconditions.checkNotNull(stat, "stat can not be null");
+		InfoNode node = this.findNode(path);
+		if (node == null) {
+			return false;
+		}
+		node.stat(stat);
+		return true;
 	}
 
 	@Override
 	public String cd(String path) {
+		long start = Metrics.start();
+		try {
+			return Metrics.done(Op.CD, start, this.doCd(path));
+		} catch (RuntimeException e) {
+			throw Metrics.thrown(Op.CD, start, e);
+		}
+	}
+
+	private String doCd(String path) {
+		this.used();
 		StringUtils.checkIsPath(path);
 
 		try {
@@ -148,35 +553,56 @@ public class InMemoryFileSystemSession implements FileSystem {
 
 	@Override
 	public String pwd() {
-		return workingDir.toPathStr();
+		long start = Metrics.start();
+		try {
+			this.used();
+			return Metrics.done(Op.PWD, start, workingDir.toPathStr());
+		} catch (RuntimeException e) {
+			throw Metrics.thrown(Op.PWD, start, e);
+		}
 	}
 
 	@Override
 	public boolean rm(String path, boolean recursive) {
+		long start = Metrics.start();
+		try {
+			return Metrics.done(Op.RM, start, this.doRm(path, recursive));
+		} catch (RuntimeException e) {
+			throw Metrics.thrown(Op.RM, start, e);
+		}
+	}
+
+	private boolean doRm(String path, boolean recursive) {
+		this.used();
 		StringUtils.checkIsPath(path);
 
 		if( ROOT_PATH.equals(path)){
 			if(recursive){
-				this.mfsInstance.getRoot().getChildren().clear();
+				List<InfoNode> removed = this.mfsInstance.removeAll();
+				for (InfoNode node : removed) {
+					this.mfsInstance.changed(Kind.DELETE, node);
+				}
 				return true;
 			}else{
 				return false;
 			}
 		}
 
-		String parentDir = StringUtils.extractParentDir(path);
-		String fileName = StringUtils.extractFileName(path);
-
+		PathCursor cursor = new PathCursor(path);
 		AbsolutePath absParentDir = null;
 		try {
-			absParentDir = this.findAbsDir(parentDir, false);
+			absParentDir = this.resolveDir(cursor, false, true);
 		} catch (PathNotFoundException e) {
 			e.printStackTrace();
 			return false;
 		}
+		if (cursor.length() == 0) {
+			System.out.println("no file name in path");
+			return false;
+		}
 
 		InfoNode lowestNode = absParentDir.getLowestNode();
-		InfoNode fileNode = lowestNode.getChildren().get(fileName);
+		InfoNode fileNode = lowestNode.getChild(cursor);
 
 		if (fileNode == null){
 			System.out.println("file not exist");
@@ -184,14 +610,411 @@ public class InMemoryFileSystemSession implements FileSystem {
 		}else if (fileNode.getFileType() == DIRECTORY && !recursive){
 			System.out.println("directory can not be removed");
 			return false;
+		}else if (!this.mfsInstance.remove(lowestNode, fileNode)){
+			System.out.println("file has been removed by others");
+			return false;
 		}else{
 			// file or (directory && recursive)
-			lowestNode.removeChild(fileName);
+			this.mfsInstance.changed(Kind.DELETE, fileNode);
+		}
+
+		return true;
+	}
+
+	/**
+	 * move a file or a directory with everything under it to dst, in O(1) when the path
+	 * index is disabled. a reader of dst sees nothing or the whole subtree, see InfoNode#moveChild.
+	 * the sessions working under it keep working in the same dirs at their new paths
+	 */
+	@Override
+	public boolean rename(String src, String dst) {
+		long start = Metrics.start();
+		try {
+			return Metrics.done(Op.RENAME, start, this.doRename(src, dst));
+		} catch (RuntimeException e) {
+			throw Metrics.thrown(Op.RENAME, start, e);
+		}
+	}
+
+	private boolean doRename(String src, String dst) {
+		this.used();
+		StringUtils.checkIsPath(src);
+		StringUtils.checkIsPath(dst);
+
+		InfoNode node = this.findNode(src);
+		if (node == null || node.getParent() == null) {
+			System.out.println("file not exist or is the root");
+			return false;
+		}
+		PathCursor cursor = new PathCursor(dst);
+		AbsolutePath absDstDir = null;
+		try {
+			absDstDir = this.resolveDir(cursor, false, true);
+		} catch (PathNotFoundException e) {
+			e.printStackTrace();
+			return false;
+		}
+		if (cursor.length() == 0 || cursor.isCurrentDir() || cursor.isParentDir()) {
+			System.out.println("no file name in path");
+			return false;
+		}
+		String srcPath = AbsolutePath.ofNode(node).toPathStr();
+		if (!this.mfsInstance.move(node, absDstDir.getLowestNode(), cursor.component())) {
+			System.out.println("can not move " + srcPath + " to " + dst);
+			return false;
+		}
+		this.mfsInstance.changed(Kind.DELETE, srcPath, node.getFileType());
+		this.mfsInstance.changed(Kind.CREATE, node);
+		return true;
+	}
+
+	/**
+	 * copy like cp -r, the whole subtree is built aside and linked at once, so a reader of dst
+	 * sees nothing or the whole copy. no file content is copied, see InMemoryFileSystem#copy
+	 */
+	@Override
+	public boolean copy(String src, String dst, boolean recursive) {
+		long start = Metrics.start();
+		try {
+			return Metrics.done(Op.COPY, start, this.doCopy(src, dst, recursive));
+		} catch (RuntimeException e) {
+			throw Metrics.thrown(Op.COPY, start, e);
 		}
+	}
 
+	private boolean doCopy(String src, String dst, boolean recursive) {
+		this.used();
+		StringUtils.checkIsPath(src);
+		StringUtils.checkIsPath(dst);
+
+		InfoNode node = this.findNode(src);
+		if (node == null) {
+			System.out.println("file not exist");
+			return false;
+		}
+		if (node.getFileType() == DIRECTORY && !recursive) {
+			System.out.println("directory can not be copied");
+			return false;
+		}
+		PathCursor cursor = new PathCursor(dst);
+		AbsolutePath absDstDir = null;
+		try {
+			absDstDir = this.resolveDir(cursor, false, true);
+		} catch (PathNotFoundException e) {
+			e.printStackTrace();
+			return false;
+		}
+		if (cursor.length() == 0 || cursor.isCurrentDir() || cursor.isParentDir()) {
+			System.out.println("no file name in path");
+			return false;
+		}
+		String srcPath = AbsolutePath.ofNode(node).toPathStr();
+		InfoNode copy = this.mfsInstance.copy(node, absDstDir.getLowestNode(), cursor.component());
+		if (copy == null) {
+			System.out.println("can not copy " + srcPath + " to " + dst);
+			return false;
+		}
+		this.mfsInstance.changed(Kind.CREATE, copy);
 		return true;
 	}
 
+	/**
+	 * the events are published by the sessions making the changes, after their journal records
+	 */
+	@Override
+	public Watcher watch(String path, boolean recursive) {
+		long start = Metrics.start();
+		try {
+			return Metrics.done(Op.WATCH, start, this.doWatch(path, recursive));
+		} catch (RuntimeException e) {
+			throw Metrics.thrown(Op.WATCH, start, e);
+		}
+	}
+
+	private Watcher doWatch(String path, boolean recursive) {
+		this.used();
+		StringUtils.checkIsPath(path);
+		InfoNode node = this.findNode(path);
+		if (node == null) {
+			System.out.println("file not exist");
+			return null;
+		}
+		return this.mfsInstance.watch(AbsolutePath.ofNode(node).toPathStr(), recursive);
+	}
+
+	/**
+	 * apply many mkdir/touch/rm operations in their order, with the same results as calling
+	 * them one by one. the parent dir of every path is resolved once per batch and reused by
+	 * the following operations with the same parent, so a bulk load does not walk the same
+	 * long prefixes again and again. an rm of the batch forgets the resolved dirs, a dir that
+	 * was removed by another session meanwhile is noticed by the removal generation
+	 *
+	 * @param operations applied in this order
+	 * @return true at the index of every operation that succeeded
+	 */
+	public boolean[] batch(List<BatchOperation> operations) {
+		this.used();
+		Preconditions.checkNotNull(operations, "operations can not be null");
+		boolean[] results = new boolean[operations.size()];
+		BatchParents parents = new BatchParents();
+		PathCursor cursor = new PathCursor();
+		for (int i = 0; i < results.length; ++i) {
+			BatchOperation operation = operations.get(i);
+			if (operation.getType() == BatchOperation.Type.RM) {
+				results[i] = this.rm(operation.getPath(), operation.isRecursive());
+				parents.clear();
+			} else {
+				long start = Metrics.start();
+				Op op = operation.getType() == BatchOperation.Type.TOUCH ? Op.TOUCH : Op.MKDIR;
+				try {
+					results[i] = Metrics.done(op, start, this.batchCreate(operation, cursor, parents));
+				} catch (RuntimeException e) {
+					throw Metrics.thrown(op, start, e);
+				}
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * mkdir or touch of a batch, the leaf is created in the cached parent dir
+	 */
+	private boolean batchCreate(BatchOperation operation, PathCursor cursor, BatchParents parents) {
+		String path = operation.getPath();
+		boolean touch = operation.getType() == BatchOperation.Type.TOUCH;
+		if (touch) {
+			StringUtils.checkIsFilePath(path);
+		} else {
+			StringUtils.checkIsPath(path);
+		}
+		cursor.reset(path);
+		while (cursor.next() && !cursor.isLast()) {
+		}
+		if (cursor.length() == 0 || cursor.isCurrentDir() || cursor.isParentDir()) {
+			// no plain name at the end, there is no parent to share
+			return touch ? this.doTouch(path) != null : this.doMkdir(path);
+		}
+
+		try {
+			// the creations are logged by the file system
+			AbsolutePath absPath = new AbsolutePath(this.batchParent(cursor, parents));
+			if (touch) {
+				return this.touchIn(absPath, cursor) != null;
+			}
+			this.stepInto(absPath, cursor, true, this.mfsInstance.getPathIndex());
+			return true;
+		} catch (PathNotFoundException e) {
+			e.printStackTrace();
+			return false;
+		}
+	}
+
+	/**
+	 * resolve the parent dir of a batch operation, create it if it does not exist
+	 * @param cursor at the leaf, the parent is the path in front of it, eg. "/a/b/"
+	 */
+	private AbsolutePath batchParent(PathCursor cursor, BatchParents parents) throws PathNotFoundException {
+		long generation = this.mfsInstance.getRemovalGeneration();
+		long renames = this.mfsInstance.getRenameSequence();
+		if (renames != parents.renameSequence) {
+			// a path may lead somewhere else now
+			parents.clear();
+			parents.renameSequence = renames;
+		}
+		ResolvedDir resolved;
+		String parentPath = parents.lastPath;
+		// bulk loads are mostly sorted, compare with the last parent before building a key
+		if (parentPath != null && cursor.start() == parentPath.length() && cursor.path().startsWith(parentPath)) {
+			resolved = parents.last;
+		} else {
+			parentPath = cursor.precedingPath();
+			resolved = parents.get(parentPath);
+		}
+		if (resolved != null && resolved.generation != generation) {
+			if (resolved.path.getLowestNode().isLive()) {
+				resolved.generation = generation;
+			} else {
+				resolved = null;
+			}
+		}
+		if (resolved == null) {
+			resolved = new ResolvedDir(this.resolveDir(new PathCursor(parentPath), true, false), generation);
+			parents.put(parentPath, resolved);
+		}
+		parents.lastPath = parentPath;
+		parents.last = resolved;
+		return resolved.path;
+	}
+
+	/**
+	 * the parent dirs resolved by a batch by their path as it is written in the operations
+	 */
+	private static final class BatchParents {
+		private final Map<String, ResolvedDir> byPath = new HashMap<>();
+		private String lastPath;
+		private ResolvedDir last;
+		private long renameSequence;
+
+		private ResolvedDir get(String path) {
+			return this.byPath.get(path);
+		}
+
+		private void put(String path, ResolvedDir resolved) {
+			this.byPath.put(path, resolved);
+		}
+
+		private void clear() {
+			this.byPath.clear();
+			this.lastPath = null;
+			this.last = null;
+		}
+	}
+
+	/**
+	 * a parent dir resolved by a batch, and the removal generation it was last seen alive at
+	 */
+	private static final class ResolvedDir {
+		private final AbsolutePath path;
+		private long generation;
+
+		private ResolvedDir(AbsolutePath path, long generation) {
+			this.path = path;
+			this.generation = generation;
+		}
+	}
+
+	/**
+	 * disk usage of a file or a directory, answered from the subtree aggregates without
+	 * traversing anything
+	 *
+	 * @param path a file or directory path, can be a relative path or a absolute path
+	 * @return the counts of the path and everything under it, null if the path does not exist
+	 */
+	public Stats du(String path) {
+		long start = Metrics.start();
+		try {
+			return Metrics.done(Op.DU, start, this.doDu(path));
+		} catch (RuntimeException e) {
+			throw Metrics.thrown(Op.DU, start, e);
+		}
+	}
+
+	private Stats doDu(String path) {
+		this.used();
+		StringUtils.checkIsPath(path);
+		InfoNode node = this.findNode(path);
+		return node == null ? null : this.mfsInstance.getStats(node);
+	}
+
+	/**
+	 * find and create a file, or update the time of an existing file, the parent dirs are
+	 * created if they do not exist
+	 *
+	 * @param path a file path, can be a relative path or a absolute path
+	 * @return the absolute path of the file, null if the file can not be created
+	 */
+	private AbsolutePath touchFile(String path) {
+		PathCursor cursor = new PathCursor(path);
+		AbsolutePath absParentDir = null;
+
+		/*
+		* 1. find the parent dir path, the cursor stops at the file name
+		* */
+		try {
+			absParentDir = this.resolveDir(cursor, true, true);
+		} catch (PathNotFoundException e) {
+			e.printStackTrace();
+			return null;
+		}
+		return this.touchIn(absParentDir, cursor);
+	}
+
+	/**
+	 * the second half of touchFile, the parent dir has been resolved
+	 *
+	 * @param absParentDir the parent dir, it is moved to the file
+	 * @param cursor at the file name
+	 * @return absParentDir, null if the file can not be created
+	 */
+	private AbsolutePath touchIn(AbsolutePath absParentDir, PathCursor cursor) {
+		if (cursor.length() == 0 || cursor.isCurrentDir() || cursor.isParentDir()) {
+			System.out.println("no file name in path");
+			return null;
+		}
+
+		InfoNode lowestNode = absParentDir.getLowestNode();
+		InfoNode fileNode = lowestNode.getChild(cursor);
+		boolean created = false;
+		/*
+		* check the filename is a file or a directory or is not exist
+		* */
+		if (fileNode != null && fileNode.getFileType() == FILE) {
+			// file exist, only need to update the times
+			fileNode.touch();
+		} else if (fileNode != null && fileNode.getFileType() == DIRECTORY) {
+			//same name directory exist, can not touch new file return null
+			System.out.println("found a directory with same name");
+			return null;
+		} else {
+			// file or directory is not exist, so we can create a new file
+			InfoNode newFile = new InfoNode(cursor.component(), FILE);
+			fileNode = this.mfsInstance.addNode(lowestNode, newFile);
+			if (fileNode == null) {
+				fileNode = newFile;
+				created = true;
+			} else if (fileNode.getFileType() == FILE) {
+				// another session has just created it
+				fileNode.touch();
+			} else {
+				System.out.println("found a directory with same name");
+				return null;
+			}
+		}
+
+		//absosult path drill down to the file node
+		absParentDir.appendRelativePath(fileNode);
+		if (created) {
+			this.mfsInstance.changed(Kind.CREATE, fileNode);
+		}
+		PathIndex index = this.mfsInstance.getPathIndex();
+		if (created && index != null) {
+			index.put(absParentDir.toPathStr(), fileNode);
+		}
+		return absParentDir;
+	}
+
+	/**
+	 * @return the node of a file, null if the path does not exist or is a directory
+	 */
+	private InfoNode findFile(String path) {
+		InfoNode node = this.findNode(path);
+		return node != null && node.getFileType() == FILE ? node : null;
+	}
+
+	/**
+	 * find a file or a directory
+	 *
+	 * @param path a string of path to be find, can be a relative path or a absolute path
+	 * @return the node of the path, null if there is no such file or directory
+	 */
+	private InfoNode findNode(String path) {
+		PathCursor cursor = new PathCursor(path);
+		AbsolutePath absParentDir = null;
+		try {
+			absParentDir = this.resolveDir(cursor, false, true);
+		} catch (PathNotFoundException e) {
+			return null;
+		}
+		if (cursor.length() == 0 || cursor.isCurrentDir()) {
+			return absParentDir.getLowestNode();
+		}
+		if (cursor.isParentDir()) {
+			absParentDir.removeLowest();
+			return absParentDir.getLowestNode();
+		}
+		return absParentDir.getLowestNode().getChild(cursor);
+	}
+
 	/**
 	 * drill down to the deepest path recursively,and auto determine start from root
 	 * or from current working dir by the path argument
@@ -203,37 +1026,61 @@ public class InMemoryFileSystemSession implements FileSystem {
 	 */
 	private AbsolutePath findAbsDir(String path, boolean createIfNotExist) throws PathNotFoundException {
 		StringUtils.checkIsPath(path);
+		return this.resolveDir(new PathCursor(path), createIfNotExist, false);
+	}
+
+	/**
+	 * resolve the components of a path in a single pass, only the names of the
+	 * directories we create are copied out of the path string
+	 *
+	 * @param cursor a cursor that has not been moved yet
+	 * @param createIfNotExist if true, create new dir when dir is not exist
+	 * @param stopBeforeLast if true, the last component is not resolved and the cursor is
+	 * left on it, the cursor is empty if the path has no component at all
+	 * @return the absolute path we found or created
+	 * @throws PathNotFoundException throwed when no suitable path had found
+	 */
+	private AbsolutePath resolveDir(PathCursor cursor, boolean createIfNotExist, boolean stopBeforeLast)
+		throws PathNotFoundException {
+		PathIndex index = this.mfsInstance.getPathIndex();
+		if (index != null && cursor.isAbsolute()) {
+			AbsolutePath indexed = this.resolveFromIndex(index, cursor, stopBeforeLast);
+			if (indexed != null) {
+				Metrics.resolved(0);
+				return indexed;
+			}
+		}
 
 		/*
 		 * dertimine the initial diretory to look up
 		 * */
 		AbsolutePath absPath = null;
-		if (path.startsWith(ROOT_PATH)) {
+		if (cursor.isAbsolute()) {
 			absPath = new AbsolutePath(mfsInstance.getRoot());
 		} else {
 			absPath = new AbsolutePath(this.workingDir);
 		}
 
-		Iterable<String> dirs = StringUtils.splitPath(path);
-
 		/*
 			drill down to the lowest dir
 		*/
-		InfoNode lowestDir = absPath.getLowestNode();
-		for (String dir : dirs) {
+		int steps = 0;
+		while (cursor.next()) {
+			if (stopBeforeLast && cursor.isLast()) {
+				break;
+			}
 			/*
 			deal with the case of current dir
 			* */
-			if (".".equals(dir)) {
+			if (cursor.isCurrentDir()) {
 				continue;
 			}
 
 			/*
 			deal with the case of upper dir
 			* */
-			if ("..".equals(dir)) {
+			if (cursor.isParentDir()) {
 				absPath.removeLowest();
-				lowestDir = absPath.getLowestNode();
 				continue;
 			}
 
@@ -243,35 +1090,101 @@ public class InMemoryFileSystemSession implements FileSystem {
 			 if not, we can create it when in mkdir mode or throw a PathNotFoundException
 			*/
 
-			InfoNode nextDir = lowestDir.getChildren().get(dir);
-			if (nextDir != null && nextDir.getFileType() == DIRECTORY) {
-				//sub dir already exist, do nothing
+			this.stepInto(absPath, cursor, createIfNotExist, index);
+			++steps;
+		}
 
-			} else if (nextDir == null && createIfNotExist) {
-				//there is no file with the same name, so create a new dir
-				nextDir = new InfoNode(dir, DIRECTORY);
-				lowestDir.addChild(nextDir);
-			} else {
-				// other cases
-				throw new PathNotFoundException("can not find path:" + dir + " in " + absPath.toPathStr());
+		Metrics.resolved(steps);
+		return absPath;
+	}
+
+	/**
+	 * move absPath into the sub dir named by the current component of cursor
+	 *
+	 * @param absPath a dir, it is moved to the sub dir
+	 * @param createIfNotExist create the sub dir if it does not exist, in mkdir mode
+	 * @throws PathNotFoundException if the sub dir does not exist and is not created, or is a file
+	 */
+	private void stepInto(AbsolutePath absPath, PathCursor cursor, boolean createIfNotExist, PathIndex index)
+		throws PathNotFoundException {
+		InfoNode lowestDir = absPath.getLowestNode();
+		if (Metrics.ENABLED) {
+			Metrics.lookedUp(lowestDir.getChildCount());
+		}
+		InfoNode nextDir = lowestDir.getChild(cursor);
+		boolean created = false;
+		if (nextDir != null && nextDir.getFileType() == DIRECTORY) {
+			//sub dir already exist, do nothing
+
+		} else if (nextDir == null && createIfNotExist) {
+			//there is no file with the same name, so create a new dir, unless another
+			//session creates the same name first, then that node is used
+			InfoNode newDir = new InfoNode(cursor.component(), DIRECTORY);
+			nextDir = this.mfsInstance.addNode(lowestDir, newDir);
+			if (nextDir == null) {
+				nextDir = newDir;
+				created = true;
+			} else if (nextDir.getFileType() != DIRECTORY) {
+				throw new PathNotFoundException("can not find path:" + cursor.component() + " in " + absPath.toPathStr());
 			}
-			absPath.appendRelativePath(nextDir);
-			lowestDir = nextDir;
+		} else {
+			// other cases
+			throw new PathNotFoundException("can not find path:" + cursor.component() + " in " + absPath.toPathStr());
 		}
+		absPath.appendRelativePath(nextDir);
+		if (created) {
+			this.mfsInstance.changed(Kind.CREATE, nextDir);
+		}
+		if (created && index != null) {
+			index.put(absPath.toPathStr(), nextDir);
+		}
+	}
 
-		return absPath;
+	/**
+	 * try to resolve a canonical absolute path with one probe of the path index
+	 *
+	 * @return the absolute path of the dir, or null if the index can not answer it and
+	 * the tree has to be walked, in that case the cursor has not been moved
+	 */
+	private AbsolutePath resolveFromIndex(PathIndex index, PathCursor cursor, boolean stopBeforeLast) {
+		String path = cursor.path();
+		if (!PathIndex.isCanonical(path)) {
+			return null;
+		}
+		String dirPath = path;
+		if (stopBeforeLast) {
+			int lastDelimiter = path.lastIndexOf(DELIMITER);
+			dirPath = lastDelimiter == 0 ? ROOT_PATH : path.substring(0, lastDelimiter);
+		}
+
+		// the entries of a subtree being renamed are moved after the subtree
+		long renames = this.mfsInstance.getRenameSequence();
+		InfoNode dir = index.getLive(dirPath);
+		if (dir == null || dir.getFileType() != DIRECTORY
+			|| this.mfsInstance.getRunningRenames() != 0 || renames != this.mfsInstance.getRenameSequence()) {
+			return null;
+		}
+		if (stopBeforeLast) {
+			// leave the cursor on the file name like the walk does
+			while (cursor.next() && !cursor.isLast()) {
+			}
+		}
+		return AbsolutePath.ofIndexed(dir, dirPath);
 	}
 
 	private boolean workingDirhasBeenRemoved() {
 		/*
-		* if we can retrive the current working dir from root, then it has not been removed
+		* nothing has been removed since we last saw the working dir alive, otherwise
+		* follow the parent links of the working dir to see if one of them is detached
 		* */
-		try{
-			this.findAbsDir(this.workingDir.toPathStr(), false);
+		long generation = this.mfsInstance.getRemovalGeneration();
+		if (generation == this.liveGeneration) {
 			return false;
-		}catch (PathNotFoundException e) {
-			e.printStackTrace();
 		}
-		return true;
+		if (!this.workingDir.getLowestNode().isLive()) {
+			return true;
+		}
+		this.liveGeneration = generation;
+		return false;
 	}
 }
@@ -0,0 +1,51 @@
+package com.lyj.mfs;
+
+import com.google.common.base.MoreObjects;
+import java.util.List;
+
+/**
+ * @program: inmemoryFileSystem
+ * @description: one page of a directory listing, see InMemoryFileSystemSession.ls(String, String, int).
+ * the cursor is the last name of the page, pass it back to get the next page. it stays valid
+ * when the entry is removed meanwhile, since a page starts at the first name after the cursor
+ * @author: LYJ
+ * @create: 2026-10-20 16:40
+ **/
+
+public final class ListPage {
+
+	private final List<String> names;
+
+	private final String cursor;
+
+	ListPage(List<String> names, String cursor) {
+		this.names = names;
+		this.cursor = cursor;
+	}
+
+	/**
+	 * @return the names of this page in name order
+	 */
+	public List<String> getNames() {
+		return names;
+	}
+
+	/**
+	 * @return where the next page starts, null if this is the last page
+	 */
+	public String getCursor() {
+		return cursor;
+	}
+
+	public boolean hasMore() {
+		return cursor != null;
+	}
+
+	@Override
+	public String toString() {
+		return MoreObjects.toStringHelper(this)
+			.add("names", names.size())
+			.add("cursor", cursor)
+			.toString();
+	}
+}
@@ -0,0 +1,181 @@
+package com.lyj.mfs;
+
+import static com.lyj.mfs.domain.InfoNode.FileType.DIRECTORY;
+import static com.lyj.mfs.utils.Const.DELIMITER;
+import static com.lyj.mfs.utils.Const.ROOT_PATH;
+
+import com.google.common.base.Preconditions;
+import com.lyj.mfs.InMemoryFileSystem.Stats;
+import com.lyj.mfs.domain.InfoNode;
+import com.lyj.mfs.domain.Versions;
+import com.lyj.mfs.persist.SnapshotWriter;
+import com.lyj.mfs.utils.PathCursor;
+import com.lyj.mfs.utils.StringUtils;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * @program: inmemoryFileSystem
+ * @description: a frozen view of the namespace at one point in time.
+ * opening it closes the current write epoch and waits for the single changes still running
+ * in it, writers go on meanwhile and the entries they change keep the version this snapshot
+ * sees, see Versions. every single change, like one entry added or one node moved, is in it
+ * as a whole or not at all, an operation made of several changes, like mkdir with its
+ * parents, may be in it in part. a node is never seen twice or in two places.
+ * a lookup costs what it costs live, a directory that has been promoted to a skip list
+ * also visits the entries removed or added after the snapshot when it is listed.
+ * the content of a file is the one of the epoch too, see InfoNode#contentAt.
+ * a snapshot must be closed, the versions it holds are kept until then
+ * @author: LYJ
+ * @create: 2026-10-19 17:05
+ **/
+
+public class NamespaceSnapshot implements AutoCloseable {
+
+	private final InMemoryFileSystem mfsInstance;
+
+	private final long epoch;
+
+	private volatile boolean closed;
+
+	NamespaceSnapshot(InMemoryFileSystem instance) {
+		this.mfsInstance = instance;
+		this.epoch = Versions.openSnapshot();
+	}
+
+	public long getEpoch() {
+		return epoch;
+	}
+
+	/**
+	 * @param path an absolute path
+	 * @return the names in the directory sorted, null if the path is not a directory
+	 */
+	public List<String> ls(String path) {
+		InfoNode dir = this.find(path);
+		if (dir == null || dir.getFileType() != DIRECTORY) {
+			return null;
+		}
+		List<String> ret = new ArrayList<>(dir.getChildCount(epoch));
+		for (InfoNode child : dir.getChildren(epoch)) {
+			ret.add(child.getPath(epoch));
+		}
+		return ret;
+	}
+
+	/**
+	 * @param path an absolute path
+	 * @return true if the path was a file or a directory when the snapshot was taken
+	 */
+	public boolean exists(String path) {
+		return this.find(path) != null;
+	}
+
+	/**
+	 * @return the counts of the whole tree, it walks the tree
+	 */
+	public Stats getStats() {
+		checkOpen();
+		return mfsInstance.walkStats(epoch);
+	}
+
+	/**
+	 * visit every node in depth first order, parents before their children and siblings
+	 * sorted by name, the root not included
+	 * @param visitor gets the absolute path and the node
+	 */
+	public void walk(BiConsumer<String, InfoNode> visitor) {
+		checkOpen();
+		// an explicit stack instead of recursion, trees can be deeper than the thread stack
+		Deque<Iterator<InfoNode>> stack = new ArrayDeque<>();
+		StringBuilder path = new StringBuilder();
+		List<Integer> lengths = new ArrayList<>();
+		stack.push(mfsInstance.getRoot().getChildren(epoch).iterator());
+		while (!stack.isEmpty()) {
+			Iterator<InfoNode> children = stack.peek();
+			if (!children.hasNext()) {
+				stack.pop();
+				if (!lengths.isEmpty()) {
+					path.setLength(lengths.remove(lengths.size() - 1));
+				}
+				continue;
+			}
+			InfoNode node = children.next();
+			int length = path.length();
+			path.append(DELIMITER).append(node.getPath(epoch));
+			visitor.accept(path.toString(), node);
+			if (node.getFileType() == DIRECTORY) {
+				lengths.add(length);
+				stack.push(node.getChildren(epoch).iterator());
+			} else {
+				path.setLength(length);
+			}
+		}
+	}
+
+	/**
+	 * save the tree as it was when the snapshot was taken into a snapshot file
+	 * @return the number of nodes written, the root not included
+	 */
+	public long writeTo(Path file) throws IOException {
+		checkOpen();
+		return SnapshotWriter.write(mfsInstance.getRoot(), epoch, file);
+	}
+
+	/**
+	 * save the tree at a checkpoint, the journal records of its epoch and the ones before are
+	 * in it, see InMemoryFileSystem#checkpoint
+	 * @param journalSeq the last sequence number given out when the tree is written
+	 */
+	long writeTo(Path file, long journalSeq) throws IOException {
+		checkOpen();
+		return SnapshotWriter.write(mfsInstance.getRoot(), epoch, file, journalSeq, epoch);
+	}
+
+	@Override
+	public void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		Versions.releaseSnapshot(epoch);
+	}
+
+	private InfoNode find(String path) {
+		StringUtils.checkIsPath(path);
+		Preconditions.checkArgument(path.startsWith(ROOT_PATH), "path must be absolute");
+		checkOpen();
+		Deque<InfoNode> dirs = new ArrayDeque<>();
+		InfoNode node = mfsInstance.getRoot();
+		PathCursor cursor = new PathCursor(path);
+		while (cursor.next()) {
+			if (cursor.isCurrentDir()) {
+				continue;
+			}
+			if (cursor.isParentDir()) {
+				node = dirs.isEmpty() ? node : dirs.pop();
+				continue;
+			}
+			if (node.getFileType() != DIRECTORY) {
+				return null;
+			}
+			InfoNode child = node.getChild(cursor, epoch);
+			if (child == null) {
+				return null;
+			}
+			dirs.push(node);
+			node = child;
+		}
+		return node;
+	}
+
+	private void checkOpen() {
+		Preconditions.checkState(!closed, "snapshot is closed");
+	}
+}
@@ -0,0 +1,139 @@
+package com.lyj.mfs;
+
+import static com.lyj.mfs.utils.Const.ROOT_PATH;
+
+import com.google.common.base.CharMatcher;
+import com.lyj.mfs.domain.InfoNode;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @program: inmemoryFileSystem
+ * @description: an optional index from canonical absolute path to node, so an absolute
+ * lookup costs one hash probe instead of one skip list search per component.
+ * the index is only a shortcut, a miss always falls back to walking the tree.
+ * the entries of a removed subtree are purged in the background by the Reclaimer, while no
+ * purge is running every entry is a live node and a hit is one probe, otherwise a hit is
+ * checked by following its parent links, which costs O(depth) again
+ * @author: LYJ
+ * @create: 2026-10-18 13:05
+ **/
+
+class PathIndex {
+
+	private static final CharMatcher WHITESPACE = CharMatcher.whitespace();
+
+	private final Map<String, InfoNode> nodes = new ConcurrentHashMap<>();
+
+	private final AtomicLong purgesStarted = new AtomicLong();
+
+	private final AtomicLong purgesDone = new AtomicLong();
+
+	/**
+	 * a removed subtree has been handed to the Reclaimer, its entries are stale until purgeDone
+	 */
+	void purgeStarted() {
+		purgesStarted.incrementAndGet();
+	}
+
+	void purgeDone() {
+		purgesDone.incrementAndGet();
+	}
+
+	/**
+	 * a purge that ends between the two reads has removed its entries before the probe,
+	 * one that starts during the probe is seen by the second read of purgesStarted
+	 * @param canonicalPath an absolute path, see {@link #isCanonical(String)}
+	 * @return the indexed node if it is live, null if there is none
+	 */
+	InfoNode getLive(String canonicalPath) {
+		long started = purgesStarted.get();
+		boolean exact = purgesDone.get() == started;
+		InfoNode node = nodes.get(canonicalPath);
+		if (node == null || (exact && purgesStarted.get() == started)) {
+			return node;
+		}
+		return node.isLive() ? node : null;
+	}
+
+	void put(String canonicalPath, InfoNode node) {
+		nodes.put(canonicalPath, node);
+	}
+
+	/**
+	 * remove the entry of a node, an entry that has been replaced by a new node is kept
+	 */
+	void remove(String canonicalPath, InfoNode node) {
+		nodes.remove(canonicalPath, node);
+	}
+
+	/**
+	 * index every node under root, the tree is walked without recursion so a deep tree
+	 * can not overflow the stack
+	 */
+	void addTree(InfoNode root) {
+		putSubtree(ROOT_PATH, root);
+	}
+
+	/**
+	 * index node at path and every node under it, it walks the subtree
+	 */
+	void putSubtree(String path, InfoNode node) {
+		TreeSpliterator.stream(node, path, Long.MAX_VALUE, Integer.MAX_VALUE)
+			.forEach(entry -> nodes.put(entry.getPath(), entry.getNode()));
+	}
+
+	/**
+	 * move the entries of a subtree that has been renamed from oldPath to newPath,
+	 * it walks the subtree
+	 */
+	void move(String oldPath, String newPath, InfoNode node) {
+		TreeSpliterator.stream(node, newPath, Long.MAX_VALUE, Integer.MAX_VALUE).forEach(entry -> {
+			String path = entry.getPath();
+			nodes.remove(oldPath + path.substring(newPath.length()), entry.getNode());
+			nodes.put(path, entry.getNode());
+		});
+	}
+
+	int size() {
+		return nodes.size();
+	}
+
+	/**
+	 * a canonical path is the form that {@link com.lyj.mfs.domain.AbsolutePath#toPathStr()}
+	 * produces, eg. "/a/b": absolute, no empty, "." or ".." component, no trailing delimiter
+	 * and no whitespace around a component. only canonical paths can be probed directly
+	 * @param path the path string to check
+	 * @return true if path is canonical
+	 */
+	static boolean isCanonical(String path) {
+		int length = path.length();
+		if (length == 0 || path.charAt(0) != '/') {
+			return false;
+		}
+		if (length == 1) {
+			return true;
+		}
+		int componentStart = 1;
+		for (int i = 1; i <= length; ++i) {
+			if (i < length && path.charAt(i) != '/') {
+				continue;
+			}
+			int componentLength = i - componentStart;
+			if (componentLength == 0) {
+				return false;
+			}
+			char first = path.charAt(componentStart);
+			char last = path.charAt(i - 1);
+			if (WHITESPACE.matches(first) || WHITESPACE.matches(last)) {
+				return false;
+			}
+			if (first == '.' && (componentLength == 1 || (componentLength == 2 && last == '.'))) {
+				return false;
+			}
+			componentStart = i + 1;
+		}
+		return true;
+	}
+}
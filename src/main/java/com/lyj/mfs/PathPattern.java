@@ -0,0 +1,149 @@
+package com.lyj.mfs;
+
+import static com.lyj.mfs.utils.Const.DELIMITER;
+
+import com.google.common.base.Preconditions;
+import com.lyj.mfs.utils.Glob;
+import com.lyj.mfs.utils.PathCursor;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @program: inmemoryFileSystem
+ * @description: a compiled find pattern like /data/**&#47;part-*.parquet, see InMemoryFileSystemSession.find.
+ * every segment is a Glob for one name, "**" matches zero or more names. the segments a node
+ * can be at are kept as the bits of a long, so walking a tree with a pattern allocates nothing
+ * per node and a node without any bit left is never descended into.
+ * a pattern is compiled once and can be used by many finds at the same time
+ * @author: LYJ
+ * @create: 2026-10-20 18:40
+ **/
+
+public final class PathPattern {
+
+	/**
+	 * a bit per segment and one for the end
+	 */
+	private static final int MAX_SEGMENTS = 63;
+
+	private final String pattern;
+
+	private final boolean absolute;
+
+	/**
+	 * null for "**"
+	 */
+	private final Glob[] segments;
+
+	/**
+	 * the bit of the position after the last segment, set when a node matches
+	 */
+	private final long end;
+
+	private PathPattern(String pattern, boolean absolute, Glob[] segments) {
+		this.pattern = pattern;
+		this.absolute = absolute;
+		this.segments = segments;
+		this.end = 1L << segments.length;
+	}
+
+	/**
+	 * @param pattern an absolute pattern starts at the root, a relative one at the working dir.
+	 * "." segments are skipped, ".." is not supported
+	 * @exception throws IllegalArgumentException if the pattern is malformed
+	 */
+	public static PathPattern compile(String pattern) {
+		Preconditions.checkArgument(pattern != null, "pattern can not be null");
+		List<Glob> segments = new ArrayList<>();
+		PathCursor cursor = new PathCursor(pattern);
+		while (cursor.next()) {
+			if (cursor.isCurrentDir()) {
+				continue;
+			}
+			Preconditions.checkArgument(!cursor.isParentDir(), ".. is not supported in a pattern: %s", pattern);
+			String segment = cursor.component();
+			if ("**".equals(segment)) {
+				// a run of ** is one **
+				if (segments.isEmpty() || segments.get(segments.size() - 1) != null) {
+					segments.add(null);
+				}
+			} else {
+				segments.add(Glob.compile(segment));
+			}
+		}
+		Preconditions.checkArgument(segments.size() <= MAX_SEGMENTS, "too many segments in %s", pattern);
+		return new PathPattern(pattern, pattern.startsWith(DELIMITER), segments.toArray(new Glob[0]));
+	}
+
+	public boolean isAbsolute() {
+		return absolute;
+	}
+
+	/**
+	 * @return the positions of a node at the start of the pattern
+	 */
+	long start() {
+		return closure(1L);
+	}
+
+	/**
+	 * @return true if a node at positions matches the whole pattern
+	 */
+	boolean matches(long positions) {
+		return (positions & end) != 0;
+	}
+
+	/**
+	 * @return true if a child of a node at positions can still match
+	 */
+	boolean canDescend(long positions) {
+		return (positions & (end - 1)) != 0;
+	}
+
+	/**
+	 * @return the only segment a child must match when it is a single glob, null if a child
+	 * has to be checked against several segments or a "**"
+	 */
+	Glob onlySegment(long positions) {
+		long open = positions & (end - 1);
+		if (Long.bitCount(open) != 1) {
+			return null;
+		}
+		return segments[Long.numberOfTrailingZeros(open)];
+	}
+
+	/**
+	 * @return the positions of a child named name of a node at positions, 0 if it can not match
+	 */
+	long step(long positions, CharSequence name) {
+		long next = 0;
+		for (long open = positions & (end - 1); open != 0; open &= open - 1) {
+			int i = Long.numberOfTrailingZeros(open);
+			Glob segment = segments[i];
+			if (segment == null) {
+				// ** takes the name and stays
+				next |= 1L << i;
+			} else if (segment.matches(name)) {
+				next |= 1L << (i + 1);
+			}
+		}
+		return closure(next);
+	}
+
+	/**
+	 * ** can match zero names, so a position at it is also a position after it
+	 */
+	private long closure(long positions) {
+		for (int i = 0; i < segments.length; ++i) {
+			if (segments[i] == null && (positions & (1L << i)) != 0) {
+				positions |= 1L << (i + 1);
+			}
+		}
+		return positions;
+	}
+
+	@Override
+	public String toString() {
+		return pattern;
+	}
+}
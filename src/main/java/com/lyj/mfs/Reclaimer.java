@@ -0,0 +1,188 @@
+package com.lyj.mfs;
+
+import static com.lyj.mfs.domain.InfoNode.FileType.FILE;
+import static com.lyj.mfs.utils.Const.DELIMITER;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.lyj.mfs.domain.InfoNode;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @program: inmemoryFileSystem
+ * @description: walks removed subtrees in the background to drop their index entries and
+ * free their file content, so a recursive rm only detaches the subtree and returns.
+ * a tick visits at most NODES_PER_TICK nodes and the next tick resumes the walk where it
+ * stopped, so a huge subtree is reclaimed in small steps that leave the cpu to the sessions.
+ * the counters do not wait for it, they are updated by the rm from the subtree aggregates
+ * @author: LYJ
+ * @create: 2026-10-20 09:20
+ **/
+
+class Reclaimer {
+
+	static final int NODES_PER_TICK = Integer.getInteger("mfs.reclaim.nodesPerTick", 4096);
+
+	static final long TICK_MICROS = Long.getLong("mfs.reclaim.tickMicros", 1000);
+
+	private final Queue<Work> queue = new ConcurrentLinkedQueue<>();
+
+	private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+		new ThreadFactoryBuilder().setNameFormat("mfs-reclaimer").setDaemon(true).build());
+
+	/**
+	 * the walk a tick stopped in, only touched by the reclaimer thread
+	 */
+	private Work current;
+
+	Reclaimer() {
+		executor.scheduleWithFixedDelay(this::tick, TICK_MICROS, TICK_MICROS, TimeUnit.MICROSECONDS);
+	}
+
+	/**
+	 * reclaim a detached subtree later
+	 * @param path the absolute path node had, only needed when index is not null
+	 * @param index the path index at the time of the removal, null if there was none
+	 */
+	void submit(InfoNode node, String path, PathIndex index) {
+		if (index != null) {
+			index.purgeStarted();
+		}
+		queue.offer(new Work(node, path, index));
+	}
+
+	/**
+	 * wait until every subtree submitted before has been reclaimed
+	 */
+	void awaitIdle() {
+		try {
+			executor.submit(() -> {
+				while (step(Integer.MAX_VALUE)) {
+				}
+			}).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	/**
+	 * @return the number of subtrees waiting, the one being walked included
+	 */
+	int backlog() {
+		return queue.size() + (current != null ? 1 : 0);
+	}
+
+	private void tick() {
+		try {
+			step(NODES_PER_TICK);
+		} catch (Throwable e) {
+			// a failed walk is dropped, the scheduler would stop ticking otherwise
+			e.printStackTrace();
+			current.finish();
+			current = null;
+		}
+	}
+
+	/**
+	 * @return true if there is more to do
+	 */
+	private boolean step(int budget) {
+		while (budget > 0) {
+			if (current == null) {
+				current = queue.poll();
+				if (current == null) {
+					return false;
+				}
+			}
+			budget = current.walk(budget);
+			if (current.isDone()) {
+				current.finish();
+				current = null;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * a resumable depth first walk of one subtree
+	 */
+	private static final class Work {
+		private final PathIndex index;
+		private final StringBuilder path;
+		private final Deque<Iterator<InfoNode>> stack = new ArrayDeque<>();
+		private final Deque<Integer> lengths = new ArrayDeque<>();
+		private InfoNode next;
+
+		private Work(InfoNode node, String path, PathIndex index) {
+			this.index = index;
+			this.path = index != null ? new StringBuilder(path) : null;
+			this.next = node;
+		}
+
+		private boolean isDone() {
+			return next == null && stack.isEmpty();
+		}
+
+		private void finish() {
+			if (index != null) {
+				index.purgeDone();
+			}
+		}
+
+		/**
+		 * @return the budget left
+		 */
+		private int walk(int budget) {
+			while (budget > 0) {
+				if (next != null) {
+					visit(next);
+					next = null;
+					--budget;
+					continue;
+				}
+				Iterator<InfoNode> children = stack.peek();
+				if (children == null) {
+					return budget;
+				}
+				if (!children.hasNext()) {
+					stack.pop();
+					if (path != null) {
+						path.setLength(lengths.pop());
+					}
+					continue;
+				}
+				next = children.next();
+				if (path != null) {
+					path.append(DELIMITER).append(next.getPath());
+				}
+			}
+			return budget;
+		}
+
+		private void visit(InfoNode node) {
+			if (index != null) {
+				index.remove(path.toString(), node);
+			}
+			if (node.getFileType() == FILE) {
+				node.releaseContent();
+				if (path != null) {
+					path.setLength(path.length() - node.getPath().length() - 1);
+				}
+				return;
+			}
+			if (path != null) {
+				lengths.push(path.length() - node.getPath().length() - 1);
+			}
+			stack.push(node.getChildren().iterator());
+		}
+	}
+}
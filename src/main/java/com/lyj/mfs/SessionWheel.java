@@ -0,0 +1,165 @@
+package com.lyj.mfs;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * @program: inmemoryFileSystem
+ * @description: a hashed timer wheel that finds idle sessions. a session only writes the
+ * current tick into its last access on use, the wheel is not touched, so using a session
+ * costs no lock and no queue operation. when the slot of a session comes up, the wheel checks
+ * its last access and either evicts it or puts it into the slot of its new deadline,
+ * so an idle session is evicted between timeout and timeout + one tick after its last use
+ * @author: LYJ
+ * @create: 2026-10-20 11:05
+ **/
+
+class SessionWheel {
+
+	static final long TICK_MILLIS = Long.getLong("mfs.session.tickMillis", 1000);
+
+	static final long DEFAULT_IDLE_TIMEOUT_MILLIS = Long.getLong("mfs.session.idleTimeoutMillis", 30 * 60 * 1000L);
+
+	/**
+	 * a power of two, a deadline further than this many ticks away waits for more rounds
+	 */
+	private static final int SLOTS = 512;
+
+	private final Queue<Handle>[] slots;
+
+	private final Consumer<InMemoryFileSystemSession> onIdle;
+
+	private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+		new ThreadFactoryBuilder().setNameFormat("mfs-sessions").setDaemon(true).build());
+
+	/**
+	 * the coarse clock of the sessions, only advanced by the wheel thread
+	 */
+	private volatile long now;
+
+	private volatile long timeoutTicks;
+
+	@SuppressWarnings("unchecked")
+	SessionWheel(long idleTimeoutMillis, Consumer<InMemoryFileSystemSession> onIdle) {
+		this.slots = (Queue<Handle>[]) new Queue<?>[SLOTS];
+		for (int i = 0; i < SLOTS; ++i) {
+			this.slots[i] = new ConcurrentLinkedQueue<>();
+		}
+		this.onIdle = onIdle;
+		setIdleTimeout(idleTimeoutMillis);
+		executor.scheduleWithFixedDelay(this::tick, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @param millis how long a session can stay unused, Long.MAX_VALUE turns eviction off.
+	 * sessions already in the wheel get the new timeout when their slot comes up
+	 * and sessions that were not watched when it was turned off are never evicted
+	 */
+	void setIdleTimeout(long millis) {
+		Preconditions.checkArgument(millis > 0, "idle timeout must be positive");
+		this.timeoutTicks = millis == Long.MAX_VALUE ? Long.MAX_VALUE : Math.max(1, (millis + TICK_MILLIS - 1) / TICK_MILLIS);
+	}
+
+	long getIdleTimeoutMillis() {
+		long ticks = this.timeoutTicks;
+		return ticks == Long.MAX_VALUE ? Long.MAX_VALUE : ticks * TICK_MILLIS;
+	}
+
+	/**
+	 * @return the current tick, what a session stores as its last access
+	 */
+	long now() {
+		return now;
+	}
+
+	/**
+	 * start watching a new session, its last access must be set already
+	 */
+	void add(InMemoryFileSystemSession session) {
+		long ticks = this.timeoutTicks;
+		if (ticks == Long.MAX_VALUE) {
+			return;
+		}
+		Handle handle = new Handle(session);
+		session.wheelHandle = handle;
+		schedule(handle, session.getLastAccessTick() + ticks);
+	}
+
+	/**
+	 * stop watching a closed session, its handle stays in the slot until the slot comes up
+	 * but does not keep the session alive anymore
+	 */
+	void remove(InMemoryFileSystemSession session) {
+		Handle handle = session.wheelHandle;
+		if (handle != null) {
+			handle.session = null;
+		}
+	}
+
+	private void schedule(Handle handle, long deadline) {
+		// a slot that has just been passed would be seen again only after a whole round
+		long at = Math.max(deadline, now + 1);
+		handle.deadline = at;
+		slots[(int) (at & (SLOTS - 1))].offer(handle);
+	}
+
+	private void tick() {
+		try {
+			long current = now + 1;
+			now = current;
+			Queue<Handle> slot = slots[(int) (current & (SLOTS - 1))];
+			List<Handle> due = new ArrayList<>();
+			for (Handle handle; (handle = slot.poll()) != null; ) {
+				due.add(handle);
+			}
+			long ticks = this.timeoutTicks;
+			for (Handle handle : due) {
+				InMemoryFileSystemSession session = handle.session;
+				if (session == null || session.isClosed()) {
+					continue;
+				}
+				if (handle.deadline > current) {
+					// more rounds to go
+					slot.offer(handle);
+					continue;
+				}
+				if (ticks == Long.MAX_VALUE) {
+					continue;
+				}
+				long deadline = session.getLastAccessTick() + ticks;
+				if (deadline <= current) {
+					onIdle.accept(session);
+				} else {
+					schedule(handle, deadline);
+				}
+			}
+		} catch (Throwable e) {
+			// the scheduler would stop ticking otherwise
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * what a slot holds for a session, cleared when the session is closed
+	 */
+	static final class Handle {
+		private volatile InMemoryFileSystemSession session;
+
+		/**
+		 * the tick the wheel checks the session at, only used by the wheel
+		 */
+		private long deadline;
+
+		private Handle(InMemoryFileSystemSession session) {
+			this.session = session;
+		}
+	}
+}
@@ -0,0 +1,186 @@
+package com.lyj.mfs;
+
+import static com.lyj.mfs.domain.InfoNode.FileType.DIRECTORY;
+
+import com.lyj.mfs.domain.InfoNode;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * @program: inmemoryFileSystem
+ * @description: a depth first walk of a subtree that splits by subtrees for parallel streams.
+ * the walk is a stack of frames, a frame holds the children of a directory that are still
+ * to be visited, and the children of one frame are independent of every other frame.
+ * a split hands over the shallowest frame, or half of the next children of the only frame,
+ * a directory with a single child is stepped into so a chain of them can still be split.
+ * sizes are estimated from the subtree aggregates.
+ * the walk is weakly consistent like the iterators of the children, a node added or removed
+ * meanwhile may or may not be met, unless the walk is in the epoch of a namespace snapshot
+ * @author: LYJ
+ * @create: 2026-10-20 21:10
+ **/
+
+final class TreeSpliterator implements Spliterator<WalkEntry> {
+
+	/**
+	 * the most children taken out of a frame to split them
+	 */
+	private static final int SPLIT_BATCH = 1024;
+
+	private final long epoch;
+
+	private final int maxDepth;
+
+	/**
+	 * entries to accept before the frames, their children are in a frame already
+	 */
+	private final Deque<WalkEntry> pending = new ArrayDeque<>();
+
+	private final Deque<Frame> stack = new ArrayDeque<>();
+
+	private long estimate;
+
+	private TreeSpliterator(long epoch, int maxDepth, long estimate) {
+		this.epoch = epoch;
+		this.maxDepth = maxDepth;
+		this.estimate = estimate;
+	}
+
+	/**
+	 * @param epoch the epoch of a namespace snapshot, Long.MAX_VALUE for the current tree
+	 * @param maxDepth the most names below base an entry can have
+	 * @return a stream of base and everything under it, sequential
+	 */
+	static Stream<WalkEntry> stream(InfoNode base, String basePath, long epoch, int maxDepth) {
+		TreeSpliterator spliterator = new TreeSpliterator(epoch, maxDepth, sizeOf(base));
+		WalkEntry entry = new WalkEntry(base, base.getPath(epoch), basePath);
+		spliterator.pending.add(entry);
+		spliterator.descend(entry);
+		return StreamSupport.stream(spliterator, false);
+	}
+
+	@Override
+	public boolean tryAdvance(Consumer<? super WalkEntry> action) {
+		WalkEntry entry = pending.poll();
+		while (entry == null && !stack.isEmpty()) {
+			Frame frame = stack.peek();
+			if (frame.children.hasNext()) {
+				entry = entry(frame.dir, frame.children.next());
+				descend(entry);
+			} else {
+				stack.pop();
+			}
+		}
+		if (entry == null) {
+			return false;
+		}
+		if (estimate > 0) {
+			--estimate;
+		}
+		action.accept(entry);
+		return true;
+	}
+
+	@Override
+	public Spliterator<WalkEntry> trySplit() {
+		for (;;) {
+			if (stack.size() > 1) {
+				Frame bottom = stack.pollLast();
+				if (!bottom.children.hasNext()) {
+					continue;
+				}
+				long given = estimate / 2;
+				estimate -= given;
+				return split(bottom, given);
+			}
+			Frame top = stack.peek();
+			if (top == null) {
+				return null;
+			}
+			List<InfoNode> batch = new ArrayList<>();
+			while (batch.size() < SPLIT_BATCH && top.children.hasNext()) {
+				batch.add(top.children.next());
+			}
+			if (batch.size() > 1) {
+				return splitBatch(top, batch);
+			}
+			stack.pop();
+			if (batch.isEmpty()) {
+				return null;
+			}
+			WalkEntry only = entry(top.dir, batch.get(0));
+			if (only.getFileType() != DIRECTORY || only.getDepth() >= maxDepth) {
+				stack.push(new Frame(top.dir, batch.iterator()));
+				return null;
+			}
+			// step into the only child, it is accepted first and its children can be split
+			pending.add(only);
+			descend(only);
+		}
+	}
+
+	/**
+	 * keep the rest of top, hand over the first half of batch by size and keep the second
+	 */
+	private Spliterator<WalkEntry> splitBatch(Frame top, List<InfoNode> batch) {
+		long total = 0;
+		for (InfoNode node : batch) {
+			total += sizeOf(node);
+		}
+		int cut = 1;
+		long given = sizeOf(batch.get(0));
+		while (cut < batch.size() - 1 && given + sizeOf(batch.get(cut)) <= total / 2) {
+			given += sizeOf(batch.get(cut++));
+		}
+		stack.push(new Frame(top.dir, batch.subList(cut, batch.size()).iterator()));
+		estimate = Math.max(0, estimate - given);
+		return split(new Frame(top.dir, batch.subList(0, cut).iterator()), given);
+	}
+
+	private TreeSpliterator split(Frame frame, long estimate) {
+		TreeSpliterator ret = new TreeSpliterator(epoch, maxDepth, estimate);
+		ret.stack.push(frame);
+		return ret;
+	}
+
+	private WalkEntry entry(WalkEntry dir, InfoNode node) {
+		return new WalkEntry(dir, node, node.getPath(epoch));
+	}
+
+	private void descend(WalkEntry entry) {
+		if (entry.isDirectory() && entry.getDepth() < maxDepth) {
+			stack.push(new Frame(entry, entry.getNode().getChildren(epoch).iterator()));
+		}
+	}
+
+	private static long sizeOf(InfoNode node) {
+		return 1 + node.getSubtreeFiles() + node.getSubtreeDirs();
+	}
+
+	@Override
+	public long estimateSize() {
+		return estimate;
+	}
+
+	@Override
+	public int characteristics() {
+		return NONNULL;
+	}
+
+	private static final class Frame {
+		private final WalkEntry dir;
+		private final Iterator<InfoNode> children;
+
+		private Frame(WalkEntry dir, Iterator<InfoNode> children) {
+			this.dir = dir;
+			this.children = children;
+		}
+	}
+}
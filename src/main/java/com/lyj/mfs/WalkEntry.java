@@ -0,0 +1,108 @@
+package com.lyj.mfs;
+
+import static com.lyj.mfs.utils.Const.DELIMITER;
+import static com.lyj.mfs.utils.Const.ROOT_PATH;
+
+import com.google.common.base.MoreObjects;
+import com.lyj.mfs.domain.InfoNode;
+import com.lyj.mfs.domain.InfoNode.FileType;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @program: inmemoryFileSystem
+ * @description: one node met by a tree walk, see InMemoryFileSystemSession.walk.
+ * the path is built on the first call of getPath from the entry of the parent directory,
+ * so a walk that does not need paths does not build them
+ * @author: LYJ
+ * @create: 2026-10-20 21:00
+ **/
+
+public final class WalkEntry {
+
+	private final WalkEntry parent;
+
+	private final InfoNode node;
+
+	/**
+	 * the name in the epoch of the walk
+	 */
+	private final String name;
+
+	private final int depth;
+
+	/**
+	 * set once it has been built, every thread builds the same string
+	 */
+	private String path;
+
+	WalkEntry(InfoNode node, String name, String path) {
+		this.parent = null;
+		this.node = node;
+		this.name = name;
+		this.depth = 0;
+		this.path = path;
+	}
+
+	WalkEntry(WalkEntry parent, InfoNode node, String name) {
+		this.parent = parent;
+		this.node = node;
+		this.name = name;
+		this.depth = parent.depth + 1;
+	}
+
+	public InfoNode getNode() {
+		return node;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public FileType getFileType() {
+		return node.getFileType();
+	}
+
+	public boolean isDirectory() {
+		return node.getFileType() == FileType.DIRECTORY;
+	}
+
+	/**
+	 * @return how many names this entry is below the start of the walk
+	 */
+	public int getDepth() {
+		return depth;
+	}
+
+	/**
+	 * @return the absolute path, the ancestors are visited without recursion
+	 */
+	public String getPath() {
+		String ret = this.path;
+		if (ret != null) {
+			return ret;
+		}
+		List<WalkEntry> missing = new ArrayList<>();
+		WalkEntry entry = this;
+		while (entry.path == null) {
+			missing.add(entry);
+			entry = entry.parent;
+		}
+		ret = entry.path;
+		for (int i = missing.size() - 1; i >= 0; --i) {
+			WalkEntry child = missing.get(i);
+			ret = ROOT_PATH.equals(ret) ? ret + child.name : ret + DELIMITER + child.name;
+			child.path = ret;
+		}
+		return ret;
+	}
+
+	@Override
+	public String toString() {
+		return MoreObjects.toStringHelper(this)
+			.add("path", getPath())
+			.add("fileType", getFileType())
+			.add("depth", depth)
+			.toString();
+	}
+}
@@ -0,0 +1,76 @@
+package com.lyj.mfs;
+
+import com.google.common.base.MoreObjects;
+import com.lyj.mfs.domain.InfoNode.FileType;
+
+/**
+ * @program: inmemoryFileSystem
+ * @description: one change of the tree seen by a Watcher. a rename is a DELETE of the old
+ * path followed by a CREATE of the new one, a recursive rm or a rename of a directory is one
+ * event for the directory and none for the nodes under it
+ * @author: LYJ
+ * @create: 2026-10-20 22:40
+ **/
+
+public final class WatchEvent {
+
+	public enum Kind {
+		CREATE,
+		DELETE,
+		/* the content of a file has been written or truncated */
+		MODIFY,
+		/* events have been lost, the watched path has to be listed again */
+		OVERFLOW
+	}
+
+	private final long sequence;
+
+	private final Kind kind;
+
+	private final String path;
+
+	private final FileType fileType;
+
+	WatchEvent(long sequence, Kind kind, String path, FileType fileType) {
+		this.sequence = sequence;
+		this.kind = kind;
+		this.path = path;
+		this.fileType = fileType;
+	}
+
+	/**
+	 * @return the position of the event in the order of all events, an OVERFLOW has the
+	 * position of the first event that is still there
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+
+	public Kind getKind() {
+		return kind;
+	}
+
+	/**
+	 * @return the absolute path that has changed, the watched path for an OVERFLOW
+	 */
+	public String getPath() {
+		return path;
+	}
+
+	/**
+	 * @return the type of the changed node, null for an OVERFLOW
+	 */
+	public FileType getFileType() {
+		return fileType;
+	}
+
+	@Override
+	public String toString() {
+		return MoreObjects.toStringHelper(this)
+			.add("sequence", sequence)
+			.add("kind", kind)
+			.add("path", path)
+			.add("fileType", fileType)
+			.toString();
+	}
+}
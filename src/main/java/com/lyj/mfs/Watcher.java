@@ -0,0 +1,126 @@
+package com.lyj.mfs;
+
+import static com.lyj.mfs.utils.Const.DELIMITER;
+import static com.lyj.mfs.utils.Const.ROOT_PATH;
+
+import com.google.common.base.Preconditions;
+import com.lyj.mfs.WatchEvent.Kind;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @program: inmemoryFileSystem
+ * @description: the changes of a path since the watcher was registered, see FileSystem.watch.
+ * a watcher is a cursor into the ChangeRing, it takes the events out in batches by poll and
+ * keeps those of its path: the path itself, its children, everything under it when it is
+ * recursive, and the removal of one of its ancestors. a watcher that falls more than the
+ * capacity of the ring behind gets an OVERFLOW instead of the lost events, the writers are
+ * never slowed down by it.
+ * a watcher is used by one thread at a time, it must be closed
+ * @author: LYJ
+ * @create: 2026-10-20 22:50
+ **/
+
+public final class Watcher implements AutoCloseable {
+
+	private final InMemoryFileSystem mfsInstance;
+
+	private final ChangeRing ring;
+
+	private final String path;
+
+	private final boolean recursive;
+
+	/**
+	 * the sequence of the next event to look at
+	 */
+	private long cursor;
+
+	private boolean closed;
+
+	Watcher(InMemoryFileSystem mfsInstance, ChangeRing ring, String path, boolean recursive) {
+		this.mfsInstance = mfsInstance;
+		this.ring = ring;
+		this.path = path;
+		this.recursive = recursive;
+		this.cursor = ring.head();
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	public boolean isRecursive() {
+		return recursive;
+	}
+
+	/**
+	 * take the next events of the watched path, it does not wait for events
+	 * @param max the most events returned
+	 * @return the events in the order they happened, empty if there is none
+	 */
+	public List<WatchEvent> poll(int max) {
+		Preconditions.checkArgument(max > 0, "max must be positive");
+		Preconditions.checkState(!closed, "the watcher is closed");
+		List<WatchEvent> ret = new ArrayList<>();
+		long head = ring.head();
+		while (cursor < head && ret.size() < max) {
+			WatchEvent event = ring.get(cursor);
+			if (event == null || event.getSequence() < cursor) {
+				// claimed by a writer that has not stored it yet
+				break;
+			}
+			if (event.getSequence() > cursor) {
+				// the writers have come round, skip to the oldest event that is still there
+				cursor = Math.max(cursor + 1, ring.head() - ring.capacity() + 1);
+				if (ret.isEmpty() || ret.get(ret.size() - 1).getKind() != Kind.OVERFLOW) {
+					ret.add(new WatchEvent(cursor, Kind.OVERFLOW, path, null));
+				}
+				continue;
+			}
+			++cursor;
+			if (event.getKind() == Kind.OVERFLOW) {
+				ret.add(new WatchEvent(event.getSequence(), Kind.OVERFLOW, path, null));
+			} else if (matches(event)) {
+				ret.add(event);
+			}
+		}
+		return ret;
+	}
+
+	private boolean matches(WatchEvent event) {
+		String changed = event.getPath();
+		if (changed.equals(path)) {
+			return true;
+		}
+		if (isUnder(changed, path)) {
+			int parentEnd = ROOT_PATH.equals(path) ? 0 : path.length();
+			return recursive || changed.lastIndexOf(DELIMITER) == parentEnd;
+		}
+		// the watched path has gone with one of its ancestors
+		return event.getKind() == Kind.DELETE && isUnder(path, changed);
+	}
+
+	/**
+	 * @return true if path is a descendant of dir
+	 */
+	private static boolean isUnder(String path, String dir) {
+		if (ROOT_PATH.equals(dir)) {
+			return path.length() > 1;
+		}
+		return path.length() > dir.length() && path.startsWith(dir)
+			&& path.startsWith(DELIMITER, dir.length());
+	}
+
+	/**
+	 * stop watching, the changes cost nothing once the last watcher is closed
+	 */
+	@Override
+	public void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		mfsInstance.unwatch();
+	}
+}
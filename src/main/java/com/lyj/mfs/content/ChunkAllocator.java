@@ -0,0 +1,118 @@
+package com.lyj.mfs.content;
+
+import com.google.common.base.Preconditions;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @program: inmemoryFileSystem
+ * @description: a pool of fixed size off heap chunks for file content, chunks are cut out of
+ * larger direct slabs so the number of direct allocations stays small, a released chunk goes
+ * back to the pool and is handed out again, slabs are never given back to the os
+ * @author: LYJ
+ * @create: 2026-10-18 18:02
+ **/
+
+public class ChunkAllocator {
+
+	public static final int DEFAULT_CHUNK_SIZE = Integer.getInteger("mfs.content.chunkSize", 16 * 1024);
+
+	private static final int CHUNKS_PER_SLAB = 64;
+
+	private final int chunkSize;
+
+	private final Queue<ByteBuffer> freeChunks = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * bytes of the chunks that are in use by some file content
+	 */
+	private final AtomicLong usedBytes = new AtomicLong();
+
+	/**
+	 * bytes of all slabs, in use or pooled
+	 */
+	private final AtomicLong reservedBytes = new AtomicLong();
+
+	public ChunkAllocator() {
+		this(DEFAULT_CHUNK_SIZE);
+	}
+
+	public ChunkAllocator(int chunkSize) {
+		Preconditions.checkArgument(chunkSize > 0 && chunkSize % 8 == 0, "chunkSize must be a positive multiple of 8");
+		this.chunkSize = chunkSize;
+	}
+
+	public int getChunkSize() {
+		return chunkSize;
+	}
+
+	/**
+	 * @return a zero filled chunk of chunkSize bytes, position 0 and limit chunkSize
+	 */
+	public ByteBuffer allocate() {
+		ByteBuffer chunk = freeChunks.poll();
+		if (chunk == null) {
+			chunk = allocateSlab();
+		} else {
+			zero(chunk);
+		}
+		usedBytes.addAndGet(chunkSize);
+		return chunk;
+	}
+
+	/**
+	 * give a chunk back to the pool, the caller must not touch it anymore
+	 */
+	public void release(ByteBuffer chunk) {
+		usedBytes.addAndGet(-chunkSize);
+		freeChunks.offer(chunk);
+	}
+
+	public long getUsedBytes() {
+		return usedBytes.get();
+	}
+
+	public long getReservedBytes() {
+		return reservedBytes.get();
+	}
+
+	/**
+	 * cut a new slab into chunks, keep one and pool the others
+	 */
+	private ByteBuffer allocateSlab() {
+		ByteBuffer slab = ByteBuffer.allocateDirect(chunkSize * CHUNKS_PER_SLAB);
+		reservedBytes.addAndGet((long) chunkSize * CHUNKS_PER_SLAB);
+		for (int i = 1; i < CHUNKS_PER_SLAB; ++i) {
+			freeChunks.offer(slice(slab, i * chunkSize, chunkSize));
+		}
+		return slice(slab, 0, chunkSize);
+	}
+
+	private void zero(ByteBuffer chunk) {
+		for (int i = 0; i < chunkSize; i += 8) {
+			chunk.putLong(i, 0L);
+		}
+	}
+
+	static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+		ByteBuffer duplicate = buffer.duplicate();
+		limit(duplicate, offset + length);
+		position(duplicate, offset);
+		return duplicate.slice();
+	}
+
+	/**
+	 * casting to Buffer keeps the class file runnable on java 8, where the
+	 * position/limit methods of ByteBuffer do not return ByteBuffer yet
+	 */
+	static void position(ByteBuffer buffer, int position) {
+		((Buffer) buffer).position(position);
+	}
+
+	static void limit(ByteBuffer buffer, int limit) {
+		((Buffer) buffer).limit(limit);
+	}
+}
@@ -0,0 +1,137 @@
+package com.lyj.mfs.content;
+
+import com.google.common.base.Preconditions;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @program: inmemoryFileSystem
+ * @description: where file content lives. content is kept in off heap chunks, once a memory
+ * budget is set the content that has not been used recently is spilled to segment files and
+ * read back through memory mappings, picked by a CLOCK sweep over the resident contents.
+ * only payloads are tiered, the tree of nodes always stays in memory
+ * @author: LYJ
+ * @create: 2026-10-19 09:45
+ **/
+
+public class ContentStore {
+
+	/**
+	 * an eviction frees memory down to this share of the budget, so it does not run on every write
+	 */
+	private static final double LOW_WATERMARK = 0.9;
+
+	private final ChunkAllocator allocator;
+
+	/**
+	 * the resident contents in CLOCK order, the head is the next candidate
+	 */
+	private final Queue<FileContent> clock = new ConcurrentLinkedQueue<>();
+
+	private final AtomicBoolean evicting = new AtomicBoolean();
+
+	private final AtomicLong spilledBytes = new AtomicLong();
+
+	private volatile long memoryBudget = Long.MAX_VALUE;
+
+	private volatile SpillSegments segments;
+
+	public ContentStore(ChunkAllocator allocator) {
+		this.allocator = allocator;
+	}
+
+	public ChunkAllocator getChunkAllocator() {
+		return allocator;
+	}
+
+	/**
+	 * keep at most budget bytes of content in memory, spill the rest into directory
+	 * @param budget bytes of off heap chunks in use, Long.MAX_VALUE turns spilling off
+	 * @param directory where the segment files go, can be null when spilling is turned off
+	 */
+	public synchronized void setMemoryBudget(long budget, Path directory) throws IOException {
+		Preconditions.checkArgument(budget >= 0, "budget can not be negative");
+		if (budget != Long.MAX_VALUE && this.segments == null) {
+			Preconditions.checkNotNull(directory, "a spill directory is needed for a budget");
+			this.segments = new SpillSegments(directory, SpillSegments.DEFAULT_SEGMENT_SIZE);
+		}
+		this.memoryBudget = budget;
+		this.evictIfOverBudget();
+	}
+
+	public long getMemoryBudget() {
+		return memoryBudget;
+	}
+
+	/**
+	 * @return bytes of content in off heap chunks
+	 */
+	public long getResidentBytes() {
+		return allocator.getUsedBytes();
+	}
+
+	/**
+	 * @return bytes of content that live in segment files
+	 */
+	public long getSpilledBytes() {
+		return spilledBytes.get();
+	}
+
+	/**
+	 * called by a content after it has been written without holding its lock,
+	 * a content enters the clock the first time it is resident
+	 */
+	void written(FileContent content, boolean enqueue) {
+		if (enqueue) {
+			clock.offer(content);
+		}
+		evictIfOverBudget();
+	}
+
+	SpillSegments getSegments() {
+		return segments;
+	}
+
+	void spilled(long bytes) {
+		spilledBytes.addAndGet(bytes);
+	}
+
+	/**
+	 * sweep the clock until the resident bytes drop below the low watermark, only one
+	 * thread sweeps at a time, the others go on and leave the work to it
+	 */
+	private void evictIfOverBudget() {
+		long budget = this.memoryBudget;
+		if (budget == Long.MAX_VALUE || allocator.getUsedBytes() <= budget) {
+			return;
+		}
+		if (!evicting.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			long target = (long) (budget * LOW_WATERMARK);
+			// every content gets a second chance, so two rounds must be enough
+			int candidates = 2 * clock.size() + 1;
+			while (allocator.getUsedBytes() > target && candidates-- > 0) {
+				FileContent content = clock.poll();
+				if (content == null) {
+					return;
+				}
+				switch (content.tryEvict(segments)) {
+					case EVICTED:
+					case GONE:
+						break;
+					case KEEP:
+					default:
+						clock.offer(content);
+				}
+			}
+		} finally {
+			evicting.set(false);
+		}
+	}
+}
@@ -0,0 +1,461 @@
+package com.lyj.mfs.content;
+
+import com.google.common.base.Preconditions;
+import com.lyj.mfs.content.SpillSegments.Region;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * @program: inmemoryFileSystem
+ * @description: the content of one file, stored in fixed size off heap chunks,
+ * chunk i holds the bytes [i * chunkSize, (i + 1) * chunkSize). readers share a read lock,
+ * so concurrent reads of the same file do not block each other.
+ * a content that has not been used recently can be spilled by its ContentStore, it is then
+ * read from a mapped segment region and brought back into chunks by the next change.
+ * a fork shares the chunks and the spilled region with its origin, a shared chunk is copied
+ * by the first write into it and given back to the allocator by the last content holding it
+ * @author: LYJ
+ * @create: 2026-10-18 18:30
+ **/
+
+public class FileContent {
+
+	private static final ByteBuffer[] NO_CHUNKS = new ByteBuffer[0];
+
+	private static final AtomicInteger[] NO_SHARES = new AtomicInteger[0];
+
+	enum EvictResult {
+		/* the content has been spilled */
+		EVICTED,
+		/* the content is still resident and stays in the clock */
+		KEEP,
+		/* the content has no chunks anymore and leaves the clock */
+		GONE
+	}
+
+	private final ContentStore store;
+
+	private final ChunkAllocator allocator;
+
+	private final int chunkSize;
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private ByteBuffer[] chunks = NO_CHUNKS;
+
+	/**
+	 * the number of contents holding the chunk at the same index, null while this content
+	 * is the only one, so a chunk that has never been forked costs nothing
+	 */
+	private AtomicInteger[] shares = NO_SHARES;
+
+	private long size;
+
+	/**
+	 * where the content lives while it is spilled, null when it is resident
+	 */
+	private Region spilled;
+
+	/**
+	 * true while this content is in the clock of the store
+	 */
+	private boolean queued;
+
+	/**
+	 * the CLOCK reference bit, set on every use and cleared by the sweep
+	 */
+	private volatile boolean referenced;
+
+	public FileContent(ContentStore store) {
+		this.store = store;
+		this.allocator = store.getChunkAllocator();
+		this.chunkSize = allocator.getChunkSize();
+	}
+
+	public long size() {
+		lock.readLock().lock();
+		try {
+			return size;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return true if the content lives in a segment file right now
+	 */
+	public boolean isSpilled() {
+		lock.readLock().lock();
+		try {
+			return spilled != null;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * replace the whole content with data
+	 */
+	public void write(byte[] data) {
+		boolean enqueue;
+		lock.writeLock().lock();
+		try {
+			dropSpilled();
+			truncateLocked(0);
+			writeLocked(0, ByteBuffer.wrap(data));
+			enqueue = used();
+		} finally {
+			lock.writeLock().unlock();
+		}
+		store.written(this, enqueue);
+	}
+
+	/**
+	 * add data to the end of the content
+	 */
+	public void append(byte[] data) {
+		append(ByteBuffer.wrap(data));
+	}
+
+	/**
+	 * add the remaining bytes of data to the end of the content, data is consumed
+	 */
+	public void append(ByteBuffer data) {
+		boolean enqueue;
+		lock.writeLock().lock();
+		try {
+			faultIn();
+			writeLocked(size, data);
+			enqueue = used();
+		} finally {
+			lock.writeLock().unlock();
+		}
+		store.written(this, enqueue);
+	}
+
+	/**
+	 * cut the content to newSize, or extend it with zeros
+	 */
+	public void truncate(long newSize) {
+		Preconditions.checkArgument(newSize >= 0, "size can not be negative");
+		boolean enqueue;
+		lock.writeLock().lock();
+		try {
+			if (newSize == 0) {
+				dropSpilled();
+			} else {
+				faultIn();
+			}
+			truncateLocked(newSize);
+			enqueue = used();
+		} finally {
+			lock.writeLock().unlock();
+		}
+		store.written(this, enqueue);
+	}
+
+	/**
+	 * copy bytes out of the content
+	 * @param offset where to start, can be beyond the end
+	 * @param length the most bytes to read
+	 * @return the bytes read, shorter than length at the end of the content
+	 */
+	public byte[] read(long offset, int length) {
+		checkRange(offset, length);
+		lock.readLock().lock();
+		try {
+			touch();
+			int total = readableBytes(offset, length);
+			byte[] ret = new byte[total];
+			if (total == 0) {
+				return ret;
+			}
+			if (spilled != null) {
+				ByteBuffer mapped = spilled.mapped.duplicate();
+				ChunkAllocator.position(mapped, (int) offset);
+				mapped.get(ret);
+				return ret;
+			}
+			int copied = 0;
+			while (copied < total) {
+				long position = offset + copied;
+				ByteBuffer chunk = chunks[(int) (position / chunkSize)].duplicate();
+				int inChunk = (int) (position % chunkSize);
+				int n = Math.min(total - copied, chunkSize - inChunk);
+				ChunkAllocator.position(chunk, inChunk);
+				chunk.get(ret, copied, n);
+				copied += n;
+			}
+			return ret;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * read without copying, every returned buffer is a read only view of one chunk, or of the
+	 * mapped segment region while the content is spilled.
+	 * the views share memory with the file, they are valid until the next write, truncate
+	 * or removal of this file, after that they may show other bytes
+	 * @param offset where to start, can be beyond the end
+	 * @param length the most bytes to read
+	 * @return the views in order, their remaining bytes add up to the bytes read
+	 */
+	public ByteBuffer[] readBuffers(long offset, int length) {
+		checkRange(offset, length);
+		lock.readLock().lock();
+		try {
+			touch();
+			int total = readableBytes(offset, length);
+			if (total == 0) {
+				return NO_CHUNKS;
+			}
+			if (spilled != null) {
+				return new ByteBuffer[] {ChunkAllocator.slice(spilled.mapped, (int) offset, total)};
+			}
+			int first = (int) (offset / chunkSize);
+			int last = (int) ((offset + total - 1) / chunkSize);
+			ByteBuffer[] views = new ByteBuffer[last - first + 1];
+			long position = offset;
+			long end = offset + total;
+			for (int i = 0; i < views.length; ++i) {
+				int inChunk = (int) (position % chunkSize);
+				int n = (int) Math.min(end - position, chunkSize - inChunk);
+				views[i] = ChunkAllocator.slice(chunks[first + i].asReadOnlyBuffer(), inChunk, n);
+				position += n;
+			}
+			return views;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * a copy of this content that shares every chunk, or the spilled region, with it.
+	 * no byte is copied and no chunk is allocated, the two contents grow apart chunk by chunk
+	 * as they are written
+	 * @return the copy, it enters the clock of the store like a written content
+	 */
+	public FileContent fork() {
+		FileContent copy = new FileContent(store);
+		boolean enqueue;
+		lock.writeLock().lock();
+		try {
+			for (int i = 0; i < chunks.length; ++i) {
+				if (shares[i] == null) {
+					shares[i] = new AtomicInteger(1);
+				}
+				shares[i].incrementAndGet();
+			}
+			copy.chunks = chunks.clone();
+			copy.shares = shares.clone();
+			copy.size = size;
+			if (spilled != null) {
+				copy.spilled = spilled.share();
+			}
+			enqueue = copy.used();
+		} finally {
+			lock.writeLock().unlock();
+		}
+		store.written(copy, enqueue);
+		return copy;
+	}
+
+	/**
+	 * give every chunk back to the allocator, the content is empty afterwards
+	 */
+	public void release() {
+		truncate(0);
+	}
+
+	/**
+	 * called by the CLOCK sweep of the store, never waits for the lock of this content
+	 */
+	EvictResult tryEvict(SpillSegments segments) {
+		if (!lock.writeLock().tryLock()) {
+			return EvictResult.KEEP;
+		}
+		try {
+			if (chunks.length == 0) {
+				queued = false;
+				return EvictResult.GONE;
+			}
+			if (referenced) {
+				referenced = false;
+				return EvictResult.KEEP;
+			}
+			if (segments == null || size > Integer.MAX_VALUE) {
+				// no spilling configured, or too large for one mapping
+				return EvictResult.KEEP;
+			}
+			spilled = segments.append(chunks, size);
+			store.spilled(size);
+			for (int i = 0; i < chunks.length; ++i) {
+				releaseChunk(i);
+			}
+			chunks = NO_CHUNKS;
+			shares = NO_SHARES;
+			queued = false;
+			return EvictResult.EVICTED;
+		} catch (IOException e) {
+			e.printStackTrace();
+			return EvictResult.KEEP;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private void touch() {
+		if (!referenced) {
+			referenced = true;
+		}
+	}
+
+	/**
+	 * mark this content as used after a change, must hold the write lock
+	 * @return true if the content has to be put into the clock of the store
+	 */
+	private boolean used() {
+		touch();
+		if (queued || chunks.length == 0) {
+			return false;
+		}
+		queued = true;
+		return true;
+	}
+
+	/**
+	 * bring a spilled content back into chunks, must hold the write lock
+	 */
+	private void faultIn() {
+		if (spilled == null) {
+			return;
+		}
+		ByteBuffer mapped = spilled.mapped.duplicate();
+		ensureChunks(size);
+		for (ByteBuffer chunk : chunks) {
+			ByteBuffer target = chunk.duplicate();
+			ChunkAllocator.limit(mapped, Math.min(mapped.capacity(), mapped.position() + chunkSize));
+			target.put(mapped);
+		}
+		dropSpilled();
+	}
+
+	/**
+	 * forget the spilled region, must hold the write lock
+	 */
+	private void dropSpilled() {
+		if (spilled == null) {
+			return;
+		}
+		if (store.getSegments().release(spilled)) {
+			store.spilled(-spilled.mapped.capacity());
+		}
+		spilled = null;
+	}
+
+	private void writeLocked(long offset, ByteBuffer data) {
+		long end = offset + data.remaining();
+		ensureChunks(end);
+		while (data.hasRemaining()) {
+			long position = end - data.remaining();
+			ByteBuffer chunk = ownChunk((int) (position / chunkSize)).duplicate();
+			int inChunk = (int) (position % chunkSize);
+			int n = Math.min(data.remaining(), chunkSize - inChunk);
+			ChunkAllocator.position(chunk, inChunk);
+			ByteBuffer part = data.duplicate();
+			ChunkAllocator.limit(part, part.position() + n);
+			chunk.put(part);
+			ChunkAllocator.position(data, data.position() + n);
+		}
+		size = Math.max(size, end);
+	}
+
+	private void truncateLocked(long newSize) {
+		if (newSize >= size) {
+			ensureChunks(newSize);
+			size = newSize;
+			return;
+		}
+		int keep = chunkCount(newSize);
+		for (int i = keep; i < chunks.length; ++i) {
+			releaseChunk(i);
+		}
+		chunks = keep == 0 ? NO_CHUNKS : Arrays.copyOf(chunks, keep);
+		shares = keep == 0 ? NO_SHARES : Arrays.copyOf(shares, keep);
+		// the bytes behind the new end must read as zeros if the file grows again
+		int inChunk = (int) (newSize % chunkSize);
+		if (inChunk != 0) {
+			ByteBuffer tail = ownChunk(keep - 1);
+			for (int i = inChunk; i < chunkSize; ++i) {
+				tail.put(i, (byte) 0);
+			}
+		}
+		size = newSize;
+	}
+
+	private void ensureChunks(long newSize) {
+		int needed = chunkCount(newSize);
+		if (needed <= chunks.length) {
+			return;
+		}
+		ByteBuffer[] grown = Arrays.copyOf(chunks, needed);
+		for (int i = chunks.length; i < needed; ++i) {
+			grown[i] = allocator.allocate();
+		}
+		chunks = grown;
+		shares = Arrays.copyOf(shares, needed);
+	}
+
+	/**
+	 * make the chunk at index this content's own before it is changed, must hold the write lock
+	 * @return the chunk, copied if another content still holds it
+	 */
+	private ByteBuffer ownChunk(int index) {
+		AtomicInteger holders = shares[index];
+		if (holders == null) {
+			return chunks[index];
+		}
+		if (holders.get() > 1) {
+			ByteBuffer copy = allocator.allocate();
+			copy.duplicate().put(chunks[index].duplicate());
+			releaseChunk(index);
+			chunks[index] = copy;
+		}
+		// the others have let go of it, nobody can fork it but us
+		shares[index] = null;
+		return chunks[index];
+	}
+
+	/**
+	 * drop the chunk at index, it goes back to the allocator unless another content still
+	 * holds it, must hold the write lock
+	 */
+	private void releaseChunk(int index) {
+		AtomicInteger holders = shares[index];
+		if (holders == null || holders.decrementAndGet() == 0) {
+			allocator.release(chunks[index]);
+		}
+	}
+
+	private int chunkCount(long bytes) {
+		long count = (bytes + chunkSize - 1) / chunkSize;
+		Preconditions.checkArgument(count <= Integer.MAX_VALUE, "file is too large");
+		return (int) count;
+	}
+
+	private int readableBytes(long offset, int length) {
+		if (offset >= size) {
+			return 0;
+		}
+		return (int) Math.min(length, size - offset);
+	}
+
+	private static void checkRange(long offset, int length) {
+		Preconditions.checkArgument(offset >= 0 && length >= 0, "offset and length can not be negative");
+	}
+}
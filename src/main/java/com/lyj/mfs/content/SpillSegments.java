@@ -0,0 +1,152 @@
+package com.lyj.mfs.content;
+
+import com.google.common.base.Preconditions;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @program: inmemoryFileSystem
+ * @description: append only segment files in a spill directory, evicted content is
+ * copied into the mapping of the current segment and read back through a slice of it.
+ * each segment is mapped once, a mapping per region would run into vm.max_map_count
+ * long before the spill directory is full.
+ * a segment is deleted once it is full and none of its regions is used anymore,
+ * regions are never compacted
+ * @author: LYJ
+ * @create: 2026-10-19 09:10
+ **/
+
+class SpillSegments {
+
+	static final long DEFAULT_SEGMENT_SIZE = Long.getLong("mfs.content.segmentSize", 256L << 20);
+
+	private final Path directory;
+
+	private final long segmentSize;
+
+	private Segment current;
+
+	private long nextSegmentId;
+
+	SpillSegments(Path directory, long segmentSize) throws IOException {
+		Preconditions.checkArgument(segmentSize > 0 && segmentSize <= Integer.MAX_VALUE,
+			"a segment is mapped at once and can not exceed 2GB");
+		this.directory = Files.createDirectories(directory);
+		this.segmentSize = segmentSize;
+	}
+
+	/**
+	 * write the first size bytes of chunks to a segment
+	 * @return the region that holds the bytes now
+	 */
+	synchronized Region append(ByteBuffer[] chunks, long size) throws IOException {
+		Preconditions.checkArgument(size <= Integer.MAX_VALUE, "region too large for one mapping");
+		if (current == null || current.written + size > current.mapping.capacity()) {
+			// a content larger than a segment gets a segment of its own size
+			rotate(Math.max(segmentSize, size));
+		}
+		Segment segment = current;
+		int offset = segment.written;
+		ByteBuffer target = ChunkAllocator.slice(segment.mapping, offset, (int) size);
+		int remaining = (int) size;
+		for (int i = 0; remaining > 0; ++i) {
+			ByteBuffer chunk = chunks[i].duplicate();
+			int n = Math.min(remaining, chunk.capacity());
+			ChunkAllocator.limit(chunk, n);
+			target.put(chunk);
+			remaining -= n;
+		}
+		segment.written += (int) size;
+		segment.live.addAndGet(size);
+		return new Region(segment, ChunkAllocator.slice(segment.readOnly, offset, (int) size));
+	}
+
+	/**
+	 * one holder of a region does not use its bytes anymore
+	 * @return true if it was the last one, the bytes of the region are free now
+	 */
+	boolean release(Region region) {
+		if (region.holders.decrementAndGet() > 0) {
+			return false;
+		}
+		Segment segment = region.segment;
+		if (segment.live.addAndGet(-region.mapped.capacity()) == 0) {
+			synchronized (this) {
+				if (segment != current && segment.live.get() == 0) {
+					segment.delete();
+				}
+			}
+		}
+		return true;
+	}
+
+	private void rotate(long capacity) throws IOException {
+		Segment old = current;
+		Path file = directory.resolve(String.format("segment-%08d.spill", nextSegmentId++));
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+			StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			// mapping past the end grows the file, it stays sparse until regions are written
+			current = new Segment(file, channel.map(MapMode.READ_WRITE, 0, capacity));
+		}
+		if (old != null && old.live.get() == 0) {
+			old.delete();
+		}
+	}
+
+	static final class Segment {
+		private final Path file;
+		private final MappedByteBuffer mapping;
+		private final ByteBuffer readOnly;
+		private final AtomicLong live = new AtomicLong();
+		private int written;
+
+		private Segment(Path file, MappedByteBuffer mapping) {
+			this.file = file;
+			this.mapping = mapping;
+			this.readOnly = mapping.asReadOnlyBuffer();
+		}
+
+		/**
+		 * the mapping stays valid after the file is gone, it is unmapped once the last
+		 * slice of it is collected
+		 */
+		private void delete() {
+			try {
+				Files.deleteIfExists(file);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+
+	/**
+	 * the place of one spilled content, held by the content and its forks
+	 */
+	static final class Region {
+		final Segment segment;
+		final ByteBuffer mapped;
+		private final AtomicInteger holders = new AtomicInteger(1);
+
+		private Region(Segment segment, ByteBuffer mapped) {
+			this.segment = segment;
+			this.mapped = mapped;
+		}
+
+		/**
+		 * @return this region with one more holder, each holder releases it once
+		 */
+		Region share() {
+			holders.incrementAndGet();
+			return this;
+		}
+	}
+}
@@ -7,6 +7,7 @@ import com.google.common.base.Joiner;
 import com.google.common.base.MoreObjects;
 import com.google.common.collect.ImmutableList;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -18,18 +19,74 @@ import java.util.stream.Collectors;
  **/
 
 public class AbsolutePath {
-	private final List<InfoNode> paths;
+	/**
+	 * the nodes from the root down, null until they are needed in a path made by ofIndexed
+	 */
+	private List<InfoNode> paths;
+
+	/**
+	 * the lowest node and its path string while paths is null
+	 */
+	private InfoNode lowest;
+	private String pathStr;
+
 	public AbsolutePath(InfoNode root){
 		this.paths = new ArrayList<>();
 		paths.add(root);
 	}
 
+	/**
+	 * build the absolute path of a node by following its parent links up to the root
+	 * @param node any node that is attached to a tree
+	 * @return the absolute path from the root down to node
+	 */
+	public static AbsolutePath ofNode(InfoNode node){
+		List<InfoNode> paths = new ArrayList<>();
+		for(InfoNode n = node; n != null; n = n.getParent()){
+			paths.add(n);
+		}
+		Collections.reverse(paths);
+		return new AbsolutePath(paths);
+	}
+
+	/**
+	 * a path whose string is known already, the parent links are only followed when
+	 * the nodes above node are needed, so the lowest node and the path string cost O(1)
+	 * @param pathStr the canonical path string of node
+	 */
+	public static AbsolutePath ofIndexed(InfoNode node, String pathStr){
+		AbsolutePath ret = new AbsolutePath((List<InfoNode>) null);
+		ret.lowest = node;
+		ret.pathStr = pathStr;
+		return ret;
+	}
+
+	private AbsolutePath(List<InfoNode> paths){
+		this.paths = paths;
+	}
+
 	/**
 	 * Clone form another AbsolutePath object
 	 * @param otherAbsPath another AbsolutePath
 	 */
 	public AbsolutePath(AbsolutePath otherAbsPath){
-		this.paths = new ArrayList<>(otherAbsPath.immutablePaths());
+		synchronized (otherAbsPath) {
+			if (otherAbsPath.paths == null) {
+				this.lowest = otherAbsPath.lowest;
+				this.pathStr = otherAbsPath.pathStr;
+			} else {
+				this.paths = new ArrayList<>(otherAbsPath.paths);
+			}
+		}
+	}
+
+	private List<InfoNode> nodes(){
+		if (paths == null) {
+			paths = ofNode(lowest).paths;
+			lowest = null;
+			pathStr = null;
+		}
+		return paths;
 	}
 
 
@@ -38,10 +95,15 @@ public class AbsolutePath {
 	 * @return the deepest layer directoy
 	 */
 	public InfoNode getLowestNode(){
-		return this.paths.get(this.paths.size() - 1);
+		return this.paths == null ? this.lowest : this.paths.get(this.paths.size() - 1);
 	}
 
 	public synchronized boolean appendRelativePath(InfoNode node){
+		if (paths == null) {
+			pathStr = (ROOT_PATH.equals(pathStr) ? pathStr : pathStr + DELIMITER) + node.getPath();
+			lowest = node;
+			return true;
+		}
 		paths.add(node);
 		return true;
 	}
@@ -51,6 +113,7 @@ public class AbsolutePath {
 	 * we must perserve the root path
 	 */
 	public synchronized boolean removeLowest(){
+		List<InfoNode> paths = nodes();
 		if(paths.size() > 1){
 			//help gc
 			paths.set(paths.size() - 1 , null);
@@ -60,14 +123,17 @@ public class AbsolutePath {
 		return false;
 	}
 
-	public List<InfoNode> immutablePaths(){
-		return ImmutableList.copyOf(this.paths);
+	public synchronized List<InfoNode> immutablePaths(){
+		return ImmutableList.copyOf(this.nodes());
 	}
 
 	/**
 	 * @return the absolute path str of this object
 	 */
 	public String toPathStr(){
+		if (paths == null) {
+			return pathStr;
+		}
 		return ROOT_PATH +
 			Joiner
 			.on(DELIMITER)
@@ -80,7 +146,7 @@ public class AbsolutePath {
 	@Override
 	public String toString() {
 		return MoreObjects.toStringHelper(this)
-			.add("paths", paths)
+			.add("paths", nodes())
 			.toString();
 	}
 }
@@ -0,0 +1,690 @@
+package com.lyj.mfs.domain;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.Iterators;
+import com.lyj.mfs.utils.StringUtils;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiPredicate;
+
+/**
+ * @program: inmemoryFileSystem
+ * @description: the sub dirs/files of a directory, sorted by name.
+ * most directories hold only a few entries, they are kept in an immutable sorted array that
+ * is replaced as a whole on every change, a directory that grows over the threshold is
+ * promoted to a ConcurrentSkipListMap which is changed in place and never demoted again.
+ * both keep the name of every entry next to it, so a container a reader still holds stays
+ * sorted when a node is renamed after it was taken out, see InfoNode#moveChild.
+ * a mutation returns the container the directory should hold afterwards, see InfoNode.
+ *
+ * every change is labelled with the write epoch it is made in, see Versions. an array is
+ * labelled as a whole and keeps the array it replaced as long as an open snapshot sees it.
+ * a skip list keeps a chain of versions per entry instead, a change after a snapshot adds one
+ * version to the entry it changes and copies nothing else, a removed entry stays as a
+ * tombstone while a snapshot still sees it. a change of an earlier epoch than the entry it
+ * finds returns NEWER and is made again in the current epoch, so the versions of an entry
+ * are in the order of their epochs
+ * @author: LYJ
+ * @create: 2026-10-18 15:02
+ **/
+
+abstract class ChildContainer implements Iterable<InfoNode> {
+
+	/**
+	 * directories with more entries than this are promoted to a skip list,
+	 * 0 means every non empty directory uses a skip list
+	 */
+	static final int INLINE_THRESHOLD = Integer.getInteger("mfs.children.inlineThreshold", 8);
+
+	/**
+	 * shared by every empty directory and by files
+	 */
+	private static final InfoNode[] EMPTY_NODES = new InfoNode[0];
+
+	private static final String[] EMPTY_NAMES = new String[0];
+
+	static final ChildContainer EMPTY = new InlineChildren(EMPTY_NAMES, EMPTY_NODES, 0, null);
+
+	/**
+	 * what a mutation of a sealed container returns, the directory holds another one by now
+	 * or is about to, see seal
+	 */
+	static final ChildContainer SEALED = new InlineChildren(EMPTY_NAMES, EMPTY_NODES, 0, null);
+
+	/**
+	 * what a mutation returns when the entry or the array has been changed in a later epoch
+	 * already, nothing has changed and the change has to be made in the current epoch
+	 */
+	static final ChildContainer NEWER = new InlineChildren(EMPTY_NAMES, EMPTY_NODES, 0, null);
+
+	/**
+	 * the write epoch this container was made in
+	 */
+	final long epoch;
+
+	/**
+	 * the version snapshots taken before epoch see, null if no open snapshot needs it
+	 */
+	final ChildContainer previous;
+
+	ChildContainer(long epoch, ChildContainer previous) {
+		this.epoch = epoch;
+		this.previous = previous;
+	}
+
+	/**
+	 * @return an empty container that keeps previous for the snapshots taken before epoch
+	 */
+	static ChildContainer empty(long epoch, ChildContainer previous) {
+		return previous == null ? EMPTY : new InlineChildren(EMPTY_NAMES, EMPTY_NODES, epoch, previous);
+	}
+
+	/**
+	 * @param sorted nodes in strictly ascending name order, the array is kept
+	 * @return a container holding exactly these nodes
+	 */
+	static ChildContainer of(InfoNode[] sorted) {
+		if (sorted.length == 0) {
+			return EMPTY;
+		}
+		String[] names = new String[sorted.length];
+		for (int i = 0; i < sorted.length; ++i) {
+			names[i] = sorted[i].getPath();
+		}
+		InlineChildren inline = new InlineChildren(names, sorted, 0, null);
+		return sorted.length > INLINE_THRESHOLD ? new SkipListChildren(inline, 0) : inline;
+	}
+
+	abstract InfoNode get(CharSequence name);
+
+	abstract int size();
+
+	/**
+	 * the bounds do not have to be entries
+	 * @param from the lowest name, null for no lower bound
+	 * @param fromInclusive true if an entry named from is included
+	 * @param to the name to stop before, null for no upper bound
+	 * @return the entries between from and to in name order
+	 */
+	abstract Iterator<InfoNode> iterator(CharSequence from, boolean fromInclusive, CharSequence to);
+
+	/**
+	 * like iterator(from, fromInclusive, to), skipping the entries keep rejects
+	 * @param keep tested with the name of an entry and its node
+	 */
+	abstract Iterator<InfoNode> iterator(CharSequence from, boolean fromInclusive, CharSequence to,
+			BiPredicate<String, InfoNode> keep);
+
+	/**
+	 * @param after a name, does not have to be an entry, null to start at the first entry
+	 * @return the entries with names greater than after in name order
+	 */
+	final Iterator<InfoNode> iteratorAfter(CharSequence after) {
+		return iterator(after, false, null);
+	}
+
+	/**
+	 * look up the entry a snapshot of the epoch sees
+	 */
+	final InfoNode get(CharSequence name, long snapshotEpoch) {
+		return at(snapshotEpoch).getVersion(name, snapshotEpoch);
+	}
+
+	/**
+	 * @param keep tested with the name of an entry and its node
+	 * @return the entries a snapshot of the epoch sees in name order
+	 */
+	final Iterator<InfoNode> iterator(long snapshotEpoch, BiPredicate<String, InfoNode> keep) {
+		return at(snapshotEpoch).versionIterator(snapshotEpoch, keep);
+	}
+
+	/**
+	 * @return the version of this container a snapshot of the epoch sees
+	 */
+	private ChildContainer at(long snapshotEpoch) {
+		ChildContainer version = this;
+		while (version.epoch > snapshotEpoch) {
+			version = version.previous;
+			if (version == null) {
+				throw new IllegalStateException("version of epoch " + snapshotEpoch + " is gone");
+			}
+		}
+		return version;
+	}
+
+	/**
+	 * look up an entry in this version, which a snapshot of the epoch sees
+	 */
+	abstract InfoNode getVersion(CharSequence name, long snapshotEpoch);
+
+	abstract Iterator<InfoNode> versionIterator(long snapshotEpoch, BiPredicate<String, InfoNode> keep);
+
+	/**
+	 * put node as the entry of name, replacing the entry with the same name
+	 * @param epoch the write epoch of the change
+	 * @return the container to install, may be this container when it was changed in place
+	 */
+	abstract ChildContainer with(String name, InfoNode node, long epoch);
+
+	/**
+	 * put node as the entry of name if there is no entry with that name
+	 * @param epoch the write epoch of the change
+	 * @return the container to install, may be this container when it was changed in place,
+	 * or null if there is an entry with the name
+	 */
+	abstract ChildContainer withIfAbsent(String name, InfoNode node, long epoch);
+
+	/**
+	 * remove node if it is still the entry of name
+	 * @param epoch the write epoch of the change
+	 * @return the container to install, may be this container when it was changed in place,
+	 * or null if node is not the entry of name
+	 */
+	abstract ChildContainer without(String name, InfoNode node, long epoch);
+
+	/**
+	 * put node under its name in the epoch of this container
+	 */
+	final ChildContainer with(InfoNode node) {
+		return with(node.getPath(), node, epoch);
+	}
+
+	/**
+	 * put an absent node under its name in the epoch of this container
+	 */
+	final ChildContainer withIfAbsent(InfoNode node) {
+		return withIfAbsent(node.getPath(), node, epoch);
+	}
+
+	/**
+	 * remove node under its name in the epoch of this container
+	 */
+	final ChildContainer without(InfoNode node) {
+		return without(node.getPath(), node, epoch);
+	}
+
+	/**
+	 * stop the changes in place before the directory swaps this container out, so no entry
+	 * can be added to it after the swap. once it returns the entries do not change anymore
+	 * and every later mutation returns SEALED. an immutable container has nothing to stop
+	 */
+	void seal() {
+	}
+
+	/**
+	 * @return the version a container made in epoch after this one has to keep
+	 */
+	final ChildContainer previousFor(long epoch) {
+		if (Versions.needed(this.epoch, epoch)) {
+			return this;
+		}
+		return Versions.needed(0, this.epoch) ? previous : null;
+	}
+
+	/**
+	 * immutable arrays of the names and the nodes sorted by name, a lookup is a binary search
+	 */
+	static final class InlineChildren extends ChildContainer {
+
+		private final String[] names;
+
+		private final InfoNode[] nodes;
+
+		InlineChildren(String[] names, InfoNode[] nodes, long epoch, ChildContainer previous) {
+			super(epoch, previous);
+			this.names = names;
+			this.nodes = nodes;
+		}
+
+		private int indexOf(CharSequence name) {
+			int low = 0;
+			int high = nodes.length - 1;
+			while (low <= high) {
+				int mid = (low + high) >>> 1;
+				int cmp = StringUtils.compareNames(names[mid], name);
+				if (cmp < 0) {
+					low = mid + 1;
+				} else if (cmp > 0) {
+					high = mid - 1;
+				} else {
+					return mid;
+				}
+			}
+			return -(low + 1);
+		}
+
+		@Override
+		InfoNode get(CharSequence name) {
+			int index = indexOf(name);
+			return index >= 0 ? nodes[index] : null;
+		}
+
+		@Override
+		int size() {
+			return nodes.length;
+		}
+
+		@Override
+		InfoNode getVersion(CharSequence name, long snapshotEpoch) {
+			return get(name);
+		}
+
+		@Override
+		Iterator<InfoNode> versionIterator(long snapshotEpoch, BiPredicate<String, InfoNode> keep) {
+			return iterator(null, false, null, keep);
+		}
+
+		@Override
+		ChildContainer with(String name, InfoNode node, long epoch) {
+			if (this.epoch > epoch) {
+				return NEWER;
+			}
+			int index = indexOf(name);
+			if (index >= 0) {
+				InfoNode[] replaced = nodes.clone();
+				replaced[index] = node;
+				return new InlineChildren(names, replaced, epoch, previousFor(epoch));
+			}
+			return insert(name, node, -(index + 1), epoch);
+		}
+
+		@Override
+		ChildContainer withIfAbsent(String name, InfoNode node, long epoch) {
+			int index = indexOf(name);
+			if (index >= 0) {
+				return null;
+			}
+			return this.epoch > epoch ? NEWER : insert(name, node, -(index + 1), epoch);
+		}
+
+		private ChildContainer insert(String name, InfoNode node, int insertAt, long epoch) {
+			if (nodes.length >= INLINE_THRESHOLD) {
+				return new SkipListChildren(this, epoch).with(name, node, epoch);
+			}
+			String[] insertedNames = new String[names.length + 1];
+			System.arraycopy(names, 0, insertedNames, 0, insertAt);
+			insertedNames[insertAt] = name;
+			System.arraycopy(names, insertAt, insertedNames, insertAt + 1, names.length - insertAt);
+			InfoNode[] inserted = new InfoNode[nodes.length + 1];
+			System.arraycopy(nodes, 0, inserted, 0, insertAt);
+			inserted[insertAt] = node;
+			System.arraycopy(nodes, insertAt, inserted, insertAt + 1, nodes.length - insertAt);
+			return new InlineChildren(insertedNames, inserted, epoch, previousFor(epoch));
+		}
+
+		@Override
+		ChildContainer without(String name, InfoNode node, long epoch) {
+			int index = indexOf(name);
+			if (index < 0 || nodes[index] != node) {
+				return null;
+			}
+			if (this.epoch > epoch) {
+				return NEWER;
+			}
+			ChildContainer previous = previousFor(epoch);
+			if (nodes.length == 1 && previous == null) {
+				return EMPTY;
+			}
+			String[] removedNames = new String[names.length - 1];
+			System.arraycopy(names, 0, removedNames, 0, index);
+			System.arraycopy(names, index + 1, removedNames, index, names.length - index - 1);
+			InfoNode[] removed = new InfoNode[nodes.length - 1];
+			System.arraycopy(nodes, 0, removed, 0, index);
+			System.arraycopy(nodes, index + 1, removed, index, nodes.length - index - 1);
+			return new InlineChildren(removedNames, removed, epoch, previous);
+		}
+
+		@Override
+		public Iterator<InfoNode> iterator() {
+			return Iterators.forArray(nodes);
+		}
+
+		@Override
+		Iterator<InfoNode> iterator(CharSequence from, boolean fromInclusive, CharSequence to) {
+			int start = start(from, fromInclusive);
+			int end = end(to);
+			if (start >= end) {
+				return Collections.emptyIterator();
+			}
+			return Arrays.asList(nodes).subList(start, end).iterator();
+		}
+
+		@Override
+		Iterator<InfoNode> iterator(CharSequence from, boolean fromInclusive, CharSequence to,
+				BiPredicate<String, InfoNode> keep) {
+			int start = start(from, fromInclusive);
+			int end = end(to);
+			if (start >= end) {
+				return Collections.emptyIterator();
+			}
+			return new AbstractIterator<InfoNode>() {
+				private int index = start;
+
+				@Override
+				protected InfoNode computeNext() {
+					while (index < end) {
+						int i = index++;
+						if (keep.test(names[i], nodes[i])) {
+							return nodes[i];
+						}
+					}
+					return endOfData();
+				}
+			};
+		}
+
+		private int start(CharSequence from, boolean fromInclusive) {
+			if (from == null) {
+				return 0;
+			}
+			int index = indexOf(from);
+			return index >= 0 ? (fromInclusive ? index : index + 1) : -(index + 1);
+		}
+
+		private int end(CharSequence to) {
+			if (to == null) {
+				return nodes.length;
+			}
+			int index = indexOf(to);
+			return index >= 0 ? index : -(index + 1);
+		}
+
+		@Override
+		public String toString() {
+			return Arrays.toString(names);
+		}
+	}
+
+	/**
+	 * use ConcurrentSkipListMap to make sure it can be used in multithread environment,
+	 * NAME_ORDER keeps the String order but also allows looking up by a PathCursor.
+	 * the map holds the newest version of every entry, see Version
+	 */
+	static final class SkipListChildren extends ChildContainer {
+
+		/**
+		 * ConcurrentSkipListMap.size() walks the whole map, so count the live entries on our own
+		 */
+		private final AtomicInteger size = new AtomicInteger();
+
+		private final ConcurrentSkipListMap<String, Version> map;
+
+		/**
+		 * the mutations changing the map right now, seal waits for them
+		 */
+		private final AtomicInteger writers = new AtomicInteger();
+
+		private volatile boolean sealed;
+
+		/**
+		 * the nodes of inline are sorted already, so the map is built in one linear pass.
+		 * the snapshots taken before epoch see inline
+		 */
+		SkipListChildren(InlineChildren inline, long epoch) {
+			super(epoch, inline.previousFor(epoch));
+			ImmutableSortedMap.Builder<String, Version> sorted =
+				new ImmutableSortedMap.Builder<>(StringUtils.NAME_ORDER);
+			for (int i = 0; i < inline.nodes.length; ++i) {
+				sorted.put(inline.names[i], new Version(inline.nodes[i], epoch, null));
+			}
+			this.map = new ConcurrentSkipListMap<>(sorted.build());
+			size.set(inline.nodes.length);
+		}
+
+		@Override
+		InfoNode get(CharSequence name) {
+			Version head = map.get(name);
+			return head == null ? null : head.node;
+		}
+
+		@Override
+		int size() {
+			return size.get();
+		}
+
+		@Override
+		InfoNode getVersion(CharSequence name, long snapshotEpoch) {
+			Version head = map.get(name);
+			return head == null ? null : head.nodeAt(snapshotEpoch);
+		}
+
+		/**
+		 * it visits the tombstones and the entries added after the snapshot as well
+		 */
+		@Override
+		Iterator<InfoNode> versionIterator(long snapshotEpoch, BiPredicate<String, InfoNode> keep) {
+			Iterator<Map.Entry<String, Version>> entries = map.entrySet().iterator();
+			return new AbstractIterator<InfoNode>() {
+				@Override
+				protected InfoNode computeNext() {
+					while (entries.hasNext()) {
+						Map.Entry<String, Version> entry = entries.next();
+						InfoNode node = entry.getValue().nodeAt(snapshotEpoch);
+						if (node != null && keep.test(entry.getKey(), node)) {
+							return node;
+						}
+					}
+					return endOfData();
+				}
+			};
+		}
+
+		@Override
+		ChildContainer with(String name, InfoNode node, long epoch) {
+			if (!enter()) {
+				return SEALED;
+			}
+			try {
+				for (;;) {
+					Version head = map.get(name);
+					if (head == null) {
+						if (map.putIfAbsent(name, new Version(node, epoch, null)) == null) {
+							size.incrementAndGet();
+							return this;
+						}
+						continue;
+					}
+					if (head.epoch > epoch) {
+						return NEWER;
+					}
+					if (map.replace(name, head, new Version(node, epoch, head.previousFor(epoch)))) {
+						if (head.node == null) {
+							size.incrementAndGet();
+						}
+						return this;
+					}
+				}
+			} finally {
+				writers.decrementAndGet();
+			}
+		}
+
+		@Override
+		ChildContainer withIfAbsent(String name, InfoNode node, long epoch) {
+			if (!enter()) {
+				return SEALED;
+			}
+			try {
+				for (;;) {
+					Version head = map.get(name);
+					if (head == null) {
+						if (map.putIfAbsent(name, new Version(node, epoch, null)) == null) {
+							size.incrementAndGet();
+							return this;
+						}
+						continue;
+					}
+					if (head.node != null) {
+						return null;
+					}
+					if (head.epoch > epoch) {
+						return NEWER;
+					}
+					if (map.replace(name, head, new Version(node, epoch, head.previousFor(epoch)))) {
+						size.incrementAndGet();
+						return this;
+					}
+				}
+			} finally {
+				writers.decrementAndGet();
+			}
+		}
+
+		@Override
+		ChildContainer without(String name, InfoNode node, long epoch) {
+			if (!enter()) {
+				return SEALED;
+			}
+			try {
+				for (;;) {
+					Version head = map.get(name);
+					if (head == null || head.node != node) {
+						return null;
+					}
+					if (head.epoch > epoch) {
+						return NEWER;
+					}
+					Version previous = head.previousFor(epoch);
+					boolean removed = previous == null ? map.remove(name, head)
+						: map.replace(name, head, new Version(null, epoch, previous));
+					if (removed) {
+						size.decrementAndGet();
+						return this;
+					}
+				}
+			} finally {
+				writers.decrementAndGet();
+			}
+		}
+
+		/**
+		 * a writer announces itself before it looks at sealed and seal sets sealed before it
+		 * looks at the writers, so either seal waits for the writer or the writer sees sealed
+		 * @return false if the container is sealed, nothing must be changed then
+		 */
+		private boolean enter() {
+			writers.incrementAndGet();
+			if (sealed) {
+				writers.decrementAndGet();
+				return false;
+			}
+			return true;
+		}
+
+		@Override
+		void seal() {
+			sealed = true;
+			while (writers.get() != 0) {
+				Thread.yield();
+			}
+		}
+
+		@Override
+		public Iterator<InfoNode> iterator() {
+			return iterator(null, false, null, (name, node) -> true);
+		}
+
+		/**
+		 * a view of the map, weakly consistent like every iterator of it,
+		 * finding the start takes O(log n) and nothing outside the range is visited
+		 */
+		@Override
+		Iterator<InfoNode> iterator(CharSequence from, boolean fromInclusive, CharSequence to) {
+			return iterator(from, fromInclusive, to, (name, node) -> true);
+		}
+
+		/**
+		 * a tombstone no open snapshot needs anymore is dropped on the way
+		 */
+		@Override
+		Iterator<InfoNode> iterator(CharSequence from, boolean fromInclusive, CharSequence to,
+				BiPredicate<String, InfoNode> keep) {
+			ConcurrentNavigableMap<String, Version> range = range(from, fromInclusive, to);
+			if (range == null) {
+				return Collections.emptyIterator();
+			}
+			Iterator<Map.Entry<String, Version>> entries = range.entrySet().iterator();
+			return new AbstractIterator<InfoNode>() {
+				@Override
+				protected InfoNode computeNext() {
+					while (entries.hasNext()) {
+						Map.Entry<String, Version> entry = entries.next();
+						Version head = entry.getValue();
+						if (head.node == null) {
+							if (head.epoch <= Versions.oldestSnapshot()) {
+								map.remove(entry.getKey(), head);
+							}
+						} else if (keep.test(entry.getKey(), head.node)) {
+							return head.node;
+						}
+					}
+					return endOfData();
+				}
+			};
+		}
+
+		/**
+		 * @return a view of the entries between from and to, null if the range is empty
+		 */
+		private ConcurrentNavigableMap<String, Version> range(CharSequence from, boolean fromInclusive, CharSequence to) {
+			if (from == null && to == null) {
+				return map;
+			} else if (to == null) {
+				return map.tailMap(from.toString(), fromInclusive);
+			} else if (from == null) {
+				return map.headMap(to.toString(), false);
+			} else if (StringUtils.compareNames(from, to) >= 0) {
+				return null;
+			}
+			return map.subMap(from.toString(), fromInclusive, to.toString(), false);
+		}
+
+		@Override
+		public String toString() {
+			return map.keySet().toString();
+		}
+	}
+
+	/**
+	 * a version of an entry of a skip list, newest first. node is null in a tombstone, the
+	 * version of a removed entry that an open snapshot still sees the entry before
+	 */
+	static final class Version {
+		private final InfoNode node;
+		private final long epoch;
+		private final Version previous;
+
+		private Version(InfoNode node, long epoch, Version previous) {
+			this.node = node;
+			this.epoch = epoch;
+			this.previous = previous;
+		}
+
+		/**
+		 * @return the node a snapshot of the epoch sees, null if the entry did not exist then
+		 */
+		private InfoNode nodeAt(long snapshotEpoch) {
+			Version version = this;
+			while (version != null && version.epoch > snapshotEpoch) {
+				version = version.previous;
+			}
+			return version == null ? null : version.node;
+		}
+
+		/**
+		 * @return the versions a version made in epoch after this one has to keep
+		 */
+		private Version previousFor(long epoch) {
+			if (Versions.needed(this.epoch, epoch)) {
+				return this;
+			}
+			return Versions.needed(0, this.epoch) ? previous : null;
+		}
+	}
+}
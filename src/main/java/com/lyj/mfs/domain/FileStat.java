@@ -0,0 +1,67 @@
+package com.lyj.mfs.domain;
+
+import com.google.common.base.MoreObjects;
+import com.lyj.mfs.domain.InfoNode.FileType;
+
+/**
+ * @program: inmemoryFileSystem
+ * @description: the metadata of one file or directory as returned by stat, every field is
+ * a primitive so one instance can be filled again and again without allocating.
+ * times are nanoseconds since the epoch, mode holds the type and permission bits like st_mode
+ * @author: LYJ
+ * @create: 2026-10-20 14:20
+ **/
+
+public final class FileStat {
+
+	public static final int S_IFMT = 0170000;
+	public static final int S_IFDIR = 0040000;
+	public static final int S_IFREG = 0100000;
+
+	public FileType fileType;
+
+	public int mode;
+
+	/**
+	 * content bytes of a file, number of entries of a directory
+	 */
+	public long size;
+
+	/**
+	 * last change of the content or the metadata
+	 */
+	public long ctime;
+
+	/**
+	 * last change of the content, or of the entries of a directory
+	 */
+	public long mtime;
+
+	/**
+	 * last read, see InfoNode#accessed
+	 */
+	public long atime;
+
+	public boolean isDirectory() {
+		return fileType == FileType.DIRECTORY;
+	}
+
+	/**
+	 * @return the permission bits of mode
+	 */
+	public int getPermissions() {
+		return mode & ~S_IFMT;
+	}
+
+	@Override
+	public String toString() {
+		return MoreObjects.toStringHelper(this)
+			.add("fileType", fileType)
+			.add("mode", Integer.toOctalString(mode))
+			.add("size", size)
+			.add("ctime", ctime)
+			.add("mtime", mtime)
+			.add("atime", atime)
+			.toString();
+	}
+}
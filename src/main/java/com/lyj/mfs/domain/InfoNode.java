@@ -1,10 +1,22 @@
 package com.lyj.mfs.domain;
 
 import com.google.common.base.Preconditions;
-import java.time.LocalDateTime;
-import java.time.ZoneId;
-import java.util.Map;
-import java.util.concurrent.ConcurrentSkipListMap;
+import com.lyj.mfs.content.ContentStore;
+import com.lyj.mfs.content.FileContent;
+import com.lyj.mfs.utils.Clock;
+import com.lyj.mfs.utils.NameTable;
+import com.lyj.mfs.utils.StringUtils;
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.function.Consumer;
 
 /**
  * The type Info node.
@@ -17,26 +29,123 @@ import java.util.concurrent.ConcurrentSkipListMap;
 public class InfoNode {
 
 	/**
-	 * the relative path/file name
+	 * the relative path/file name, shared with every other node of the same name,
+	 * changed by a rename, see moveChild
 	 */
-	private final String path;
+	private volatile String path;
 
 	/**
-	 * the time we create this file, notice it can be updated by touch method
+	 * the names and parents before the moves that open snapshots still see, newest first
 	 */
-	private LocalDateTime createTime;
+	private volatile Renamed renamed;
+
+	public static final int DEFAULT_FILE_MODE = 0644;
+	public static final int DEFAULT_DIR_MODE = 0755;
+
+	/**
+	 * atime is only written on a read if it is not newer than mtime or older than this,
+	 * like relatime, so reading a file does not write to the node every time
+	 */
+	private static final long ATIME_INTERVAL_NANOS = TimeUnit.HOURS.toNanos(24);
+
+	/**
+	 * last change of the metadata or content, last change of the content and last read,
+	 * in epoch nanos, see Clock. they start as the time the node was created
+	 */
+	private volatile long ctime;
+	private volatile long mtime;
+	private volatile long atime;
+
+	/**
+	 * the permission bits, the type bits come from fileType
+	 */
+	private volatile int mode;
 
 	private final FileType fileType;
 
 	/**
-	 * store sub dir/files, it is the same structure as trie tree
+	 * the directory that holds this node, null for the root,
+	 * so a node can find its way back to the root without a lookup
+	 */
+	private volatile InfoNode parent;
+
+	/**
+	 * odd while moveChild changes path and parent, so a reader sees both of the same move,
+	 * see isChildOf
+	 */
+	private volatile int moves;
+
+	/**
+	 * set when this node is removed from its parent, the nodes under it are not marked,
+	 * they are dead because one of their ancestors is detached
+	 */
+	private volatile boolean detached;
+
+	/**
+	 * odd while this node is being removed or moved by a logged change, it only changes under
+	 * the monitor of the parent, and the copies reading the subtree of this node right now.
+	 * a change logged under this node waits until neither runs, see InMemoryFileSystem#logChange
+	 */
+	private volatile int relinks;
+	private volatile int copying;
+
+	private static final AtomicIntegerFieldUpdater<InfoNode> COPYING =
+		AtomicIntegerFieldUpdater.newUpdater(InfoNode.class, "copying");
+
+	/**
+	 * how many files and dirs are under this directory, itself not included, kept current
+	 * by the file system whenever a node is added or removed below. null for a file
+	 */
+	private volatile Subtree subtree;
+
+	/**
+	 * store sub dir/files, it is the same structure as trie tree,
+	 * small directories share/replace immutable containers, see ChildContainer
+	 */
+	private volatile ChildContainer children = ChildContainer.EMPTY;
+
+	private static final AtomicReferenceFieldUpdater<InfoNode, ChildContainer> CHILDREN =
+		AtomicReferenceFieldUpdater.newUpdater(InfoNode.class, ChildContainer.class, "children");
+
+	/**
+	 * the changes of mutate
+	 */
+	private static final int PUT = 0;
+	private static final int PUT_IF_ABSENT = 1;
+	private static final int REMOVE = 2;
+
+	/**
+	 * the epoch of a change that enters the current write epoch on its own, write epochs
+	 * start at 1. a caller that passes another epoch has entered it, see Versions
+	 */
+	public static final long OWN_EPOCH = 0;
+
+	/**
+	 * the content of a file, created on the first write
+	 */
+	private volatile FileContent content;
+
+	private static final AtomicReferenceFieldUpdater<InfoNode, FileContent> CONTENT =
+		AtomicReferenceFieldUpdater.newUpdater(InfoNode.class, FileContent.class, "content");
+
+	/**
+	 * the epoch of the last change of the content and the contents before the changes that
+	 * open snapshots still see, newest first, guarded by the monitor of this node
 	 */
-	private Map<String, InfoNode> children;
+	private long contentEpoch;
+	private ContentVersion contentVersions;
 
 	/**
-	 *  not used, we can store file content by this field
+	 * set while this file is in KEPT_CONTENT, and once the file has been removed and its
+	 * content given back, guarded by the monitor of this node
 	 */
-	private Byte[] content = null;
+	private boolean contentKept;
+	private boolean contentReleased;
+
+	/**
+	 * the files that keep contents for open snapshots, see dropContentVersions
+	 */
+	private static final Queue<InfoNode> KEPT_CONTENT = new ConcurrentLinkedQueue<>();
 
 	/**
 	 * if arguments are checked error, a RuntimeException will be throwed
@@ -53,21 +162,14 @@ public class InfoNode {
 			"path can not be empty");
 		Preconditions.checkNotNull(fileType, "fileType can not be null");
 
-		this.path = path;
+		this.path = NameTable.intern(path);
 		this.fileType = fileType;
-		this.createTime = LocalDateTime.now(ZoneId.of("Asia/Shanghai"));
-		switch (fileType){
-			case FILE:
-				this.children = null;
-				break;
-			case DIRECTORY:
-				/*
-				* use ConcurrentSkipListMap to make sure it can be used in multithread environment
-				* */
-				this.children = new ConcurrentSkipListMap<>();
-				break;
-			default:
-		}
+		long now = Clock.nowNanos();
+		this.ctime = now;
+		this.mtime = now;
+		this.atime = now;
+		this.mode = fileType == FileType.DIRECTORY ? DEFAULT_DIR_MODE : DEFAULT_FILE_MODE;
+		this.subtree = fileType == FileType.DIRECTORY ? new Subtree(null) : null;
 	}
 
 	public static enum FileType {
@@ -78,16 +180,514 @@ public class InfoNode {
 		return path;
 	}
 
+	/**
+	 * @return the name a snapshot of the epoch sees
+	 */
+	public String getPath(long snapshotEpoch) {
+		String name = this.path;
+		for (Renamed r = this.renamed; r != null && r.epoch > snapshotEpoch; r = r.previous) {
+			name = r.name;
+		}
+		return name;
+	}
+
 	public FileType getFileType() {
 		return fileType;
 	}
 
-	public void updateCreateTime(){
-		this.createTime = LocalDateTime.now(ZoneId.of("Asia/Shanghai"));
+	public InfoNode getParent() {
+		return parent;
+	}
+
+	public boolean isDetached() {
+		return detached;
+	}
+
+	/**
+	 * @return a count that is odd while this node is being removed or moved by a logged change
+	 * and changes with each of them
+	 */
+	public int getRelinks() {
+		return relinks;
+	}
+
+	/**
+	 * a logged change starts to remove or move this node, the caller holds the monitor of the
+	 * parent, the root is only relinked by a removal of everything under its own monitor
+	 */
+	public void beginRelink() {
+		this.relinks = this.relinks + 1;
+	}
+
+	public void endRelink() {
+		this.relinks = this.relinks + 1;
+	}
+
+	/**
+	 * @return the copies reading the subtree of this node right now
+	 */
+	public int getCopying() {
+		return copying;
+	}
+
+	public void beginCopy() {
+		COPYING.incrementAndGet(this);
+	}
+
+	public void endCopy() {
+		COPYING.decrementAndGet(this);
+	}
+
+	/**
+	 * follow the parent links up to the root, it takes O(depth) pointer hops and no lookup
+	 * @return false if this node or one of its ancestors has been removed
+	 */
+	public boolean isLive() {
+		for (InfoNode node = this; node != null; node = node.parent) {
+			if (node.detached) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public long getCtime() {
+		return ctime;
+	}
+
+	public long getMtime() {
+		return mtime;
+	}
+
+	public long getAtime() {
+		return atime;
+	}
+
+	public int getMode() {
+		return mode;
+	}
+
+	/**
+	 * @param permissions the permission bits, eg. 0644
+	 */
+	public void setMode(int permissions) {
+		Preconditions.checkArgument((permissions & ~07777) == 0, "not a permission: %s", Integer.toOctalString(permissions));
+		this.mode = permissions;
+		this.ctime = Clock.nowNanos();
+	}
+
+	/**
+	 * set every time to now, like touch on an existing file
+	 */
+	public void touch(){
+		long now = Clock.nowNanos();
+		this.ctime = now;
+		this.mtime = now;
+		this.atime = now;
+	}
+
+	/**
+	 * the content of a file or the entries of a directory have changed
+	 */
+	public void modified(){
+		long now = Clock.nowNanos();
+		this.ctime = now;
+		this.mtime = now;
+	}
+
+	/**
+	 * the content has been read, atime is only written when it is not newer than mtime
+	 * or older than 24 hours
+	 */
+	public void accessed(){
+		long last = this.atime;
+		if (last <= this.mtime) {
+			this.atime = Clock.nowNanos();
+			return;
+		}
+		long now = Clock.nowNanos();
+		if (now - last >= ATIME_INTERVAL_NANOS) {
+			this.atime = now;
+		}
+	}
+
+	/**
+	 * restore the metadata of a node, eg. from a snapshot
+	 */
+	public void restore(int permissions, long ctime, long mtime, long atime){
+		this.mode = permissions;
+		this.ctime = ctime;
+		this.mtime = mtime;
+		this.atime = atime;
+	}
+
+	/**
+	 * @return the content size of a file, the number of entries of a directory
+	 */
+	public long getSize() {
+		if (this.fileType == FileType.DIRECTORY) {
+			return this.children.size();
+		}
+		FileContent current = this.content;
+		return current == null ? 0 : current.size();
+	}
+
+	/**
+	 * copy the metadata of this node into stat
+	 * @return stat
+	 */
+	public FileStat stat(FileStat stat) {
+		stat.fileType = this.fileType;
+		stat.mode = (this.fileType == FileType.DIRECTORY ? FileStat.S_IFDIR : FileStat.S_IFREG) | this.mode;
+		stat.size = this.getSize();
+		stat.ctime = this.ctime;
+		stat.mtime = this.mtime;
+		stat.atime = this.atime;
+		return stat;
+	}
+
+	public long getSubtreeFiles() {
+		return subtreeCount(Subtree.FILES);
+	}
+
+	public long getSubtreeDirs() {
+		return subtreeCount(Subtree.DIRS);
+	}
+
+	private long subtreeCount(AtomicLongFieldUpdater<Subtree> field) {
+		for (;;) {
+			Subtree current = this.subtree;
+			if (current == null) {
+				return 0;
+			}
+			long count = field.get(current);
+			if (!Subtree.isClosed(count)) {
+				return count;
+			}
+			// replaced right now, the replacement is in place already, see moveCounts
+		}
+	}
+
+	/**
+	 * account files or dirs added to (or removed from, with a negative count) the subtree of
+	 * this directory
+	 * @param type FILE to count files, DIRECTORY to count dirs
+	 * @return the directory the count has to be passed on to, null if this directory does
+	 * not pass its counts on, it has not been added anywhere yet or it has been removed
+	 */
+	public InfoNode addToSubtree(FileType type, long count) {
+		AtomicLongFieldUpdater<Subtree> field = type == FileType.FILE ? Subtree.FILES : Subtree.DIRS;
+		for (;;) {
+			Subtree current = this.subtree;
+			if (current.add(field, count)) {
+				return current.up;
+			}
+			// closed by moveCounts, the replacement is in place already
+		}
+	}
+
+	/**
+	 * pass the counts of this directory on to up from now on. the caller is the only one that
+	 * changes where they go, it has just added, moved or removed this directory.
+	 * the new counts are in place before the old ones are closed, so an add never waits for it,
+	 * and every add ends up either in the counts handed over or in the new ones
+	 * @param up the new parent, null if this directory has been removed
+	 * @return the files and dirs under this directory that have to be moved to up
+	 */
+	public long[] moveCounts(InfoNode up) {
+		Subtree previous = this.subtree;
+		Subtree next = new Subtree(up);
+		this.subtree = next;
+		long files = previous.close(Subtree.FILES);
+		next.add(Subtree.FILES, files);
+		long dirs = previous.close(Subtree.DIRS);
+		next.add(Subtree.DIRS, dirs);
+		return new long[] {files, dirs};
+	}
+
+	/**
+	 * @return the content of this file, null if nothing has been written yet
+	 */
+	public FileContent getContent() {
+		return content;
+	}
+
+	/**
+	 * @param store where a new content keeps its bytes
+	 * @return the content of this file, created if nothing has been written yet
+	 */
+	public FileContent getOrCreateContent(ContentStore store) {
+		Preconditions.checkState(this.fileType == FileType.FILE, "a directory has no content");
+		FileContent current = this.content;
+		if (current == null) {
+			CONTENT.compareAndSet(this, null, new FileContent(store));
+			current = this.content;
+		}
+		return current;
+	}
+
+	/**
+	 * change the content of this file as one change in epoch. the content before is kept as a
+	 * fork as long as an open snapshot sees it, see contentAt. the caller holds the monitor of
+	 * this node and has entered epoch, see Versions, or passes OWN_EPOCH. a file whose content
+	 * has been given back is not changed anymore, it would not be given back again
+	 * @param store where a new content keeps its bytes
+	 */
+	public void changeContent(ContentStore store, long epoch, Consumer<FileContent> change) {
+		Preconditions.checkState(this.fileType == FileType.FILE, "a directory has no content");
+		if (epoch == OWN_EPOCH) {
+			this.changeContent(store, change);
+			return;
+		}
+		if (this.contentReleased) {
+			return;
+		}
+		this.keepContent(epoch);
+		change.accept(this.getOrCreateContent(store));
+	}
+
+	/**
+	 * change the content of this file as a change of its own
+	 */
+	public synchronized void changeContent(ContentStore store, Consumer<FileContent> change) {
+		long epoch = Versions.enter();
+		try {
+			this.changeContent(store, epoch, change);
+		} finally {
+			Versions.exit(epoch);
+		}
+	}
+
+	/**
+	 * give the chunks of a removed file back, the open snapshots that see the content keep
+	 * reading it. a file can be reclaimed twice, see InMemoryFileSystem#reclaimIfDead
+	 */
+	public synchronized void releaseContent() {
+		if (this.contentReleased) {
+			return;
+		}
+		this.contentReleased = true;
+		FileContent current = this.content;
+		if (current == null) {
+			return;
+		}
+		long epoch = Versions.enter();
+		try {
+			this.keepContent(epoch);
+			current.release();
+		} finally {
+			Versions.exit(epoch);
+		}
+	}
+
+	/**
+	 * @return a fork of the content a snapshot of the epoch sees, the caller releases it,
+	 * null if the file was empty
+	 */
+	public synchronized FileContent contentAt(long snapshotEpoch) {
+		FileContent found = this.content;
+		if (this.contentEpoch > snapshotEpoch) {
+			found = null;
+			for (ContentVersion v = this.contentVersions; v != null; v = v.previous) {
+				if (v.epoch <= snapshotEpoch) {
+					found = v.content;
+					break;
+				}
+			}
+		}
+		return found == null ? null : found.fork();
+	}
+
+	/**
+	 * keep the content as it is before a change in epoch if an open snapshot sees it,
+	 * the ones no snapshot sees anymore are given back
+	 */
+	private void keepContent(long epoch) {
+		this.trimContentVersions();
+		if (this.contentEpoch < epoch && Versions.needed(this.contentEpoch, epoch)) {
+			FileContent current = this.content;
+			this.contentVersions = new ContentVersion(current == null ? null : current.fork(),
+				this.contentEpoch, this.contentVersions);
+			if (!this.contentKept) {
+				this.contentKept = true;
+				KEPT_CONTENT.offer(this);
+			}
+		}
+		this.contentEpoch = epoch;
+	}
+
+	private void trimContentVersions() {
+		long replaced = this.contentEpoch;
+		ContentVersion newer = null;
+		for (ContentVersion v = this.contentVersions; v != null; v = v.previous) {
+			if (Versions.needed(v.epoch, replaced)) {
+				newer = v;
+			} else {
+				if (newer == null) {
+					this.contentVersions = v.previous;
+				} else {
+					newer.previous = v.previous;
+				}
+				if (v.content != null) {
+					v.content.release();
+				}
+			}
+			replaced = v.epoch;
+		}
+	}
+
+	/**
+	 * give back the contents kept for snapshots that have been released, every file that
+	 * keeps some is visited once
+	 */
+	static void dropContentVersions() {
+		for (int n = KEPT_CONTENT.size(); n > 0; --n) {
+			InfoNode file = KEPT_CONTENT.poll();
+			if (file == null) {
+				return;
+			}
+			synchronized (file) {
+				file.trimContentVersions();
+				if (file.contentVersions == null) {
+					file.contentKept = false;
+				} else {
+					KEPT_CONTENT.offer(file);
+				}
+			}
+		}
+	}
+
+	/**
+	 * a new node of the same type and permissions, it is not linked anywhere and has no children.
+	 * the copy of a file shares the content chunks of this file until either is written,
+	 * see FileContent#fork
+	 * @param name the relative path/file name of the copy
+	 * @param snapshotEpoch the copy gets the content a snapshot of the epoch sees
+	 */
+	public InfoNode copy(String name, long snapshotEpoch) {
+		InfoNode copy = new InfoNode(name, this.fileType);
+		copy.mode = this.mode;
+		if (this.fileType == FileType.FILE) {
+			copy.content = this.contentAt(snapshotEpoch);
+		}
+		return copy;
+	}
+
+	/**
+	 * a child being moved is an entry of both directories in a snapshot too, it only counts
+	 * where its parent and name were at the epoch, like isEntry
+	 * @return the sub dirs/files a snapshot of the epoch sees, sorted by name
+	 */
+	public Iterable<InfoNode> getChildren(long snapshotEpoch) {
+		ChildContainer current = children;
+		return () -> current.iterator(snapshotEpoch, (name, child) -> child.isChildOf(this, name, snapshotEpoch));
+	}
+
+	/**
+	 * it counts the children one by one, O(n)
+	 */
+	public int getChildCount(long snapshotEpoch) {
+		int count = 0;
+		for (Iterator<InfoNode> it = getChildren(snapshotEpoch).iterator(); it.hasNext(); it.next()) {
+			++count;
+		}
+		return count;
+	}
+
+	/**
+	 * look up a direct child in the version a snapshot of the epoch sees
+	 */
+	public InfoNode getChild(CharSequence name, long snapshotEpoch){
+		InfoNode child = this.children.get(name, snapshotEpoch);
+		return child == null || child.isChildOf(this, name, snapshotEpoch) ? child : null;
+	}
+
+	/**
+	 * @return the sub dirs/files sorted by name, a file has no children
+	 */
+	public Iterable<InfoNode> getChildren() {
+		ChildContainer current = children;
+		return () -> current.iterator(null, false, null, this::isEntry);
+	}
+
+	/**
+	 * iterate the sub dirs/files without copying them, changes made meanwhile may or may not be seen
+	 * @param after a name to resume after, it does not have to exist anymore, null to start at the first one
+	 * @return the sub dirs/files with names greater than after, sorted by name
+	 */
+	public Iterator<InfoNode> getChildrenAfter(CharSequence after) {
+		return children.iterator(after, false, null, this::isEntry);
+	}
+
+	/**
+	 * iterate the sub dirs/files in a name range without copying them, the cost depends on
+	 * the size of the range and not of the directory
+	 * @param from the lowest name, null for no lower bound
+	 * @param fromInclusive true if a child named from is included
+	 * @param to the name to stop before, null for no upper bound
+	 * @return the sub dirs/files between from and to, sorted by name
+	 */
+	public Iterator<InfoNode> getChildren(CharSequence from, boolean fromInclusive, CharSequence to) {
+		return children.iterator(from, fromInclusive, to, this::isEntry);
+	}
+
+	public int getChildCount() {
+		return children.size();
+	}
+
+	/**
+	 * look up a direct child by name, the name can be any CharSequence with the
+	 * same content as the child's path, eg. a PathCursor pointing at a component
+	 * @param name the name of the child
+	 * @return the child node or null if not exist
+	 */
+	public InfoNode getChild(CharSequence name){
+		InfoNode child = this.children.get(name);
+		return child == null || child.isChildOf(this, name) ? child : null;
+	}
+
+	/**
+	 * a node being moved is an entry of both directories, or of its directory under both
+	 * names, for a moment. it only counts where its parent and name say it is, so a reader
+	 * never sees it twice, see moveChild
+	 */
+	private boolean isEntry(String name, InfoNode child) {
+		return child.isChildOf(this, name);
+	}
+
+	private boolean isChildOf(InfoNode dir, CharSequence name) {
+		for (;;) {
+			int before = this.moves;
+			if ((before & 1) == 0) {
+				boolean child = this.parent == dir && this.path.contentEquals(name);
+				if (this.moves == before) {
+					return child;
+				}
+			}
+			Thread.yield();
+		}
 	}
 
-	public Map<String, InfoNode> getChildren() {
-		return children;
+	/**
+	 * like isChildOf(dir, name) with the name and parent a snapshot of the epoch sees
+	 */
+	private boolean isChildOf(InfoNode dir, CharSequence name, long snapshotEpoch) {
+		for (;;) {
+			int before = this.moves;
+			if ((before & 1) == 0) {
+				String oldName = this.path;
+				InfoNode oldParent = this.parent;
+				for (Renamed r = this.renamed; r != null && r.epoch > snapshotEpoch; r = r.previous) {
+					oldName = r.name;
+					oldParent = r.parent;
+				}
+				boolean child = oldParent == dir && oldName.contentEquals(name);
+				if (this.moves == before) {
+					return child;
+				}
+			}
+			Thread.yield();
+		}
 	}
 
 
@@ -98,7 +698,12 @@ public class InfoNode {
 	 */
 	public boolean addChild(InfoNode newNode){
 		try{
-			this.children.put(newNode.getPath(), newNode);
+			Preconditions.checkState(this.fileType == FileType.DIRECTORY, "can not add a child to a file");
+			newNode.parent = this;
+			if (!this.mutate(newNode.path, newNode, PUT)) {
+				return false;
+			}
+			this.modified();
 			return true;
 		}catch (Throwable e){
 			e.printStackTrace();
@@ -108,15 +713,375 @@ public class InfoNode {
 	}
 
 	/**
-	 * delete a fileNode from current node
+	 * add a new fileNode to current node unless there is a child with the same name already.
+	 * the check and the add are one atomic step, so of several threads creating the same name
+	 * exactly one adds its node and the others get that node back
+	 * @param newNode a node that is not linked anywhere yet
+	 * @return null if newNode has been added, otherwise the child that has the name
+	 */
+	public InfoNode addChildIfAbsent(InfoNode newNode){
+		return this.addChildIfAbsent(newNode, OWN_EPOCH);
+	}
+
+	/**
+	 * like addChildIfAbsent(newNode) as a change in epoch, see mutate
+	 */
+	public InfoNode addChildIfAbsent(InfoNode newNode, long epoch){
+		Preconditions.checkState(this.fileType == FileType.DIRECTORY, "can not add a child to a file");
+		newNode.parent = this;
+		for (;;) {
+			if (this.mutate(newNode.path, newNode, PUT_IF_ABSENT, epoch)) {
+				this.modified();
+				return null;
+			}
+			InfoNode existing = this.children.get(newNode.getPath());
+			// the child may have been removed since, then try to add again
+			if (existing != null) {
+				return existing;
+			}
+		}
+	}
+
+	/**
+	 * install the children of a directory that has none yet, used to build a tree in bulk
+	 * before it is linked anywhere
+	 * @param sorted the children in strictly ascending name order, the array is kept
+	 * @exception throws IllegalArgumentException if the names are not strictly ascending
+	 */
+	public void setChildren(InfoNode[] sorted) {
+		Preconditions.checkState(this.fileType == FileType.DIRECTORY, "can not add a child to a file");
+		Preconditions.checkState(this.children.size() == 0, "children have been added already");
+		for (int i = 0; i < sorted.length; ++i) {
+			Preconditions.checkArgument(i == 0
+					|| StringUtils.compareNames(sorted[i - 1].getPath(), sorted[i].getPath()) < 0,
+				"children are not sorted: %s", sorted[i].getPath());
+			sorted[i].parent = this;
+			if (sorted[i].fileType == FileType.DIRECTORY) {
+				sorted[i].moveCounts(this);
+			}
+		}
+		this.children = ChildContainer.of(sorted);
+	}
+
+	/**
+	 * delete a fileNode from current node, the removed node is marked as detached
 	 * @param path
 	 * @return true if this operation success
 	 */
 	public boolean removeChild(String path){
-		this.children.remove(path);
+		InfoNode removed = this.children.get(path);
+		return removed == null || removeChild(removed);
+	}
+
+	/**
+	 * delete the given fileNode from current node, the removed node is marked as detached
+	 * @param child the node to be removed
+	 * @return false if child is not a child of current node anymore, eg. somebody else removed it
+	 */
+	public boolean removeChild(InfoNode child){
+		return this.removeChild(child, OWN_EPOCH);
+	}
+
+	/**
+	 * like removeChild(child) as a change in epoch, see mutate
+	 */
+	public boolean removeChild(InfoNode child, long epoch){
+		if (!this.mutate(child.path, child, REMOVE, epoch)) {
+			return false;
+		}
+		child.detached = true;
+		this.modified();
+		return true;
+	}
+
+	/**
+	 * move a child of this directory to dst and give it a new name in O(1), the subtree under
+	 * it moves along. dst gets the child first with an atomic put-if-absent, then the child
+	 * takes the new name and parent in one step readers see as a whole, then it leaves this
+	 * directory. a live lookup or listing only shows an entry whose node has its name and
+	 * parent, so the child is reachable under exactly one of both names all the time, and a
+	 * reader of the new name sees it with everything under it. the three steps are changes
+	 * of their own, see Versions, a snapshot filters by the name and parent of its epoch the
+	 * same way, so it sees the child either at the old place or at the new one.
+	 * moves of the same child must not run concurrently, and one move must not move a
+	 * directory under a directory another one is moving
+	 * @param child a child of this directory
+	 * @param dst a directory that is neither child nor under it, may be this directory
+	 * @param name the new name
+	 * @return false if dst has a child named name, or child is not a child of this directory
+	 * anymore, eg. somebody removed it, nothing has changed then
+	 */
+	public boolean moveChild(InfoNode child, InfoNode dst, String name){
+		return this.moveChild(child, dst, name, OWN_EPOCH);
+	}
+
+	/**
+	 * like moveChild(child, dst, name) with all three steps in epoch, see mutate
+	 */
+	public boolean moveChild(InfoNode child, InfoNode dst, String name, long epoch){
+		Preconditions.checkState(dst.fileType == FileType.DIRECTORY, "can not add a child to a file");
+		String oldName = child.path;
+		InfoNode oldParent = child.parent;
+		String newName = NameTable.intern(name);
+		if (!dst.mutate(newName, child, PUT_IF_ABSENT, epoch)) {
+			return false;
+		}
+		child.place(newName, dst, epoch);
+		if (!this.mutate(oldName, child, REMOVE, epoch)) {
+			// removed meanwhile, the removal wins
+			child.place(oldName, oldParent, epoch);
+			dst.mutate(newName, child, REMOVE, epoch);
+			return false;
+		}
+		child.ctime = Clock.nowNanos();
+		this.modified();
+		if (dst != this) {
+			dst.modified();
+		}
 		return true;
 	}
 
+	/**
+	 * change name and parent in one step for the readers of isChildOf, only moveChild of
+	 * the parent changes them. it is a change in epoch, see mutate, the old ones are kept for
+	 * the open snapshots taken before it
+	 */
+	private void place(String name, InfoNode dir, long epoch) {
+		if (epoch == OWN_EPOCH) {
+			long own = Versions.enter();
+			try {
+				this.place(name, dir, own);
+			} finally {
+				Versions.exit(own);
+			}
+			return;
+		}
+		Renamed kept = this.renamed;
+		if (kept != null && kept.epoch <= Versions.oldestSnapshot()) {
+			// every open snapshot sees the current place or a later one
+			kept = null;
+		}
+		Renamed renamed = Versions.needed(0, epoch) ? new Renamed(this.path, this.parent, epoch, kept) : kept;
+		int before = this.moves;
+		this.moves = before + 1;
+		this.renamed = renamed;
+		this.path = name;
+		this.parent = dir;
+		this.moves = before + 2;
+	}
+
+	/**
+	 * add or remove a child as one change, see Versions. a change of its own that finds its
+	 * entry changed in a later epoch already is made again in the current one, nothing waits
+	 * for an epoch
+	 * @param name the name of the entry, the name of child unless it is being renamed
+	 * @param op PUT, PUT_IF_ABSENT or REMOVE
+	 * @param epoch the epoch the caller has entered, or OWN_EPOCH
+	 * @return false if a child to remove is not the entry of name, or there is an entry of
+	 * the name of a child to put if absent
+	 * @throws ConcurrentModificationException if the entry has been changed in a later epoch
+	 * than the one the caller has entered, a caller holding the monitor of this directory only
+	 * gets it from a change that did not hold it
+	 */
+	private boolean mutate(String name, InfoNode child, int op, long epoch) {
+		if (epoch != OWN_EPOCH) {
+			ChildContainer next = this.change(name, child, op, epoch);
+			if (next == ChildContainer.NEWER) {
+				throw new ConcurrentModificationException("changed in a later epoch than " + epoch);
+			}
+			return next != null;
+		}
+		for (;;) {
+			long own = Versions.enter();
+			try {
+				ChildContainer next = this.change(name, child, op, own);
+				if (next != ChildContainer.NEWER) {
+					return next != null;
+				}
+			} finally {
+				Versions.exit(own);
+			}
+		}
+	}
+
+	private boolean mutate(String name, InfoNode child, int op) {
+		return this.mutate(name, child, op, OWN_EPOCH);
+	}
+
+	/**
+	 * @return the container installed, null if nothing has changed, or NEWER
+	 */
+	private ChildContainer change(String name, InfoNode child, int op, long epoch) {
+		for (;;) {
+			ChildContainer current = this.children;
+			ChildContainer next;
+			if (op == PUT) {
+				next = current.with(name, child, epoch);
+			} else if (op == PUT_IF_ABSENT) {
+				next = current.withIfAbsent(name, child, epoch);
+			} else {
+				next = current.without(name, child, epoch);
+			}
+			if (next == null || next == ChildContainer.NEWER) {
+				return next;
+			}
+			if (next == ChildContainer.SEALED) {
+				// removeAllChildren is swapping current out, the change goes to its successor
+				Thread.yield();
+				continue;
+			}
+			if (next == current || CHILDREN.compareAndSet(this, current, next)) {
+				return next;
+			}
+		}
+	}
+
+	/**
+	 * delete every fileNode of current node with one swap of the children as one change,
+	 * every removed node is marked as detached. a skip list is sealed before the swap, an
+	 * entry put into it in place afterwards would be neither removed nor reachable. the
+	 * sealed container stays the previous version as long as a snapshot sees it
+	 * @return the nodes removed by this call
+	 */
+	public List<InfoNode> removeAllChildren(){
+		for (;;) {
+			long epoch = Versions.enter();
+			try {
+				List<InfoNode> removed = this.swapChildren(epoch);
+				if (removed != null) {
+					return removed;
+				}
+			} finally {
+				Versions.exit(epoch);
+			}
+		}
+	}
+
+	/**
+	 * like removeAllChildren() as a change in epoch, see mutate
+	 */
+	public List<InfoNode> removeAllChildren(long epoch){
+		if (epoch == OWN_EPOCH) {
+			return this.removeAllChildren();
+		}
+		List<InfoNode> removed = this.swapChildren(epoch);
+		if (removed == null) {
+			throw new ConcurrentModificationException("changed in a later epoch than " + epoch);
+		}
+		return removed;
+	}
+
+	/**
+	 * @return the removed nodes, null if the children have been changed in a later epoch already
+	 */
+	private List<InfoNode> swapChildren(long epoch) {
+		for (;;) {
+			ChildContainer current = this.children;
+			if (current.size() == 0) {
+				return new ArrayList<>();
+			}
+			if (current.epoch > epoch) {
+				return null;
+			}
+			current.seal();
+			ChildContainer next = ChildContainer.empty(epoch, current.previousFor(epoch));
+			if (CHILDREN.compareAndSet(this, current, next)) {
+				List<InfoNode> removed = new ArrayList<>(current.size());
+				for (InfoNode child : current) {
+					// a child being renamed within this directory can be there under both names
+					if (!child.detached) {
+						child.detached = true;
+						removed.add(child);
+					}
+				}
+				this.modified();
+				return removed;
+			}
+		}
+	}
+
+
+	/**
+	 * the counts of everything under a directory and the directory they are passed on to.
+	 * files and dirs are two longs that are closed one by one when the directory is moved or
+	 * removed. an atomic add to a count is ordered against its close: a count added before
+	 * the close is handed over with the others, one added after it finds the count closed and
+	 * goes to the replacement, see moveCounts. so files and dirs find their way up on their own
+	 */
+	private static final class Subtree {
+		private static final long CLOSED = Long.MIN_VALUE;
+
+		private static final AtomicLongFieldUpdater<Subtree> FILES =
+			AtomicLongFieldUpdater.newUpdater(Subtree.class, "files");
+
+		private static final AtomicLongFieldUpdater<Subtree> DIRS =
+			AtomicLongFieldUpdater.newUpdater(Subtree.class, "dirs");
+
+		private final InfoNode up;
+
+		private volatile long files;
+
+		private volatile long dirs;
+
+		private Subtree(InfoNode up) {
+			this.up = up;
+		}
+
+		/**
+		 * @return false if the count has been closed, the delta has to go to its replacement
+		 */
+		private boolean add(AtomicLongFieldUpdater<Subtree> field, long delta) {
+			return !isClosed(field.getAndAdd(this, delta));
+		}
+
+		/**
+		 * @return the count, every later add to it fails
+		 */
+		private long close(AtomicLongFieldUpdater<Subtree> field) {
+			return field.getAndSet(this, CLOSED);
+		}
+
+		/**
+		 * an add after the close moves the value a little away from CLOSED, never near the
+		 * range of real counts
+		 */
+		private static boolean isClosed(long count) {
+			return count < -(1L << 62);
+		}
+	}
+
+	/**
+	 * the content of a file from a change in the epoch up to the next one, a fork only the
+	 * open snapshots read, null if the file was empty
+	 */
+	private static final class ContentVersion {
+		private final FileContent content;
+		private final long epoch;
+		private ContentVersion previous;
+
+		private ContentVersion(FileContent content, long epoch, ContentVersion previous) {
+			this.content = content;
+			this.epoch = epoch;
+			this.previous = previous;
+		}
+	}
+
+	/**
+	 * the name and parent of a node before a move in the epoch
+	 */
+	private static final class Renamed {
+		private final String name;
+		private final InfoNode parent;
+		private final long epoch;
+		private final Renamed previous;
+
+		private Renamed(String name, InfoNode parent, long epoch, Renamed previous) {
+			this.name = name;
+			this.parent = parent;
+			this.epoch = epoch;
+			this.previous = previous;
+		}
+	}
 
 //	@Override
 //	public String toString() {
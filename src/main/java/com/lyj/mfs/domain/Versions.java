@@ -0,0 +1,153 @@
+package com.lyj.mfs.domain;
+
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @program: inmemoryFileSystem
+ * @description: the epochs that version the namespace. every single change of the tree, one
+ * entry put into or removed from a directory or one node moved, is made in the current write
+ * epoch, taking a snapshot closes the epoch and starts the next one. a snapshot of epoch S sees
+ * every change made in an epoch up to S and nothing after it, a container or an entry changed
+ * after S keeps the version S needs, see ChildContainer.
+ *
+ * a change enters the epoch it is made in and leaves it right after, a snapshot waits until
+ * every change of its epoch has left, so a change is in a snapshot as a whole or not at all.
+ * an operation made of several changes, like mkdir with its parents or a move, can be in a
+ * snapshot in part. nothing waits while it is inside an epoch, so the wait of a snapshot is as
+ * short as the changes running when it is taken, and writers never wait for a snapshot
+ * @author: LYJ
+ * @create: 2026-10-19 16:20
+ **/
+
+public final class Versions {
+	private Versions(){}
+
+	/**
+	 * container versions start at 0, the first write epoch is 1
+	 */
+	private static final AtomicLong writeEpoch = new AtomicLong(1);
+
+	/**
+	 * the running changes of the odd and the even epochs, only two epochs can have
+	 * running changes at the same time
+	 */
+	private static final LongAdder[] running = {new LongAdder(), new LongAdder()};
+
+	/**
+	 * the number of open snapshots per epoch, guarded by the class lock
+	 */
+	private static final TreeMap<Long, Integer> snapshots = new TreeMap<>();
+
+	private static volatile long oldestSnapshot = Long.MAX_VALUE;
+
+	private static volatile long newestSnapshot = -1;
+
+	/**
+	 * the newest epoch every change of which has left, see drainedEpoch
+	 */
+	private static volatile long drainedEpoch;
+
+	/**
+	 * enter the current write epoch for one change, must be followed by exit.
+	 * the caller must not wait for anything before it exits
+	 * @return the epoch the change is made in
+	 */
+	public static long enter() {
+		for (;;) {
+			long epoch = writeEpoch.get();
+			LongAdder counter = running[(int) (epoch & 1)];
+			counter.increment();
+			if (writeEpoch.get() == epoch) {
+				return epoch;
+			}
+			// a snapshot closed the epoch meanwhile and may not have seen us
+			counter.decrement();
+		}
+	}
+
+	public static void exit(long epoch) {
+		running[(int) (epoch & 1)].decrement();
+	}
+
+	/**
+	 * @return the epoch of the oldest open snapshot, Long.MAX_VALUE if there is none
+	 */
+	static long oldestSnapshot() {
+		return oldestSnapshot;
+	}
+
+	/**
+	 * every change of this epoch and of the ones before has left, what a change does inside
+	 * its epoch is done, eg. the journal has got its record
+	 */
+	public static long drainedEpoch() {
+		return drainedEpoch;
+	}
+
+	/**
+	 * go on at epoch at least, so the epochs of records read from a journal are older than the
+	 * ones given out from now on. only called while no change is logged, see Journal
+	 */
+	public static synchronized void advanceTo(long epoch) {
+		if (writeEpoch.get() < epoch) {
+			writeEpoch.set(epoch);
+			drainedEpoch = epoch - 1;
+		}
+	}
+
+	/**
+	 * it may say true for a version nobody sees when snapshots are opened or released meanwhile
+	 * @return false if no open snapshot sees a version made in versionEpoch and replaced in epoch,
+	 * that is none of an epoch from versionEpoch up to before epoch
+	 */
+	static boolean needed(long versionEpoch, long epoch) {
+		return oldestSnapshot < epoch && newestSnapshot >= versionEpoch;
+	}
+
+	/**
+	 * close the current epoch and keep its versions until release is called.
+	 * the snapshot is registered before the epoch is closed, so the changes of the next epoch
+	 * keep the versions it needs, then it waits for the changes of its epoch still running
+	 * @return the epoch of the snapshot
+	 */
+	public static synchronized long openSnapshot() {
+		long epoch = writeEpoch.get();
+		snapshots.merge(epoch, 1, Integer::sum);
+		oldestSnapshot = snapshots.firstKey();
+		newestSnapshot = snapshots.lastKey();
+		writeEpoch.set(epoch + 1);
+		LongAdder counter = running[(int) (epoch & 1)];
+		while (counter.sum() != 0) {
+			Thread.yield();
+		}
+		drainedEpoch = epoch;
+		return epoch;
+	}
+
+	/**
+	 * the versions only this snapshot needed are dropped by the next change of their entry,
+	 * the file contents kept for it are given back right away, see InfoNode#changeContent
+	 */
+	public static void releaseSnapshot(long epoch) {
+		if (release(epoch)) {
+			InfoNode.dropContentVersions();
+		}
+	}
+
+	private static synchronized boolean release(long epoch) {
+		Integer count = snapshots.get(epoch);
+		if (count == null) {
+			return false;
+		}
+		if (count == 1) {
+			snapshots.remove(epoch);
+		} else {
+			snapshots.put(epoch, count - 1);
+		}
+		oldestSnapshot = snapshots.isEmpty() ? Long.MAX_VALUE : snapshots.firstKey();
+		newestSnapshot = snapshots.isEmpty() ? -1 : snapshots.lastKey();
+		return true;
+	}
+}
@@ -0,0 +1,33 @@
+package com.lyj.mfs.exceptions;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * @program: inmemoryFileSystem
+ * @description: a journal has a damaged record with complete records behind it. they are not
+ * replayed, they may depend on the damaged one, and nothing is cut. a crash under a policy
+ * that does not force every record can leave such a file when the system wrote later pages
+ * first, cutting the file at the offset drops the records from there on
+ * @author: LYJ
+ * @create: 2026-10-20 10:15
+ **/
+
+public class DamagedJournalException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final long offset;
+
+	public DamagedJournalException(Path file, long offset) {
+		super("journal " + file + " is damaged at " + offset + " and has complete records behind it");
+		this.offset = offset;
+	}
+
+	/**
+	 * @return where the damaged record starts, the records in front of it have been replayed
+	 */
+	public long getOffset() {
+		return offset;
+	}
+}
@@ -9,6 +9,8 @@ package com.lyj.mfs.exceptions;
 
 public class PathNotFoundException extends Exception {
 
+	private static final long serialVersionUID = 1L;
+
 	public PathNotFoundException() {
 		super();
 	}
@@ -0,0 +1,96 @@
+package com.lyj.mfs.metrics;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * @program: inmemoryFileSystem
+ * @description: the summary of one or more Histograms at one moment, a percentile is the
+ * highest value of its bucket, so it is never below the true one and at most 25% above it
+ * @author: LYJ
+ * @create: 2026-10-20 23:30
+ **/
+
+public final class Distribution {
+
+	private final long count;
+
+	private final long p50;
+
+	private final long p90;
+
+	private final long p99;
+
+	private final long p999;
+
+	private final long max;
+
+	/**
+	 * @param counts the summed bucket counts of the histograms
+	 */
+	Distribution(long[] counts) {
+		long total = 0;
+		for (long count : counts) {
+			total += count;
+		}
+		this.count = total;
+		this.p50 = valueAt(counts, total, 0.5);
+		this.p90 = valueAt(counts, total, 0.9);
+		this.p99 = valueAt(counts, total, 0.99);
+		this.p999 = valueAt(counts, total, 0.999);
+		this.max = valueAt(counts, total, 1.0);
+	}
+
+	/**
+	 * @return the highest value of the bucket holding the value at quantile, 0 if there is none
+	 */
+	private static long valueAt(long[] counts, long total, double quantile) {
+		if (total == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(quantile * total));
+		long seen = 0;
+		for (int i = 0; i < counts.length; ++i) {
+			seen += counts[i];
+			if (seen >= rank) {
+				return Histogram.highestOf(i);
+			}
+		}
+		return Histogram.highestOf(counts.length - 1);
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public long getP50() {
+		return p50;
+	}
+
+	public long getP90() {
+		return p90;
+	}
+
+	public long getP99() {
+		return p99;
+	}
+
+	public long getP999() {
+		return p999;
+	}
+
+	public long getMax() {
+		return max;
+	}
+
+	@Override
+	public String toString() {
+		return MoreObjects.toStringHelper(this)
+			.add("count", count)
+			.add("p50", p50)
+			.add("p90", p90)
+			.add("p99", p99)
+			.add("p999", p999)
+			.add("max", max)
+			.toString();
+	}
+}
@@ -0,0 +1,81 @@
+package com.lyj.mfs.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * @program: inmemoryFileSystem
+ * @description: counts of non negative values in log linear buckets like HdrHistogram,
+ * every power of two is split into SUB_BUCKETS buckets, so a value is known within 25%
+ * whatever its magnitude, and the whole long range takes a fixed 248 buckets.
+ * a histogram has a single writer, it records with an ordered store and no compare and set,
+ * other threads can read it at any time and see every value recorded before a while ago
+ * @author: LYJ
+ * @create: 2026-10-20 23:20
+ **/
+
+public final class Histogram {
+
+	private static final int SUB_BITS = 2;
+
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+	static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+	/**
+	 * only called by the owner thread
+	 * @param value negative values are counted as 0
+	 */
+	public void record(long value) {
+		int bucket = bucketOf(value);
+		counts.lazySet(bucket, counts.get(bucket) + 1);
+	}
+
+	/**
+	 * add the counts of other to this histogram, the caller is the only writer of this one
+	 * and other is not written anymore
+	 */
+	void add(Histogram other) {
+		for (int i = 0; i < BUCKETS; ++i) {
+			counts.lazySet(i, counts.get(i) + other.counts.get(i));
+		}
+	}
+
+	/**
+	 * add the counts of this histogram to sum, bucket by bucket
+	 */
+	void addTo(long[] sum) {
+		for (int i = 0; i < BUCKETS; ++i) {
+			sum[i] += counts.get(i);
+		}
+	}
+
+	static int bucketOf(long value) {
+		if (value < SUB_BUCKETS) {
+			return value < 0 ? 0 : (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	/**
+	 * @return the lowest value counted in bucket
+	 */
+	static long lowestOf(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+		long sub = bucket % SUB_BUCKETS;
+		return (SUB_BUCKETS + sub) << (exponent - SUB_BITS);
+	}
+
+	/**
+	 * @return the highest value counted in bucket
+	 */
+	static long highestOf(int bucket) {
+		return bucket == BUCKETS - 1 ? Long.MAX_VALUE : lowestOf(bucket + 1) - 1;
+	}
+}
@@ -0,0 +1,225 @@
+package com.lyj.mfs.metrics;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * @program: inmemoryFileSystem
+ * @description: the counters and histograms of the file system. every thread records into a
+ * Recorder of its own, so recording takes no lock and no compare and set, and the recorders
+ * are summed up when the metrics are read. the recorder of a thread that has died is folded
+ * into one shared recorder, so a pool replacing its threads does not grow the recorders.
+ * -Dmfs.metrics=false turns everything off: ENABLED is a constant, so the JIT drops the
+ * recording calls and their arguments are guarded by it where they cost something.
+ * an operation that returns false or null or throws is an error
+ * @author: LYJ
+ * @create: 2026-10-20 23:40
+ **/
+
+public final class Metrics {
+	private Metrics(){}
+
+	public static final boolean ENABLED = !"false".equals(System.getProperty("mfs.metrics"));
+
+	public enum Op {
+		MKDIR, TOUCH, WRITE, APPEND, READ, TRUNCATE, SIZE, STAT, DU, LS, FIND, WALK, CD, PWD, RM,
+		RENAME, COPY, WATCH
+	}
+
+	private static final Op[] OPS = Op.values();
+
+	/**
+	 * the recorder of every live thread that has recorded something
+	 */
+	private static final Queue<Recorder> recorders = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * the counts of the threads that have died, only changed and read under its monitor
+	 */
+	private static final Recorder retired = new Recorder(null);
+
+	private static final ThreadLocal<Recorder> recorder = ThreadLocal.withInitial(() -> {
+		// a new thread is a good moment to look for the ones that have gone
+		retire();
+		Recorder created = new Recorder(Thread.currentThread());
+		recorders.add(created);
+		return created;
+	});
+
+	/**
+	 * @return the start time of an operation, pass it to done
+	 */
+	public static long start() {
+		return ENABLED ? System.nanoTime() : 0;
+	}
+
+	/**
+	 * record an operation that returns a boolean
+	 * @return ok, so the result can be returned right away
+	 */
+	public static boolean done(Op op, long start, boolean ok) {
+		if (ENABLED) {
+			recorder.get().done(op, System.nanoTime() - start, ok);
+		}
+		return ok;
+	}
+
+	/**
+	 * record an operation whose result is null when it fails
+	 * @return result, so it can be returned right away
+	 */
+	public static <T> T done(Op op, long start, T result) {
+		if (ENABLED) {
+			recorder.get().done(op, System.nanoTime() - start, result != null);
+		}
+		return result;
+	}
+
+	/**
+	 * record an operation that has thrown, like one given a bad argument
+	 * @return e, so it can be thrown right away
+	 */
+	public static RuntimeException thrown(Op op, long start, RuntimeException e) {
+		if (ENABLED) {
+			recorder.get().done(op, System.nanoTime() - start, false);
+		}
+		return e;
+	}
+
+	/**
+	 * a path has been resolved by walking steps directories, 0 when the path index found it
+	 */
+	public static void resolved(int steps) {
+		if (ENABLED) {
+			recorder.get().resolutionSteps.record(steps);
+		}
+	}
+
+	/**
+	 * a child has been looked up in a directory with children entries
+	 */
+	public static void lookedUp(int children) {
+		if (ENABLED) {
+			recorder.get().childCounts.record(children);
+		}
+	}
+
+	/**
+	 * @return the operations that have been recorded at least once, in the order of Op
+	 */
+	public static List<OperationStats> getOperations() {
+		List<OperationStats> ret = new ArrayList<>();
+		synchronized (retired) {
+			retire();
+			for (Op op : OPS) {
+				long[] counts = new long[Histogram.BUCKETS];
+				retired.latencies[op.ordinal()].addTo(counts);
+				long errors = retired.errors.get(op.ordinal());
+				for (Recorder each : recorders) {
+					each.latencies[op.ordinal()].addTo(counts);
+					errors += each.errors.get(op.ordinal());
+				}
+				Distribution latency = new Distribution(counts);
+				if (latency.getCount() > 0) {
+					ret.add(new OperationStats(op.name(), errors, latency));
+				}
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * @return how many directories the resolution of a path walks
+	 */
+	public static Distribution getResolutionSteps() {
+		long[] counts = new long[Histogram.BUCKETS];
+		synchronized (retired) {
+			retire();
+			retired.resolutionSteps.addTo(counts);
+			for (Recorder each : recorders) {
+				each.resolutionSteps.addTo(counts);
+			}
+		}
+		return new Distribution(counts);
+	}
+
+	/**
+	 * @return how many children the directories have that a path is resolved through
+	 */
+	public static Distribution getChildCounts() {
+		long[] counts = new long[Histogram.BUCKETS];
+		synchronized (retired) {
+			retire();
+			retired.childCounts.addTo(counts);
+			for (Recorder each : recorders) {
+				each.childCounts.addTo(counts);
+			}
+		}
+		return new Distribution(counts);
+	}
+
+	/**
+	 * fold the recorders of the dead threads into retired and drop them. a thread that is
+	 * seen dead has made its last record before, so nothing is lost, and the readers hold
+	 * the same monitor, so nothing is counted twice
+	 */
+	private static void retire() {
+		synchronized (retired) {
+			for (Iterator<Recorder> it = recorders.iterator(); it.hasNext(); ) {
+				Recorder each = it.next();
+				if (!each.owner.isAlive()) {
+					retired.add(each);
+					it.remove();
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return how many recorders are summed up when the metrics are read, retired not counted
+	 */
+	static int recorderCount() {
+		synchronized (retired) {
+			retire();
+			return recorders.size();
+		}
+	}
+
+	/**
+	 * the records of one thread, or of all the dead threads when it has no owner
+	 */
+	private static final class Recorder {
+		private final Thread owner;
+		private final Histogram[] latencies = new Histogram[OPS.length];
+		private final AtomicLongArray errors = new AtomicLongArray(OPS.length);
+		private final Histogram resolutionSteps = new Histogram();
+		private final Histogram childCounts = new Histogram();
+
+		private Recorder(Thread owner) {
+			this.owner = owner;
+			for (int i = 0; i < latencies.length; ++i) {
+				latencies[i] = new Histogram();
+			}
+		}
+
+		private void add(Recorder other) {
+			for (int i = 0; i < latencies.length; ++i) {
+				latencies[i].add(other.latencies[i]);
+				errors.lazySet(i, errors.get(i) + other.errors.get(i));
+			}
+			resolutionSteps.add(other.resolutionSteps);
+			childCounts.add(other.childCounts);
+		}
+
+		private void done(Op op, long nanos, boolean ok) {
+			latencies[op.ordinal()].record(nanos);
+			if (!ok) {
+				errors.lazySet(op.ordinal(), errors.get(op.ordinal()) + 1);
+			}
+		}
+	}
+}
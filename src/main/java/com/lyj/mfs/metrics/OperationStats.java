@@ -0,0 +1,53 @@
+package com.lyj.mfs.metrics;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * @program: inmemoryFileSystem
+ * @description: what one kind of operation has done so far, latencies are in nanoseconds
+ * @author: LYJ
+ * @create: 2026-10-20 23:35
+ **/
+
+public final class OperationStats {
+
+	private final String name;
+
+	private final long errors;
+
+	private final Distribution latency;
+
+	OperationStats(String name, long errors, Distribution latency) {
+		this.name = name;
+		this.errors = errors;
+		this.latency = latency;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public long getCount() {
+		return latency.getCount();
+	}
+
+	/**
+	 * @return the operations that returned false or null
+	 */
+	public long getErrors() {
+		return errors;
+	}
+
+	public Distribution getLatency() {
+		return latency;
+	}
+
+	@Override
+	public String toString() {
+		return MoreObjects.toStringHelper(this)
+			.add("name", name)
+			.add("errors", errors)
+			.add("latency", latency)
+			.toString();
+	}
+}
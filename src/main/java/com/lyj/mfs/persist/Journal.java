@@ -0,0 +1,654 @@
+package com.lyj.mfs.persist;
+
+import com.google.common.base.Preconditions;
+import com.lyj.mfs.domain.Versions;
+import com.lyj.mfs.exceptions.DamagedJournalException;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * @program: inmemoryFileSystem
+ * @description: an append only write ahead journal of mutations, see JournalRecord.
+ * a change takes the next sequence number inside the write epoch it is made in, see Versions,
+ * and queues its record or skips the number before it leaves the epoch. nothing is locked,
+ * changes that depend on each other take their numbers in the order they are made, see
+ * InMemoryFileSystem#logChange.
+ * one writer thread drains the lock free queue and writes the records ordered by epoch and
+ * by number within an epoch, which is an order of the changes too: a record is written once
+ * the epochs before its own have drained and its own has drained or every smaller number
+ * has come in. records that arrive together share one gathering write and one fsync
+ * (group commit), when an appending session has to wait depends on the FsyncPolicy.
+ * a checkpoint moves the records up to an epoch into a file of their own, see holdBack
+ * @author: LYJ
+ * @create: 2026-10-19 14:40
+ **/
+
+public class Journal implements Closeable {
+
+	public enum FsyncPolicy {
+		/* append returns after the record has been forced to the disk */
+		ALWAYS,
+		/* the writer forces at most every mfs.journal.fsyncIntervalMillis, append does not wait */
+		INTERVAL,
+		/* the writer never forces, the operating system decides, append does not wait */
+		NEVER
+	}
+
+	static final long FSYNC_INTERVAL_NANOS =
+		TimeUnit.MILLISECONDS.toNanos(Long.getLong("mfs.journal.fsyncIntervalMillis", 10));
+
+	/**
+	 * the most records written by one gathering write
+	 */
+	private static final int MAX_BATCH = 1024;
+
+	private static final long IDLE_PARK_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+	/**
+	 * how long the writer parks while a record waits for an epoch to drain or a number to come
+	 * in, both take as long as a single change
+	 */
+	private static final long BLOCKED_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(20);
+
+	private static final int READ_BUFFER_SIZE = 1 << 20;
+
+	/**
+	 * set in seqs once the journal is closed
+	 */
+	private static final long CLOSED = Long.MIN_VALUE;
+
+	/**
+	 * the kinds of Pending
+	 */
+	private static final int RECORD = 0;
+	private static final int SKIP = 1;
+	private static final int BARRIER = 2;
+	private static final int ROTATION = 3;
+
+	private static final Comparator<Pending> ORDER =
+		Comparator.<Pending>comparingLong(p -> p.epoch).thenComparingLong(p -> p.seq);
+
+	private final Path file;
+
+	/**
+	 * only used by the writer once it has started, see rotate
+	 */
+	private FileChannel channel;
+
+	private final FsyncPolicy policy;
+
+	private final Queue<Pending> queue = new ConcurrentLinkedQueue<>();
+
+	private final Thread writer;
+
+	/**
+	 * set by the writer before it parks, appenders only unpark it when it is set
+	 */
+	private final AtomicBoolean parked = new AtomicBoolean();
+
+	/**
+	 * the last sequence number given out, with CLOSED set once no number is given out anymore
+	 */
+	private final AtomicLong seqs;
+
+	/**
+	 * the newest epoch of the records in the file when it was opened
+	 */
+	private final long lastEpoch;
+
+	private volatile IOException failure;
+
+	/**
+	 * the records that have come in and wait for their turn, in the order of the file,
+	 * only used by the writer like the fields below
+	 */
+	private final PriorityQueue<Pending> waiting = new PriorityQueue<>(ORDER);
+
+	/**
+	 * every number up to it has come in, as a record or skipped, the ones above it that have
+	 * come in are in early
+	 */
+	private long arrived;
+	private final PriorityQueue<Long> early = new PriorityQueue<>();
+
+	private final List<Pending> barriers = new ArrayList<>();
+
+	private Pending rotation;
+
+	/**
+	 * the drained epoch when the rotation came in, the records after it wait until the
+	 * epoch of the rotation is known
+	 */
+	private long heldAbove;
+
+	private Journal(Path file, FileChannel channel, FsyncPolicy policy, long lastSeq, long lastEpoch) {
+		this.file = file;
+		this.channel = channel;
+		this.policy = policy;
+		this.seqs = new AtomicLong(lastSeq);
+		this.arrived = lastSeq;
+		this.lastEpoch = lastEpoch;
+		this.writer = new Thread(this::writeLoop, "mfs-journal-writer");
+		this.writer.setDaemon(true);
+	}
+
+	/**
+	 * open a journal for appending, records are added behind the existing ones. a record
+	 * torn by a crash is cut off first, see replay
+	 * @param lastSeq the records get sequence numbers after it and after those in the file
+	 */
+	public static Journal open(Path file, FsyncPolicy policy, long lastSeq) throws IOException {
+		Preconditions.checkNotNull(policy, "policy can not be null");
+		long[] last = {lastSeq, 0};
+		replay(file, record -> {
+			last[0] = Math.max(last[0], record.getSeq());
+			last[1] = Math.max(last[1], record.getEpoch());
+		});
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+			StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		Journal journal = new Journal(file, channel, policy, last[0], last[1]);
+		journal.writer.start();
+		return journal;
+	}
+
+	/**
+	 * open a journal whose new records are numbered after the ones in the file
+	 */
+	public static Journal open(Path file, FsyncPolicy policy) throws IOException {
+		return open(file, policy, 0);
+	}
+
+	public FsyncPolicy getPolicy() {
+		return policy;
+	}
+
+	/**
+	 * @return the last sequence number given out
+	 */
+	public long getLastSeq() {
+		return seqs.get() & ~CLOSED;
+	}
+
+	/**
+	 * @return the newest epoch of the records in the file when it was opened, the changes
+	 * logged from now on have to be made in later ones, see Versions#advanceTo
+	 */
+	public long getLastEpoch() {
+		return lastEpoch;
+	}
+
+	/**
+	 * take the next sequence number for a change inside its write epoch, see Versions#enter.
+	 * it has to be given to enqueue or skip before the change leaves the epoch, the writer
+	 * waits for every number
+	 * @return 0 if the journal is closed or has failed, the change is not logged then
+	 */
+	public long nextSeq() {
+		for (;;) {
+			long last = seqs.get();
+			if (last < 0 || failure != null) {
+				return 0;
+			}
+			if (seqs.compareAndSet(last, last + 1)) {
+				return last + 1;
+			}
+		}
+	}
+
+	/**
+	 * queue the record of a change without waiting for the disk, so the caller can wait
+	 * outside of its locks, see Pending#await
+	 * @param seq what nextSeq gave the change
+	 * @param epoch the write epoch the change has been made in
+	 */
+	public Pending enqueue(JournalRecord record, long seq, long epoch) {
+		Pending pending = new Pending(RECORD, record.encode(seq, epoch), seq, epoch, null);
+		offer(pending);
+		return pending;
+	}
+
+	/**
+	 * give a number back that no record is written for, eg. the change has not been made
+	 */
+	public void skip(long seq) {
+		offer(new Pending(SKIP, null, seq, 0, null));
+	}
+
+	/**
+	 * add a record as a change of its own, under FsyncPolicy.ALWAYS wait until it is on the disk
+	 * @return false if the journal is closed or has failed, the record may be lost then
+	 */
+	public boolean append(JournalRecord record) {
+		Pending pending;
+		long epoch = Versions.enter();
+		try {
+			long seq = nextSeq();
+			if (seq == 0) {
+				return false;
+			}
+			pending = enqueue(record, seq, epoch);
+		} finally {
+			Versions.exit(epoch);
+		}
+		return pending.await();
+	}
+
+	/**
+	 * wait until every record whose number has been given out before is forced to the disk,
+	 * whatever the policy is
+	 * @return false if the journal is closed or has failed
+	 */
+	public boolean sync() {
+		long last = seqs.get();
+		if (last < 0 || failure != null) {
+			return false;
+		}
+		Pending barrier = new Pending(BARRIER, null, last, 0, null);
+		offer(barrier);
+		return barrier.await();
+	}
+
+	/**
+	 * start to move the records into previous, the epochs after the current one are held
+	 * back from now on. it must be followed by rotate, see InMemoryFileSystem#checkpoint
+	 * @return the rotation to give to rotate
+	 */
+	public Pending holdBack(Path previous) {
+		Pending rotation = new Pending(ROTATION, null, 0, 0, previous);
+		offer(rotation);
+		return rotation;
+	}
+
+	/**
+	 * move the records of the epochs up to epoch into the file given to holdBack, the later
+	 * ones go into a new file under the name of the journal. every change of epoch has left
+	 * it already, it waits until the writer has switched
+	 * @param epoch an epoch opened after holdBack, see Versions#openSnapshot
+	 * @throws IOException if the file can not be switched, the journal has failed then
+	 */
+	public void rotate(Pending rotation, long epoch) throws IOException {
+		Preconditions.checkArgument(rotation.kind == ROTATION, "not a rotation");
+		rotation.until = epoch;
+		LockSupport.unpark(writer);
+		if (!rotation.await()) {
+			throw failure != null ? failure : new IOException("journal is closed");
+		}
+	}
+
+	/**
+	 * write and force what is still queued, then stop the writer. the writer waits for the
+	 * numbers given out before
+	 */
+	@Override
+	public void close() throws IOException {
+		for (;;) {
+			long last = seqs.get();
+			if (last < 0) {
+				return;
+			}
+			if (seqs.compareAndSet(last, last | CLOSED)) {
+				break;
+			}
+		}
+		LockSupport.unpark(writer);
+		try {
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		channel.close();
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	private void offer(Pending pending) {
+		queue.offer(pending);
+		if (parked.get()) {
+			LockSupport.unpark(writer);
+		}
+	}
+
+	private void writeLoop() {
+		Pending[] batch = new Pending[MAX_BATCH];
+		ByteBuffer[] buffers = new ByteBuffer[MAX_BATCH];
+		boolean dirty = false;
+		long lastForce = System.nanoTime();
+		for (;;) {
+			// read before the queue, every record of an epoch drained by then is queued already
+			long drained = Versions.drainedEpoch();
+			boolean polled = poll(drained);
+			int n = 0;
+			for (Pending next; n < MAX_BATCH && (next = waiting.peek()) != null && isTurn(next, drained); ++n) {
+				batch[n] = waiting.poll();
+				buffers[n] = batch[n].bytes;
+			}
+
+			if (n > 0) {
+				try {
+					writeFully(buffers, n);
+					dirty = true;
+					if (policy == FsyncPolicy.ALWAYS || policy == FsyncPolicy.INTERVAL
+						&& System.nanoTime() - lastForce >= FSYNC_INTERVAL_NANOS) {
+						dirty = !force();
+						lastForce = System.nanoTime();
+					}
+				} catch (IOException e) {
+					fail(e);
+				}
+				for (int i = 0; i < n; ++i) {
+					batch[i].complete();
+					batch[i] = null;
+					buffers[i] = null;
+				}
+			}
+			long until = rotation == null ? 0 : rotation.until;
+			if (until != 0 && until <= drained && (waiting.isEmpty() || waiting.peek().epoch > until)) {
+				switchFile(rotation.previous);
+				dirty = false;
+				rotation.complete();
+				rotation = null;
+				continue;
+			}
+			if (!barriers.isEmpty() && completeBarriers(dirty)) {
+				dirty = false;
+				lastForce = System.nanoTime();
+			}
+			if (n > 0 || polled) {
+				continue;
+			}
+
+			boolean closed = seqs.get() < 0;
+			if (dirty && policy != FsyncPolicy.NEVER
+				&& (closed || System.nanoTime() - lastForce >= FSYNC_INTERVAL_NANOS)) {
+				dirty = !force();
+				lastForce = System.nanoTime();
+				continue;
+			}
+			boolean blocked = !waiting.isEmpty() || !barriers.isEmpty() || rotation != null;
+			if (closed && !blocked && arrived == getLastSeq() && queue.isEmpty()) {
+				return;
+			}
+			parked.set(true);
+			if (queue.isEmpty()) {
+				LockSupport.parkNanos(this, blocked || closed ? BLOCKED_PARK_NANOS
+					: dirty ? FSYNC_INTERVAL_NANOS : IDLE_PARK_NANOS);
+			}
+			parked.set(false);
+		}
+	}
+
+	/**
+	 * take what has been queued, the records wait for their turn, a skipped number has only come in
+	 * @return true if anything has been taken
+	 */
+	private boolean poll(long drained) {
+		boolean polled = false;
+		for (Pending pending; (pending = queue.poll()) != null; ) {
+			polled = true;
+			if (pending.kind == RECORD) {
+				waiting.add(pending);
+				arrive(pending.seq);
+			} else if (pending.kind == SKIP) {
+				arrive(pending.seq);
+			} else if (pending.kind == BARRIER) {
+				barriers.add(pending);
+			} else {
+				rotation = pending;
+				heldAbove = drained;
+			}
+		}
+		return polled;
+	}
+
+	private void arrive(long seq) {
+		if (seq != arrived + 1) {
+			early.add(seq);
+			return;
+		}
+		arrived = seq;
+		while (!early.isEmpty() && early.peek() == arrived + 1) {
+			arrived = early.poll();
+		}
+	}
+
+	/**
+	 * a record is written once every epoch before its own has drained and its own has drained
+	 * or every smaller number has come in, a smaller number of its epoch is then written
+	 * before it. a rotation holds the epochs after its own back until it has switched, and
+	 * the ones after the drained epoch it came in at until its own is known
+	 */
+	private boolean isTurn(Pending record, long drained) {
+		if (rotation != null) {
+			long until = rotation.until;
+			if (record.epoch > (until != 0 ? until : heldAbove)) {
+				return false;
+			}
+		}
+		return record.epoch <= drained || record.epoch == drained + 1 && arrived >= record.seq - 1;
+	}
+
+	/**
+	 * a barrier is done once every number up to its own has come in and been written
+	 * @return true if the journal has been forced for the barriers done
+	 */
+	private boolean completeBarriers(boolean dirty) {
+		long written = arrived;
+		for (Pending record : waiting) {
+			written = Math.min(written, record.seq - 1);
+		}
+		boolean forced = false;
+		for (Iterator<Pending> it = barriers.iterator(); it.hasNext(); ) {
+			Pending barrier = it.next();
+			if (barrier.seq > written) {
+				continue;
+			}
+			if (dirty && !forced) {
+				force();
+				forced = true;
+			}
+			barrier.complete();
+			it.remove();
+		}
+		return forced;
+	}
+
+	/**
+	 * force the records written so far and move the file to previous, go on in a new file
+	 */
+	private void switchFile(Path previous) {
+		try {
+			channel.force(false);
+			channel.close();
+			Files.move(file, previous, StandardCopyOption.REPLACE_EXISTING);
+			channel = FileChannel.open(file, StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		} catch (IOException e) {
+			fail(e);
+		}
+	}
+
+	private void writeFully(ByteBuffer[] buffers, int count) throws IOException {
+		int first = 0;
+		while (first < count) {
+			channel.write(buffers, first, count - first);
+			while (first < count && !buffers[first].hasRemaining()) {
+				++first;
+			}
+		}
+	}
+
+	/**
+	 * @return true if the journal is on the disk now
+	 */
+	private boolean force() {
+		try {
+			channel.force(false);
+			return true;
+		} catch (IOException e) {
+			fail(e);
+			return false;
+		}
+	}
+
+	private void fail(IOException e) {
+		if (failure == null) {
+			e.printStackTrace();
+			failure = e;
+		}
+	}
+
+	/**
+	 * read every complete record of a journal in order. a record torn by a crash is cut off,
+	 * so it does not hide the records appended after the recovery: a bad record is torn if
+	 * it runs up to the end of the file or only zeros follow it. a bad record with anything
+	 * else behind it is damaged, the records behind it are neither read nor cut
+	 * @return the number of records read
+	 * @throws DamagedJournalException if a record in the middle of the journal is damaged
+	 * @throws IOException if the file can not be read
+	 */
+	public static long replay(Path file, Consumer<JournalRecord> consumer) throws IOException {
+		if (!Files.exists(file)) {
+			return 0;
+		}
+		long count = 0;
+		long valid = 0;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+			((Buffer) buffer).flip();
+			boolean eof = false;
+			int bad = 0;
+			for (;;) {
+				int frame = buffer.remaining() >= 4 ? JournalRecord.frameLength(buffer) : 0;
+				if (frame < 0) {
+					break;
+				}
+				if (frame == 0 || buffer.remaining() < frame) {
+					if (eof) {
+						break;
+					}
+					if (frame > buffer.capacity()) {
+						buffer = ByteBuffer.allocate(frame).put(buffer);
+					} else {
+						buffer.compact();
+					}
+					eof = channel.read(buffer) < 0;
+					((Buffer) buffer).flip();
+					continue;
+				}
+				JournalRecord record = JournalRecord.decode(buffer);
+				if (record == null) {
+					bad = frame;
+					break;
+				}
+				consumer.accept(record);
+				valid += frame;
+				++count;
+			}
+			long size = channel.size();
+			if (valid < size) {
+				if (!isTornTail(channel, valid, bad, size)) {
+					throw new DamagedJournalException(file, valid);
+				}
+				System.out.println("journal cut behind the last complete record at " + valid);
+				channel.truncate(valid);
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @param frame the length of the bad record if it is there as a whole, 0 otherwise
+	 */
+	private static boolean isTornTail(FileChannel channel, long valid, int frame, long size) throws IOException {
+		if (size - valid < 4 || frame == 0 || valid + frame >= size) {
+			return true;
+		}
+		// a crash can leave the file longer than what has been written, filled with zeros
+		ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(READ_BUFFER_SIZE, size - valid));
+		for (long position = valid; position < size; ) {
+			((Buffer) buffer).clear();
+			int read = channel.read(buffer, position);
+			if (read < 0) {
+				break;
+			}
+			for (int i = 0; i < read; ++i) {
+				if (buffer.get(i) != 0) {
+					return false;
+				}
+			}
+			position += read;
+		}
+		return true;
+	}
+
+	/**
+	 * a record, a skipped number, a barrier or a rotation on its way to the writer
+	 */
+	public final class Pending {
+		private final int kind;
+		private final ByteBuffer bytes;
+		private final long seq;
+		private final long epoch;
+		private final Path previous;
+
+		/**
+		 * the epoch a rotation moves the records up to, 0 until it is known
+		 */
+		private volatile long until;
+
+		private volatile boolean done;
+		private volatile Thread waiter;
+
+		private Pending(int kind, ByteBuffer bytes, long seq, long epoch, Path previous) {
+			this.kind = kind;
+			this.bytes = bytes;
+			this.seq = seq;
+			this.epoch = epoch;
+			this.previous = previous;
+		}
+
+		private void complete() {
+			done = true;
+			Thread thread = waiter;
+			if (thread != null) {
+				LockSupport.unpark(thread);
+			}
+		}
+
+		/**
+		 * under FsyncPolicy.ALWAYS wait until the record is on the disk, a barrier or a
+		 * rotation always waits
+		 * @return false if the journal has failed or stopped, the record may be lost then
+		 */
+		public boolean await() {
+			if (kind != RECORD || policy == FsyncPolicy.ALWAYS) {
+				waiter = Thread.currentThread();
+				while (!done && writer.isAlive()) {
+					LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+				}
+				return done && failure == null;
+			}
+			return failure == null;
+		}
+	}
+}
@@ -0,0 +1,276 @@
+package com.lyj.mfs.persist;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Preconditions;
+import com.lyj.mfs.FileSystem;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+/**
+ * @program: inmemoryFileSystem
+ * @description: one mutation in the journal, paths are absolute so a record can be
+ * replayed by any session.
+ *
+ * record  := length:int payload{length} crc32(payload):int
+ * payload := seq:varint op:byte epoch:varint pathLength:varint utf8{pathLength} argument
+ *
+ * the argument is empty for mkdir and touch, one byte for the recursive flag of rm,
+ * a varint size for truncate, the remaining bytes for write and append, the utf8 of
+ * the new path for rename and the recursive flag followed by the utf8 of the new path for copy.
+ * seq is the sequence number the journal gave the record and epoch the write epoch the change
+ * was made in, see Journal. op has the bit WITH_EPOCH set, records written before epochs were
+ * logged have no epoch and count as epoch 0.
+ * a record is encoded when it is queued, the writer of the journal only copies bytes
+ * @author: LYJ
+ * @create: 2026-10-19 14:10
+ **/
+
+public final class JournalRecord {
+
+	enum Op {
+		MKDIR, TOUCH, RM, WRITE, APPEND, TRUNCATE, RENAME, COPY
+	}
+
+	private static final byte[] NO_DATA = new byte[0];
+
+	private static final int WITH_EPOCH = 0x80;
+
+	private final Op op;
+
+	private final String path;
+
+	private final boolean recursive;
+
+	private final long size;
+
+	private final byte[] data;
+
+	/**
+	 * 0 unless the record has been read from a journal
+	 */
+	private final long seq;
+	private final long epoch;
+
+	private JournalRecord(Op op, String path, boolean recursive, long size, byte[] data, long seq, long epoch) {
+		this.op = op;
+		this.path = Preconditions.checkNotNull(path, "path can not be null");
+		this.recursive = recursive;
+		this.size = size;
+		this.data = data;
+		this.seq = seq;
+		this.epoch = epoch;
+	}
+
+	private JournalRecord(Op op, String path, boolean recursive, long size, byte[] data) {
+		this(op, path, recursive, size, data, 0, 0);
+	}
+
+	public static JournalRecord mkdir(String absPath) {
+		return new JournalRecord(Op.MKDIR, absPath, false, 0, NO_DATA);
+	}
+
+	public static JournalRecord touch(String absPath) {
+		return new JournalRecord(Op.TOUCH, absPath, false, 0, NO_DATA);
+	}
+
+	public static JournalRecord rm(String absPath, boolean recursive) {
+		return new JournalRecord(Op.RM, absPath, recursive, 0, NO_DATA);
+	}
+
+	public static JournalRecord write(String absPath, byte[] data) {
+		return new JournalRecord(Op.WRITE, absPath, false, 0, data);
+	}
+
+	public static JournalRecord append(String absPath, byte[] data) {
+		return new JournalRecord(Op.APPEND, absPath, false, 0, data);
+	}
+
+	public static JournalRecord truncate(String absPath, long size) {
+		return new JournalRecord(Op.TRUNCATE, absPath, false, size, NO_DATA);
+	}
+
+	public static JournalRecord rename(String absPath, String absDst) {
+		return new JournalRecord(Op.RENAME, absPath, false, 0, absDst.getBytes(StandardCharsets.UTF_8));
+	}
+
+	public static JournalRecord copy(String absPath, String absDst, boolean recursive) {
+		return new JournalRecord(Op.COPY, absPath, recursive, 0, absDst.getBytes(StandardCharsets.UTF_8));
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	/**
+	 * @return the sequence number in the journal the record has been read from, 0 for a new record
+	 */
+	public long getSeq() {
+		return seq;
+	}
+
+	/**
+	 * @return the write epoch of the change in the journal the record has been read from,
+	 * 0 for a new record or one written without epoch
+	 */
+	public long getEpoch() {
+		return epoch;
+	}
+
+	/**
+	 * do the mutation again through fs
+	 * @return what the file system operation returned, false or null when it failed
+	 */
+	public Object applyTo(FileSystem fs) {
+		switch (op) {
+			case MKDIR:
+				return fs.mkdir(path);
+			case TOUCH:
+				return fs.touch(path);
+			case RM:
+				return fs.rm(path, recursive);
+			case WRITE:
+				return fs.write(path, data);
+			case APPEND:
+				return fs.append(path, data);
+			case TRUNCATE:
+				return fs.truncate(path, size);
+			case RENAME:
+				return fs.rename(path, new String(data, StandardCharsets.UTF_8));
+			case COPY:
+				return fs.copy(path, new String(data, StandardCharsets.UTF_8), recursive);
+			default:
+				throw new IllegalStateException("unknown op " + op);
+		}
+	}
+
+	/**
+	 * @param seq the sequence number the journal gives the record
+	 * @param epoch the write epoch the change was made in
+	 * @return the framed record, ready to be written
+	 */
+	@SuppressWarnings("fallthrough")
+	ByteBuffer encode(long seq, long epoch) {
+		byte[] pathBytes = path.getBytes(StandardCharsets.UTF_8);
+		ByteBuffer buffer = ByteBuffer.allocate(4 + 10 + 1 + 10 + 5 + pathBytes.length + 10 + data.length + 4);
+		buffer.putInt(0);
+		putVarint(buffer, seq);
+		buffer.put((byte) (op.ordinal() | WITH_EPOCH));
+		putVarint(buffer, epoch);
+		putVarint(buffer, pathBytes.length);
+		buffer.put(pathBytes);
+		switch (op) {
+			case RM:
+				buffer.put((byte) (recursive ? 1 : 0));
+				break;
+			case TRUNCATE:
+				putVarint(buffer, size);
+				break;
+			case COPY:
+				buffer.put((byte) (recursive ? 1 : 0));
+				// fall through
+			case WRITE:
+			case APPEND:
+			case RENAME:
+				buffer.put(data);
+				break;
+			default:
+		}
+		int length = buffer.position() - 4;
+		buffer.putInt(0, length);
+		CRC32 crc = new CRC32();
+		crc.update(buffer.array(), 4, length);
+		buffer.putInt((int) crc.getValue());
+		((Buffer) buffer).flip();
+		return buffer;
+	}
+
+	/**
+	 * @return the bytes taken by the record starting at the position of buffer, the buffer
+	 * must hold at least 4 bytes, -1 if the length is not valid
+	 */
+	static int frameLength(ByteBuffer buffer) {
+		int length = buffer.getInt(buffer.position());
+		return length <= 0 || length > Integer.MAX_VALUE - 8 ? -1 : 4 + length + 4;
+	}
+
+	/**
+	 * @param buffer positioned at a record, holding at least frameLength bytes
+	 * @return the record, the buffer is moved behind it, or null if the checksum does not match
+	 */
+	static JournalRecord decode(ByteBuffer buffer) throws IOException {
+		int length = buffer.getInt();
+		int start = buffer.position();
+		CRC32 crc = new CRC32();
+		ByteBuffer payload = buffer.duplicate();
+		((Buffer) payload).limit(start + length);
+		crc.update(payload);
+		if (buffer.getInt(start + length) != (int) crc.getValue()) {
+			return null;
+		}
+
+		long seq = getVarint(buffer);
+		int ordinal = buffer.get() & 0xFF;
+		long epoch = (ordinal & WITH_EPOCH) != 0 ? getVarint(buffer) : 0;
+		ordinal &= ~WITH_EPOCH;
+		if (ordinal >= Op.values().length) {
+			throw new IOException("corrupt journal: unknown op " + ordinal);
+		}
+		Op op = Op.values()[ordinal];
+		byte[] pathBytes = new byte[(int) getVarint(buffer)];
+		buffer.get(pathBytes);
+		String path = new String(pathBytes, StandardCharsets.UTF_8);
+		JournalRecord record;
+		switch (op) {
+			case RM:
+				record = new JournalRecord(op, path, buffer.get() != 0, 0, NO_DATA, seq, epoch);
+				break;
+			case TRUNCATE:
+				record = new JournalRecord(op, path, false, getVarint(buffer), NO_DATA, seq, epoch);
+				break;
+			case WRITE:
+			case APPEND:
+			case RENAME:
+			case COPY:
+				boolean recursive = op == Op.COPY && buffer.get() != 0;
+				byte[] data = new byte[start + length - buffer.position()];
+				buffer.get(data);
+				record = new JournalRecord(op, path, recursive, 0, data, seq, epoch);
+				break;
+			default:
+				record = new JournalRecord(op, path, false, 0, NO_DATA, seq, epoch);
+		}
+		((Buffer) buffer).position(start + length + 4);
+		return record;
+	}
+
+	private static void putVarint(ByteBuffer buffer, long value) {
+		while ((value & ~0x7FL) != 0) {
+			buffer.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte) value);
+	}
+
+	private static long getVarint(ByteBuffer buffer) throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			byte b = buffer.get();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("corrupt journal: varint is too long");
+	}
+
+	@Override
+	public String toString() {
+		return MoreObjects.toStringHelper(this)
+			.add("op", op)
+			.add("path", path)
+			.toString();
+	}
+}
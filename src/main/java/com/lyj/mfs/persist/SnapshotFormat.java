@@ -0,0 +1,48 @@
+package com.lyj.mfs.persist;
+
+/**
+ * @program: inmemoryFileSystem
+ * @description: constants of the snapshot file format
+ *
+ * file    := MAGIC VERSION journalSeq:varint journalEpoch:varint node* END nodeCount:varint
+ * node    := DIR name meta node* END | FILE name meta size:varint byte{size}
+ * name    := 0:varint length:varint utf8{length}   a new name, gets the next id starting at 1
+ *          | id:varint                             a name that has been written before
+ * meta    := mode:varint mtime:varint (ctime - mtime):zigzag (atime - mtime):zigzag
+ *
+ * times are epoch nanos, ctime and atime are usually close to mtime so their deltas are short.
+ * journalSeq is the sequence number of the last journal record the tree holds, 0 if it
+ * has not been written at a checkpoint. journalEpoch is the write epoch the tree has been
+ * frozen in, the records of the epochs up to it are skipped by a recovery, and so are the
+ * records up to journalSeq that have no epoch, see JournalRecord.
+ * version 1 files have no meta, their nodes get the time they are read at, version 1
+ * and 2 files have no journalSeq, versions up to 3 have no journalEpoch
+ *
+ * the nodes are the children of the root in depth first order, a name table is built
+ * while writing so every distinct name is stored once, integers are unsigned LEB128 varints
+ * @author: LYJ
+ * @create: 2026-10-19 11:05
+ **/
+
+final class SnapshotFormat {
+	private SnapshotFormat(){}
+
+	static final byte[] MAGIC = {'M', 'F', 'S', 'S'};
+
+	static final byte VERSION = 4;
+
+	/**
+	 * the oldest version that can still be read
+	 */
+	static final byte VERSION_NO_META = 1;
+
+	static final byte VERSION_NO_JOURNAL_SEQ = 2;
+
+	static final byte VERSION_NO_JOURNAL_EPOCH = 3;
+
+	static final byte DIR = 1;
+	static final byte FILE = 2;
+	static final byte END = 3;
+
+	static final int NEW_NAME = 0;
+}
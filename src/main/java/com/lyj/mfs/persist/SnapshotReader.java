@@ -0,0 +1,287 @@
+package com.lyj.mfs.persist;
+
+import com.lyj.mfs.content.ContentStore;
+import com.lyj.mfs.content.FileContent;
+import com.lyj.mfs.domain.InfoNode;
+import com.lyj.mfs.domain.InfoNode.FileType;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * @program: inmemoryFileSystem
+ * @description: rebuild a tree from a snapshot file, see SnapshotFormat.
+ * the file is mapped and parsed in one pass, every node is linked to its parent as soon
+ * as it is read and the subtree counts are summed up on the way back, so nothing is walked twice.
+ * content bytes are copied from the mapping straight into chunks
+ * @author: LYJ
+ * @create: 2026-10-19 11:50
+ **/
+
+public class SnapshotReader {
+
+	/**
+	 * the file is mapped in windows of this size, a single mapping can not exceed 2GB
+	 */
+	private static final long WINDOW_SIZE = 1L << 30;
+
+	private final FileChannel channel;
+
+	private final long fileSize;
+
+	private final ContentStore store;
+
+	private final List<String> names = new ArrayList<>();
+
+	private boolean hasMeta;
+
+	private long journalSeq;
+
+	private long journalEpoch;
+
+	private MappedByteBuffer window;
+
+	private long windowStart;
+
+	private SnapshotReader(FileChannel channel, ContentStore store) throws IOException {
+		this.channel = channel;
+		this.fileSize = channel.size();
+		this.store = store;
+	}
+
+	/**
+	 * @param store where the content of restored files goes
+	 * @return a new root directory holding the tree of the snapshot, it is not linked anywhere
+	 * and its subtree counts are set
+	 * @throws IOException if the file can not be read or is not a valid snapshot
+	 */
+	public static InfoNode read(Path file, ContentStore store) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			return new SnapshotReader(channel, store).readTree();
+		}
+	}
+
+	/**
+	 * @return the sequence number of the last journal record the tree of the snapshot holds,
+	 * 0 if it has not been written at a checkpoint, nothing but the header is read
+	 * @throws IOException if the file can not be read or is not a valid snapshot
+	 */
+	public static long readJournalSeq(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			SnapshotReader reader = new SnapshotReader(channel, null);
+			reader.readHeader();
+			return reader.journalSeq;
+		}
+	}
+
+	/**
+	 * @return the write epoch the tree of the snapshot has been frozen in at a checkpoint,
+	 * 0 if it has not been written at one or has no epoch, nothing but the header is read
+	 * @throws IOException if the file can not be read or is not a valid snapshot
+	 */
+	public static long readJournalEpoch(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			SnapshotReader reader = new SnapshotReader(channel, null);
+			reader.readHeader();
+			return reader.journalEpoch;
+		}
+	}
+
+	private void readHeader() throws IOException {
+		for (byte b : SnapshotFormat.MAGIC) {
+			if (readByte() != b) {
+				throw corrupt("not a snapshot file");
+			}
+		}
+		byte version = readByte();
+		if (version < SnapshotFormat.VERSION_NO_META || version > SnapshotFormat.VERSION) {
+			throw corrupt("unsupported version " + version);
+		}
+		hasMeta = version != SnapshotFormat.VERSION_NO_META;
+		journalSeq = version > SnapshotFormat.VERSION_NO_JOURNAL_SEQ ? readVarint() : 0;
+		journalEpoch = version > SnapshotFormat.VERSION_NO_JOURNAL_EPOCH ? readVarint() : 0;
+	}
+
+	private InfoNode readTree() throws IOException {
+		readHeader();
+
+		InfoNode root = new InfoNode("/", FileType.DIRECTORY);
+		Deque<Frame> stack = new ArrayDeque<>();
+		stack.push(new Frame(root));
+		long nodeCount = 0;
+		while (!stack.isEmpty()) {
+			byte tag = readByte();
+			Frame frame = stack.peek();
+			switch (tag) {
+				case SnapshotFormat.DIR: {
+					InfoNode dir = new InfoNode(readName(), FileType.DIRECTORY);
+					readMeta(dir);
+					frame.children.add(dir);
+					stack.push(new Frame(dir));
+					++nodeCount;
+					break;
+				}
+				case SnapshotFormat.FILE: {
+					InfoNode file = new InfoNode(readName(), FileType.FILE);
+					readMeta(file);
+					readContent(file);
+					frame.children.add(file);
+					++nodeCount;
+					break;
+				}
+				case SnapshotFormat.END:
+					stack.pop().finish();
+					break;
+				default:
+					throw corrupt("unknown node tag " + tag);
+			}
+		}
+		if (readVarint() != nodeCount) {
+			throw corrupt("node count does not match");
+		}
+		return root;
+	}
+
+	/**
+	 * a directory whose children are being read, they come in name order and are
+	 * installed in bulk once the directory ends
+	 */
+	private static final class Frame {
+		private final InfoNode dir;
+		private final List<InfoNode> children = new ArrayList<>();
+
+		private Frame(InfoNode dir) {
+			this.dir = dir;
+		}
+
+		private void finish() throws IOException {
+			try {
+				dir.setChildren(children.toArray(new InfoNode[0]));
+			} catch (IllegalArgumentException e) {
+				throw corrupt(e.getMessage());
+			}
+			long files = 0;
+			long dirs = 0;
+			for (InfoNode child : children) {
+				if (child.getFileType() == FileType.FILE) {
+					++files;
+				} else {
+					files += child.getSubtreeFiles();
+					dirs += 1 + child.getSubtreeDirs();
+				}
+			}
+			dir.addToSubtree(FileType.FILE, files);
+			dir.addToSubtree(FileType.DIRECTORY, dirs);
+		}
+	}
+
+	private String readName() throws IOException {
+		long id = readVarint();
+		if (id != SnapshotFormat.NEW_NAME) {
+			if (id < 0 || id > names.size()) {
+				throw corrupt("unknown name id " + id);
+			}
+			return names.get((int) id - 1);
+		}
+		long length = readVarint();
+		if (length < 0 || length > WINDOW_SIZE || length > fileSize - position()) {
+			throw corrupt("bad name length " + length);
+		}
+		byte[] bytes = new byte[(int) length];
+		ensure(bytes.length);
+		window.get(bytes);
+		String name = new String(bytes, StandardCharsets.UTF_8);
+		names.add(name);
+		return name;
+	}
+
+	private void readMeta(InfoNode node) throws IOException {
+		if (!hasMeta) {
+			return;
+		}
+		long mode = readVarint();
+		if ((mode & ~07777) != 0) {
+			throw corrupt("bad mode of " + node.getPath());
+		}
+		long mtime = readVarint();
+		long ctime = mtime + readZigzag();
+		long atime = mtime + readZigzag();
+		node.restore((int) mode, ctime, mtime, atime);
+	}
+
+	private void readContent(InfoNode file) throws IOException {
+		long size = readVarint();
+		if (size == 0) {
+			return;
+		}
+		if (size > fileSize - position()) {
+			throw corrupt("content of " + file.getPath() + " is cut off");
+		}
+		FileContent content = file.getOrCreateContent(store);
+		long remaining = size;
+		while (remaining > 0) {
+			ensure(1);
+			int n = (int) Math.min(remaining, window.remaining());
+			ByteBuffer part = window.duplicate();
+			((Buffer) part).limit(part.position() + n);
+			content.append(part);
+			((Buffer) window).position(window.position() + n);
+			remaining -= n;
+		}
+	}
+
+	private byte readByte() throws IOException {
+		ensure(1);
+		return window.get();
+	}
+
+	private long readVarint() throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			byte b = readByte();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw corrupt("varint is too long");
+	}
+
+	private long readZigzag() throws IOException {
+		long value = readVarint();
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	private long position() {
+		return window == null ? 0 : windowStart + window.position();
+	}
+
+	/**
+	 * make sure the window holds the next bytes, it is moved forward when they are behind its end
+	 */
+	private void ensure(int bytes) throws IOException {
+		if (window != null && window.remaining() >= bytes) {
+			return;
+		}
+		long start = position();
+		if (fileSize - start < bytes) {
+			throw corrupt("unexpected end of file");
+		}
+		window = channel.map(MapMode.READ_ONLY, start, Math.min(WINDOW_SIZE, fileSize - start));
+		windowStart = start;
+	}
+
+	private static IOException corrupt(String message) {
+		return new IOException("corrupt snapshot: " + message);
+	}
+}
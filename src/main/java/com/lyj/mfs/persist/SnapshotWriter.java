@@ -0,0 +1,214 @@
+package com.lyj.mfs.persist;
+
+import static com.lyj.mfs.domain.InfoNode.FileType.DIRECTORY;
+
+import com.lyj.mfs.content.FileContent;
+import com.lyj.mfs.domain.InfoNode;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * @program: inmemoryFileSystem
+ * @description: stream a tree into a snapshot file, see SnapshotFormat.
+ * the tree is walked once without copying it, in the version of a namespace snapshot epoch,
+ * so changes made meanwhile are not seen, the content of a file is the one of the epoch too.
+ * the snapshot is written next to the target and moved over it when complete
+ * @author: LYJ
+ * @create: 2026-10-19 11:20
+ **/
+
+public class SnapshotWriter {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final FileChannel channel;
+
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+	private final Map<String, Integer> names = new HashMap<>();
+
+	private long nodeCount;
+
+	private final long epoch;
+
+	private final long journalSeq;
+
+	private final long journalEpoch;
+
+	private SnapshotWriter(FileChannel channel, long epoch, long journalSeq, long journalEpoch) {
+		this.channel = channel;
+		this.epoch = epoch;
+		this.journalSeq = journalSeq;
+		this.journalEpoch = journalEpoch;
+	}
+
+	/**
+	 * write everything under root to file
+	 * @param epoch the epoch of the namespace snapshot to write, Long.MAX_VALUE for the current tree
+	 * @return the number of nodes written, root not included
+	 */
+	public static long write(InfoNode root, long epoch, Path file) throws IOException {
+		return write(root, epoch, file, 0, 0);
+	}
+
+	/**
+	 * write everything under root to file at a checkpoint
+	 * @param journalSeq the last sequence number given out when the tree is written
+	 * @param journalEpoch the epoch of the last journal records the tree holds, see SnapshotFormat
+	 * @return the number of nodes written, root not included
+	 */
+	public static long write(InfoNode root, long epoch, Path file, long journalSeq, long journalEpoch) throws IOException {
+		Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+		long nodes;
+		try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+			StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			SnapshotWriter writer = new SnapshotWriter(channel, epoch, journalSeq, journalEpoch);
+			writer.writeTree(root);
+			channel.force(true);
+			nodes = writer.nodeCount;
+		}
+		Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		return nodes;
+	}
+
+	private void writeTree(InfoNode root) throws IOException {
+		buffer.put(SnapshotFormat.MAGIC);
+		buffer.put(SnapshotFormat.VERSION);
+		writeVarint(journalSeq);
+		writeVarint(journalEpoch);
+
+		// an explicit stack instead of recursion, trees can be deeper than the thread stack
+		Deque<Iterator<InfoNode>> stack = new ArrayDeque<>();
+		stack.push(root.getChildren(epoch).iterator());
+		while (!stack.isEmpty()) {
+			Iterator<InfoNode> children = stack.peek();
+			if (!children.hasNext()) {
+				stack.pop();
+				ensure(1);
+				buffer.put(SnapshotFormat.END);
+				continue;
+			}
+			InfoNode node = children.next();
+			++nodeCount;
+			if (node.getFileType() == DIRECTORY) {
+				ensure(1);
+				buffer.put(SnapshotFormat.DIR);
+				writeName(node.getPath(epoch));
+				writeMeta(node);
+				stack.push(node.getChildren(epoch).iterator());
+			} else {
+				ensure(1);
+				buffer.put(SnapshotFormat.FILE);
+				writeName(node.getPath(epoch));
+				writeMeta(node);
+				writeContent(node);
+			}
+		}
+		writeVarint(nodeCount);
+		flush();
+	}
+
+	private void writeName(String name) throws IOException {
+		Integer id = names.get(name);
+		if (id != null) {
+			writeVarint(id);
+			return;
+		}
+		names.put(name, names.size() + 1);
+		byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+		writeVarint(SnapshotFormat.NEW_NAME);
+		writeVarint(bytes.length);
+		writeBytes(ByteBuffer.wrap(bytes));
+	}
+
+	private void writeMeta(InfoNode node) throws IOException {
+		long mtime = node.getMtime();
+		writeVarint(node.getMode());
+		writeVarint(mtime);
+		writeZigzag(node.getCtime() - mtime);
+		writeZigzag(node.getAtime() - mtime);
+	}
+
+	/**
+	 * the content the epoch sees is forked first, so the bytes are those of one moment however
+	 * the file changes meanwhile. they are copied out under the lock of the fork, a view could
+	 * see a chunk that has been evicted and handed to another file before it is written
+	 */
+	private void writeContent(InfoNode file) throws IOException {
+		FileContent frozen = file.contentAt(epoch);
+		if (frozen == null) {
+			writeVarint(0);
+			return;
+		}
+		try {
+			long size = frozen.size();
+			writeVarint(size);
+			long written = 0;
+			while (written < size) {
+				byte[] bytes = frozen.read(written, (int) Math.min(size - written, BUFFER_SIZE));
+				writeBytes(ByteBuffer.wrap(bytes));
+				written += bytes.length;
+			}
+		} finally {
+			frozen.release();
+		}
+	}
+
+	private void writeVarint(long value) throws IOException {
+		ensure(10);
+		while ((value & ~0x7FL) != 0) {
+			buffer.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte) value);
+	}
+
+	private void writeZigzag(long value) throws IOException {
+		writeVarint((value << 1) ^ (value >> 63));
+	}
+
+	/**
+	 * small byte runs are buffered, large ones go straight to the channel
+	 */
+	private void writeBytes(ByteBuffer bytes) throws IOException {
+		if (bytes.remaining() <= buffer.remaining()) {
+			buffer.put(bytes);
+			return;
+		}
+		flush();
+		if (bytes.remaining() <= buffer.remaining()) {
+			buffer.put(bytes);
+			return;
+		}
+		while (bytes.hasRemaining()) {
+			channel.write(bytes);
+		}
+	}
+
+	private void ensure(int bytes) throws IOException {
+		if (buffer.remaining() < bytes) {
+			flush();
+		}
+	}
+
+	private void flush() throws IOException {
+		// casting to Buffer keeps the class file runnable on java 8, see ChunkAllocator.position
+		((Buffer) buffer).flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		((Buffer) buffer).clear();
+	}
+}
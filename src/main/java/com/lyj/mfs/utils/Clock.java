@@ -0,0 +1,45 @@
+package com.lyj.mfs.utils;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @program: inmemoryFileSystem
+ * @description: the clock of node timestamps, in nanoseconds since the epoch, without
+ * allocating anything. by default it is System.nanoTime anchored to the wall clock once,
+ * so it never goes backwards but does not follow later changes of the system time.
+ * with -Dmfs.clock.coarseMillis=n a daemon thread refreshes a cached value every n millis
+ * and reading the clock is a single volatile read
+ * @author: LYJ
+ * @create: 2026-10-20 14:10
+ **/
+
+public class Clock {
+	private Clock(){}
+
+	private static final long COARSE_MILLIS = Long.getLong("mfs.clock.coarseMillis", 0);
+
+	private static final long OFFSET = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis()) - System.nanoTime();
+
+	private static volatile long cached = precise();
+
+	static {
+		if (COARSE_MILLIS > 0) {
+			Executors.newSingleThreadScheduledExecutor(
+				new ThreadFactoryBuilder().setNameFormat("mfs-clock").setDaemon(true).build())
+				.scheduleAtFixedRate(() -> cached = precise(), COARSE_MILLIS, COARSE_MILLIS, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * @return nanoseconds since 1970-01-01T00:00:00Z
+	 */
+	public static long nowNanos() {
+		return COARSE_MILLIS > 0 ? cached : precise();
+	}
+
+	private static long precise() {
+		return OFFSET + System.nanoTime();
+	}
+}
@@ -0,0 +1,198 @@
+package com.lyj.mfs.utils;
+
+import com.google.common.base.Preconditions;
+import java.util.Arrays;
+
+/**
+ * @program: inmemoryFileSystem
+ * @description: a compiled glob for one file or directory name.
+ * "*" matches any run of characters, "?" one character, "[abc]", "[a-z]" and "[!a-z]" one
+ * character of a set, a backslash escapes the next character. a name is matched in place
+ * without allocating, a star backtracks to its last position only, so a match is linear
+ * for the usual patterns
+ * @author: LYJ
+ * @create: 2026-10-20 18:10
+ **/
+
+public final class Glob {
+
+	private static final byte LITERAL = 0;
+	private static final byte ANY = 1;
+	private static final byte STAR = 2;
+	private static final byte CLASS = 3;
+
+	private final String pattern;
+
+	private final byte[] kinds;
+
+	/**
+	 * the character of a LITERAL, the index into classes of a CLASS
+	 */
+	private final int[] values;
+
+	/**
+	 * pairs of inclusive ranges, a single character is a range of itself
+	 */
+	private final char[][] classes;
+
+	private final boolean[] negated;
+
+	private final String literalPrefix;
+
+	private Glob(String pattern, byte[] kinds, int[] values, char[][] classes, boolean[] negated) {
+		this.pattern = pattern;
+		this.kinds = kinds;
+		this.values = values;
+		this.classes = classes;
+		this.negated = negated;
+		StringBuilder prefix = new StringBuilder();
+		for (int i = 0; i < kinds.length && kinds[i] == LITERAL; ++i) {
+			prefix.append((char) values[i]);
+		}
+		this.literalPrefix = prefix.toString();
+	}
+
+	/**
+	 * @param pattern a glob for a single name, it can not contain the path delimiter
+	 * @exception throws IllegalArgumentException if the pattern is malformed
+	 */
+	@SuppressWarnings("fallthrough")
+	public static Glob compile(String pattern) {
+		Preconditions.checkArgument(pattern != null && !pattern.contains(Const.DELIMITER),
+			"not a name pattern: %s", pattern);
+		int length = pattern.length();
+		byte[] kinds = new byte[length];
+		int[] values = new int[length];
+		char[][] classes = new char[length][];
+		boolean[] negated = new boolean[length];
+		int tokens = 0;
+		int classCount = 0;
+		for (int i = 0; i < length; ++i) {
+			char c = pattern.charAt(i);
+			switch (c) {
+				case '*':
+					// a run of stars is one star
+					if (tokens == 0 || kinds[tokens - 1] != STAR) {
+						kinds[tokens++] = STAR;
+					}
+					break;
+				case '?':
+					kinds[tokens++] = ANY;
+					break;
+				case '[': {
+					int from = i + 1;
+					boolean not = from < length && (pattern.charAt(from) == '!' || pattern.charAt(from) == '^');
+					if (not) {
+						++from;
+					}
+					// a ] right after the opening is a member
+					int end = pattern.indexOf(']', from + 1);
+					Preconditions.checkArgument(end > 0, "unclosed [ in %s", pattern);
+					char[] ranges = new char[2 * (end - from)];
+					int n = 0;
+					for (int j = from; j < end; ++j) {
+						char low = pattern.charAt(j);
+						char high = low;
+						if (j + 2 < end && pattern.charAt(j + 1) == '-') {
+							high = pattern.charAt(j + 2);
+							Preconditions.checkArgument(low <= high, "bad range %s-%s in %s", low, high, pattern);
+							j += 2;
+						}
+						ranges[n++] = low;
+						ranges[n++] = high;
+					}
+					classes[classCount] = Arrays.copyOf(ranges, n);
+					negated[classCount] = not;
+					kinds[tokens] = CLASS;
+					values[tokens++] = classCount++;
+					i = end;
+					break;
+				}
+				case '\\':
+					Preconditions.checkArgument(i + 1 < length, "dangling \\ in %s", pattern);
+					c = pattern.charAt(++i);
+					// fall through
+				default:
+					kinds[tokens] = LITERAL;
+					values[tokens++] = c;
+			}
+		}
+		return new Glob(pattern, Arrays.copyOf(kinds, tokens), Arrays.copyOf(values, tokens),
+			Arrays.copyOf(classes, classCount), Arrays.copyOf(negated, classCount));
+	}
+
+	/**
+	 * @return true if name contains a special character, so it has to be compiled to be matched
+	 */
+	public static boolean isPattern(String name) {
+		for (int i = 0; i < name.length(); ++i) {
+			char c = name.charAt(i);
+			if (c == '*' || c == '?' || c == '[' || c == '\\') {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return the characters every matching name starts with
+	 */
+	public String getLiteralPrefix() {
+		return literalPrefix;
+	}
+
+	/**
+	 * @return true if the glob matches exactly one name, the literal prefix
+	 */
+	public boolean isLiteral() {
+		return literalPrefix.length() == kinds.length;
+	}
+
+	public boolean matches(CharSequence name) {
+		int length = name.length();
+		int p = 0;
+		int n = 0;
+		int starP = -1;
+		int starN = 0;
+		while (n < length) {
+			if (p < kinds.length && kinds[p] == STAR) {
+				starP = p++;
+				starN = n;
+			} else if (p < kinds.length && matchesOne(p, name.charAt(n))) {
+				++p;
+				++n;
+			} else if (starP >= 0) {
+				// let the last star take one more character
+				p = starP + 1;
+				n = ++starN;
+			} else {
+				return false;
+			}
+		}
+		while (p < kinds.length && kinds[p] == STAR) {
+			++p;
+		}
+		return p == kinds.length;
+	}
+
+	private boolean matchesOne(int p, char c) {
+		switch (kinds[p]) {
+			case LITERAL:
+				return values[p] == c;
+			case ANY:
+				return true;
+			default:
+				char[] ranges = classes[values[p]];
+				boolean in = false;
+				for (int i = 0; i < ranges.length && !in; i += 2) {
+					in = ranges[i] <= c && c <= ranges[i + 1];
+				}
+				return in != negated[values[p]];
+		}
+	}
+
+	@Override
+	public String toString() {
+		return pattern;
+	}
+}
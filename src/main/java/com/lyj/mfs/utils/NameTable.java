@@ -0,0 +1,31 @@
+package com.lyj.mfs.utils;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
+/**
+ * @program: inmemoryFileSystem
+ * @description: a concurrent table of file and directory names, names like "src" or
+ * "index.html" repeat all over a tree, every node with the same name shares one String.
+ * the table only holds weak references, a name disappears once no node uses it.
+ * turn it off with -Dmfs.names.intern=false when almost every name is unique
+ * @author: LYJ
+ * @create: 2026-10-18 17:10
+ **/
+
+public class NameTable {
+	private NameTable(){}
+
+	private static final boolean ENABLED =
+		Boolean.parseBoolean(System.getProperty("mfs.names.intern", "true"));
+
+	private static final Interner<String> NAMES = Interners.newWeakInterner();
+
+	/**
+	 * @param name a file or directory name
+	 * @return the shared instance equal to name
+	 */
+	public static String intern(String name){
+		return ENABLED ? NAMES.intern(name) : name;
+	}
+}
@@ -0,0 +1,171 @@
+package com.lyj.mfs.utils;
+
+import static com.lyj.mfs.utils.Const.DELIMITER;
+
+import com.google.common.base.CharMatcher;
+
+/**
+ * @program: inmemoryFileSystem
+ * @description: a reusable tokenizer that walks the components of a path string as offsets
+ * into the original string, the cursor itself is the CharSequence of the current component,
+ * so it can be used to look up a child without allocating a String for it
+ * @author: LYJ
+ * @create: 2026-10-18 11:20
+ **/
+
+public final class PathCursor implements CharSequence {
+
+	private static final char DELIMITER_CHAR = DELIMITER.charAt(0);
+
+	private static final CharMatcher WHITESPACE = CharMatcher.whitespace();
+
+	private String path = "";
+
+	/**
+	 * [start, end) of the current component in path
+	 */
+	private int start;
+	private int end;
+
+	/**
+	 * where the scan for the next component begins
+	 */
+	private int position;
+
+	public PathCursor() {
+	}
+
+	public PathCursor(String path) {
+		reset(path);
+	}
+
+	/**
+	 * rewind this cursor onto another path, so one cursor can be reused for many paths
+	 * @param path the path to walk, can not be null
+	 * @return this cursor
+	 */
+	public PathCursor reset(String path) {
+		this.path = path;
+		this.start = 0;
+		this.end = 0;
+		this.position = 0;
+		return this;
+	}
+
+	/**
+	 * move to the next component, empty components and the whitespaces around a
+	 * component are skipped, the same as splitting with trimResults().omitEmptyStrings()
+	 * @return false if there is no more component
+	 */
+	public boolean next() {
+		int length = path.length();
+		while (position < length) {
+			int s = position;
+			int e = path.indexOf(DELIMITER_CHAR, s);
+			if (e < 0) {
+				e = length;
+			}
+			position = e + 1;
+
+			while (s < e && WHITESPACE.matches(path.charAt(s))) {
+				++s;
+			}
+			while (e > s && WHITESPACE.matches(path.charAt(e - 1))) {
+				--e;
+			}
+			if (s < e) {
+				this.start = s;
+				this.end = e;
+				return true;
+			}
+		}
+		this.start = length;
+		this.end = length;
+		return false;
+	}
+
+	/**
+	 * @return true if the current component is the last one of the path
+	 */
+	public boolean isLast() {
+		int length = path.length();
+		for (int i = position; i < length; ++i) {
+			char c = path.charAt(i);
+			if (c != DELIMITER_CHAR && !WHITESPACE.matches(c)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return true if the path starts from the root directory
+	 */
+	public boolean isAbsolute() {
+		return path.startsWith(DELIMITER);
+	}
+
+	public boolean isCurrentDir() {
+		return end - start == 1 && path.charAt(start) == '.';
+	}
+
+	public boolean isParentDir() {
+		return end - start == 2 && path.charAt(start) == '.' && path.charAt(start + 1) == '.';
+	}
+
+	/**
+	 * @return true if the current component equals to name, without allocating anything
+	 */
+	public boolean matches(String name) {
+		return name.length() == end - start && path.regionMatches(start, name, 0, name.length());
+	}
+
+	/**
+	 * @return the current component as a new String, only call it when a String must be kept
+	 */
+	public String component() {
+		return path.substring(start, end);
+	}
+
+	/**
+	 * @return everything in front of the current component, eg. "/a/b/" for the "c" of "/a/b/c"
+	 */
+	public String precedingPath() {
+		return path.substring(0, start);
+	}
+
+	public int start() {
+		return start;
+	}
+
+	public int end() {
+		return end;
+	}
+
+	public String path() {
+		return path;
+	}
+
+	@Override
+	public int length() {
+		return end - start;
+	}
+
+	@Override
+	public char charAt(int index) {
+		if (index < 0 || index >= end - start) {
+			throw new IndexOutOfBoundsException("index:" + index + " length:" + (end - start));
+		}
+		return path.charAt(start + index);
+	}
+
+	@Override
+	public CharSequence subSequence(int from, int to) {
+		return component().subSequence(from, to);
+	}
+
+	@Override
+	public String toString() {
+		return component();
+	}
+}
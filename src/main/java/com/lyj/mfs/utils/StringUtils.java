@@ -3,8 +3,8 @@ package com.lyj.mfs.utils;
 import static com.lyj.mfs.utils.Const.DELIMITER;
 
 import com.google.common.base.Preconditions;
-import com.google.common.base.Splitter;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 
 /**
@@ -16,15 +16,18 @@ import java.util.List;
 
 public class StringUtils {
 	private StringUtils(){}
-	private static Splitter splitter = Splitter.on(DELIMITER).
-		trimResults().omitEmptyStrings();
 
+	/**
+	 * the natural order of String, but also accepts any CharSequence (eg. a {@link PathCursor}),
+	 * so a sorted map of names can be searched without creating a String for the key
+	 */
+	public static final Comparator<CharSequence> NAME_ORDER = StringUtils::compareNames;
 
 	public static List<String> splitPath(String pathStr){
 		ArrayList<String> paths = new ArrayList<>();
-		Iterable<String> splited = splitter.split(pathStr);
-		for(String p : splited){
-			paths.add(p);
+		PathCursor cursor = new PathCursor(pathStr);
+		while(cursor.next()){
+			paths.add(cursor.component());
 		}
 		return paths;
 	}
@@ -35,9 +38,8 @@ public class StringUtils {
 	 * @return
 	 */
 	public static String extractFileName(String pathStr){
-		List<String> pathList = splitPath(pathStr);
-		String lastFileName = pathList.get(pathList.size() - 1);
-		return lastFileName;
+		PathCursor cursor = lastComponent(pathStr);
+		return cursor.component();
 	}
 
 	/**
@@ -46,10 +48,8 @@ public class StringUtils {
 	 * @return
 	 */
 	public static String extractParentDir(String pathStr){
-		List<String> pathList = splitPath(pathStr);
-		String lastFileName = pathList.get(pathList.size() - 1);
-		int lastPosition = pathStr.lastIndexOf(lastFileName);
-		return pathStr.substring(0, lastPosition).trim();
+		PathCursor cursor = lastComponent(pathStr);
+		return cursor.precedingPath().trim();
 	}
 
 	public static void checkIsFilePath(String path){
@@ -60,4 +60,55 @@ public class StringUtils {
 		Preconditions.checkArgument(path != null , "dir path can not be null ");
 	}
 
+	public static int compareNames(CharSequence name1, CharSequence name2){
+		if(name1 == name2){
+			// names are interned, the same name is often the same instance
+			return 0;
+		}
+		if(name1 instanceof String && name2 instanceof String){
+			return ((String) name1).compareTo((String) name2);
+		}
+		int length1 = name1.length();
+		int length2 = name2.length();
+		int limit = Math.min(length1, length2);
+		for(int i = 0; i < limit; ++i){
+			char c1 = name1.charAt(i);
+			char c2 = name2.charAt(i);
+			if(c1 != c2){
+				return c1 - c2;
+			}
+		}
+		return length1 - length2;
+	}
+
+	/**
+	 * the end of a prefix range in NAME_ORDER, every name starting with prefix is less than it
+	 * and every greater name does not start with prefix
+	 * @return null if there is no such name, eg. the prefix is empty
+	 */
+	public static String prefixEnd(String prefix){
+		for(int i = prefix.length() - 1; i >= 0; --i){
+			char c = prefix.charAt(i);
+			if(c != Character.MAX_VALUE){
+				return prefix.substring(0, i) + (char) (c + 1);
+			}
+		}
+		return null;
+	}
+
+	private static PathCursor lastComponent(String pathStr){
+		PathCursor cursor = new PathCursor(pathStr);
+		boolean found = false;
+		while(cursor.next()){
+			found = true;
+			if(cursor.isLast()){
+				break;
+			}
+		}
+		if(!found){
+			throw new IndexOutOfBoundsException("there is no file name in path:" + pathStr);
+		}
+		return cursor;
+	}
+
 }
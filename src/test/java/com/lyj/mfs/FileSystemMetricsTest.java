@@ -0,0 +1,71 @@
+package com.lyj.mfs;
+
+import static org.junit.Assert.*;
+
+import com.lyj.mfs.metrics.Metrics;
+import java.lang.management.ManagementFactory;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FileSystemMetricsTest {
+
+	private FileSystem fsSession;
+
+	@Before
+	public void setUp() {
+		this.fsSession = InMemoryFileSystem.newSession();
+	}
+
+	@After
+	public void tearDown() {
+		this.fsSession.rm("/", true);
+	}
+
+	private static CompositeData operation(CompositeData[] operations, String name) {
+		for (CompositeData operation : operations) {
+			if (name.equals(operation.get("name"))) {
+				return operation;
+			}
+		}
+		return null;
+	}
+
+	@Test
+	public void mxBean() throws Exception {
+		assertTrue(Metrics.ENABLED);
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName(InMemoryFileSystemMXBean.OBJECT_NAME);
+		CompositeData before = operation((CompositeData[]) server.getAttribute(name, "Operations"), "MKDIR");
+		long mkdirs = before == null ? 0 : (Long) before.get("count");
+		long errors = before == null ? 0 : (Long) before.get("errors");
+
+		this.fsSession.mkdir("/foo/bar");
+		this.fsSession.touch("/foo/bar/f");
+		this.fsSession.mkdir("/foo/bar/f/nothing");
+		try {
+			this.fsSession.mkdir(null);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// a bad argument is counted as an error too
+		}
+		assertEquals(3L, server.getAttribute(name, "TotalDirs"));
+		assertEquals(1L, server.getAttribute(name, "TotalFiles"));
+
+		CompositeData mkdir = operation((CompositeData[]) server.getAttribute(name, "Operations"), "MKDIR");
+		assertEquals(mkdirs + 3, mkdir.get("count"));
+		assertEquals(errors + 2, mkdir.get("errors"));
+		CompositeData latency = (CompositeData) mkdir.get("latency");
+		assertTrue((Long) latency.get("max") > 0);
+		assertTrue((Long) latency.get("p50") <= (Long) latency.get("p99"));
+
+		CompositeData steps = (CompositeData) server.getAttribute(name, "ResolutionSteps");
+		assertTrue((Long) steps.get("count") > 0);
+		assertTrue((Long) steps.get("max") >= 2);
+		CompositeData children = (CompositeData) server.getAttribute(name, "ChildCounts");
+		assertTrue((Long) children.get("count") > 0);
+	}
+}
@@ -3,9 +3,16 @@ package com.lyj.mfs;
 import static com.lyj.mfs.utils.Const.ROOT_PATH;
 import static org.junit.Assert.*;
 
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
 import com.lyj.mfs.InMemoryFileSystem.Stats;
+import com.lyj.mfs.domain.FileStat;
+import com.lyj.mfs.domain.InfoNode;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ArrayBlockingQueue;
@@ -14,9 +21,12 @@ import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.CyclicBarrier;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -113,7 +123,7 @@ public class InMemoryFileSystemSessionTest {
 		assertEquals("/foo", ret);
 
 		ret = this.fsSession.cd("bar/zzz1");
-		assertEquals(new ArrayList(), this.fsSession.ls());
+		assertEquals(new ArrayList<String>(), this.fsSession.ls());
 		assertEquals("/foo/bar/zzz1", ret);
 
 		ret = this.fsSession.cd("../../");
@@ -182,6 +192,529 @@ public class InMemoryFileSystemSessionTest {
 		assertFalse( ret);
 	}
 
+	@Test
+	public void repeatedName() {
+		String ret;
+		this.fsSession.mkdir("/foo/foo");
+		ret = this.fsSession.touch("/foo/foo/foo");
+		assertEquals("/foo/foo/foo", ret);
+
+		this.fsSession.cd("/foo/foo");
+		assertEquals(Arrays.asList("foo"), this.fsSession.ls());
+		assertTrue(this.fsSession.rm("/foo/foo/foo", false));
+		assertEquals(new ArrayList<String>(), this.fsSession.ls());
+	}
+
+	@Test
+	public void content() {
+		byte[] hello = "hello".getBytes(StandardCharsets.UTF_8);
+		assertTrue(this.fsSession.write("/foo/data/a.txt", hello));
+		assertEquals(5, this.fsSession.size("/foo/data/a.txt"));
+		assertTrue(this.fsSession.append("/foo/data/a.txt", " world".getBytes(StandardCharsets.UTF_8)));
+		assertEquals("hello world", new String(this.fsSession.read("/foo/data/a.txt", 0, 100), StandardCharsets.UTF_8));
+		assertEquals("world", new String(this.fsSession.read("/foo/data/a.txt", 6, 5), StandardCharsets.UTF_8));
+		assertEquals(1, this.fsSession.readBuffers("/foo/data/a.txt", 0, 5).length);
+
+		assertTrue(this.fsSession.truncate("/foo/data/a.txt", 4));
+		assertEquals(4, this.fsSession.size("/foo/data/a.txt"));
+		assertEquals(0, this.fsSession.size("/foo/f1"));
+		assertEquals(0, this.fsSession.read("/foo/f1", 0, 10).length);
+
+		assertEquals(-1, this.fsSession.size("/foo"));
+		assertNull(this.fsSession.read("/foo/nothing", 0, 10));
+		assertFalse(this.fsSession.write("/foo/bar", hello));
+		assertFalse(this.fsSession.truncate("/foo/nothing", 0));
+
+		long used = InMemoryFileSystem.getInstance().getContentStore().getResidentBytes();
+		assertTrue(used > 0);
+		this.fsSession.rm("/foo/data", true);
+		InMemoryFileSystem.getInstance().awaitReclaimed();
+		assertEquals(0, InMemoryFileSystem.getInstance().getContentStore().getResidentBytes());
+	}
+
+	@Test
+	public void stat() {
+		byte[] hello = "hello".getBytes(StandardCharsets.UTF_8);
+		assertTrue(this.fsSession.write("/foo/data/a.txt", hello));
+		FileStat stat = this.fsSession.stat("/foo/data/a.txt");
+		assertFalse(stat.isDirectory());
+		assertEquals(5, stat.size);
+		assertEquals(InfoNode.DEFAULT_FILE_MODE, stat.getPermissions());
+		assertTrue(stat.mtime > 0 && stat.ctime >= stat.mtime);
+
+		long mtime = stat.mtime;
+		assertTrue(this.fsSession.append("/foo/data/a.txt", hello));
+		assertTrue(this.fsSession.stat("/foo/data/a.txt", stat));
+		assertEquals(10, stat.size);
+		assertTrue(stat.mtime > mtime);
+
+		assertTrue(this.fsSession.stat("/foo", stat));
+		assertTrue(stat.isDirectory());
+		assertEquals(5, stat.size);
+		assertNull(this.fsSession.stat("/foo/nothing"));
+		assertFalse(this.fsSession.stat("/foo/nothing", stat));
+	}
+
+	@Test
+	public void lsPage() {
+		List<String> expected = new ArrayList<>();
+		for (int i = 0; i < 100; ++i) {
+			String name = String.format("f%03d", i);
+			this.fsSession.touch("/foo/big/" + name);
+			expected.add(name);
+		}
+		List<String> listed = new ArrayList<>();
+		String cursor = null;
+		int pages = 0;
+		do {
+			ListPage page = this.fsSession.ls("/foo/big", cursor, 30);
+			assertTrue(page.getNames().size() <= 30);
+			listed.addAll(page.getNames());
+			cursor = page.getCursor();
+			++pages;
+			if (pages == 2) {
+				// the cursor stays valid when its entry is gone
+				assertTrue(this.fsSession.rm("/foo/big/" + cursor, false));
+			}
+		} while (cursor != null);
+		assertEquals(4, pages);
+		assertEquals("every name is listed once", expected, listed);
+
+		ListPage small = this.fsSession.ls("/foo", null, 10);
+		assertEquals(Arrays.asList("bar", "bar1", "big", "f1", "f2"), small.getNames());
+		assertFalse(small.hasMore());
+		assertNull(this.fsSession.ls("/foo/f1", null, 10));
+		assertNull(this.fsSession.lsIterator("/foo/nothing", null));
+		assertEquals("bar1", this.fsSession.lsIterator("/foo", "bar").next());
+	}
+
+	@Test
+	public void lsPrefix() {
+		for (int day = 1; day <= 30; ++day) {
+			this.fsSession.touch(String.format("/foo/logs/log-2024-05-%02d", day));
+			this.fsSession.touch(String.format("/foo/logs/log-2024-06-%02d", day));
+		}
+		this.fsSession.touch("/foo/logs/log-2024-06");
+		List<String> june = new ArrayList<>();
+		Iterators.addAll(june, this.fsSession.lsPrefix("/foo/logs", "log-2024-06"));
+		assertEquals(31, june.size());
+		assertEquals("log-2024-06", june.get(0));
+		assertEquals("log-2024-06-30", june.get(30));
+
+		List<String> range = new ArrayList<>();
+		Iterators.addAll(range, this.fsSession.lsRange("/foo/logs", "log-2024-05-29", "log-2024-06-02"));
+		assertEquals(Arrays.asList("log-2024-05-29", "log-2024-05-30", "log-2024-06", "log-2024-06-01"), range);
+		assertFalse(this.fsSession.lsPrefix("/foo/logs", "x").hasNext());
+		assertNull(this.fsSession.lsPrefix("/foo/nothing", "log"));
+
+		ListPage page = this.fsSession.ls("/foo/logs", "log-2024-06-1", null, 6);
+		assertEquals("log-2024-06-10", page.getNames().get(0));
+		assertTrue(page.hasMore());
+		page = this.fsSession.ls("/foo/logs", "log-2024-06-1", page.getCursor(), 6);
+		assertEquals(Arrays.asList("log-2024-06-16", "log-2024-06-17", "log-2024-06-18", "log-2024-06-19"), page.getNames());
+		assertFalse(page.hasMore());
+	}
+
+	@Test
+	public void find() {
+		this.fsSession.touch("/foo/data/2024/part-1.parquet");
+		this.fsSession.touch("/foo/data/2024/06/part-2.parquet");
+		this.fsSession.touch("/foo/data/2024/06/part-2.parquet.tmp");
+		this.fsSession.mkdir("/foo/data/2024/06/part-3.parquet");
+		this.fsSession.touch("/foo/data/other.parquet");
+
+		assertEquals(Arrays.asList("/foo/data/2024/06/part-2.parquet", "/foo/data/2024/06/part-3.parquet",
+			"/foo/data/2024/part-1.parquet"), this.fsSession.find("/foo/data/**/part-*.parquet", null, Integer.MAX_VALUE));
+		assertEquals(Arrays.asList("/foo/data/2024/06/part-2.parquet", "/foo/data/2024/part-1.parquet"),
+			this.fsSession.find("/foo/**/part-*.parquet", InfoNode.FileType.FILE, Integer.MAX_VALUE));
+		assertEquals("the depth is counted from the root", Arrays.asList("/foo/data/2024/part-1.parquet"),
+			this.fsSession.find("/**/part-*", null, 4));
+		assertEquals(Arrays.asList("/foo/bar/zzz1", "/foo/bar/zzz2"), this.fsSession.find("/foo/*/zzz?", null, Integer.MAX_VALUE));
+
+		this.fsSession.cd("/foo/data");
+		assertEquals(Arrays.asList("/foo/data", "/foo/data/2024", "/foo/data/2024/06", "/foo/data/2024/06/part-3.parquet"),
+			this.fsSession.find("**", InfoNode.FileType.DIRECTORY, Integer.MAX_VALUE));
+		assertEquals(Arrays.asList("/foo/data/other.parquet"), this.fsSession.find("./*.parquet", null, 1));
+		assertTrue(this.fsSession.find("/nothing/**", null, Integer.MAX_VALUE).isEmpty());
+	}
+
+	@Test
+	public void findParallel() {
+		int dirs = 8;
+		int files = (int) (Finder.FORK_THRESHOLD / dirs) * 2;
+		List<String> expected = new ArrayList<>();
+		for (int i = 0; i < dirs; ++i) {
+			List<BatchOperation> operations = new ArrayList<>();
+			for (int j = 0; j < files; ++j) {
+				operations.add(BatchOperation.touch(String.format("/foo/big/d%d/e/f%05d", i, j)));
+				if (j % 1000 == 7) {
+					expected.add(String.format("/foo/big/d%d/e/f%05d", i, j));
+				}
+			}
+			((InMemoryFileSystemSession) this.fsSession).batch(operations);
+		}
+		PathPattern pattern = PathPattern.compile("/foo/**/f*7");
+		List<String> found = this.fsSession.find(pattern, InfoNode.FileType.FILE, Integer.MAX_VALUE);
+		List<String> matching = new ArrayList<>();
+		for (String path : found) {
+			if (Integer.parseInt(path.substring(path.length() - 5)) % 1000 == 7) {
+				matching.add(path);
+			}
+		}
+		assertEquals(expected, matching);
+		int perDir = 0;
+		for (int j = 0; j < files; ++j) {
+			perDir += j % 10 == 7 ? 1 : 0;
+		}
+		assertEquals(dirs * perDir, found.size());
+	}
+
+	@Test
+	public void walk() {
+		this.fsSession.touch("/foo/walk/a/f1");
+		this.fsSession.touch("/foo/walk/a/b/f2");
+		this.fsSession.mkdir("/foo/walk/c");
+		this.fsSession.cd("/foo");
+
+		assertEquals(Arrays.asList("/foo/walk", "/foo/walk/a", "/foo/walk/a/b", "/foo/walk/a/b/f2", "/foo/walk/a/f1", "/foo/walk/c"),
+			this.fsSession.walk("walk", Integer.MAX_VALUE).map(WalkEntry::getPath).collect(Collectors.toList()));
+		assertEquals(Arrays.asList("/foo/walk", "/foo/walk/a", "/foo/walk/c"),
+			this.fsSession.walk("/foo/walk", 1).map(WalkEntry::getPath).collect(Collectors.toList()));
+		assertEquals(2, this.fsSession.walk("/foo/walk", 3).filter(entry -> !entry.isDirectory()).count());
+		assertEquals(Arrays.asList(0, 1, 2, 3, 2, 1),
+			this.fsSession.walk("/foo/walk", 5).map(WalkEntry::getDepth).collect(Collectors.toList()));
+		assertEquals(Arrays.asList("/foo/walk/a/f1"),
+			this.fsSession.walk("/foo/walk/a/f1", 5).map(WalkEntry::getPath).collect(Collectors.toList()));
+		assertNull(this.fsSession.walk("/foo/missing", 1));
+	}
+
+	@Test
+	public void walkParallel() {
+		for (int i = 0; i < 8; ++i) {
+			List<BatchOperation> operations = new ArrayList<>();
+			for (int j = 0; j < 3000; ++j) {
+				operations.add(BatchOperation.touch(String.format("/foo/big/d%d/e/f%05d", i, j)));
+			}
+			((InMemoryFileSystemSession) this.fsSession).batch(operations);
+		}
+		this.fsSession.touch("/foo/big/chain/1/2/3/4/f");
+
+		List<String> sequential = this.fsSession.walk("/foo/big", Integer.MAX_VALUE).map(WalkEntry::getPath)
+			.collect(Collectors.toList());
+		Set<String> parallel = this.fsSession.walk("/foo/big", Integer.MAX_VALUE).parallel().map(WalkEntry::getPath)
+			.collect(Collectors.toSet());
+		assertEquals(1 + 9 + 8 + 8 * 3000 + 5, sequential.size());
+		assertEquals(sequential.size(), parallel.size());
+		assertEquals(new HashSet<>(sequential), parallel);
+
+		assertEquals(InMemoryFileSystem.getInstance().walkStats().toString(),
+			InMemoryFileSystem.getInstance().getStats().toString());
+	}
+
+	@Test
+	public void rename() {
+		this.fsSession.touch("/foo/stage/part-1");
+		this.fsSession.write("/foo/stage/part-2", "data".getBytes(StandardCharsets.UTF_8));
+		this.fsSession.mkdir("/foo/stage/sub/deep");
+		this.fsSession.mkdir("/foo/out");
+		FileSystem other = InMemoryFileSystem.newSession();
+		other.cd("/foo/stage/sub");
+		Stats before = InMemoryFileSystem.getInstance().getStats();
+
+		assertTrue(this.fsSession.rename("/foo/stage", "/foo/out/published"));
+		assertNull(this.fsSession.stat("/foo/stage"));
+		assertEquals(Arrays.asList("part-1", "part-2", "sub"), Lists.newArrayList(this.fsSession.lsIterator("/foo/out/published", null)));
+		assertEquals("data", new String(this.fsSession.read("/foo/out/published/part-2", 0, 10), StandardCharsets.UTF_8));
+		assertEquals("/foo/out/published/sub", other.pwd());
+		assertEquals("/foo/out/published/sub/deep", other.cd("deep"));
+		assertEquals(before.toString(), InMemoryFileSystem.getInstance().getStats().toString());
+		assertEquals(2, ((InMemoryFileSystemSession) this.fsSession).du("/foo/out").totalFile);
+
+		this.fsSession.cd("/foo/out/published");
+		assertTrue(this.fsSession.rename("part-1", "part-0"));
+		assertEquals(Arrays.asList("part-0", "part-2", "sub"), Lists.newArrayList(this.fsSession.ls()));
+		assertFalse("dst exists", this.fsSession.rename("part-0", "part-2"));
+		assertFalse("into itself", this.fsSession.rename("/foo/out", "/foo/out/published/sub/out"));
+		assertFalse("no parent", this.fsSession.rename("part-0", "/nothing/part-0"));
+		assertFalse("no src", this.fsSession.rename("/foo/missing", "/foo/found"));
+		assertFalse("root", this.fsSession.rename("/", "/root"));
+		assertEquals(InMemoryFileSystem.getInstance().walkStats().toString(),
+			InMemoryFileSystem.getInstance().getStats().toString());
+	}
+
+	@Test
+	public void copy() {
+		InMemoryFileSystem mfs = InMemoryFileSystem.getInstance();
+		mfs.enablePathIndex();
+		try {
+			int chunkSize = mfs.getContentStore().getChunkAllocator().getChunkSize();
+			byte[] data = new byte[3 * chunkSize + 10];
+			Arrays.fill(data, (byte) 'x');
+			this.fsSession.write("/foo/src/a/big", data);
+			this.fsSession.touch("/foo/src/a/b/empty");
+			this.fsSession.mkdir("/foo/src/c");
+			mfs.awaitReclaimed();
+			long used = mfs.getContentStore().getResidentBytes();
+
+			assertFalse("not recursive", this.fsSession.copy("/foo/src", "/foo/dst", false));
+			assertTrue(this.fsSession.copy("/foo/src", "/foo/dst", true));
+			assertEquals("no content is copied", used, mfs.getContentStore().getResidentBytes());
+			assertEquals(Arrays.asList("a", "c"), Lists.newArrayList(this.fsSession.lsIterator("/foo/dst", null)));
+			assertEquals(0, this.fsSession.size("/foo/dst/a/b/empty"));
+			assertArrayEquals(data, this.fsSession.read("/foo/dst/a/big", 0, data.length));
+			assertEquals(mfs.walkStats().toString(), mfs.getStats().toString());
+			assertEquals(((InMemoryFileSystemSession) this.fsSession).du("/foo/src").toString(),
+				((InMemoryFileSystemSession) this.fsSession).du("/foo/dst").toString());
+			assertNotNull(mfs.getPathIndex().getLive("/foo/dst/a/b/empty"));
+
+			assertTrue(this.fsSession.append("/foo/dst/a/big", "y".getBytes(StandardCharsets.UTF_8)));
+			assertEquals(data.length + 1, this.fsSession.size("/foo/dst/a/big"));
+			assertEquals(data.length, this.fsSession.size("/foo/src/a/big"));
+			assertEquals("only the last chunk is copied", used + chunkSize, mfs.getContentStore().getResidentBytes());
+
+			assertTrue(this.fsSession.copy("/foo/src/a/big", "/foo/src/c/big", false));
+			assertFalse("dst exists", this.fsSession.copy("/foo/src/a", "/foo/src/c", true));
+			assertFalse("into itself", this.fsSession.copy("/foo/src", "/foo/src/c/src", true));
+			assertFalse("no src", this.fsSession.copy("/foo/missing", "/foo/found", true));
+
+			this.fsSession.rm("/foo/src", true);
+			this.fsSession.rm("/foo/dst", true);
+			mfs.awaitReclaimed();
+			assertEquals(0, mfs.getContentStore().getResidentBytes());
+		} finally {
+			mfs.disablePathIndex();
+		}
+	}
+
+	/**
+	 * a copy locks nothing, renames under its source go on and the copy holds every file once
+	 */
+	@Test(timeout = 60000)
+	public void copyUnderRenames() throws InterruptedException {
+		InMemoryFileSystem mfs = InMemoryFileSystem.getInstance();
+		int files = 64;
+		for (int i = 0; i < files; ++i) {
+			this.fsSession.touch("/foo/src/a/f" + i);
+		}
+		this.fsSession.mkdir("/foo/src/b");
+		AtomicBoolean stop = new AtomicBoolean();
+		Thread[] writers = new Thread[4];
+		for (int t = 0; t < writers.length; ++t) {
+			writers[t] = new Thread(() -> {
+				FileSystem session = InMemoryFileSystem.newSession();
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+				while (!stop.get()) {
+					String name = "/f" + random.nextInt(files);
+					if (!session.rename("/foo/src/a" + name, "/foo/src/b" + name)) {
+						session.rename("/foo/src/b" + name, "/foo/src/a" + name);
+					}
+				}
+			});
+			writers[t].start();
+		}
+		try {
+			for (int i = 0; i < 50; ++i) {
+				String dst = "/foo/dst" + i;
+				assertTrue(this.fsSession.copy("/foo/src", dst, true));
+				assertEquals(files, this.fsSession.walk(dst, Integer.MAX_VALUE).filter(entry -> !entry.isDirectory()).count());
+				assertEquals(this.fsSession.walk(dst, Integer.MAX_VALUE).count(),
+					((InMemoryFileSystemSession) this.fsSession).du(dst).totalPath);
+			}
+		} finally {
+			stop.set(true);
+			for (Thread writer : writers) {
+				writer.join();
+			}
+		}
+		assertEquals(mfs.walkStats().toString(), mfs.getStats().toString());
+	}
+
+	@Test
+	public void renameWithPathIndex() {
+		InMemoryFileSystem mfs = InMemoryFileSystem.getInstance();
+		mfs.enablePathIndex();
+		try {
+			this.fsSession.touch("/foo/a/b/f");
+			assertTrue(this.fsSession.rename("/foo/a", "/foo/x"));
+			assertNull(this.fsSession.stat("/foo/a/b/f"));
+			assertNotNull(this.fsSession.stat("/foo/x/b/f"));
+			assertNotNull(this.fsSession.touch("/foo/x/b/g"));
+			assertNotNull(this.fsSession.touch("/foo/a/b/f"));
+			assertEquals(Arrays.asList("f", "g"), Lists.newArrayList(this.fsSession.lsIterator("/foo/x/b", null)));
+			assertEquals(Arrays.asList("f"), Lists.newArrayList(this.fsSession.lsIterator("/foo/a/b", null)));
+		} finally {
+			mfs.disablePathIndex();
+		}
+	}
+
+	/**
+	 * renames move two dirs around, also under each other, while other sessions create files
+	 * in one of them as their working dir. no file may be lost and no dir may be moved under itself
+	 */
+	@Test
+	public void concurrentRename() throws Exception {
+		this.fsSession.mkdir("/foo/left/d0/d1");
+		this.fsSession.mkdir("/foo/right");
+		final String[][] moves = {
+			{"/foo/left/d0", "/foo/right/d0"}, {"/foo/right/d0", "/foo/left/d0"},
+			{"/foo/left/d0/d1", "/foo/right/d1"}, {"/foo/right/d1", "/foo/left/d0/d1"},
+			{"/foo/left/d0", "/foo/right/d1/d0"}, {"/foo/right/d1/d0", "/foo/left/d0"},
+			{"/foo/left/d0", "/foo/left/d0/d1/d0"}};
+		final int threads = 8;
+		final int perThread = 2000;
+		final List<Throwable> errors = new ArrayList<>();
+		final List<FileSystem> creators = new ArrayList<>();
+		Thread[] workers = new Thread[threads];
+		for (int t = 0; t < threads; ++t) {
+			final int id = t;
+			final FileSystem session = InMemoryFileSystem.newSession();
+			if (id % 2 == 1) {
+				session.cd("/foo/left/d0/d1");
+				creators.add(session);
+			}
+			workers[t] = new Thread(() -> {
+				try {
+					ThreadLocalRandom random = ThreadLocalRandom.current();
+					for (int i = 0; i < perThread; ++i) {
+						if (id % 2 == 0) {
+							String[] move = moves[random.nextInt(moves.length)];
+							session.rename(move[0], move[1]);
+						} else {
+							assertNotNull(session.touch("f" + id + "-" + i));
+						}
+					}
+				} catch (Throwable e) {
+					synchronized (errors) {
+						errors.add(e);
+					}
+				}
+			});
+		}
+		for (Thread worker : workers) {
+			worker.start();
+		}
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		assertEquals(new ArrayList<Throwable>(), errors);
+		String d1 = creators.get(0).pwd();
+		for (FileSystem creator : creators) {
+			assertEquals(d1, creator.pwd());
+		}
+		assertTrue(d1, d1.endsWith("/d1"));
+		long files = this.fsSession.walk(d1, 1).filter(entry -> !entry.isDirectory()).count();
+		assertEquals((threads / 2) * perThread, files);
+		assertEquals(InMemoryFileSystem.getInstance().walkStats().toString(),
+			InMemoryFileSystem.getInstance().getStats().toString());
+		for (String dir : new String[] {"/foo", "/foo/left", "/foo/right"}) {
+			assertEquals(dir, this.fsSession.walk(dir, Integer.MAX_VALUE).count(),
+				((InMemoryFileSystemSession) this.fsSession).du(dir).totalPath);
+		}
+	}
+
+	/**
+	 * renames in different directories run at the same time, a removal can take a directory
+	 * away while it is being moved or created under
+	 */
+	@Test
+	public void concurrentRenameAndRm() throws Exception {
+		final int threads = 4;
+		final int rounds = 2000;
+		final List<Throwable> errors = new ArrayList<>();
+		Thread[] workers = new Thread[threads + 1];
+		for (int t = 0; t < threads; ++t) {
+			final String dir = "/foo/p" + t;
+			this.fsSession.mkdir(dir);
+			workers[t] = new Thread(() -> {
+				try {
+					FileSystem session = InMemoryFileSystem.newSession();
+					for (int i = 0; i < rounds; ++i) {
+						session.mkdir(dir + "/d/e");
+						session.touch(dir + "/d/e/f" + i);
+						session.rename(dir + "/d", dir + "/r");
+						session.rename(dir + "/r", "/foo/bar/r" + dir.substring(5));
+						session.rename("/foo/bar/r" + dir.substring(5), dir + "/d");
+					}
+				} catch (Throwable e) {
+					synchronized (errors) {
+						errors.add(e);
+					}
+				}
+			});
+		}
+		workers[threads] = new Thread(() -> {
+			FileSystem session = InMemoryFileSystem.newSession();
+			ThreadLocalRandom random = ThreadLocalRandom.current();
+			for (int i = 0; i < rounds; ++i) {
+				int t = random.nextInt(threads);
+				session.rm(random.nextBoolean() ? "/foo/p" + t + "/d" : "/foo/bar/rp" + t, true);
+			}
+		});
+		for (Thread worker : workers) {
+			worker.start();
+		}
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		assertEquals(new ArrayList<Throwable>(), errors);
+		assertEquals(InMemoryFileSystem.getInstance().walkStats().toString(),
+			InMemoryFileSystem.getInstance().getStats().toString());
+		for (String dir : new String[] {"/foo", "/foo/bar", "/foo/p0"}) {
+			assertEquals(dir, this.fsSession.walk(dir, Integer.MAX_VALUE).count(),
+				((InMemoryFileSystemSession) this.fsSession).du(dir).totalPath);
+		}
+	}
+
+	@Test
+	public void batch() {
+		InMemoryFileSystemSession session = InMemoryFileSystem.newSession();
+		session.cd("/foo");
+		boolean[] results = session.batch(Arrays.asList(
+			BatchOperation.mkdir("/x/y/z"),
+			BatchOperation.touch("/x/y/f1"),
+			BatchOperation.touch("/x/y/f2"),
+			BatchOperation.mkdir("/x/y/f1"),
+			BatchOperation.touch("/x/y/z"),
+			BatchOperation.rm("/x/y", true),
+			BatchOperation.touch("/x/y/f3"),
+			BatchOperation.touch("bar/f4"),
+			BatchOperation.mkdir("bar/../baz"),
+			BatchOperation.rm("/x/missing", false)));
+		assertTrue(Arrays.equals(new boolean[] {true, true, true, false, false, true, true, true, true, false}, results));
+
+		session.cd("/x/y");
+		assertEquals(Arrays.asList("f3"), session.ls());
+		session.cd("/foo/bar");
+		assertEquals(Arrays.asList("f4", "zzz1", "zzz2"), session.ls());
+		session.cd("/foo");
+		assertEquals(Arrays.asList("bar", "bar1", "baz", "f1", "f2"), session.ls());
+		assertEquals(InMemoryFileSystem.getInstance().walkStats().toString(),
+			InMemoryFileSystem.getInstance().getStats().toString());
+	}
+
+	@Test
+	public void rmLarge() {
+		InMemoryFileSystem mfs = InMemoryFileSystem.getInstance();
+		mfs.enablePathIndex();
+		byte[] data = "x".getBytes(StandardCharsets.UTF_8);
+		for (int i = 0; i < 100; ++i) {
+			for (int j = 0; j < 100; ++j) {
+				assertTrue(this.fsSession.write("/foo/big/d" + i + "/f" + j, data));
+			}
+		}
+		assertTrue(mfs.getContentStore().getResidentBytes() > 0);
+
+		assertTrue(this.fsSession.rm("/foo/big", true));
+		assertEquals("the counters do not wait for the reclaimer",
+			mfs.walkStats().toString(), mfs.getStats().toString());
+		assertNull(this.fsSession.read("/foo/big/d1/f1", 0, 1));
+
+		mfs.awaitReclaimed();
+		assertNull(mfs.getPathIndex().getLive("/foo/big/d1/f1"));
+		assertEquals(0, mfs.getContentStore().getResidentBytes());
+		mfs.disablePathIndex();
+	}
+
 	@Test(expected = IllegalArgumentException.class)
 	public void rm1() {
 		this.fsSession.rm(null, false);
@@ -192,9 +725,66 @@ public class InMemoryFileSystemSessionTest {
 		boolean ret;
 		this.fsSession.cd("/foo/bar/");
 		this.fsSession.rm("/foo", true);
-		assertEquals(new ArrayList(), this.fsSession.ls());
+		assertEquals(new ArrayList<String>(), this.fsSession.ls());
 	}
 
+	@Test
+	public void rm3() {
+		FileSystem other = InMemoryFileSystem.newSession();
+		this.fsSession.cd("/foo/bar/zzz1");
+		this.fsSession.mkdir("xxx1");
+		assertEquals(Arrays.asList("xxx1"), this.fsSession.ls());
+
+		other.rm("/foo/bar1", true);
+		assertEquals("removing an unrelated dir keeps the working dir alive",
+			Arrays.asList("xxx1"), this.fsSession.ls());
+
+		other.rm("/", true);
+		assertEquals(new ArrayList<String>(), this.fsSession.ls());
+
+		other.mkdir("/foo/bar/zzz1/xxx1");
+		assertEquals("a new dir with the same path is not the working dir",
+			new ArrayList<String>(), this.fsSession.ls());
+	}
+
+
+	@Test
+	public void close() {
+		InMemoryFileSystem mfs = InMemoryFileSystem.getInstance();
+		int live = mfs.getLiveSessionCount();
+		InMemoryFileSystemSession session = InMemoryFileSystem.newSession();
+		assertEquals(live + 1, mfs.getLiveSessionCount());
+		session.close();
+		assertTrue(session.isClosed());
+		assertEquals(live, mfs.getLiveSessionCount());
+		try {
+			session.ls();
+			fail("a closed session can not be used");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void idleTimeout() throws InterruptedException {
+		InMemoryFileSystem mfs = InMemoryFileSystem.getInstance();
+		long timeout = mfs.getSessionIdleTimeout();
+		long evicted = mfs.getEvictedSessionCount();
+		mfs.setSessionIdleTimeout(1);
+		try {
+			InMemoryFileSystemSession idle = InMemoryFileSystem.newSession();
+			long deadline = System.currentTimeMillis() + 10 * SessionWheel.TICK_MILLIS;
+			while (!idle.isClosed() && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			assertTrue(idle.isClosed());
+			assertTrue(mfs.getEvictedSessionCount() > evicted);
+		} finally {
+			mfs.setSessionIdleTimeout(timeout);
+			// the session of this test has been idle as well
+			this.fsSession = InMemoryFileSystem.newSession();
+		}
+	}
 
 	/**
 	 * test if the sessionId might be conflicted in multi-thread env
@@ -223,6 +813,57 @@ public class InMemoryFileSystemSessionTest {
 		}
 		countDownLatch.await(30, TimeUnit.SECONDS);
 		assertEquals(TASK_SIZE, countingResult.size());
+		assertTrue(InMemoryFileSystem.getInstance().getCreatedSessionCount() >= TASK_SIZE);
+	}
+
+	/**
+	 * 64 threads create the same new dirs at the same time, every round each thread does
+	 * mkdir -p of one path and touches a file of its own and a shared one under it.
+	 * a dir created twice would orphan the files of the loser
+	 */
+	@Test
+	public void concurrentCreate() throws Exception {
+		final int threads = 64;
+		final int rounds = 200;
+		final CyclicBarrier cyclicBarrier = new CyclicBarrier(threads);
+		final List<Throwable> errors = new ArrayList<>();
+		Thread[] workers = new Thread[threads];
+		for (int t = 0; t < threads; ++t) {
+			final int id = t;
+			workers[t] = new Thread(() -> {
+				InMemoryFileSystemSession session = InMemoryFileSystem.newSession();
+				try {
+					for (int round = 0; round < rounds; ++round) {
+						cyclicBarrier.await(10, TimeUnit.SECONDS);
+						String dir = "/race/r" + round + "/a/b/c";
+						if (id % 2 == 0) {
+							assertTrue(session.mkdir(dir));
+						}
+						assertNotNull(session.touch(dir + "/t" + id));
+						assertNotNull(session.touch(dir + "/shared"));
+					}
+				} catch (Throwable e) {
+					synchronized (errors) {
+						errors.add(e);
+					}
+					cyclicBarrier.reset();
+				} finally {
+					session.close();
+				}
+			});
+			workers[t].start();
+		}
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		assertEquals(new ArrayList<Throwable>(), errors);
+
+		for (int round = 0; round < rounds; ++round) {
+			assertEquals(threads + 1, Iterators.size(this.fsSession.lsIterator("/race/r" + round + "/a/b/c", null)));
+		}
+		assertEquals(1 + rounds * (4 + threads + 1), this.fsSession.walk("/race", Integer.MAX_VALUE).count());
+		assertEquals(InMemoryFileSystem.getInstance().walkStats().toString(),
+			InMemoryFileSystem.getInstance().getStats().toString());
 	}
 
 	/**
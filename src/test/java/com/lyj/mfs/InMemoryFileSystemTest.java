@@ -1,13 +1,28 @@
 package com.lyj.mfs;
 
+import com.google.common.collect.Lists;
 import com.lyj.mfs.InMemoryFileSystem.Stats;
+import com.lyj.mfs.domain.InfoNode;
+import com.lyj.mfs.persist.Journal.FsyncPolicy;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 import org.junit.After;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import static org.junit.Assert.*;
 
 public class InMemoryFileSystemTest {
 
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
 	private FileSystem fsSession;
 
 	@Before
@@ -37,4 +52,287 @@ public class InMemoryFileSystemTest {
 		assertEquals(2,stats.totalFile);
 		assertEquals(6,stats.totalDir);
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void getStatsAfterRm() {
+		this.fsSession.touch("/foo/bar/zzz1/f3");
+		this.fsSession.rm("/foo/bar", true);
+		Stats stats = InMemoryFileSystem.getInstance().getStats();
+		assertEquals(5,stats.totalPath);
+		assertEquals(2,stats.totalFile);
+		assertEquals(3,stats.totalDir);
+		assertEquals(InMemoryFileSystem.getInstance().walkStats().toString(), stats.toString());
+
+		this.fsSession.rm("/", true);
+		stats = InMemoryFileSystem.getInstance().getStats();
+		assertEquals(1,stats.totalPath);
+		assertEquals(0,stats.totalFile);
+		assertEquals(1,stats.totalDir);
+	}
+
+	/**
+	 * rm / swaps the children of the root out while other sessions add to them,
+	 * a dir added to the swapped out skip list would be counted but unreachable
+	 */
+	@Test
+	public void getStatsAfterConcurrentRmRoot() throws InterruptedException {
+		final long deadline = System.currentTimeMillis() + 1000;
+		Thread[] writers = new Thread[4];
+		for (int t = 0; t < writers.length; ++t) {
+			final int id = t;
+			writers[t] = new Thread(() -> {
+				InMemoryFileSystemSession session = InMemoryFileSystem.newSession();
+				for (int i = 0; System.currentTimeMillis() < deadline; ++i) {
+					session.mkdir("/t" + id + "-" + i);
+				}
+				session.close();
+			});
+			writers[t].start();
+		}
+		while (System.currentTimeMillis() < deadline) {
+			this.fsSession.rm("/", true);
+		}
+		for (Thread writer : writers) {
+			writer.join();
+		}
+		this.fsSession.rm("/", true);
+		InMemoryFileSystem mfs = InMemoryFileSystem.getInstance();
+		assertEquals(mfs.walkStats().toString(), mfs.getStats().toString());
+	}
+
+	@Test
+	public void du() {
+		InMemoryFileSystemSession session = InMemoryFileSystem.newSession();
+		session.touch("/foo/bar/zzz1/f3");
+		Stats stats = session.du("/foo/bar");
+		assertEquals(4,stats.totalPath);
+		assertEquals(1,stats.totalFile);
+		assertEquals(3,stats.totalDir);
+
+		stats = session.du("/foo");
+		assertEquals(8,stats.totalPath);
+		assertEquals(3,stats.totalFile);
+
+		stats = session.du("/foo/f1");
+		assertEquals(1,stats.totalPath);
+		assertEquals(1,stats.totalFile);
+
+		session.cd("/foo/bar/zzz1");
+		assertEquals(2, session.du(".").totalPath);
+		assertEquals(4, session.du("..").totalPath);
+		assertEquals(9, session.du("/").totalPath);
+		assertNull(session.du("/foo/nothing"));
+
+		session.rm("/foo/bar/zzz1", true);
+		assertEquals(2, session.du("/foo/bar").totalPath);
+		assertEquals(6, session.du("/foo").totalPath);
+	}
+
+	@Test
+	public void snapshot() throws IOException {
+		InMemoryFileSystem mfs = InMemoryFileSystem.getInstance();
+		this.fsSession.write("/foo/f1", "hello".getBytes(StandardCharsets.UTF_8));
+		Path file = folder.getRoot().toPath().resolve("mfs.snapshot");
+		assertEquals(7, mfs.saveSnapshot(file));
+
+		this.fsSession.rm("/foo/bar", true);
+		this.fsSession.mkdir("/other");
+		mfs.restoreSnapshot(file);
+
+		Stats stats = mfs.getStats();
+		assertEquals(8,stats.totalPath);
+		assertEquals(2,stats.totalFile);
+		assertEquals(6,stats.totalDir);
+		assertEquals(mfs.walkStats().toString(), stats.toString());
+		assertEquals("/foo", this.fsSession.cd("/foo"));
+		assertEquals(Arrays.asList("bar", "bar1", "f1", "f2"), Lists.newArrayList(this.fsSession.ls()));
+		assertEquals("hello", new String(this.fsSession.read("/foo/f1", 0, 100), StandardCharsets.UTF_8));
+		assertEquals(Arrays.asList("foo"), Lists.newArrayList(InMemoryFileSystem.getInstance().getRoot().getChildren()).stream()
+			.map(InfoNode::getPath).collect(Collectors.toList()));
+	}
+
+	@Test
+	public void recover() throws IOException {
+		InMemoryFileSystem mfs = InMemoryFileSystem.getInstance();
+		Path snapshot = folder.getRoot().toPath().resolve("mfs.snapshot");
+		Path journal = folder.getRoot().toPath().resolve("mfs.journal");
+		mfs.enableJournal(journal, FsyncPolicy.ALWAYS);
+		try {
+			this.fsSession.append("/foo/f1", "hello".getBytes(StandardCharsets.UTF_8));
+			mfs.checkpoint(snapshot);
+			this.fsSession.append("/foo/f1", " world".getBytes(StandardCharsets.UTF_8));
+			this.fsSession.rm("/foo/bar", true);
+			this.fsSession.cd("/foo");
+			this.fsSession.touch("f3");
+			this.fsSession.rename("f3", "/foo/f4");
+			this.fsSession.copy("/foo/f1", "/foo/f5", false);
+		} finally {
+			mfs.disableJournal();
+		}
+		Stats before = mfs.getStats();
+
+		this.fsSession.rm("/", true);
+		assertEquals(5, mfs.recover(snapshot, journal));
+		assertEquals(before.toString(), mfs.getStats().toString());
+		assertEquals(mfs.walkStats().toString(), mfs.getStats().toString());
+		assertEquals("hello world", new String(this.fsSession.read("/foo/f1", 0, 100), StandardCharsets.UTF_8));
+		assertEquals(0, this.fsSession.size("/foo/f4"));
+		assertNull(this.fsSession.stat("/foo/f3"));
+		assertEquals("hello world", new String(this.fsSession.read("/foo/f5", 0, 100), StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * a checkpoint that stops after the snapshot is written leaves the old journal behind,
+	 * its records are in the snapshot already
+	 */
+	@Test
+	public void recoverAfterUnfinishedCheckpoint() throws IOException {
+		InMemoryFileSystem mfs = InMemoryFileSystem.getInstance();
+		Path snapshot = folder.getRoot().toPath().resolve("mfs.snapshot");
+		Path journal = folder.getRoot().toPath().resolve("mfs.journal");
+		Path left = folder.getRoot().toPath().resolve("left.journal");
+		mfs.enableJournal(journal, FsyncPolicy.ALWAYS);
+		try {
+			this.fsSession.append("/foo/f1", "hello".getBytes(StandardCharsets.UTF_8));
+			Files.copy(journal, left);
+			mfs.checkpoint(snapshot);
+			this.fsSession.append("/foo/f1", " world".getBytes(StandardCharsets.UTF_8));
+		} finally {
+			mfs.disableJournal();
+		}
+		Files.copy(left, journal.resolveSibling("mfs.journal.prev"));
+
+		this.fsSession.rm("/", true);
+		assertEquals(1, mfs.recover(snapshot, journal));
+		assertEquals("hello world", new String(this.fsSession.read("/foo/f1", 0, 100), StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * the records of concurrent sessions are in the order of their changes,
+	 * so replaying them builds the same tree
+	 */
+	@Test
+	public void recoverConcurrentChanges() throws Exception {
+		InMemoryFileSystem mfs = InMemoryFileSystem.getInstance();
+		Path snapshot = folder.getRoot().toPath().resolve("mfs.snapshot");
+		Path journal = folder.getRoot().toPath().resolve("mfs.journal");
+		mfs.enableJournal(journal, FsyncPolicy.NEVER);
+		try {
+			mfs.checkpoint(snapshot);
+			Thread[] workers = new Thread[4];
+			for (int t = 0; t < workers.length; ++t) {
+				final int id = t;
+				workers[t] = new Thread(() -> {
+					InMemoryFileSystemSession session = InMemoryFileSystem.newSession();
+					for (int i = 0; i < 2000; ++i) {
+						session.write("/foo/f1", new byte[] {(byte) id, (byte) i});
+						session.mkdir("/foo/d" + (i % 3));
+						session.append("/foo/d" + (i % 3) + "/f", new byte[] {(byte) id});
+						if (i % 7 == id) {
+							session.rm("/foo/d" + (i % 3), true);
+						}
+					}
+					session.close();
+				});
+				workers[t].start();
+			}
+			for (Thread worker : workers) {
+				worker.join();
+			}
+		} finally {
+			mfs.disableJournal();
+		}
+		String[] contents = new String[3];
+		for (int d = 0; d < contents.length; ++d) {
+			contents[d] = Arrays.toString(this.fsSession.read("/foo/d" + d + "/f", 0, 10000));
+		}
+		byte[] last = this.fsSession.read("/foo/f1", 0, 100);
+		Stats before = mfs.getStats();
+
+		this.fsSession.rm("/", true);
+		mfs.recover(snapshot, journal);
+		assertEquals(before.toString(), mfs.getStats().toString());
+		assertArrayEquals("the last write wins", last, this.fsSession.read("/foo/f1", 0, 100));
+		for (int d = 0; d < contents.length; ++d) {
+			assertEquals(contents[d], Arrays.toString(this.fsSession.read("/foo/d" + d + "/f", 0, 10000)));
+		}
+	}
+
+	/**
+	 * a checkpoint taken while sessions change the tree holds every change logged before its
+	 * epoch, the journal every one after it, so a recovery builds the same tree
+	 */
+	@Test
+	public void checkpointWhileChanging() throws Exception {
+		InMemoryFileSystem mfs = InMemoryFileSystem.getInstance();
+		Path snapshot = folder.getRoot().toPath().resolve("mfs.snapshot");
+		Path journal = folder.getRoot().toPath().resolve("mfs.journal");
+		AtomicInteger checkpoints = new AtomicInteger();
+		mfs.enableJournal(journal, FsyncPolicy.NEVER);
+		try {
+			Thread[] workers = new Thread[4];
+			for (int t = 0; t < workers.length; ++t) {
+				final int id = t;
+				workers[t] = new Thread(() -> {
+					InMemoryFileSystemSession session = InMemoryFileSystem.newSession();
+					for (int i = 0; i < 1500 || checkpoints.get() < 3; ++i) {
+						String dir = "/foo/d" + (i % 3) + "/e" + id;
+						session.write("/foo/f1", new byte[] {(byte) id, (byte) i});
+						session.mkdir(dir);
+						session.append(dir + "/f", new byte[] {(byte) i});
+						if (i % 5 == id) {
+							session.rename(dir, "/foo/m" + id + "_" + i);
+						}
+						if (i % 50 == id) {
+							session.rm("/foo/c" + id, true);
+							session.copy("/foo/d" + (i % 3), "/foo/c" + id, true);
+						}
+						if (i % 7 == id) {
+							session.rm("/foo/d" + (i % 3), true);
+						}
+					}
+					session.close();
+				});
+				workers[t].start();
+			}
+			while (Arrays.stream(workers).anyMatch(Thread::isAlive)) {
+				mfs.checkpoint(snapshot);
+				checkpoints.incrementAndGet();
+			}
+			for (Thread worker : workers) {
+				worker.join();
+			}
+		} finally {
+			mfs.disableJournal();
+		}
+		String before = this.dump(mfs);
+		Stats stats = mfs.getStats();
+
+		this.fsSession.rm("/", true);
+		mfs.recover(snapshot, journal);
+		assertEquals(stats.toString(), mfs.getStats().toString());
+		assertEquals(before, this.dump(mfs));
+
+		// the files created under a dir while it was being removed are reclaimed as well
+		this.fsSession.rm("/", true);
+		mfs.awaitReclaimed();
+		assertEquals(0, mfs.getContentStore().getResidentBytes());
+	}
+
+	/**
+	 * @return every path of the tree with the content of the files
+	 */
+	private String dump(InMemoryFileSystem mfs) {
+		StringBuilder dump = new StringBuilder();
+		try (NamespaceSnapshot snapshot = mfs.openNamespaceSnapshot()) {
+			snapshot.walk((path, node) -> {
+				dump.append(path);
+				if (node.getFileType() == InfoNode.FileType.FILE) {
+					dump.append(Arrays.toString(this.fsSession.read(path, 0, 100000)));
+				}
+				dump.append('\n');
+			});
+		}
+		return dump.toString();
+	}
+}
@@ -0,0 +1,163 @@
+package com.lyj.mfs;
+
+import static org.junit.Assert.*;
+
+import com.google.common.collect.Lists;
+import com.lyj.mfs.InMemoryFileSystem.Stats;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class NamespaceSnapshotTest {
+
+	private FileSystem fsSession;
+
+	@Before
+	public void setUp() {
+		this.fsSession = InMemoryFileSystem.newSession();
+		this.fsSession.mkdir("/foo/bar/zzz1");
+		this.fsSession.touch("/foo/f1");
+	}
+
+	@After
+	public void tearDown() {
+		this.fsSession.rm("/", true);
+	}
+
+	@Test
+	public void frozen() {
+		InMemoryFileSystem mfs = InMemoryFileSystem.getInstance();
+		try (NamespaceSnapshot snapshot = mfs.openNamespaceSnapshot()) {
+			this.fsSession.rm("/foo/bar", true);
+			this.fsSession.touch("/foo/f2");
+			this.fsSession.rm("/", true);
+
+			assertEquals(Arrays.asList("bar", "f1"), snapshot.ls("/foo"));
+			assertEquals(Arrays.asList("zzz1"), snapshot.ls("/foo/bar/zzz1/.."));
+			assertNull(snapshot.ls("/foo/f1"));
+			assertFalse(snapshot.exists("/foo/f2"));
+			Stats stats = snapshot.getStats();
+			assertEquals(1, stats.totalFile);
+			assertEquals(4, stats.totalDir);
+
+			Map<String, Boolean> walked = new TreeMap<>();
+			snapshot.walk((path, node) -> walked.put(path, node.getChildCount(snapshot.getEpoch()) > 0));
+			assertEquals("{/foo=true, /foo/bar=true, /foo/bar/zzz1=false, /foo/f1=false}", walked.toString());
+		}
+		assertEquals(1, mfs.getStats().totalPath);
+	}
+
+	@Test
+	public void renamed() {
+		InMemoryFileSystem mfs = InMemoryFileSystem.getInstance();
+		this.fsSession.touch("/foo/bar/a");
+		this.fsSession.touch("/foo/bar/c");
+		try (NamespaceSnapshot snapshot = mfs.openNamespaceSnapshot()) {
+			assertTrue(this.fsSession.rename("/foo/bar/a", "/foo/bar/d"));
+			assertTrue(this.fsSession.rename("/foo/bar/d", "/foo/e"));
+
+			assertEquals(Arrays.asList("bar", "f1"), snapshot.ls("/foo"));
+			assertEquals(Arrays.asList("a", "c", "zzz1"), snapshot.ls("/foo/bar"));
+			assertTrue(snapshot.exists("/foo/bar/a"));
+			assertTrue(snapshot.exists("/foo/bar/zzz1"));
+			assertFalse(snapshot.exists("/foo/e"));
+		}
+		assertEquals(Arrays.asList("bar", "e", "f1"), Lists.newArrayList(this.fsSession.lsIterator("/foo", null)));
+	}
+
+	/**
+	 * every rename moves a file between two dirs in one change, a snapshot sees every file in
+	 * exactly one of them. the dirs hold enough files to be skip lists
+	 */
+	@Test
+	public void consistentUnderRenames() throws InterruptedException {
+		InMemoryFileSystem mfs = InMemoryFileSystem.getInstance();
+		int files = 64;
+		for (int i = 0; i < files; ++i) {
+			this.fsSession.touch("/foo/a/f" + i);
+		}
+		this.fsSession.mkdir("/foo/b");
+		AtomicBoolean stop = new AtomicBoolean();
+		Thread[] writers = new Thread[4];
+		for (int t = 0; t < writers.length; ++t) {
+			writers[t] = new Thread(() -> {
+				FileSystem session = InMemoryFileSystem.newSession();
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+				while (!stop.get()) {
+					String name = "/f" + random.nextInt(files);
+					if (!session.rename("/foo/a" + name, "/foo/b" + name)) {
+						session.rename("/foo/b" + name, "/foo/a" + name);
+					}
+				}
+			});
+			writers[t].start();
+		}
+		try {
+			for (int i = 0; i < 200; ++i) {
+				try (NamespaceSnapshot snapshot = mfs.openNamespaceSnapshot()) {
+					Set<String> seen = new HashSet<>();
+					for (String dir : Arrays.asList("/foo/a", "/foo/b")) {
+						for (String name : snapshot.ls(dir)) {
+							assertTrue(name + " is seen twice", seen.add(name));
+							assertTrue(snapshot.exists(dir + "/" + name));
+						}
+					}
+					assertEquals(files, seen.size());
+					assertEquals(files + 1, snapshot.getStats().totalFile);
+				}
+			}
+		} finally {
+			stop.set(true);
+			for (Thread writer : writers) {
+				writer.join();
+			}
+		}
+	}
+
+	/**
+	 * renames in one directory wait for its monitor, a snapshot waits for the changes of its
+	 * epoch, neither may wait for the other
+	 */
+	@Test(timeout = 60000)
+	public void renamesDoNotBlockSnapshots() throws InterruptedException {
+		InMemoryFileSystem mfs = InMemoryFileSystem.getInstance();
+		int files = 16;
+		for (int i = 0; i < files; ++i) {
+			this.fsSession.touch("/foo/a/f" + i);
+		}
+		AtomicBoolean stop = new AtomicBoolean();
+		Thread[] writers = new Thread[4];
+		for (int t = 0; t < writers.length; ++t) {
+			writers[t] = new Thread(() -> {
+				FileSystem session = InMemoryFileSystem.newSession();
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+				while (!stop.get()) {
+					int i = random.nextInt(files);
+					if (!session.rename("/foo/a/f" + i, "/foo/a/g" + i)) {
+						session.rename("/foo/a/g" + i, "/foo/a/f" + i);
+					}
+				}
+			});
+			writers[t].start();
+		}
+		try {
+			for (int i = 0; i < 2000; ++i) {
+				try (NamespaceSnapshot snapshot = mfs.openNamespaceSnapshot()) {
+					assertEquals(files, snapshot.ls("/foo/a").size());
+				}
+			}
+		} finally {
+			stop.set(true);
+			for (Thread writer : writers) {
+				writer.join();
+			}
+		}
+	}
+}
@@ -0,0 +1,111 @@
+package com.lyj.mfs;
+
+import static org.junit.Assert.*;
+
+import com.lyj.mfs.domain.InfoNode;
+import com.lyj.mfs.domain.InfoNode.FileType;
+import java.util.Arrays;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PathIndexTest {
+
+	private FileSystem fsSession;
+
+	@Before
+	public void setUp() {
+		this.fsSession = InMemoryFileSystem.newSession();
+		this.fsSession.mkdir("/foo/bar/zzz1");
+		this.fsSession.touch("/foo/f1");
+		InMemoryFileSystem.getInstance().enablePathIndex();
+	}
+
+	@After
+	public void tearDown() {
+		this.fsSession.rm("/", true);
+		InMemoryFileSystem.getInstance().disablePathIndex();
+	}
+
+	@Test
+	public void enable() {
+		PathIndex index = InMemoryFileSystem.getInstance().getPathIndex();
+		assertNotNull(index.getLive("/foo/bar/zzz1"));
+		assertNotNull(index.getLive("/foo/f1"));
+		assertEquals(5, index.size());
+	}
+
+	@Test
+	public void lookup() {
+		PathIndex index = InMemoryFileSystem.getInstance().getPathIndex();
+		assertEquals("/foo/bar/zzz1", this.fsSession.cd("/foo/bar/zzz1"));
+		assertEquals("/foo/bar/zzz1/f2", this.fsSession.touch("/foo/bar/zzz1/f2"));
+		assertNotNull(index.getLive("/foo/bar/zzz1/f2"));
+
+		assertTrue(this.fsSession.mkdir("/foo/a/b"));
+		assertNotNull(index.getLive("/foo/a"));
+		assertNotNull(index.getLive("/foo/a/b"));
+
+		assertFalse("there is already a same name file", this.fsSession.mkdir("/foo/f1"));
+		assertNull(this.fsSession.touch("/foo/bar"));
+		assertEquals("/foo/bar", this.fsSession.cd("/foo//bar/"));
+	}
+
+	@Test
+	public void rm() {
+		PathIndex index = InMemoryFileSystem.getInstance().getPathIndex();
+		this.fsSession.touch("/foo/bar/zzz1/f2");
+		assertTrue(this.fsSession.rm("/foo/bar", true));
+		InMemoryFileSystem.getInstance().awaitReclaimed();
+		assertNull(index.getLive("/foo/bar"));
+		assertNull(index.getLive("/foo/bar/zzz1"));
+		assertNull(index.getLive("/foo/bar/zzz1/f2"));
+		assertNotNull(index.getLive("/foo/f1"));
+
+		this.fsSession.cd("/");
+		assertEquals("/", this.fsSession.cd("/foo/bar/zzz1"));
+
+		this.fsSession.mkdir("/foo/bar/zzz1");
+		assertEquals("/foo/bar", this.fsSession.cd("/foo/bar/zzz1/.."));
+		assertEquals(Arrays.asList("zzz1"), this.fsSession.ls());
+
+		assertTrue(this.fsSession.rm("/", true));
+		InMemoryFileSystem.getInstance().awaitReclaimed();
+		assertEquals(1, index.size());
+	}
+
+	@Test
+	public void purging() {
+		InfoNode root = new InfoNode("/", FileType.DIRECTORY);
+		InfoNode foo = new InfoNode("foo", FileType.DIRECTORY);
+		InfoNode bar = new InfoNode("bar", FileType.DIRECTORY);
+		root.addChild(foo);
+		foo.addChild(bar);
+		PathIndex index = new PathIndex();
+		index.addTree(root);
+		assertSame(bar, index.getLive("/foo/bar"));
+
+		root.removeChild("foo");
+		index.purgeStarted();
+		assertNull(index.getLive("/foo/bar"));
+		index.remove("/foo/bar", bar);
+		index.remove("/foo", foo);
+		index.purgeDone();
+		assertNull(index.getLive("/foo/bar"));
+		assertSame(root, index.getLive("/"));
+	}
+
+	@Test
+	public void isCanonical() {
+		assertTrue(PathIndex.isCanonical("/"));
+		assertTrue(PathIndex.isCanonical("/foo/bar"));
+		assertTrue(PathIndex.isCanonical("/foo/.bar/..."));
+		assertFalse(PathIndex.isCanonical("foo/bar"));
+		assertFalse(PathIndex.isCanonical("/foo/bar/"));
+		assertFalse(PathIndex.isCanonical("/foo//bar"));
+		assertFalse(PathIndex.isCanonical("/foo/./bar"));
+		assertFalse(PathIndex.isCanonical("/foo/../bar"));
+		assertFalse(PathIndex.isCanonical("/foo /bar"));
+		assertFalse(PathIndex.isCanonical(""));
+	}
+}
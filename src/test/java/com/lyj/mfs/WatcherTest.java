@@ -0,0 +1,115 @@
+package com.lyj.mfs;
+
+import static org.junit.Assert.*;
+
+import com.lyj.mfs.WatchEvent.Kind;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class WatcherTest {
+
+	private FileSystem fsSession;
+
+	@Before
+	public void setUp() {
+		this.fsSession = InMemoryFileSystem.newSession();
+		this.fsSession.mkdir("/foo/w");
+		this.fsSession.mkdir("/foo/x");
+	}
+
+	@After
+	public void tearDown() {
+		this.fsSession.rm("/", true);
+	}
+
+	private static List<String> describe(List<WatchEvent> events) {
+		List<String> ret = new ArrayList<>();
+		for (WatchEvent event : events) {
+			ret.add(event.getKind() + " " + event.getPath());
+		}
+		return ret;
+	}
+
+	@Test
+	public void events() {
+		try (Watcher all = this.fsSession.watch("/foo/w", true);
+			Watcher children = this.fsSession.watch("/foo/./w", false)) {
+			assertEquals("/foo/w", children.getPath());
+			this.fsSession.mkdir("/foo/w/a/b");
+			this.fsSession.touch("/foo/w/f");
+			this.fsSession.write("/foo/w/a/b/g", "data".getBytes(StandardCharsets.UTF_8));
+			this.fsSession.touch("/foo/x/outside");
+			this.fsSession.rename("/foo/w/f", "/foo/w/a/f2");
+			this.fsSession.rm("/foo/w/a", true);
+
+			assertEquals(Arrays.asList("CREATE /foo/w/a", "CREATE /foo/w/a/b", "CREATE /foo/w/f",
+				"CREATE /foo/w/a/b/g", "MODIFY /foo/w/a/b/g", "DELETE /foo/w/f", "CREATE /foo/w/a/f2",
+				"DELETE /foo/w/a"), describe(all.poll(100)));
+			assertEquals(Arrays.asList("CREATE /foo/w/a", "CREATE /foo/w/f", "DELETE /foo/w/f",
+				"DELETE /foo/w/a"), describe(children.poll(100)));
+			assertTrue(all.poll(100).isEmpty());
+		}
+	}
+
+	@Test
+	public void batches() {
+		try (Watcher watcher = this.fsSession.watch("/foo/w", false)) {
+			for (int i = 0; i < 5; ++i) {
+				this.fsSession.touch("/foo/w/f" + i);
+			}
+			List<WatchEvent> first = watcher.poll(2);
+			assertEquals(Arrays.asList("CREATE /foo/w/f0", "CREATE /foo/w/f1"), describe(first));
+			List<WatchEvent> rest = watcher.poll(10);
+			assertEquals(3, rest.size());
+			assertTrue(first.get(1).getSequence() < rest.get(0).getSequence());
+		}
+	}
+
+	@Test
+	public void ancestorRemoved() {
+		this.fsSession.mkdir("/foo/w/a/b");
+		assertNull(this.fsSession.watch("/foo/nothing", true));
+		try (Watcher watcher = this.fsSession.watch("/foo/w/a/b", true)) {
+			this.fsSession.touch("/foo/w/a/sibling");
+			this.fsSession.rm("/foo", true);
+			assertEquals(Arrays.asList("DELETE /foo"), describe(watcher.poll(10)));
+		}
+	}
+
+	@Test
+	public void overflow() {
+		ChangeRing ring = new ChangeRing(8);
+		Watcher watcher = new Watcher(InMemoryFileSystem.getInstance(), ring, "/", true);
+		for (int i = 0; i < 20; ++i) {
+			ring.publish(Kind.CREATE, "/f" + i, null);
+		}
+		List<WatchEvent> events = watcher.poll(100);
+		assertEquals(Kind.OVERFLOW, events.get(0).getKind());
+		assertEquals("/", events.get(0).getPath());
+		assertEquals(8, events.size());
+		assertEquals("/f13", events.get(1).getPath());
+		assertEquals("/f19", events.get(7).getPath());
+		assertTrue(watcher.poll(100).isEmpty());
+
+		ring.publish(Kind.OVERFLOW, "/", null);
+		assertEquals(Kind.OVERFLOW, watcher.poll(100).get(0).getKind());
+	}
+
+	@Test
+	public void lateWriter() {
+		ChangeRing ring = new ChangeRing(2);
+		Watcher watcher = new Watcher(InMemoryFileSystem.getInstance(), ring, "/", true);
+		long late = ring.claim();
+		ring.publish(Kind.CREATE, "/f1", null);
+		ring.publish(Kind.CREATE, "/f2", null);
+		ring.store(late, Kind.CREATE, "/f0", null);
+		assertEquals(Arrays.asList("OVERFLOW /", "CREATE /f2"), describe(watcher.poll(100)));
+		ring.publish(Kind.CREATE, "/f3", null);
+		assertEquals(Arrays.asList("CREATE /f3"), describe(watcher.poll(100)));
+	}
+}
@@ -0,0 +1,120 @@
+package com.lyj.mfs.content;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ContentStoreTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private ContentStore store;
+
+	private FileContent[] contents;
+
+	@Before
+	public void setUp() throws IOException {
+		this.store = new ContentStore(new ChunkAllocator(64));
+		this.store.setMemoryBudget(256, folder.getRoot().toPath());
+		this.contents = new FileContent[10];
+		for (int i = 0; i < contents.length; ++i) {
+			contents[i] = new FileContent(store);
+			contents[i].write(payload(i, 100));
+		}
+	}
+
+	private static byte[] payload(int seed, int length) {
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < length; ++i) {
+			bytes[i] = (byte) (seed * 31 + i);
+		}
+		return bytes;
+	}
+
+	private int spilledCount() {
+		int count = 0;
+		for (FileContent content : contents) {
+			count += content.isSpilled() ? 1 : 0;
+		}
+		return count;
+	}
+
+	@Test
+	public void spill() {
+		assertTrue(store.getResidentBytes() <= 256);
+		assertTrue(spilledCount() > 0);
+		assertEquals(100L * spilledCount(), store.getSpilledBytes());
+		assertEquals(1, folder.getRoot().listFiles().length);
+
+		for (int i = 0; i < contents.length; ++i) {
+			assertArrayEquals(payload(i, 100), contents[i].read(0, 100));
+			assertArrayEquals(Arrays.copyOfRange(payload(i, 100), 90, 100), contents[i].read(90, 20));
+			assertEquals(100, contents[i].size());
+		}
+	}
+
+	@Test
+	public void readBuffers() {
+		FileContent first = contents[0];
+		assertTrue("the oldest content is spilled first", first.isSpilled());
+		ByteBuffer[] views = first.readBuffers(10, 50);
+		assertEquals(1, views.length);
+		assertEquals(50, views[0].remaining());
+		assertEquals(payload(0, 100)[10], views[0].get(0));
+		assertTrue(views[0].isReadOnly());
+	}
+
+	@Test
+	public void faultIn() {
+		FileContent first = contents[0];
+		first.append(payload(42, 10));
+		assertFalse(first.isSpilled());
+		byte[] read = first.read(0, 200);
+		assertEquals(110, read.length);
+		assertArrayEquals(payload(0, 100), Arrays.copyOf(read, 100));
+		assertTrue(store.getResidentBytes() <= 256);
+	}
+
+	@Test
+	public void forkSpilled() {
+		FileContent first = contents[0];
+		assertTrue(first.isSpilled());
+		long spilled = store.getSpilledBytes();
+		FileContent copy = first.fork();
+		assertTrue("the copy shares the region", copy.isSpilled());
+		assertEquals(spilled, store.getSpilledBytes());
+
+		first.release();
+		assertEquals(spilled, store.getSpilledBytes());
+		assertArrayEquals(payload(0, 100), copy.read(0, 100));
+		copy.release();
+		assertEquals(spilled - 100, store.getSpilledBytes());
+	}
+
+	@Test
+	public void release() {
+		for (FileContent content : contents) {
+			content.release();
+		}
+		assertEquals(0, store.getSpilledBytes());
+		assertEquals(0, store.getResidentBytes());
+		File[] segments = folder.getRoot().listFiles();
+		assertTrue("only the current segment is kept", segments.length <= 1);
+	}
+
+	@Test
+	public void raiseBudget() throws IOException {
+		store.setMemoryBudget(Long.MAX_VALUE, null);
+		FileContent big = new FileContent(store);
+		big.write(payload(1, 1000));
+		assertFalse(big.isSpilled());
+	}
+}
@@ -0,0 +1,119 @@
+package com.lyj.mfs.content;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.nio.charset.StandardCharsets;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FileContentTest {
+
+	private ChunkAllocator allocator;
+
+	private FileContent content;
+
+	@Before
+	public void setUp() {
+		this.allocator = new ChunkAllocator(8);
+		this.content = new FileContent(new ContentStore(allocator));
+	}
+
+	private static byte[] bytes(String str) {
+		return str.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static String str(byte[] bytes) {
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	@Test
+	public void writeAndRead() {
+		content.write(bytes("hello world, hello chunks"));
+		assertEquals(25, content.size());
+		assertEquals("hello world, hello chunks", str(content.read(0, 100)));
+		assertEquals("world", str(content.read(6, 5)));
+		assertEquals("", str(content.read(25, 5)));
+		assertEquals(32, allocator.getUsedBytes());
+
+		content.write(bytes("bye"));
+		assertEquals("bye", str(content.read(0, 100)));
+		assertEquals(8, allocator.getUsedBytes());
+	}
+
+	@Test
+	public void append() {
+		content.append(bytes("0123456"));
+		content.append(bytes("789abcdef"));
+		assertEquals("0123456789abcdef", str(content.read(0, 16)));
+		assertEquals("6789a", str(content.read(6, 5)));
+	}
+
+	@Test
+	public void truncate() {
+		content.write(bytes("0123456789abcdef"));
+		content.truncate(5);
+		assertEquals("01234", str(content.read(0, 100)));
+		assertEquals(8, allocator.getUsedBytes());
+
+		content.truncate(10);
+		assertArrayEquals(new byte[] {'3', '4', 0, 0, 0, 0, 0}, content.read(3, 100));
+
+		content.release();
+		assertEquals(0, content.size());
+		assertEquals(0, allocator.getUsedBytes());
+	}
+
+	@Test
+	public void readBuffers() {
+		content.write(bytes("0123456789abcdef01"));
+		ByteBuffer[] views = content.readBuffers(6, 10);
+		assertEquals(2, views.length);
+		assertEquals(2, views[0].remaining());
+		assertEquals(8, views[1].remaining());
+		assertEquals('6', views[0].get(0));
+		assertEquals('8', views[1].get(0));
+		assertEquals(0, content.readBuffers(18, 1).length);
+
+		try {
+			views[1].put(0, (byte) 'x');
+			fail("views are read only");
+		} catch (ReadOnlyBufferException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void fork() {
+		content.write(bytes("0123456789abcdef0123"));
+		FileContent copy = content.fork();
+		assertEquals("the chunks are shared", 24, allocator.getUsedBytes());
+		assertEquals("0123456789abcdef0123", str(copy.read(0, 100)));
+
+		copy.append(bytes("45"));
+		assertEquals("only the written chunk is copied", 32, allocator.getUsedBytes());
+		assertEquals("0123456789abcdef0123", str(content.read(0, 100)));
+		assertEquals("0123456789abcdef012345", str(copy.read(0, 100)));
+
+		content.truncate(4);
+		assertEquals("0123", str(content.read(0, 100)));
+		assertEquals("0123456789abcdef012345", str(copy.read(0, 100)));
+		assertEquals(32, allocator.getUsedBytes());
+
+		content.release();
+		assertEquals("0123456789abcdef012345", str(copy.read(0, 100)));
+		copy.release();
+		assertEquals(0, allocator.getUsedBytes());
+	}
+
+	@Test
+	public void reuseChunks() {
+		content.write(bytes("dirty bytes"));
+		content.release();
+		FileContent other = new FileContent(new ContentStore(allocator));
+		other.truncate(16);
+		assertArrayEquals(new byte[16], other.read(0, 16));
+		assertEquals(8 * 64, allocator.getReservedBytes());
+	}
+}
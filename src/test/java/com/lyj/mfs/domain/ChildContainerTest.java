@@ -0,0 +1,135 @@
+package com.lyj.mfs.domain;
+
+import static org.junit.Assert.*;
+
+import com.lyj.mfs.domain.ChildContainer.InlineChildren;
+import com.lyj.mfs.domain.ChildContainer.SkipListChildren;
+import com.lyj.mfs.domain.InfoNode.FileType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+public class ChildContainerTest {
+
+	private List<String> names(Iterable<InfoNode> nodes) {
+		List<String> ret = new ArrayList<>();
+		for (InfoNode node : nodes) {
+			ret.add(node.getPath());
+		}
+		return ret;
+	}
+
+	@Test
+	public void inline() {
+		InfoNode b = new InfoNode("b", FileType.FILE);
+		ChildContainer container = ChildContainer.EMPTY
+			.with(b)
+			.with(new InfoNode("c", FileType.DIRECTORY))
+			.with(new InfoNode("a", FileType.FILE));
+		assertTrue(container instanceof InlineChildren);
+		assertEquals(Arrays.asList("a", "b", "c"), names(container));
+		assertSame(b, container.get(new StringBuilder("b")));
+		assertNull(container.get("d"));
+
+		assertNull("only the same node is removed", container.without(new InfoNode("b", FileType.FILE)));
+		container = container.without(b);
+		assertEquals(Arrays.asList("a", "c"), names(container));
+		assertEquals(0, ChildContainer.EMPTY.size());
+	}
+
+	@Test
+	public void iteratorAfter() {
+		ChildContainer inline = ChildContainer.EMPTY;
+		ChildContainer skipList = ChildContainer.EMPTY;
+		for (int i = 0; i < (ChildContainer.INLINE_THRESHOLD + 1) * 2; i += 2) {
+			String name = "n" + (char) ('a' + i);
+			if (i < ChildContainer.INLINE_THRESHOLD) {
+				inline = inline.with(new InfoNode(name, FileType.FILE));
+			}
+			skipList = skipList.with(new InfoNode(name, FileType.FILE));
+		}
+		assertTrue(inline instanceof InlineChildren);
+		assertTrue(skipList instanceof SkipListChildren);
+		for (ChildContainer container : Arrays.asList(inline, skipList)) {
+			assertEquals(names(container), names(() -> container.iteratorAfter(null)));
+			assertEquals(names(container).subList(2, container.size()), names(() -> container.iteratorAfter("nc")));
+			assertEquals("a name that is not an entry", names(container).subList(2, container.size()),
+				names(() -> container.iteratorAfter(new StringBuilder("nd"))));
+			assertFalse(container.iteratorAfter("z").hasNext());
+
+			List<String> all = names(container);
+			assertEquals(all.subList(1, 3), names(() -> container.iterator("nc", true, "ng")));
+			assertEquals(all.subList(1, 3), names(() -> container.iterator("nb", false, "nf")));
+			assertEquals(all.subList(0, 2), names(() -> container.iterator(null, true, "ne")));
+			assertFalse(container.iterator("ne", true, "nc").hasNext());
+			assertFalse(container.iterator("ne", false, "ne").hasNext());
+		}
+	}
+
+	@Test
+	public void promote() {
+		ChildContainer container = ChildContainer.EMPTY;
+		int total = ChildContainer.INLINE_THRESHOLD + 2;
+		List<String> expected = new ArrayList<>();
+		for (int i = total - 1; i >= 0; --i) {
+			container = container.with(new InfoNode("n" + (char) ('a' + i), FileType.FILE));
+			expected.add(0, "n" + (char) ('a' + i));
+		}
+		assertTrue(container instanceof SkipListChildren);
+		assertEquals(total, container.size());
+		assertEquals(expected, names(container));
+
+		InfoNode na = container.get("na");
+		assertSame(container, container.without(na));
+		assertNull(container.without(na));
+		assertEquals(total - 1, container.size());
+	}
+
+	@Test
+	public void entryVersions() {
+		ChildContainer container = ChildContainer.EMPTY;
+		List<String> expected = new ArrayList<>();
+		for (int i = 0; i < ChildContainer.INLINE_THRESHOLD + 2; ++i) {
+			container = container.with(new InfoNode("n" + (char) ('a' + i), FileType.FILE));
+			expected.add("n" + (char) ('a' + i));
+		}
+		ChildContainer skipList = container;
+		assertTrue(skipList instanceof SkipListChildren);
+		long epoch = Versions.openSnapshot();
+		try {
+			long later = epoch + 1;
+			InfoNode na = skipList.get("na");
+			InfoNode nb = skipList.get("nb");
+			InfoNode replaced = new InfoNode("nb", FileType.FILE);
+			assertSame("changed in place, nothing is copied", skipList, skipList.without("na", na, later));
+			assertSame(skipList, skipList.with("nb", replaced, later));
+			assertSame(skipList, skipList.with("zz", new InfoNode("zz", FileType.FILE), later));
+			assertEquals(expected.size(), skipList.size());
+			List<String> live = new ArrayList<>(expected.subList(1, expected.size()));
+			live.add("zz");
+			assertEquals(live, names(skipList));
+			assertSame(replaced, skipList.get("nb"));
+
+			assertEquals(expected, names(() -> skipList.iterator(epoch, (name, node) -> true)));
+			assertSame(na, skipList.get("na", epoch));
+			assertSame(nb, skipList.get("nb", epoch));
+			assertNull(skipList.get("zz", epoch));
+			assertSame("a change of an earlier epoch is made again", ChildContainer.NEWER,
+				skipList.without("nb", replaced, epoch));
+		} finally {
+			Versions.releaseSnapshot(epoch);
+		}
+	}
+
+	@Test
+	public void directory() {
+		InfoNode dir = new InfoNode("dir", FileType.DIRECTORY);
+		for (int i = 0; i < 100; ++i) {
+			dir.addChild(new InfoNode(String.format("f%03d", i), FileType.FILE));
+		}
+		assertEquals(100, dir.getChildCount());
+		assertEquals("f000", dir.getChildren().iterator().next().getPath());
+		assertFalse("a file has no children", new InfoNode("f", FileType.FILE).addChild(dir));
+	}
+}
@@ -0,0 +1,185 @@
+package com.lyj.mfs.domain;
+
+import static org.junit.Assert.*;
+
+import com.lyj.mfs.domain.InfoNode.FileType;
+import com.lyj.mfs.utils.Clock;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+public class InfoNodeTest {
+
+	@Test
+	public void addChild() {
+		InfoNode root = new InfoNode("/", FileType.DIRECTORY);
+		InfoNode foo = new InfoNode("foo", FileType.DIRECTORY);
+		root.addChild(foo);
+		assertSame(root, foo.getParent());
+		assertSame(foo, root.getChild(new StringBuilder("foo")));
+		assertNull(root.getParent());
+	}
+
+	@Test
+	public void moveChild() {
+		InfoNode root = new InfoNode("/", FileType.DIRECTORY);
+		InfoNode foo = new InfoNode("foo", FileType.DIRECTORY);
+		InfoNode bar = new InfoNode("bar", FileType.DIRECTORY);
+		root.addChild(foo);
+		root.addChild(bar);
+		InfoNode[] files = new InfoNode[3];
+		for (int i = 0; i < files.length; ++i) {
+			files[i] = new InfoNode("f" + i, FileType.FILE);
+			foo.addChild(files[i]);
+		}
+		Iterable<InfoNode> before = foo.getChildren();
+
+		assertTrue(foo.moveChild(files[0], bar, "z"));
+		assertEquals("z", files[0].getPath());
+		assertSame(bar, files[0].getParent());
+		assertSame(files[0], bar.getChild("z"));
+		assertNull(foo.getChild("f0"));
+		assertEquals(2, foo.getChildCount());
+		// a reader holding the old entries does not see the moved child at its old place
+		List<InfoNode> old = new ArrayList<>();
+		before.forEach(old::add);
+		assertEquals(Arrays.asList(files[1], files[2]), old);
+
+		assertTrue(foo.moveChild(files[1], foo, "f9"));
+		assertSame(files[1], foo.getChild("f9"));
+		assertFalse("the name is taken", foo.moveChild(files[2], bar, "z"));
+		assertFalse("not a child anymore", foo.moveChild(files[0], bar, "y"));
+		assertSame(foo, files[2].getParent());
+		assertSame(bar, files[0].getParent());
+		assertEquals("z", files[0].getPath());
+		assertNull(bar.getChild("y"));
+	}
+
+	@Test
+	public void isLive() {
+		InfoNode root = new InfoNode("/", FileType.DIRECTORY);
+		InfoNode foo = new InfoNode("foo", FileType.DIRECTORY);
+		InfoNode bar = new InfoNode("bar", FileType.DIRECTORY);
+		InfoNode file = new InfoNode("f1", FileType.FILE);
+		root.addChild(foo);
+		foo.addChild(bar);
+		bar.addChild(file);
+		assertTrue(file.isLive());
+
+		root.removeChild("foo");
+		assertTrue(foo.isDetached());
+		assertFalse(bar.isDetached());
+		assertFalse(bar.isLive());
+		assertFalse(file.isLive());
+		assertTrue(root.isLive());
+	}
+
+	@Test
+	public void removeAllChildren() {
+		InfoNode root = new InfoNode("/", FileType.DIRECTORY);
+		InfoNode foo = new InfoNode("foo", FileType.DIRECTORY);
+		InfoNode file = new InfoNode("f1", FileType.FILE);
+		root.addChild(foo);
+		root.addChild(file);
+
+		root.removeAllChildren();
+		assertEquals(0, root.getChildCount());
+		assertFalse(foo.isLive());
+		assertFalse(file.isLive());
+	}
+
+	@Test
+	public void largeSubtree() {
+		InfoNode foo = new InfoNode("foo", FileType.DIRECTORY);
+		InfoNode bar = new InfoNode("bar", FileType.DIRECTORY);
+		assertNull(bar.addToSubtree(FileType.FILE, 3L << 31));
+		bar.addToSubtree(FileType.DIRECTORY, (1L << 32) + 1);
+		bar.addToSubtree(FileType.FILE, -1);
+		assertEquals((3L << 31) - 1, bar.getSubtreeFiles());
+		assertEquals((1L << 32) + 1, bar.getSubtreeDirs());
+
+		assertArrayEquals(new long[] {(3L << 31) - 1, (1L << 32) + 1}, bar.moveCounts(foo));
+		assertSame(foo, bar.addToSubtree(FileType.FILE, 1));
+		assertEquals(3L << 31, bar.getSubtreeFiles());
+		assertEquals((1L << 32) + 1, bar.getSubtreeDirs());
+	}
+
+	@Test
+	public void times() {
+		InfoNode dir = new InfoNode("foo", FileType.DIRECTORY);
+		InfoNode file = new InfoNode("f1", FileType.FILE);
+		assertEquals(file.getCtime(), file.getMtime());
+		assertEquals(file.getMtime(), file.getAtime());
+
+		long before = dir.getMtime();
+		dir.addChild(file);
+		assertTrue(dir.getMtime() > before);
+
+		long now = Clock.nowNanos();
+		file.restore(InfoNode.DEFAULT_FILE_MODE, now - 1000, now - 1000, now - 500);
+		file.accessed();
+		assertEquals("a recent atime newer than mtime is kept", now - 500, file.getAtime());
+		file.modified();
+		assertTrue(file.getMtime() > now);
+		file.accessed();
+		assertTrue(file.getAtime() >= file.getMtime());
+
+		FileStat stat = dir.stat(new FileStat());
+		assertTrue(stat.isDirectory());
+		assertEquals(FileStat.S_IFDIR | 0755, stat.mode);
+		assertEquals(1, stat.size);
+		file.setMode(0600);
+		assertEquals(0600, file.stat(stat).getPermissions());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void badMode() {
+		new InfoNode("f1", FileType.FILE).setMode(010000);
+	}
+
+	@Test
+	public void sharedName() {
+		InfoNode dir1 = new InfoNode(new String("src"), FileType.DIRECTORY);
+		InfoNode dir2 = new InfoNode(new String("src"), FileType.DIRECTORY);
+		assertSame(dir1.getPath(), dir2.getPath());
+	}
+
+	private static List<String> names(Iterable<InfoNode> nodes) {
+		List<String> names = new ArrayList<>();
+		for (InfoNode node : nodes) {
+			names.add(node.getPath());
+		}
+		return names;
+	}
+
+	@Test
+	public void versions() {
+		InfoNode root = new InfoNode("/", FileType.DIRECTORY);
+		InfoNode a = new InfoNode("a", FileType.FILE);
+		root.addChild(a);
+		root.addChild(new InfoNode("b", FileType.FILE));
+
+		long epoch = Versions.openSnapshot();
+		try {
+			root.removeChild(a);
+			for (int i = 0; i < 20; ++i) {
+				root.addChild(new InfoNode("n" + i, FileType.FILE));
+			}
+			assertEquals(Arrays.asList("a", "b"), names(root.getChildren(epoch)));
+			assertEquals(21, root.getChildCount());
+			assertNull(root.getChild("n1", epoch));
+
+			long later = Versions.openSnapshot();
+			root.removeChild("n1");
+			root.removeChild("b");
+			assertEquals(21, root.getChildCount(later));
+			assertEquals(2, root.getChildCount(epoch));
+			assertEquals(19, root.getChildCount());
+			Versions.releaseSnapshot(later);
+		} finally {
+			Versions.releaseSnapshot(epoch);
+		}
+		assertEquals(names(root.getChildren()), names(root.getChildren(Long.MAX_VALUE)));
+	}
+}
@@ -0,0 +1,39 @@
+package com.lyj.mfs.metrics;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class HistogramTest {
+
+	@Test
+	public void buckets() {
+		for (long value : new long[] {0, 1, 3, 4, 7, 8, 9, 100, 1000, 123456789, Long.MAX_VALUE}) {
+			int bucket = Histogram.bucketOf(value);
+			assertTrue(Histogram.lowestOf(bucket) <= value);
+			assertTrue(value <= Histogram.highestOf(bucket));
+			assertTrue("within 25%", Histogram.highestOf(bucket) - Histogram.lowestOf(bucket) <= value / 4 + 1);
+		}
+		assertEquals(Histogram.BUCKETS - 1, Histogram.bucketOf(Long.MAX_VALUE));
+		assertEquals(0, Histogram.bucketOf(-5));
+		for (int i = 1; i < Histogram.BUCKETS; ++i) {
+			assertEquals(Histogram.highestOf(i - 1) + 1, Histogram.lowestOf(i));
+		}
+	}
+
+	@Test
+	public void distribution() {
+		Histogram histogram = new Histogram();
+		for (int i = 1; i <= 1000; ++i) {
+			histogram.record(i);
+		}
+		long[] counts = new long[Histogram.BUCKETS];
+		histogram.addTo(counts);
+		Distribution distribution = new Distribution(counts);
+		assertEquals(1000, distribution.getCount());
+		assertTrue(distribution.getP50() >= 500 && distribution.getP50() <= 625);
+		assertTrue(distribution.getP99() >= 990 && distribution.getP99() <= 1238);
+		assertTrue(distribution.getMax() >= 1000 && distribution.getMax() <= 1250);
+		assertEquals(0, new Distribution(new long[Histogram.BUCKETS]).getMax());
+	}
+}
@@ -0,0 +1,33 @@
+package com.lyj.mfs.metrics;
+
+import static org.junit.Assert.*;
+
+import com.lyj.mfs.metrics.Metrics.Op;
+import org.junit.Test;
+
+public class MetricsTest {
+
+	/**
+	 * the records of a thread that has died are kept, its recorder is not
+	 */
+	@Test
+	public void deadThreads() throws InterruptedException {
+		long before = count(Op.COPY);
+		for (int i = 0; i < 100; ++i) {
+			Thread thread = new Thread(() -> Metrics.done(Op.COPY, Metrics.start(), true));
+			thread.start();
+			thread.join();
+		}
+		assertEquals(before + 100, count(Op.COPY));
+		assertTrue(Metrics.recorderCount() <= Thread.activeCount());
+	}
+
+	private static long count(Op op) {
+		for (OperationStats stats : Metrics.getOperations()) {
+			if (stats.getName().equals(op.name())) {
+				return stats.getCount();
+			}
+		}
+		return 0;
+	}
+}
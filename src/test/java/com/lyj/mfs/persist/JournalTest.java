@@ -0,0 +1,211 @@
+package com.lyj.mfs.persist;
+
+import static org.junit.Assert.*;
+
+import com.lyj.mfs.domain.Versions;
+import com.lyj.mfs.exceptions.DamagedJournalException;
+import com.lyj.mfs.persist.Journal.FsyncPolicy;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JournalTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Path file;
+
+	@Before
+	public void setUp() {
+		this.file = folder.getRoot().toPath().resolve("mfs.journal");
+	}
+
+	private List<String> replay() throws IOException {
+		List<String> records = new ArrayList<>();
+		Journal.replay(file, record -> records.add(record.toString()));
+		return records;
+	}
+
+	@Test
+	public void appendAndReplay() throws IOException {
+		for (FsyncPolicy policy : FsyncPolicy.values()) {
+			try (Journal journal = Journal.open(file, policy)) {
+				assertTrue(journal.append(JournalRecord.mkdir("/a/" + policy)));
+				assertTrue(journal.append(JournalRecord.write("/a/f", new byte[100000])));
+				assertTrue(journal.sync());
+			}
+		}
+		List<String> records = replay();
+		assertEquals(6, records.size());
+		assertEquals(JournalRecord.mkdir("/a/NEVER").toString(), records.get(4));
+	}
+
+	@Test
+	public void groupCommit() throws Exception {
+		int threads = 16;
+		int perThread = 200;
+		CountDownLatch start = new CountDownLatch(1);
+		List<Thread> workers = new ArrayList<>();
+		try (Journal journal = Journal.open(file, FsyncPolicy.ALWAYS)) {
+			for (int t = 0; t < threads; ++t) {
+				int id = t;
+				Thread worker = new Thread(() -> {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					for (int i = 0; i < perThread; ++i) {
+						journal.append(JournalRecord.touch("/t" + id + "/f" + i));
+					}
+				});
+				worker.start();
+				workers.add(worker);
+			}
+			start.countDown();
+			for (Thread worker : workers) {
+				worker.join();
+			}
+		}
+		assertEquals(threads * perThread, replay().size());
+	}
+
+	@Test
+	public void tornTail() throws IOException {
+		try (Journal journal = Journal.open(file, FsyncPolicy.NEVER)) {
+			journal.append(JournalRecord.mkdir("/a"));
+			journal.append(JournalRecord.rm("/a", true));
+		}
+		long size = Files.size(file);
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+			channel.truncate(size - 3);
+		}
+		assertEquals(1, replay().size());
+		assertTrue(Files.size(file) < size - 3);
+
+		try (Journal journal = Journal.open(file, FsyncPolicy.NEVER)) {
+			journal.append(JournalRecord.truncate("/f", 7));
+		}
+		assertEquals(2, replay().size());
+	}
+
+	/**
+	 * zeros behind the last record are a torn tail, a bad record with records behind it is not
+	 */
+	@Test
+	public void damagedRecord() throws IOException {
+		try (Journal journal = Journal.open(file, FsyncPolicy.NEVER)) {
+			journal.append(JournalRecord.mkdir("/a"));
+			journal.append(JournalRecord.mkdir("/b"));
+		}
+		long size = Files.size(file);
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+			channel.write(ByteBuffer.allocate(100), size);
+		}
+		assertEquals(2, replay().size());
+		assertEquals(size, Files.size(file));
+
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+			// the last byte of the path of the first record
+			channel.write(ByteBuffer.wrap(new byte[] {'x'}), size / 2 - 5);
+		}
+		try {
+			replay();
+			fail("a damaged record is not a torn tail");
+		} catch (DamagedJournalException e) {
+			assertEquals(0, e.getOffset());
+		}
+		assertEquals("nothing is cut", size, Files.size(file));
+		try {
+			Journal.open(file, FsyncPolicy.NEVER).close();
+			fail("a damaged journal is not opened");
+		} catch (DamagedJournalException e) {
+			assertEquals(size, Files.size(file));
+		}
+	}
+
+	/**
+	 * the records of the epochs up to the rotated one go into the old file, the later ones
+	 * into the new one, whatever order they are appended in
+	 */
+	@Test
+	public void rotate() throws IOException {
+		Path previous = folder.getRoot().toPath().resolve("mfs.journal.prev");
+		try (Journal journal = Journal.open(file, FsyncPolicy.NEVER)) {
+			journal.append(JournalRecord.mkdir("/a"));
+			Journal.Pending rotation = journal.holdBack(previous);
+			long epoch = Versions.openSnapshot();
+			try {
+				journal.append(JournalRecord.mkdir("/b"));
+				journal.rotate(rotation, epoch);
+			} finally {
+				Versions.releaseSnapshot(epoch);
+			}
+			journal.append(JournalRecord.mkdir("/c"));
+		}
+		List<String> old = new ArrayList<>();
+		Journal.replay(previous, record -> old.add(record.toString()));
+		assertEquals(Collections.singletonList(JournalRecord.mkdir("/a").toString()), old);
+		assertEquals(Arrays.asList(JournalRecord.mkdir("/b").toString(), JournalRecord.mkdir("/c").toString()), replay());
+	}
+
+	@Test
+	public void sequenceNumbers() throws IOException {
+		try (Journal journal = Journal.open(file, FsyncPolicy.NEVER)) {
+			journal.append(JournalRecord.mkdir("/a"));
+			journal.append(JournalRecord.mkdir("/b"));
+			assertEquals(2, journal.getLastSeq());
+		}
+		try (Journal journal = Journal.open(file, FsyncPolicy.NEVER, 1)) {
+			assertEquals("numbered after the records in the file", 2, journal.getLastSeq());
+			journal.append(JournalRecord.mkdir("/c"));
+		}
+		Path next = folder.getRoot().toPath().resolve("next.journal");
+		try (Journal journal = Journal.open(next, FsyncPolicy.NEVER, 3)) {
+			journal.append(JournalRecord.mkdir("/d"));
+		}
+		List<Long> seqs = new ArrayList<>();
+		Journal.replay(file, record -> seqs.add(record.getSeq()));
+		Journal.replay(next, record -> seqs.add(record.getSeq()));
+		assertEquals(Arrays.asList(1L, 2L, 3L, 4L), seqs);
+	}
+
+	/**
+	 * every record accepted before the close is written, the ones refused are not
+	 */
+	@Test
+	public void closeWhileAppending() throws Exception {
+		Journal journal = Journal.open(file, FsyncPolicy.NEVER);
+		AtomicLong accepted = new AtomicLong();
+		List<Thread> workers = new ArrayList<>();
+		for (int t = 0; t < 4; ++t) {
+			Thread worker = new Thread(() -> {
+				for (int i = 0; journal.append(JournalRecord.mkdir("/d" + i)); ++i) {
+					accepted.incrementAndGet();
+				}
+			});
+			worker.start();
+			workers.add(worker);
+		}
+		Thread.sleep(50);
+		journal.close();
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		assertEquals(accepted.get(), replay().size());
+	}
+}
@@ -0,0 +1,106 @@
+package com.lyj.mfs.persist;
+
+import static org.junit.Assert.*;
+
+import com.lyj.mfs.content.ChunkAllocator;
+import com.lyj.mfs.content.ContentStore;
+import com.lyj.mfs.domain.FileStat;
+import com.lyj.mfs.domain.InfoNode;
+import com.lyj.mfs.domain.InfoNode.FileType;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SnapshotTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private ContentStore store;
+
+	private Path file;
+
+	@Before
+	public void setUp() {
+		this.store = new ContentStore(new ChunkAllocator(64));
+		this.file = folder.getRoot().toPath().resolve("tree.snapshot");
+	}
+
+	private InfoNode add(InfoNode parent, String name, FileType type) {
+		InfoNode node = new InfoNode(name, type);
+		parent.addChild(node);
+		return node;
+	}
+
+	@Test
+	public void roundTrip() throws IOException {
+		InfoNode root = new InfoNode("/", FileType.DIRECTORY);
+		byte[] big = new byte[1000];
+		for (int i = 0; i < 20; ++i) {
+			InfoNode dir = add(root, "d" + i, FileType.DIRECTORY);
+			add(dir, "same", FileType.DIRECTORY);
+			InfoNode file = add(dir, "f", FileType.FILE);
+			big[i] = (byte) i;
+			file.getOrCreateContent(store).write(big);
+		}
+		InfoNode empty = add(root, "empty", FileType.FILE);
+		empty.restore(0600, 3000, 1000, 500);
+		assertEquals(61, SnapshotWriter.write(root, Long.MAX_VALUE, file));
+
+		InfoNode restored = SnapshotReader.read(file, store);
+		assertEquals(21, restored.getChildCount());
+		assertEquals(21, restored.getSubtreeFiles());
+		assertEquals(40, restored.getSubtreeDirs());
+		assertNull(restored.getChild("empty").getContent());
+		FileStat stat = restored.getChild("empty").stat(new FileStat());
+		assertEquals(FileStat.S_IFREG | 0600, stat.mode);
+		assertEquals(3000, stat.ctime);
+		assertEquals(1000, stat.mtime);
+		assertEquals(500, stat.atime);
+		assertEquals(root.getChild("d3").getMtime(), restored.getChild("d3").getMtime());
+		InfoNode d7 = restored.getChild("d7");
+		assertSame(restored, d7.getParent());
+		assertEquals(1, d7.getSubtreeFiles());
+		assertEquals(1, d7.getSubtreeDirs());
+		assertSame(d7.getChild("same").getPath(), restored.getChild("d8").getChild("same").getPath());
+		byte[] content = d7.getChild("f").getContent().read(0, 2000);
+		assertEquals(1000, content.length);
+		assertEquals(7, content[7]);
+		assertEquals(0, content[8]);
+	}
+
+	@Test(expected = IOException.class)
+	public void truncated() throws IOException {
+		InfoNode root = new InfoNode("/", FileType.DIRECTORY);
+		add(add(root, "a", FileType.DIRECTORY), "b", FileType.DIRECTORY);
+		SnapshotWriter.write(root, Long.MAX_VALUE, file);
+		byte[] bytes = Files.readAllBytes(file);
+		Files.write(file, Arrays.copyOf(bytes, bytes.length - 2));
+		SnapshotReader.read(file, store);
+	}
+
+	@Test
+	public void badNameLength() throws IOException {
+		byte[] header = {'M', 'F', 'S', 'S', SnapshotFormat.VERSION, 0, SnapshotFormat.DIR, SnapshotFormat.NEW_NAME};
+		byte[][] lengths = {
+				{(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x01},
+				{(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07},
+				{0x10, 'a', 'b'}};
+		for (byte[] length : lengths) {
+			byte[] bytes = Arrays.copyOf(header, header.length + length.length);
+			System.arraycopy(length, 0, bytes, header.length, length.length);
+			Files.write(file, bytes);
+			try {
+				SnapshotReader.read(file, store);
+				fail();
+			} catch (IOException e) {
+				assertTrue(e.getMessage(), e.getMessage().contains("corrupt snapshot"));
+			}
+		}
+	}
+}
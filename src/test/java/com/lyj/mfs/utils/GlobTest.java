@@ -0,0 +1,53 @@
+package com.lyj.mfs.utils;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class GlobTest {
+
+	@Test
+	public void matches() {
+		Glob glob = Glob.compile("part-*.parquet");
+		assertTrue(glob.matches("part-0001.parquet"));
+		assertTrue(glob.matches("part-.parquet"));
+		assertFalse(glob.matches("part-0001.parquet.tmp"));
+		assertFalse(glob.matches("xpart-1.parquet"));
+		assertEquals("part-", glob.getLiteralPrefix());
+		assertFalse(glob.isLiteral());
+
+		assertTrue(Glob.compile("*a*b*").matches("xxaxxbxx"));
+		assertFalse(Glob.compile("*a*b*").matches("xxbxxaxx"));
+		assertTrue(Glob.compile("a**").matches("a"));
+		assertTrue(Glob.compile("?x?").matches("axb"));
+		assertFalse(Glob.compile("?x?").matches("ax"));
+		assertTrue(Glob.compile("").matches(""));
+	}
+
+	@Test
+	public void classes() {
+		Glob glob = Glob.compile("log-[0-9][0-9][!a-c]");
+		assertTrue(glob.matches("log-12d"));
+		assertFalse(glob.matches("log-12b"));
+		assertFalse(glob.matches("log-x2d"));
+		assertTrue(Glob.compile("[]x]").matches("]"));
+		assertTrue(Glob.compile("[!]]").matches("x"));
+		assertFalse(Glob.compile("[!]]").matches("]"));
+	}
+
+	@Test
+	public void literal() {
+		Glob glob = Glob.compile("a\\*b");
+		assertTrue(glob.isLiteral());
+		assertEquals("a*b", glob.getLiteralPrefix());
+		assertTrue(glob.matches("a*b"));
+		assertFalse(glob.matches("axb"));
+		assertTrue(Glob.isPattern("a*"));
+		assertFalse(Glob.isPattern("abc"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void unclosed() {
+		Glob.compile("a[bc");
+	}
+}
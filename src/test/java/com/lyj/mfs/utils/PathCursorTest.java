@@ -0,0 +1,66 @@
+package com.lyj.mfs.utils;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+public class PathCursorTest {
+
+	private List<String> components(PathCursor cursor) {
+		List<String> ret = new ArrayList<>();
+		while (cursor.next()) {
+			ret.add(cursor.component());
+		}
+		return ret;
+	}
+
+	@Test
+	public void next() {
+		List<String> expectedList = Arrays.asList("foo", "bar", "ccc");
+		assertEquals(expectedList, components(new PathCursor("/foo/bar/ccc")));
+		assertEquals(expectedList, components(new PathCursor("///foo///bar///ccc/")));
+		assertEquals(expectedList, components(new PathCursor("/foo  /bar  /  ccc/")));
+		assertEquals(new ArrayList<String>(), components(new PathCursor("/")));
+		assertEquals(new ArrayList<String>(), components(new PathCursor("")));
+	}
+
+	@Test
+	public void reset() {
+		PathCursor cursor = new PathCursor("/foo/bar");
+		assertEquals(Arrays.asList("foo", "bar"), components(cursor));
+		cursor.reset("a/b");
+		assertFalse(cursor.isAbsolute());
+		assertEquals(Arrays.asList("a", "b"), components(cursor));
+	}
+
+	@Test
+	public void isLast() {
+		PathCursor cursor = new PathCursor("/a/a/  /");
+		assertTrue(cursor.next());
+		assertFalse(cursor.isLast());
+		assertTrue(cursor.next());
+		assertTrue(cursor.isLast());
+		assertEquals("/a/", cursor.precedingPath());
+		assertFalse(cursor.next());
+		assertEquals(0, cursor.length());
+	}
+
+	@Test
+	public void charSequence() {
+		PathCursor cursor = new PathCursor("/foo/../.");
+		cursor.next();
+		assertTrue(cursor.matches("foo"));
+		assertFalse(cursor.matches("fo"));
+		assertEquals(3, cursor.length());
+		assertEquals('o', cursor.charAt(2));
+		assertEquals("oo", cursor.subSequence(1, 3).toString());
+		assertEquals(0, StringUtils.compareNames(cursor, "foo"));
+		cursor.next();
+		assertTrue(cursor.isParentDir());
+		cursor.next();
+		assertTrue(cursor.isCurrentDir());
+	}
+}
@@ -31,6 +31,15 @@ public class StringUtilsTest {
 		assertEquals(expectedList, paths);
 	}
 
+	@Test
+	public void prefixEnd() {
+		assertEquals("log-2024-07", StringUtils.prefixEnd("log-2024-06"));
+		assertEquals("b", StringUtils.prefixEnd("a" + Character.MAX_VALUE));
+		assertNull(StringUtils.prefixEnd(""));
+		assertNull(StringUtils.prefixEnd(String.valueOf(Character.MAX_VALUE)));
+		assertTrue(StringUtils.compareNames("log-2024-06" + Character.MAX_VALUE, StringUtils.prefixEnd("log-2024-06")) < 0);
+	}
+
 	@Test
 	public void extractParentDir() {
 		String expectedVal = "/foo/bar/";
@@ -51,6 +60,28 @@ public class StringUtilsTest {
 
 		parentDir = StringUtils.extractParentDir("foo");
 		assertEquals("", parentDir);
+
+		parentDir = StringUtils.extractParentDir("/a/a");
+		assertEquals("/a/", parentDir);
+
+		parentDir = StringUtils.extractParentDir("/foo/bar/foo/bar");
+		assertEquals("/foo/bar/foo/", parentDir);
+	}
+
+	@Test
+	public void extractFileName() {
+		assertEquals("ccc", StringUtils.extractFileName("/foo/bar/ccc"));
+		assertEquals("ccc", StringUtils.extractFileName("/foo/bar/ccc/"));
+		assertEquals("a", StringUtils.extractFileName("/a/a"));
+		assertEquals("foo", StringUtils.extractFileName("foo"));
+	}
+
+	@Test
+	public void compareNames() {
+		assertEquals(0, StringUtils.compareNames("foo", new StringBuilder("foo")));
+		assertTrue(StringUtils.compareNames("foo", new StringBuilder("fop")) < 0);
+		assertTrue(StringUtils.compareNames(new StringBuilder("foo"), "fo") > 0);
+		assertTrue(StringUtils.compareNames("bar", "foo") < 0);
 	}
 
 	@Test